@@ -38,6 +38,10 @@ public class Jenealogio implements Application {
   public static final String TREE_FILE_EXT = "gtree";
   /** Image file extensions a tree can be exported into */
   public static final String[] IMAGE_FILES_EXTS = {"bmp", "png", "jpg", "jpeg", "gif"};
+  /** Vector image extension a tree can be exported into */
+  public static final String SVG_FILE_EXT = "svg";
+  /** Extension for GEDCOM files that can be imported */
+  public static final String GEDCOM_FILE_EXT = "ged";
 
   @Override
   public void preInit() {
@@ -54,6 +58,8 @@ public class Jenealogio implements Application {
     WritableConfig.registerTag(ConfigTags.LINK_SELECTED_COLOR, Color.GREEN);
     WritableConfig.registerTag(ConfigTags.SELECTION_BORDER_COLOR, new Color(0, 120, 215, 128));
     WritableConfig.registerTag(ConfigTags.SELECTION_BACKGROUND_COLOR, new Color(185, 213, 241, 128));
+    WritableConfig.registerTag(ConfigTags.KEEP_TREE_ARRANGED, false);
+    WritableConfig.registerTag(ConfigTags.SHOW_MINIMAP, true);
   }
 
   @Override
@@ -18,6 +18,8 @@
  */
 package net.darmo_creations.jenealogio.config;
 
+import net.darmo_creations.gui_framework.config.tags.BooleanTag;
+
 public class ConfigTags {
   public static final ColorTag CARD_BORDER_COLOR = new ColorTag("card_border_color");
   public static final ColorTag CARD_SELECTED_BORDER_COLOR = new ColorTag("card_selected_border_color");
@@ -32,6 +34,10 @@ public class ConfigTags {
   public static final ColorTag LINK_SELECTED_COLOR = new ColorTag("link_selected_color");
   public static final ColorTag SELECTION_BORDER_COLOR = new ColorTag("selection_border_color");
   public static final ColorTag SELECTION_BACKGROUND_COLOR = new ColorTag("selection_background_color");
+  /** If true, families are re-arranged automatically when their links change */
+  public static final BooleanTag KEEP_TREE_ARRANGED = new BooleanTag("keep_tree_arranged");
+  /** If true, the minimap is shown next to the tree */
+  public static final BooleanTag SHOW_MINIMAP = new BooleanTag("show_minimap");
 
   /** This array contains all color tags */
   public static final ColorTag[] COLORS_TAGS;
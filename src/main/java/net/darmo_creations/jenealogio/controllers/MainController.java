@@ -20,18 +20,29 @@ package net.darmo_creations.jenealogio.controllers;
 
 import java.awt.Component;
 import java.awt.Point;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.ParseException;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
 
 import net.darmo_creations.gui_framework.ApplicationRegistry;
 import net.darmo_creations.gui_framework.config.WritableConfig;
@@ -41,18 +52,38 @@ import net.darmo_creations.jenealogio.Jenealogio;
 import net.darmo_creations.jenealogio.config.ColorTag;
 import net.darmo_creations.jenealogio.config.ConfigTags;
 import net.darmo_creations.jenealogio.dao.FamilyDao;
+import net.darmo_creations.jenealogio.dao.GedcomReader;
+import net.darmo_creations.jenealogio.dao.SvgExporter;
+import net.darmo_creations.jenealogio.events.BranchEvent;
 import net.darmo_creations.jenealogio.events.CardDragEvent;
 import net.darmo_creations.jenealogio.events.CardEvent;
 import net.darmo_creations.jenealogio.events.CardsSelectionEvent;
+import net.darmo_creations.jenealogio.events.DuplicateEvent;
 import net.darmo_creations.jenealogio.events.EventType;
 import net.darmo_creations.jenealogio.events.LinkEvent;
+import net.darmo_creations.jenealogio.events.SearchEvent;
+import net.darmo_creations.jenealogio.events.WarningEvent;
 import net.darmo_creations.jenealogio.gui.MainFrame;
 import net.darmo_creations.jenealogio.gui.components.display_panel.DisplayPanel;
+import net.darmo_creations.jenealogio.model.CollapsedBranches;
 import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.SelectionModel;
 import net.darmo_creations.jenealogio.model.family.Family;
 import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.MemberQuery;
 import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.model.family.StatisticsEngine;
+import net.darmo_creations.jenealogio.model.family.TreeValidator;
+import net.darmo_creations.jenealogio.model.layout.ForceDirectedLayout;
+import net.darmo_creations.jenealogio.model.layout.GenerationalLayout;
+import net.darmo_creations.jenealogio.model.layout.IncrementalLayout;
+import net.darmo_creations.jenealogio.model.layout.TreeLayout;
+import net.darmo_creations.jenealogio.model.search.DateIndex;
+import net.darmo_creations.jenealogio.model.search.DuplicateDetector;
+import net.darmo_creations.jenealogio.model.search.NameIndex;
+import net.darmo_creations.jenealogio.model.search.SearchIndex;
 import net.darmo_creations.jenealogio.util.Images;
+import net.darmo_creations.jenealogio.util.ProgressListener;
 import net.darmo_creations.utils.FilesUtil;
 import net.darmo_creations.utils.I18n;
 import net.darmo_creations.utils.UndoRedoManager;
@@ -66,6 +97,11 @@ import net.darmo_creations.utils.version.VersionException;
  * @author Damien Vergnet
  */
 public class MainController extends ApplicationController<MainFrame> implements DragAndDropListener {
+  /** Maximum number of cards the search field cycles through. */
+  private static final int MAX_SEARCH_RESULTS = 1000;
+  /** Searched years: "*" for births, "+" for deaths and "~" for lifespans, then a year or a range. */
+  private static final Pattern YEARS_PATTERN = Pattern.compile("([*+~])(\\d{1,4})(?:-(\\d{1,4}))?");
+
   /** Main DAO */
   private final FamilyDao familyDao;
 
@@ -81,14 +117,26 @@ public class MainController extends ApplicationController<MainFrame> implements
   private boolean saved;
   /** The name of the last saved file */
   private String fileName;
-  /** The currently selected card */
-  private FamilyMember lastSelectedCard;
-  /** All currently selected cards */
-  private List<FamilyMember> selectedCards;
+  /** The currently selected cards */
+  private final SelectionModel selection;
   /** The currently selected link */
   private Relationship selectedLink;
   /** Are we adding a link? */
   private boolean addingLink;
+  /** The search index of the family, built on the first search */
+  private SearchIndex searchIndex;
+  /** The index of dates, built with the search index */
+  private DateIndex dateIndex;
+  /** The index of name spelling variants, built on the first search that needs it */
+  private NameIndex nameIndex;
+  /** The validator of the family, created when the tree is first checked */
+  private TreeValidator validator;
+  /** The position of the card found last in the search results */
+  private int searchHit;
+  /** The task being run in the background, if any */
+  private SwingWorker<?, ?> backgroundWorker;
+  /** The running automatic layout or SVG export, canceled if the tree is edited in the meantime. */
+  private SwingWorker<?, ?> treeWorker;
 
   /** Undo/redo manager */
   private UndoRedoManager<FamilyEdit> undoRedoManager;
@@ -97,7 +145,7 @@ public class MainController extends ApplicationController<MainFrame> implements
     super(frame, config);
     this.familyDao = FamilyDao.instance();
     this.lastSavedEdit = null;
-    this.selectedCards = new ArrayList<>();
+    this.selection = new SelectionModel();
 
     this.undoRedoManager = new UndoRedoManager<>();
   }
@@ -114,6 +162,13 @@ public class MainController extends ApplicationController<MainFrame> implements
     updateFrameMenus();
   }
 
+  /**
+   * @return the model of the selected cards
+   */
+  public SelectionModel getSelectionModel() {
+    return this.selection;
+  }
+
   /**
    * Called when a UserEvent is fired.
    * 
@@ -143,6 +198,9 @@ public class MainController extends ApplicationController<MainFrame> implements
         case OPEN:
           open(null);
           break;
+        case IMPORT_GEDCOM:
+          importGedcom(null);
+          break;
         case SAVE:
           boolean ok;
           if (this.alreadySaved)
@@ -189,6 +247,54 @@ public class MainController extends ApplicationController<MainFrame> implements
         case EXPORT_IMAGE:
           exportImage();
           break;
+        case AUTO_LAYOUT:
+          autoLayout(new GenerationalLayout(this.family, this.frame.getCardsSizes()));
+          break;
+        case FORCE_LAYOUT:
+          autoLayout(new ForceDirectedLayout(this.family, this.frame.getCardsPositions(), this.frame.getCardsSizes()));
+          break;
+        case COLLAPSE_DESCENDANTS:
+          collapseBranch(CollapsedBranches.Branch.DESCENDANTS);
+          break;
+        case COLLAPSE_ANCESTORS:
+          collapseBranch(CollapsedBranches.Branch.ANCESTORS);
+          break;
+        case EXPAND_BRANCHES:
+          expandBranches();
+          break;
+        case SELECT_ALL:
+          this.selection.setSelection(getVisibleMembers());
+          updateFrameMenus();
+          break;
+        case SELECT_DESCENDANTS:
+          selectDescendants();
+          break;
+        case SELECT_GENERATION:
+          selectGeneration();
+          break;
+        case FIND_CARD:
+          this.frame.focusSearchField();
+          break;
+        case FIND_DUPLICATES:
+          findDuplicates();
+          break;
+        case SHOW_STATISTICS:
+          showStatistics();
+          break;
+        case CHECK_TREE:
+          checkTree();
+          break;
+        case INVERT_SELECTION:
+          this.selection.invert(getVisibleMembers());
+          updateFrameMenus();
+          break;
+        case TOGGLE_KEEP_ARRANGED:
+          this.config.setValue(ConfigTags.KEEP_TREE_ARRANGED, !this.config.getValue(ConfigTags.KEEP_TREE_ARRANGED));
+          break;
+        case TOGGLE_MINIMAP:
+          this.config.setValue(ConfigTags.SHOW_MINIMAP, !this.config.getValue(ConfigTags.SHOW_MINIMAP));
+          this.frame.setMinimapVisible(this.config.getValue(ConfigTags.SHOW_MINIMAP));
+          break;
       }
     }
   }
@@ -212,35 +318,23 @@ public class MainController extends ApplicationController<MainFrame> implements
     this.selectedLink = null;
     this.frame.updateMenus(this.fileOpen, id >= 0, false, canUndo(), canRedo());
     if (id >= 0) {
-      FamilyMember prev = null;
+      long prev = this.selection.getLead();
 
-      if (!this.addingLink
-          || (this.addingLink && this.lastSelectedCard != null && !this.family.areInRelationship(this.lastSelectedCard.getId(), id)))
-        prev = this.lastSelectedCard;
+      if (this.addingLink && prev != SelectionModel.NONE && this.family.areInRelationship(prev, id))
+        prev = SelectionModel.NONE;
 
-      this.lastSelectedCard = this.family.getMember(id).orElseThrow(IllegalStateException::new);
+      this.selection.select(id, keepSelection);
 
-      if (this.addingLink && prev != null) {
-        addLink(prev.getId(), this.lastSelectedCard.getId());
+      if (this.addingLink && prev != SelectionModel.NONE) {
+        addLink(prev, id);
         toggleAddLink();
       }
-
-      if (keepSelection) {
-        this.selectedCards.removeIf(m -> m.getId() == this.lastSelectedCard.getId());
-        if (prev != null && prev.getId() != this.lastSelectedCard.getId())
-          this.selectedCards.add(prev);
-      }
-      else {
-        this.selectedCards.clear();
-      }
     }
     else {
       if (this.addingLink)
         toggleAddLink();
-      this.lastSelectedCard = null;
-      this.selectedCards.clear();
+      this.selection.clear();
     }
-    this.frame.setPanelsSelectedAsBackground(this.selectedCards.stream().map(f -> f.getId()).collect(Collectors.toList()));
   }
 
   /**
@@ -282,6 +376,19 @@ public class MainController extends ApplicationController<MainFrame> implements
     showDetails(e.getPartner1Id(), e.getPartner2Id());
   }
 
+  /**
+   * Called when the summary card of a collapsed branch is double-clicked. The branch is expanded.
+   * 
+   * @param e the event
+   */
+  @SubsribeEvent
+  public void onBranchDoubleClicked(BranchEvent.DoubleClicked e) {
+    CollapsedBranches branches = this.frame.getCollapsedBranches();
+
+    branches.expand(e.getMemberId(), e.getBranch());
+    updateCollapsedBranches(branches);
+  }
+
   /**
    * Called when several cards are selected.
    * 
@@ -289,10 +396,145 @@ public class MainController extends ApplicationController<MainFrame> implements
    */
   @SubsribeEvent
   public void onCardsSelected(CardsSelectionEvent e) {
-    List<Long> ids = new ArrayList<>();
-    for (long l : e.getSelectedPanelsIds())
-      ids.add(l);
-    this.frame.setPanelsSelectedAsBackground(ids);
+    this.selection.addAll(e.getSelectedPanelsIds());
+  }
+
+  /**
+   * Called when the searched text changes. The first matching card, or the next one, is selected
+   * and scrolled to.
+   * 
+   * @param e the event
+   */
+  @SubsribeEvent
+  public void onSearch(SearchEvent e) {
+    if (!this.fileOpen)
+      return;
+
+    if (this.searchIndex == null) {
+      this.searchIndex = new SearchIndex(this.family);
+      this.dateIndex = new DateIndex(this.family);
+      this.family.addMemberIndex(this.searchIndex);
+      this.family.addMemberIndex(this.dateIndex);
+    }
+
+    long[] hits = searchYears(e.getQuery());
+
+    if (hits == null) {
+      hits = this.searchIndex.search(e.getQuery(), MAX_SEARCH_RESULTS);
+      // Names spelled differently are only looked for if nothing matches exactly
+      if (hits.length == 0) {
+        if (this.nameIndex == null) {
+          this.nameIndex = new NameIndex(this.family);
+          this.family.addFamilyListener(this.nameIndex);
+        }
+        hits = this.nameIndex.search(e.getQuery(), MAX_SEARCH_RESULTS);
+      }
+    }
+    this.frame.setSearchResult(hits.length > 0 || e.getQuery().trim().isEmpty());
+    if (hits.length == 0)
+      return;
+    // Sorted so that the next card is always the same
+    Arrays.sort(hits);
+    if (!e.isNext())
+      this.searchHit = -1;
+    // Cards hidden by collapsed branches are skipped
+    for (int i = 1; i <= hits.length; i++) {
+      int index = (this.searchHit + i) % hits.length;
+
+      if (this.frame.scrollToCard(hits[index])) {
+        this.searchHit = index;
+        this.selectedLink = null;
+        this.selection.select(hits[index], false);
+        updateFrameMenus();
+        break;
+      }
+    }
+  }
+
+  /**
+   * Looks for the members matching a search with years, like "*1850-1900" for the members born
+   * during these years, "+1914" for those who died in 1914 or "~1900" for those who may have been
+   * alive in 1900. The other words of the search are looked for in the names.
+   * 
+   * @param query the searched text
+   * @return the IDs of the matching members or null if the search has no years
+   */
+  private long[] searchYears(String query) {
+    MemberQuery memberQuery = this.family.query();
+    StringBuilder names = new StringBuilder();
+    boolean years = false;
+
+    for (String word : query.trim().split("\\s+")) {
+      Matcher m = YEARS_PATTERN.matcher(word);
+
+      if (m.matches()) {
+        int from = Integer.parseInt(m.group(2));
+        int to = m.group(3) != null ? Integer.parseInt(m.group(3)) : from;
+
+        switch (m.group(1)) {
+          case "*":
+            memberQuery.bornBetween(from, to);
+            break;
+          case "+":
+            memberQuery.diedBetween(from, to);
+            break;
+          default:
+            memberQuery.aliveBetween(from, to);
+        }
+        years = true;
+      }
+      else
+        names.append(word).append(' ');
+    }
+    if (!years)
+      return null;
+    if (names.length() > 0)
+      memberQuery.nameLike(names.toString());
+
+    return memberQuery.ids().limit(MAX_SEARCH_RESULTS).toArray();
+  }
+
+  /**
+   * Called when a pair of possible duplicates is selected. Both cards are selected and the view
+   * scrolls to them.
+   * 
+   * @param e the event
+   */
+  @SubsribeEvent
+  public void onDuplicateSelected(DuplicateEvent e) {
+    if (!this.fileOpen)
+      return;
+
+    // Cards deleted or hidden since the search are ignored
+    boolean shown2 = this.frame.scrollToCard(e.getMemberId2());
+    boolean shown1 = this.frame.scrollToCard(e.getMemberId1());
+
+    this.selectedLink = null;
+    this.selection.clear();
+    if (shown1)
+      this.selection.select(e.getMemberId1(), false);
+    if (shown2)
+      this.selection.select(e.getMemberId2(), true);
+    updateFrameMenus();
+  }
+
+  /**
+   * Called when a warning of the tree check is selected. The card of the member it is about is
+   * selected and the view scrolls to it.
+   * 
+   * @param e the event
+   */
+  @SubsribeEvent
+  public void onWarningSelected(WarningEvent e) {
+    if (!this.fileOpen)
+      return;
+
+    this.selectedLink = null;
+    this.selection.clear();
+    // Missing or hidden members are ignored
+    if (this.frame.scrollToCard(e.getMemberId()))
+      this.selection.select(e.getMemberId(), false);
+    updateFrameMenus();
   }
 
   /**
@@ -321,12 +563,15 @@ public class MainController extends ApplicationController<MainFrame> implements
   public boolean acceptFiles(List<File> files, Component c) {
     if (!(c instanceof DisplayPanel) || files.size() != 1)
       return false;
-    return FilesUtil.hasExtension(files.get(0), Jenealogio.TREE_FILE_EXT);
+    return FilesUtil.hasExtension(files.get(0), Jenealogio.TREE_FILE_EXT) || FilesUtil.hasExtension(files.get(0), Jenealogio.GEDCOM_FILE_EXT);
   }
 
   @Override
   public void importFiles(List<File> files) {
-    open(files.get(0));
+    if (FilesUtil.hasExtension(files.get(0), Jenealogio.GEDCOM_FILE_EXT))
+      importGedcom(files.get(0));
+    else
+      open(files.get(0));
   }
 
   /**
@@ -356,16 +601,24 @@ public class MainController extends ApplicationController<MainFrame> implements
    * Creates a new file. Asks the user if the current file is not saved.
    */
   private void newFile() {
-    if (checkSaved()) {
+    if (this.backgroundWorker == null && checkSaved()) {
       Optional<String> name = this.frame.showCreateTreeDialog();
 
       if (name.isPresent()) {
         this.undoRedoManager.clear();
+        this.selection.clear();
+        this.searchIndex = null;
+        this.dateIndex = null;
+        this.nameIndex = null;
+        this.frame.hideDuplicatesDialog();
         this.family = new Family(name.get());
         this.fileOpen = true;
         this.alreadySaved = false;
         this.saved = false;
         this.frame.resetDisplay();
+        this.frame.refreshDisplay(this.family, this.config);
+        this.frame.followFamily(this.family);
+        resetValidator();
         this.lastSavedEdit = new FamilyEdit(this.family, this.frame.getCardsPositions());
         addEdit();
         updateFrameMenus();
@@ -394,7 +647,7 @@ public class MainController extends ApplicationController<MainFrame> implements
    *          save state is still checked
    */
   private void open(final File file) {
-    if (checkSaved()) {
+    if (this.backgroundWorker == null && checkSaved()) {
       Optional<File> opt;
 
       if (file == null) {
@@ -420,6 +673,11 @@ public class MainController extends ApplicationController<MainFrame> implements
   private void loadFile(String fileName, boolean ignoreVersion) {
     try {
       this.undoRedoManager.clear();
+      this.selection.clear();
+      this.searchIndex = null;
+      this.dateIndex = null;
+      this.nameIndex = null;
+      this.frame.hideDuplicatesDialog();
       this.lastSavedEdit = this.familyDao.load(fileName, ignoreVersion);
       this.family = this.lastSavedEdit.getFamily();
       this.undoRedoManager.addEdit(this.lastSavedEdit);
@@ -428,7 +686,9 @@ public class MainController extends ApplicationController<MainFrame> implements
       this.alreadySaved = true;
       this.saved = true;
       this.frame.resetDisplay();
-      this.frame.refreshDisplay(this.family, this.lastSavedEdit.getLocations(), this.config);
+      this.frame.refreshDisplay(this.family, this.lastSavedEdit.getLocations(), this.lastSavedEdit.getCollapsedBranches(), this.config);
+      this.frame.followFamily(this.family);
+      resetValidator();
     }
     catch (VersionException ex) {
       int choice = this.frame.showConfirmDialog(I18n.getLocalizedString("popup.version_warning.text"));
@@ -443,6 +703,59 @@ public class MainController extends ApplicationController<MainFrame> implements
     updateFrameMenus();
   }
 
+  /**
+   * Imports a GEDCOM file in the background. Asks the user if the current file is not saved. The
+   * imported tree is opened as a new tree that has not been saved yet.
+   * 
+   * @param file if not null, this method will import this file instead of asking the user; save
+   *          state is still checked
+   */
+  private void importGedcom(final File file) {
+    if (this.backgroundWorker != null || !checkSaved())
+      return;
+
+    Optional<File> opt = file == null ? this.frame.showImportGedcomFileChooser() : Optional.of(file);
+
+    if (opt.isPresent()) {
+      String fileName = opt.get().getAbsolutePath();
+
+      runInBackground("popup.import_gedcom.text", ex -> {
+        // Malformed lines are reported with their number
+        if (ex.getCause() instanceof ParseException) {
+          int line = ((ParseException) ex.getCause()).getErrorOffset();
+          return String.format(I18n.getLocalizedString("popup.import_gedcom_line_error.text"), line);
+        }
+        return I18n.getLocalizedString("popup.import_gedcom_error.text");
+      }, listener -> {
+        try {
+          return GedcomReader.instance().load(fileName, listener);
+        }
+        catch (IOException | ParseException ex) {
+          throw new RuntimeException(ex);
+        }
+      }, edit -> {
+        this.undoRedoManager.clear();
+        this.selection.clear();
+        this.searchIndex = null;
+        this.dateIndex = null;
+        this.nameIndex = null;
+        this.frame.hideDuplicatesDialog();
+        this.lastSavedEdit = null;
+        this.family = edit.getFamily();
+        this.undoRedoManager.addEdit(edit);
+        this.fileName = null;
+        this.fileOpen = true;
+        this.alreadySaved = false;
+        this.saved = false;
+        this.frame.resetDisplay();
+        this.frame.refreshDisplay(this.family, edit.getLocations(), edit.getCollapsedBranches(), this.config);
+        this.frame.followFamily(this.family);
+        resetValidator();
+        updateFrameMenus();
+      });
+    }
+  }
+
   /**
    * Saves the file as another file.
    * 
@@ -482,7 +795,7 @@ public class MainController extends ApplicationController<MainFrame> implements
       return true;
 
     try {
-      FamilyEdit newSave = new FamilyEdit(this.family, this.frame.getCardsPositions());
+      FamilyEdit newSave = new FamilyEdit(this.family, this.frame.getCardsPositions(), this.frame.getCollapsedBranches());
 
       this.familyDao.save(this.fileName, newSave);
       this.lastSavedEdit = newSave;
@@ -507,10 +820,8 @@ public class MainController extends ApplicationController<MainFrame> implements
 
     if (member.isPresent()) {
       this.saved = false;
+      // The display adds the new card in the middle of the visible area
       this.family.addMember(member.get());
-      Map<Long, Point> points = this.frame.getCardsPositions();
-      points.put(this.family.getGlobalId() - 1, this.frame.getDisplayMiddlePoint());
-      this.frame.refreshDisplay(this.family, points, this.config);
       addEdit();
       updateFrameMenus();
     }
@@ -525,8 +836,8 @@ public class MainController extends ApplicationController<MainFrame> implements
     if (optWedding.isPresent()) {
       this.family.addRelation(optWedding.get());
       this.saved = false;
+      keepArranged(optWedding.get());
       addEdit();
-      refreshFrame();
       updateFrameMenus();
     }
   }
@@ -543,15 +854,16 @@ public class MainController extends ApplicationController<MainFrame> implements
    * Opens up "edit card" dialog then updates the model.
    */
   private void editCard() {
-    if (this.lastSelectedCard != null) {
-      Optional<FamilyMember> member = this.frame.showUpdateCardDialog(this.lastSelectedCard);
+    Optional<FamilyMember> selected = this.family.getMember(this.selection.getLead());
+
+    if (selected.isPresent()) {
+      Optional<FamilyMember> member = this.frame.showUpdateCardDialog(selected.get());
 
       if (member.isPresent()) {
         this.family.updateMember(member.get());
         addEdit();
         this.saved = false;
         updateFrameMenus();
-        refreshFrame();
       }
     }
   }
@@ -565,10 +877,10 @@ public class MainController extends ApplicationController<MainFrame> implements
 
       if (relation.isPresent()) {
         this.family.updateRelation(relation.get());
+        keepArranged(relation.get());
         addEdit();
         this.saved = false;
         updateFrameMenus();
-        refreshFrame();
       }
     }
   }
@@ -577,19 +889,19 @@ public class MainController extends ApplicationController<MainFrame> implements
    * Deletes the selected card(s). Asks the user to confirm the action.
    */
   private void deleteCard() {
-    if (this.lastSelectedCard != null || !this.selectedCards.isEmpty()) {
-      String key = !this.selectedCards.isEmpty() ? "popup.delete_cards_confirm.text" : "popup.delete_card_confirm.text";
+    if (!this.selection.isEmpty()) {
+      String key = this.selection.size() > 1 ? "popup.delete_cards_confirm.text" : "popup.delete_card_confirm.text";
       int choice = this.frame.showConfirmDialog(I18n.getLocalizedString(key));
 
       if (choice == JOptionPane.YES_OPTION) {
-        this.family.removeMember(this.lastSelectedCard.getId());
-        this.selectedCards.forEach(m -> this.family.removeMember(m.getId()));
+        long[] ids = this.selection.getSelected();
+
+        this.selection.clear();
+        for (long id : ids)
+          this.family.removeMember(id);
         addEdit();
-        this.lastSelectedCard = null;
-        this.selectedCards.clear();
         this.saved = false;
         updateFrameMenus();
-        refreshFrame();
       }
     }
   }
@@ -607,7 +919,6 @@ public class MainController extends ApplicationController<MainFrame> implements
         this.selectedLink = null;
         this.saved = false;
         updateFrameMenus();
-        refreshFrame();
       }
     }
   }
@@ -634,6 +945,9 @@ public class MainController extends ApplicationController<MainFrame> implements
    * Exports the tree as an image.
    */
   private void exportImage() {
+    if (this.backgroundWorker != null)
+      return;
+
     boolean exit = false;
     String path = null;
 
@@ -657,20 +971,354 @@ public class MainController extends ApplicationController<MainFrame> implements
     }
 
     try {
-      Images.writeImage(this.frame.exportToImage(), path);
+      if (FilesUtil.hasExtension(path, Jenealogio.SVG_FILE_EXT))
+        exportToSvg(path);
+      else if (FilesUtil.hasExtension(path, "png")) {
+        // Large trees are streamed by strips instead of being rendered into a single image
+        Optional<Integer> scale = this.frame.showExportScaleDialog();
+        if (!scale.isPresent())
+          return;
+        exportToPng(path, scale.get());
+      }
+      else
+        Images.writeImage(this.frame.exportToImage(), path);
     }
     catch (IOException ex) {
       this.frame.showErrorDialog(I18n.getLocalizedString("popup.image_export_error.text"));
     }
   }
 
+  /**
+   * Exports the tree to an SVG file in the background. The tree is read without being copied so the
+   * export is canceled if it is edited before it is done. The file is deleted if the export fails or
+   * is canceled.
+   * 
+   * @param path the path of the file
+   */
+  private void exportToSvg(String path) {
+    Family family = this.family;
+    Map<Long, Point> locations = this.frame.getCardsPositions();
+
+    runInBackground("popup.image_export.text", "popup.image_export_error.text", listener -> {
+      try {
+        SvgExporter.instance().export(path, family, locations, this.config, listener);
+      }
+      catch (IOException ex) {
+        new File(path).delete();
+        throw new RuntimeException(ex);
+      }
+      catch (RuntimeException ex) {
+        new File(path).delete();
+        throw ex;
+      }
+      return null;
+    }, result -> {});
+    this.treeWorker = this.backgroundWorker;
+  }
+
+  /**
+   * Exports the tree to a PNG image in the background. The file is deleted if the export fails or
+   * is canceled.
+   * 
+   * @param path the path of the image
+   * @param scale the scale of the image
+   */
+  private void exportToPng(String path, int scale) {
+    runInBackground("popup.image_export.text", "popup.image_export_error.text", listener -> {
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path))) {
+        this.frame.exportToPng(out, scale, listener);
+      }
+      catch (IOException ex) {
+        new File(path).delete();
+        throw new RuntimeException(ex);
+      }
+      catch (RuntimeException ex) {
+        new File(path).delete();
+        throw ex;
+      }
+      return null;
+    }, result -> {});
+  }
+
+  /**
+   * Arranges all cards with the given layout. The layout is computed in the background while a
+   * progress dialog lets the user cancel it. The new positions are recorded as a single edit. The
+   * layout is canceled if the tree is edited before it is done.
+   * 
+   * @param layout the layout
+   */
+  private void autoLayout(TreeLayout layout) {
+    if (this.backgroundWorker != null)
+      return;
+
+    FamilyEdit edit = this.undoRedoManager.getEdit();
+
+    runInBackground("popup.auto_layout.text", "popup.auto_layout_error.text", layout::compute, locations -> {
+      // The positions are dropped if the tree has changed meanwhile
+      if (this.undoRedoManager.getEdit() == edit)
+        applyLayout(locations);
+    });
+    this.treeWorker = this.backgroundWorker;
+  }
+
+  /**
+   * Cancels the automatic layout or SVG export if one is running.
+   */
+  private void cancelTreeTask() {
+    if (this.backgroundWorker != null && this.backgroundWorker == this.treeWorker)
+      this.backgroundWorker.cancel(true);
+    this.treeWorker = null;
+  }
+
+  /**
+   * Looks for members that may be the same person in the background and shows them in a dialog.
+   */
+  private void findDuplicates() {
+    if (this.backgroundWorker != null)
+      return;
+
+    Family family = this.family;
+    DuplicateDetector detector = new DuplicateDetector(family);
+
+    runInBackground("popup.find_duplicates.text", "popup.find_duplicates_error.text", detector::detect, duplicates -> {
+      // The results are dropped if another tree has been opened meanwhile
+      if (family == this.family)
+        this.frame.showDuplicatesDialog(duplicates, family);
+    });
+  }
+
+  /**
+   * Computes the statistics of the tree in the background and shows them in a dialog.
+   */
+  private void showStatistics() {
+    if (this.backgroundWorker != null)
+      return;
+
+    Family family = this.family;
+    StatisticsEngine engine = new StatisticsEngine(family);
+
+    runInBackground("popup.statistics.text", "popup.statistics_error.text", listener -> engine.compute(), statistics -> {
+      if (family == this.family)
+        this.frame.showStatisticsDialog(statistics);
+    });
+  }
+
+  /**
+   * Shows the inconsistencies of the tree in a dialog. The whole tree is checked the first time,
+   * then the validator follows the changes of the tree and the dialog is updated after each one.
+   */
+  private void checkTree() {
+    if (this.validator == null) {
+      Family family = this.family;
+
+      this.validator = new TreeValidator(family);
+      family.addFamilyListener(this.validator);
+      this.validator.addValidationListener(v -> this.frame.updateWarningsDialog(sortedWarnings(v), family));
+    }
+    this.frame.showWarningsDialog(sortedWarnings(this.validator), this.family);
+  }
+
+  /**
+   * Drops the validator of the previous tree. If the "tree check" dialog is visible, the current
+   * tree is checked.
+   */
+  private void resetValidator() {
+    this.validator = null;
+    if (this.frame.isWarningsDialogVisible())
+      checkTree();
+  }
+
+  private static List<TreeValidator.Warning> sortedWarnings(TreeValidator validator) {
+    List<TreeValidator.Warning> warnings = validator.getWarnings();
+    warnings.sort(Comparator.comparing(TreeValidator.Warning::getType).thenComparingLong(TreeValidator.Warning::getMemberId));
+    return warnings;
+  }
+
+  /**
+   * Runs a task in the background while a progress dialog lets the user cancel it. Only one task
+   * can run at a time; this method does nothing if another one is running.
+   * 
+   * @param messageKey the key of the message shown in the progress dialog
+   * @param errorKey the key of the message shown if the task fails
+   * @param task the task; it is given a listener to report its progress and must stop when its
+   *          thread is interrupted
+   * @param onDone called in the event dispatch thread with the result of the task, unless it was
+   *          canceled or failed
+   */
+  private <T> void runInBackground(String messageKey, String errorKey, Function<ProgressListener, T> task, Consumer<T> onDone) {
+    runInBackground(messageKey, ex -> I18n.getLocalizedString(errorKey), task, onDone);
+  }
+
+  /**
+   * Runs a task in the background while a progress dialog lets the user cancel it. Only one task
+   * can run at a time; this method does nothing if another one is running.
+   * 
+   * @param messageKey the key of the message shown in the progress dialog
+   * @param errorMessage gives the message shown if the task fails from the exception it threw
+   * @param task the task; it is given a listener to report its progress and must stop when its
+   *          thread is interrupted
+   * @param onDone called in the event dispatch thread with the result of the task, unless it was
+   *          canceled or failed
+   */
+  private <T> void runInBackground(String messageKey, Function<Exception, String> errorMessage, Function<ProgressListener, T> task,
+      Consumer<T> onDone) {
+    if (this.backgroundWorker != null)
+      return;
+
+    ProgressMonitor monitor = new ProgressMonitor(this.frame, I18n.getLocalizedString(messageKey), null, 0, 100);
+    SwingWorker<T, Void> worker = new SwingWorker<T, Void>() {
+      @Override
+      protected T doInBackground() {
+        return task.apply(this::setProgress);
+      }
+
+      @Override
+      protected void done() {
+        MainController.this.backgroundWorker = null;
+        monitor.close();
+        if (isCancelled())
+          return;
+        try {
+          onDone.accept(get());
+        }
+        catch (InterruptedException ex) {
+          MainController.this.frame.showErrorDialog(errorMessage.apply(ex));
+        }
+        catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          MainController.this.frame.showErrorDialog(errorMessage.apply(cause instanceof Exception ? (Exception) cause : ex));
+        }
+      }
+    };
+
+    worker.addPropertyChangeListener(e -> {
+      if ("progress".equals(e.getPropertyName())) {
+        monitor.setProgress(worker.getProgress());
+        if (monitor.isCanceled())
+          worker.cancel(true);
+      }
+    });
+    this.backgroundWorker = worker;
+    worker.execute();
+  }
+
+  /**
+   * Moves the cards to the positions computed by the automatic layout.
+   * 
+   * @param locations the new positions
+   */
+  private void applyLayout(Map<Long, Point> locations) {
+    this.frame.refreshDisplay(this.family, locations, this.config);
+    this.saved = false;
+    addEdit();
+    updateFrameMenus();
+  }
+
+  /**
+   * Collapses the given branch of the selected card.
+   * 
+   * @param branch the direction of the branch
+   */
+  private void collapseBranch(CollapsedBranches.Branch branch) {
+    if (this.selection.getLead() != SelectionModel.NONE) {
+      CollapsedBranches branches = this.frame.getCollapsedBranches();
+
+      branches.collapse(this.selection.getLead(), branch);
+      updateCollapsedBranches(branches);
+    }
+  }
+
+  /**
+   * Expands all branches of the selected card.
+   */
+  private void expandBranches() {
+    if (this.selection.getLead() != SelectionModel.NONE) {
+      CollapsedBranches branches = this.frame.getCollapsedBranches();
+
+      for (CollapsedBranches.Branch branch : CollapsedBranches.Branch.values())
+        branches.expand(this.selection.getLead(), branch);
+      updateCollapsedBranches(branches);
+    }
+  }
+
+  /**
+   * Updates the display with the given collapsed branches and records them as an edit. Hidden
+   * cards are deselected.
+   * 
+   * @param branches the new collapsed branches
+   */
+  private void updateCollapsedBranches(CollapsedBranches branches) {
+    if (!branches.equals(this.frame.getCollapsedBranches())) {
+      CollapsedBranches.HiddenMembers hidden = branches.getHiddenMembers(this.family);
+
+      // The lead stays selected if its card is still visible
+      this.selection.removeAll(Arrays.stream(this.selection.getSelected()).filter(hidden::isHidden).toArray());
+      this.frame.refreshDisplay(this.family, null, branches, this.config);
+      this.saved = false;
+      addEdit();
+      updateFrameMenus();
+    }
+  }
+
+  /**
+   * Adds all visible descendants of the selected card to the selection.
+   */
+  private void selectDescendants() {
+    long lead = this.selection.getLead();
+
+    if (lead != SelectionModel.NONE) {
+      CollapsedBranches.HiddenMembers hidden = this.frame.getCollapsedBranches().getHiddenMembers(this.family);
+      this.selection.addAll(this.family.getDescendants(lead).stream().mapToLong(Long::longValue).filter(id -> !hidden.isHidden(id)).toArray());
+    }
+  }
+
+  /**
+   * Adds all visible members of the same generation as the selected card to the selection.
+   */
+  private void selectGeneration() {
+    long lead = this.selection.getLead();
+
+    if (lead != SelectionModel.NONE) {
+      CollapsedBranches.HiddenMembers hidden = this.frame.getCollapsedBranches().getHiddenMembers(this.family);
+      Map<Long, Integer> generations = new GenerationalLayout(this.family, Collections.emptyMap()).computeGenerations();
+      Integer generation = generations.get(lead);
+
+      this.selection.addAll(generations.entrySet().stream().filter(e -> e.getValue().equals(generation) && !hidden.isHidden(e.getKey()))
+          .mapToLong(Map.Entry::getKey).toArray());
+    }
+  }
+
+  /**
+   * @return the IDs of all members that have a card, i.e. that are not hidden by a collapsed branch
+   */
+  private long[] getVisibleMembers() {
+    CollapsedBranches.HiddenMembers hidden = this.frame.getCollapsedBranches().getHiddenMembers(this.family);
+    return this.family.getAllMembersIds().stream().mapToLong(Long::longValue).filter(id -> !hidden.isHidden(id)).toArray();
+  }
+
+  /**
+   * Re-arranges the family of the given relation if the user asked to keep the tree arranged. Only
+   * the children of the relation and the cards they collide with are moved.
+   * 
+   * @param relation the relation that changed
+   */
+  private void keepArranged(Relationship relation) {
+    if (this.config.getValue(ConfigTags.KEEP_TREE_ARRANGED)) {
+      IncrementalLayout layout = new IncrementalLayout(this.frame.getCardsPositions(), this.frame.getCardsSizes());
+      Map<Long, Point> moved = layout.relayout(relation);
+      if (!moved.isEmpty())
+        this.frame.moveCards(moved);
+    }
+  }
+
   /**
    * Updates main frame menus and title.
    */
   private void updateFrameMenus() {
     String title = this.family != null ? " - " + (this.saved ? "" : "*") + this.family.getName() : "";
     this.frame.setTitle(this.frame.getBaseTitle() + title);
-    this.frame.updateMenus(this.fileOpen, this.lastSelectedCard != null, this.selectedLink != null, canUndo(), canRedo());
+    this.frame.updateMenus(this.fileOpen, this.selection.getLead() != SelectionModel.NONE, this.selectedLink != null, canUndo(),
+        canRedo());
     this.frame.updateSaveMenus(this.saved);
   }
 
@@ -695,7 +1343,8 @@ public class MainController extends ApplicationController<MainFrame> implements
    * Adds the current family object (after cloning it) to the undo manager.
    */
   private void addEdit() {
-    this.undoRedoManager.addEdit(new FamilyEdit(this.family, this.frame.getCardsPositions()));
+    cancelTreeTask();
+    this.undoRedoManager.addEdit(new FamilyEdit(this.family, this.frame.getCardsPositions(), this.frame.getCollapsedBranches()));
   }
 
   /**
@@ -722,13 +1371,20 @@ public class MainController extends ApplicationController<MainFrame> implements
    * Method used by undo() and redo().
    */
   private void undoOrRedo_() {
+    cancelTreeTask();
     FamilyEdit edit = this.undoRedoManager.getEdit();
     if (edit.equals(this.lastSavedEdit))
       this.saved = true;
     else
       this.saved = false;
     this.family = edit.getFamily();
-    this.frame.refreshDisplay(this.family, edit.getLocations(), this.config);
+    this.selection.clear();
+    this.searchIndex = null;
+    this.dateIndex = null;
+    this.nameIndex = null;
+    this.frame.refreshDisplay(this.family, edit.getLocations(), edit.getCollapsedBranches(), this.config);
+    this.frame.followFamily(this.family);
+    resetValidator();
     updateFrameMenus();
   }
 
@@ -45,6 +45,7 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 
 import net.darmo_creations.jenealogio.Jenealogio;
+import net.darmo_creations.jenealogio.model.CollapsedBranches;
 import net.darmo_creations.jenealogio.model.FamilyEdit;
 import net.darmo_creations.jenealogio.model.date.Date;
 import net.darmo_creations.jenealogio.model.date.DateBuilder;
@@ -181,7 +182,20 @@ public class FamilyDao {
         weddings.add(new Relationship(date, location, isWedding, hasEnded, endDate, partner1, partner2, children, adoptions));
       }
 
-      return new FamilyEdit(family, locations);
+      // Collapsed branches may not be present in older save versions.
+      CollapsedBranches collapsedBranches = new CollapsedBranches();
+      JSONObject collapsedObj = (JSONObject) obj.get("collapsed_branches");
+      if (collapsedObj != null) {
+        for (CollapsedBranches.Branch branch : CollapsedBranches.Branch.values()) {
+          JSONArray idsObj = (JSONArray) collapsedObj.get(branch.name().toLowerCase());
+          if (idsObj != null) {
+            for (Object id : idsObj)
+              collapsedBranches.collapse((Long) id, branch);
+          }
+        }
+      }
+
+      return new FamilyEdit(family, locations, collapsedBranches);
     }
     catch (NullPointerException | ClassCastException | NoSuchElementException | DateTimeParseException
         | org.json.simple.parser.ParseException ex) {
@@ -314,6 +328,15 @@ public class FamilyDao {
     }
     obj.put("relations", relationsObj);
 
+    JSONObject collapsedObj = new JSONObject();
+    CollapsedBranches collapsedBranches = edit.getCollapsedBranches();
+    for (CollapsedBranches.Branch branch : CollapsedBranches.Branch.values()) {
+      JSONArray idsObj = new JSONArray();
+      collapsedBranches.getRoots(branch).stream().filter(id -> family.getMember(id).isPresent()).forEach(idsObj::add);
+      collapsedObj.put(branch.name().toLowerCase(), idsObj);
+    }
+    obj.put("collapsed_branches", collapsedObj);
+
     Files.write(Paths.get(file), Arrays.asList(obj.toJSONString()));
   }
 
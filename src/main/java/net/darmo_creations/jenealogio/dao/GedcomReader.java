@@ -0,0 +1,775 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.dao;
+
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.date.DateBuilder;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.model.layout.GenerationalLayout;
+import net.darmo_creations.jenealogio.util.LongHashSet;
+import net.darmo_creations.jenealogio.util.ProgressListener;
+import net.darmo_creations.jenealogio.util.StringPool;
+import net.darmo_creations.jenealogio.util.TaskUtil;
+
+/**
+ * This class imports GEDCOM 5.5.1 files. The file is read line by line and only the record being
+ * read is kept apart from the tree itself, so that files of any size can be imported quickly.
+ * <p>
+ * Individuals (INDI records) become members: their name, sex, birth, death and note are read.
+ * Families (FAM records) become relations: MARR makes them weddings and DIV ends them. Adoptions
+ * are read from the ADOP events and the FAMC pedigrees of the children. Other records are
+ * ignored. As a relation needs two partners, a member with no data stands for the missing partner
+ * of families having children; families with neither two partners nor children are dropped.
+ * <p>
+ * Cards are then arranged with the {@link GenerationalLayout}.
+ * 
+ * @author Damien Vergnet
+ */
+public class GedcomReader {
+  private static final int BUFFER_SIZE = 1 << 16;
+  /** Number of bytes searched for the character set at the beginning of the file. */
+  private static final int HEADER_SIZE = 4096;
+  /** Number of lines read between two progress updates. */
+  private static final int LINES_PER_UPDATE = 4096;
+  /** Progress at the end of the reading, the layout taking the rest. */
+  private static final int READING_PROGRESS = 50;
+  private static final int MAX_LEVEL = 99;
+  private static final long NO_ID = -1;
+  private static final List<String> MONTHS = Arrays.asList("JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV",
+      "DEC");
+
+  private static GedcomReader instance;
+
+  /**
+   * @return the instance
+   */
+  public static GedcomReader instance() {
+    if (instance == null)
+      instance = new GedcomReader();
+    return instance;
+  }
+
+  /**
+   * Imports the given GEDCOM file. The tree is named after the file.
+   * 
+   * @param file the file to import
+   * @param listener the listener notified of the progress
+   * @return the imported tree and positions for the cards
+   * @throws IOException if an I/O error occured
+   * @throws ParseException if a line is wrongly formatted; the error offset is the line number
+   */
+  public FamilyEdit load(String file, ProgressListener listener) throws IOException, ParseException {
+    Path path = Paths.get(file);
+    long size = Math.max(1, Files.size(path));
+    Parser parser = new Parser();
+
+    try (CountingInputStream counter = new CountingInputStream(Files.newInputStream(path));
+        BufferedInputStream in = new BufferedInputStream(counter, BUFFER_SIZE)) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, detectCharset(in)), BUFFER_SIZE);
+      String line;
+      int lineNumber = 0;
+
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (lineNumber % LINES_PER_UPDATE == 0) {
+          TaskUtil.checkCanceled();
+          listener.progressChanged((int) (READING_PROGRESS * counter.getCount() / size));
+        }
+        parser.parseLine(line, lineNumber);
+      }
+    }
+
+    String name = path.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    Family family = parser.createFamily(dot > 0 ? name.substring(0, dot) : name);
+    TaskUtil.checkCanceled();
+    Map<Long, Point> locations = new GenerationalLayout(family.getAllMembersIds(), parser.relations, Collections.emptyMap()).compute(
+        progress -> listener.progressChanged(READING_PROGRESS + progress * (100 - READING_PROGRESS) / 100));
+
+    return new FamilyEdit(family, locations);
+  }
+
+  /**
+   * Finds the character set of the file from its byte order mark or the CHAR tag of its header.
+   * The stream is left at the beginning of the data.
+   * 
+   * @param in the stream; it must support marks
+   * @return the character set; ANSEL is read as ISO-8859-1, only its accented letters differ
+   */
+  private static Charset detectCharset(InputStream in) throws IOException {
+    byte[] header = new byte[HEADER_SIZE];
+    int length = 0, n;
+
+    in.mark(HEADER_SIZE);
+    while (length < HEADER_SIZE && (n = in.read(header, length, HEADER_SIZE - length)) > 0)
+      length += n;
+    in.reset();
+
+    if (length >= 3 && (header[0] & 0xff) == 0xef && (header[1] & 0xff) == 0xbb && (header[2] & 0xff) == 0xbf) {
+      in.skip(3);
+      return StandardCharsets.UTF_8;
+    }
+    if (length >= 2 && ((header[0] & 0xff) == 0xfe && (header[1] & 0xff) == 0xff || (header[0] & 0xff) == 0xff && (header[1] & 0xff) == 0xfe))
+      return StandardCharsets.UTF_16;
+    // Files starting with "0" in UTF-16 without byte order mark
+    if (length >= 2 && header[0] == 0 && header[1] == '0')
+      return StandardCharsets.UTF_16BE;
+    if (length >= 2 && header[0] == '0' && header[1] == 0)
+      return StandardCharsets.UTF_16LE;
+
+    for (String line : new String(header, 0, length, StandardCharsets.ISO_8859_1).split("[\r\n]+")) {
+      String[] parts = line.trim().split(" +");
+      if (parts.length >= 3 && parts[0].equals("1") && parts[1].equals("CHAR")) {
+        switch (parts[2].toUpperCase()) {
+          case "ANSI":
+            return Charset.forName("windows-1252");
+          case "ASCII":
+          case "ANSEL":
+            return StandardCharsets.ISO_8859_1;
+          case "UNICODE":
+            return StandardCharsets.UTF_16;
+          default:
+            return StandardCharsets.UTF_8;
+        }
+      }
+    }
+    return StandardCharsets.UTF_8;
+  }
+
+  /**
+   * The state of an import.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class Parser {
+    private final String[] tags = new String[MAX_LEVEL + 1], values = new String[MAX_LEVEL + 1];
+    private int level = -1;
+    /** The record being read, at most one of them is not null. */
+    private Individual individual;
+    private Union union;
+
+    /** The ID given to each cross-reference, whether the record has been read or not. */
+    private final Map<String, Long> ids = new HashMap<>();
+    private long nextId;
+    private final Set<FamilyMember> members = new HashSet<>();
+    private final LongHashSet membersIds = new LongHashSet();
+    private final Map<String, Union> unions = new LinkedHashMap<>();
+    private final List<Adoption> adoptions = new ArrayList<>();
+    private final Set<Relationship> relations = new HashSet<>();
+    private final StringPool strings = new StringPool();
+
+    /**
+     * Reads a line: "level [@xref@] tag [value]".
+     */
+    void parseLine(String line, int lineNumber) throws ParseException {
+      int length = line.length(), i = 0;
+
+      while (i < length && Character.isWhitespace(line.charAt(i)))
+        i++;
+      if (i == length)
+        return;
+
+      int start = i;
+      while (i < length && i - start <= 2 && Character.isDigit(line.charAt(i)))
+        i++;
+      if (i == start || i - start > 2)
+        throw new ParseException("invalid level", lineNumber);
+      int level = Integer.parseInt(line.substring(start, i));
+      if (level > this.level + 1)
+        throw new ParseException("invalid level", lineNumber);
+
+      i = skipSpaces(line, i);
+      String xref = null;
+      if (i < length && line.charAt(i) == '@') {
+        int end = line.indexOf('@', i + 1);
+        if (end < 0)
+          throw new ParseException("invalid cross-reference", lineNumber);
+        xref = line.substring(i, end + 1);
+        i = skipSpaces(line, end + 1);
+      }
+      int end = i;
+      while (end < length && line.charAt(end) != ' ')
+        end++;
+      if (end == i)
+        throw new ParseException("missing tag", lineNumber);
+      String tag = line.substring(i, end);
+      String value = end < length ? line.substring(end + 1) : "";
+
+      this.level = level;
+      this.tags[level] = tag;
+      this.values[level] = value;
+      if (level == 0) {
+        endRecord();
+        if (xref != null && tag.equals("INDI"))
+          this.individual = new Individual(id(xref));
+        else if (xref != null && tag.equals("FAM"))
+          this.unions.put(xref, this.union = new Union());
+      }
+      else if (this.individual != null)
+        individualLine(level, tag, value);
+      else if (this.union != null)
+        unionLine(level, tag, value);
+    }
+
+    private static int skipSpaces(String line, int i) {
+      while (i < line.length() && line.charAt(i) == ' ')
+        i++;
+      return i;
+    }
+
+    private void individualLine(int level, String tag, String value) {
+      Individual individual = this.individual;
+
+      if (level == 1) {
+        switch (tag) {
+          case "NAME":
+            individual.names.add(new Name(value));
+            break;
+          case "SEX":
+            individual.gender = value.startsWith("M") ? Gender.MAN : value.startsWith("F") ? Gender.WOMAN : Gender.UNKNOW;
+            break;
+          case "DEAT":
+            individual.dead = true;
+            break;
+          case "ADOP":
+            this.adoptions.add(individual.adoption = new Adoption(individual.id));
+            break;
+          case "NOTE":
+            if (!value.startsWith("@"))
+              individual.appendNote(value, true);
+            break;
+        }
+      }
+      else if (level == 2) {
+        switch (this.tags[1]) {
+          case "NAME":
+            Name name = individual.names.get(individual.names.size() - 1);
+            if (tag.equals("GIVN"))
+              name.given = value;
+            else if (tag.equals("SURN"))
+              name.surname = value;
+            else if (tag.equals("TYPE"))
+              name.married = value.equalsIgnoreCase("married");
+            break;
+          case "BIRT":
+            if (tag.equals("DATE") && individual.birthDate == null)
+              individual.birthDate = date(value);
+            else if (tag.equals("PLAC") && individual.birthPlace == null)
+              individual.birthPlace = place(value);
+            break;
+          case "DEAT":
+            if (tag.equals("DATE") && individual.deathDate == null)
+              individual.deathDate = date(value);
+            else if (tag.equals("PLAC") && individual.deathPlace == null)
+              individual.deathPlace = place(value);
+            break;
+          case "ADOP":
+            if (tag.equals("DATE"))
+              individual.adoption.date = date(value);
+            else if (tag.equals("FAMC"))
+              individual.adoption.family = value.trim();
+            break;
+          case "FAMC":
+            if (tag.equals("PEDI") && value.trim().equalsIgnoreCase("adopted")) {
+              Adoption adoption = new Adoption(individual.id);
+              adoption.family = this.values[1].trim();
+              this.adoptions.add(adoption);
+            }
+            break;
+          case "NOTE":
+            if (!this.values[1].startsWith("@")) {
+              if (tag.equals("CONT"))
+                individual.appendNote(value, true);
+              else if (tag.equals("CONC"))
+                individual.appendNote(value, false);
+            }
+            break;
+        }
+      }
+    }
+
+    private void unionLine(int level, String tag, String value) {
+      Union union = this.union;
+
+      if (level == 1) {
+        switch (tag) {
+          case "HUSB":
+            if (union.partner1 == NO_ID)
+              union.partner1 = id(value);
+            break;
+          case "WIFE":
+            if (union.partner2 == NO_ID)
+              union.partner2 = id(value);
+            break;
+          case "CHIL":
+            long id = id(value);
+            if (id != NO_ID)
+              union.children.add(id);
+            break;
+          case "MARR":
+            union.wedding = true;
+            break;
+          case "DIV":
+            union.ended = true;
+            break;
+        }
+      }
+      else if (level == 2) {
+        if (this.tags[1].equals("MARR")) {
+          if (tag.equals("DATE") && union.date == null)
+            union.date = date(value);
+          else if (tag.equals("PLAC") && union.place == null)
+            union.place = place(value);
+        }
+        else if (this.tags[1].equals("DIV") && tag.equals("DATE") && union.endDate == null)
+          union.endDate = date(value);
+      }
+    }
+
+    /**
+     * Creates the member of the individual being read.
+     */
+    private void endRecord() {
+      Individual individual = this.individual;
+
+      if (individual != null) {
+        Name name = null;
+        String useName = null;
+        for (Name n : individual.names) {
+          if (!n.married && name == null)
+            name = n;
+          else if (n.married && useName == null)
+            useName = n.getSurname();
+        }
+        if (name == null && !individual.names.isEmpty())
+          name = individual.names.get(0);
+
+        String firstName = null, otherNames = null, familyName = null;
+        if (name != null) {
+          String given = name.getGiven();
+          if (given != null) {
+            int space = given.indexOf(' ');
+            firstName = space < 0 ? given : given.substring(0, space);
+            otherNames = space < 0 ? null : given.substring(space + 1).trim();
+          }
+          familyName = name.getSurname();
+        }
+        String note = individual.note != null ? individual.note.toString() : null;
+
+        this.members.add(new FamilyMember(individual.id, null, intern(familyName), intern(useName), intern(firstName),
+            intern(otherNames), individual.gender, individual.birthDate, individual.birthPlace, individual.deathDate,
+            individual.deathPlace, individual.dead || individual.deathDate != null, note));
+        this.membersIds.add(individual.id);
+      }
+      this.individual = null;
+      this.union = null;
+    }
+
+    /**
+     * Creates the family once all lines have been read.
+     * 
+     * @param name the family's name
+     * @return the family
+     */
+    Family createFamily(String name) {
+      endRecord();
+
+      for (Adoption adoption : this.adoptions) {
+        Union union = adoption.family != null ? this.unions.get(adoption.family) : null;
+        if (union != null)
+          union.adopt(adoption.child, adoption.date);
+      }
+
+      Map<List<Long>, Relationship> relations = new HashMap<>();
+      for (Union union : this.unions.values()) {
+        TaskUtil.checkCanceled();
+        union.children.removeIf(id -> !this.membersIds.contains(id) || id == union.partner1 || id == union.partner2);
+        long partner1 = this.membersIds.contains(union.partner1) ? union.partner1 : NO_ID;
+        long partner2 = this.membersIds.contains(union.partner2) && union.partner2 != partner1 ? union.partner2 : NO_ID;
+
+        if (partner1 == NO_ID || partner2 == NO_ID) {
+          if (union.children.isEmpty())
+            continue;
+          if (partner1 == NO_ID)
+            partner1 = addUnknownMember();
+          if (partner2 == NO_ID)
+            partner2 = addUnknownMember();
+        }
+        if (!union.adoptions.isEmpty())
+          union.adoptions.keySet().retainAll(union.children);
+
+        // Families of the same partners are merged as there can only be one relation between them
+        List<Long> key = Arrays.asList(Math.min(partner1, partner2), Math.max(partner1, partner2));
+        Relationship relation = relations.get(key);
+        if (relation == null) {
+          relations.put(key, new Relationship(union.date, union.place, union.wedding, union.ended || union.endDate != null, union.endDate,
+              partner1, partner2, union.children, union.adoptions));
+        }
+        else {
+          for (long child : union.children) {
+            relation.addChild(child);
+            if (union.adoptions.containsKey(child))
+              relation.setAdopted(child, union.adoptions.get(child));
+          }
+        }
+      }
+      this.relations.addAll(relations.values());
+
+      return new Family(this.nextId, name, this.members, this.relations);
+    }
+
+    private long addUnknownMember() {
+      long id = this.nextId++;
+
+      this.members.add(new FamilyMember(id, null, null, null, null, null, Gender.UNKNOW, null, null, null, null, false, null));
+      this.membersIds.add(id);
+      return id;
+    }
+
+    /**
+     * Returns the ID of a cross-reference, creating it the first time.
+     * 
+     * @return the ID or NO_ID if the value is not a cross-reference
+     */
+    private long id(String xref) {
+      String s = xref.trim();
+
+      if (s.length() < 3 || s.charAt(0) != '@' || s.charAt(s.length() - 1) != '@')
+        return NO_ID;
+      Long id = this.ids.get(s);
+      if (id == null)
+        this.ids.put(s, id = this.nextId++);
+      return id;
+    }
+
+    private String place(String value) {
+      return intern(value.trim());
+    }
+
+    private String intern(String s) {
+      return s == null || s.isEmpty() ? null : this.strings.intern(s);
+    }
+
+    /**
+     * Returns the date for a GEDCOM date value or null if it could not be read.
+     */
+    private Date date(String value) {
+      int packed = parseDate(value);
+
+      if (packed == 0)
+        return null;
+
+      DateBuilder builder = new DateBuilder();
+      int day = packed % 32, month = packed / 32 % 13;
+
+      builder.setYear(packed / 32 / 13);
+      if (month != 0)
+        builder.setMonth(month);
+      if (day != 0)
+        builder.setDate(day);
+
+      return builder.getDate();
+    }
+  }
+
+  /**
+   * Parses a GEDCOM date. Approximate dates give the date they are based on and periods and ranges
+   * give their first date; dates in calendars other than the Gregorian and Julian ones and dates
+   * before the common era are ignored.
+   * 
+   * @param value the date
+   * @return the year, month and day packed as {@code (year * 13 + month) * 32 + day}, unknown month
+   *         and day being 0; 0 if the date could not be read
+   */
+  static int parseDate(String value) {
+    String s = value.trim().toUpperCase();
+
+    if (s.startsWith("@#D")) {
+      int end = s.indexOf('@', 3);
+      if (end < 0 || !s.startsWith("@#DGREGORIAN@") && !s.startsWith("@#DJULIAN@"))
+        return 0;
+      s = s.substring(end + 1).trim();
+    }
+    int paren = s.indexOf('(');
+    if (paren >= 0)
+      s = s.substring(0, paren);
+    for (String separator : new String[]{" AND ", " TO "}) {
+      int i = s.indexOf(separator);
+      if (i >= 0)
+        s = s.substring(0, i);
+    }
+
+    int day = 0, month = 0, year = 0;
+    int length = s.length(), end = 0;
+    while (end < length) {
+      int start = end;
+      while (start < length && s.charAt(start) == ' ')
+        start++;
+      end = start;
+      while (end < length && s.charAt(end) != ' ')
+        end++;
+      if (start == end)
+        break;
+      String token = s.substring(start, end);
+
+      switch (token) {
+        case "ABT":
+        case "CAL":
+        case "EST":
+        case "BEF":
+        case "AFT":
+        case "INT":
+        case "BET":
+        case "FROM":
+        case "TO":
+          break;
+        case "B.C.":
+        case "BC":
+        case "BCE":
+          return 0;
+        default:
+          int m = MONTHS.indexOf(token);
+          if (m >= 0) {
+            if (month != 0 || year != 0)
+              return 0;
+            month = m + 1;
+          }
+          else {
+            // Dual years such as 1700/01 give their first year
+            int slash = token.indexOf('/');
+            String digits = slash > 0 ? token.substring(0, slash) : token;
+            if (digits.isEmpty() || digits.length() > 4 || !isNumber(digits) || year != 0)
+              return 0;
+            if (month == 0 && day == 0 && digits.length() <= 2 && slash < 0)
+              day = Integer.parseInt(digits);
+            else
+              year = Integer.parseInt(digits);
+          }
+      }
+    }
+    // A lone number is a year
+    if (year == 0 && month == 0 && day != 0) {
+      year = day;
+      day = 0;
+    }
+    if (year == 0)
+      return 0;
+    if (month == 0 || day > YearMonth.of(year, month).lengthOfMonth())
+      day = 0;
+
+    return (year * 13 + month) * 32 + day;
+  }
+
+  private static boolean isNumber(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      if (s.charAt(i) < '0' || s.charAt(i) > '9')
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * An individual being read.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class Individual {
+    final long id;
+    final List<Name> names = new ArrayList<>(1);
+    StringBuilder note;
+    Gender gender = Gender.UNKNOW;
+    Date birthDate, deathDate;
+    String birthPlace, deathPlace;
+    boolean dead;
+    Adoption adoption;
+
+    Individual(long id) {
+      this.id = id;
+    }
+
+    /**
+     * Adds text to the note.
+     * 
+     * @param text the text
+     * @param newLine if true, the text starts a new line
+     */
+    void appendNote(String text, boolean newLine) {
+      if (this.note == null)
+        this.note = new StringBuilder(text);
+      else
+        this.note.append(newLine ? "\n" : "").append(text);
+    }
+  }
+
+  /**
+   * A name of an individual: "given names /surname/ suffix".
+   *
+   * @author Damien Vergnet
+   */
+  private static final class Name {
+    final String value;
+    String given, surname;
+    boolean married;
+
+    Name(String value) {
+      this.value = value;
+    }
+
+    String getGiven() {
+      if (this.given != null)
+        return clean(this.given.replace(',', ' '));
+      int slash = this.value.indexOf('/');
+      return clean(slash < 0 ? this.value : this.value.substring(0, slash));
+    }
+
+    String getSurname() {
+      if (this.surname != null)
+        return clean(this.surname);
+      int start = this.value.indexOf('/'), end = this.value.indexOf('/', start + 1);
+      return start < 0 ? null : clean(this.value.substring(start + 1, end < 0 ? this.value.length() : end));
+    }
+
+    /**
+     * Trims a name and replaces repeated spaces by a single one.
+     * 
+     * @return the name or null if it is empty
+     */
+    private static String clean(String s) {
+      String name = s.trim();
+
+      if (name.contains("  ")) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+          if (name.charAt(i) != ' ' || name.charAt(i - 1) != ' ')
+            sb.append(name.charAt(i));
+        }
+        name = sb.toString();
+      }
+      return name.isEmpty() ? null : name;
+    }
+  }
+
+  /**
+   * A family being read.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class Union {
+    long partner1 = NO_ID, partner2 = NO_ID;
+    final Set<Long> children = new HashSet<>();
+    /** Most families have no adoptions, the map is created for the first one. */
+    Map<Long, Date> adoptions = Collections.emptyMap();
+    Date date, endDate;
+    String place;
+    boolean wedding, ended;
+
+    void adopt(long child, Date date) {
+      if (this.adoptions.isEmpty())
+        this.adoptions = new HashMap<>();
+      this.children.add(child);
+      this.adoptions.put(child, date);
+    }
+  }
+
+  /**
+   * An adoption read from an individual.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class Adoption {
+    final long child;
+    /** The cross-reference of the adoptive family. */
+    String family;
+    Date date;
+
+    Adoption(long child) {
+      this.child = child;
+    }
+  }
+
+  /**
+   * A stream counting the bytes read from the underlying stream.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    long getCount() {
+      return this.count;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0)
+        this.count++;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0)
+        this.count += n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      this.count += skipped;
+      return skipped;
+    }
+  }
+
+  private GedcomReader() {}
+}
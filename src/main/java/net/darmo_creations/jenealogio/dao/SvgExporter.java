@@ -0,0 +1,260 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.dao;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import net.darmo_creations.gui_framework.config.WritableConfig;
+import net.darmo_creations.jenealogio.config.ConfigTags;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.ProgressListener;
+import net.darmo_creations.jenealogio.util.TaskUtil;
+
+/**
+ * This class exports trees to SVG files. The file is written element by element straight from the
+ * model without going through the display nor copying the tree, so that trees of any size can be
+ * exported quickly.
+ * Cards are laid out like in the display: same sizes, positions and colors.
+ * 
+ * @author Damien Vergnet
+ */
+public class SvgExporter {
+  /** Font used for the cards, the default font of labels */
+  private static final Font FONT = new Font(Font.DIALOG, Font.BOLD, 12);
+  private static final FontRenderContext FRC = new FontRenderContext(null, true, true);
+  private static final int CARD_HEIGHT = 30;
+  private static final int CARD_PADDING = 20;
+  private static final int BORDER_WIDTH = 2;
+  /** Printed before the name of dead members, in place of the tombstone icon */
+  private static final String DEAD_MARK = "† ";
+  /** Number of members between two progress notifications */
+  private static final int PROGRESS_STEP = 1000;
+
+  private static SvgExporter instance;
+
+  /**
+   * @return the instance
+   */
+  public static SvgExporter instance() {
+    if (instance == null)
+      instance = new SvgExporter();
+    return instance;
+  }
+
+  /**
+   * Exports the given tree to an SVG file. The family is read but not copied: it must not be
+   * modified until the export is done.
+   * 
+   * @param file the file to write to
+   * @param family the tree
+   * @param locations the cards positions
+   * @param config the config holding the colors
+   * @param listener the listener notified of the progress
+   * @throws IOException if an I/O error occured
+   * @throws java.util.concurrent.CancellationException if the current thread was interrupted
+   */
+  public void export(String file, Family family, Map<Long, Point> locations, WritableConfig config, ProgressListener listener)
+      throws IOException {
+    Set<FamilyMember> members = family.getMembersView();
+    Map<Long, Rectangle> cards = new HashMap<>();
+    Map<Long, String> labels = new HashMap<>();
+    Rectangle bounds = null;
+    // Members are visited twice: once to measure the cards, once to write them
+    int steps = 2 * members.size(), step = 0;
+
+    // Cards sizes are needed beforehand for links and the document size.
+    for (FamilyMember member : members) {
+      reportProgress(listener, step++, steps);
+      Point location = locations.get(member.getId());
+      // Members without a position are not displayed either
+      if (location == null)
+        continue;
+      String label = getLabel(member);
+      int width = (int) Math.ceil(FONT.getStringBounds(label, FRC).getWidth()) + CARD_PADDING;
+      Rectangle card = new Rectangle(location.x, location.y, width, CARD_HEIGHT);
+
+      cards.put(member.getId(), card);
+      labels.put(member.getId(), label);
+      bounds = bounds == null ? new Rectangle(card) : bounds.union(card);
+    }
+    if (bounds == null)
+      bounds = new Rectangle();
+
+    try (Writer w = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+      w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      w.write(String.format(Locale.ROOT, "<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" width=\"%d\" height=\"%d\" viewBox=\"%d %d %d %d\">\n",
+          bounds.width, bounds.height, bounds.x, bounds.y, bounds.width, bounds.height));
+      w.write("<title>" + escape(family.getName()) + "</title>\n");
+
+      // Links first so that cards are painted over them
+      w.write("<g fill=\"none\">\n");
+      for (Relationship relation : family.getRelationsView())
+        writeLink(w, relation, cards, config);
+      w.write("</g>\n");
+
+      w.write(String.format(Locale.ROOT, "<g font-family=\"sans-serif\" font-weight=\"bold\" font-size=\"%d\" text-anchor=\"middle\" stroke-width=\"%d\">\n",
+          FONT.getSize(), BORDER_WIDTH));
+      String border = toSvg(config.getValue(ConfigTags.CARD_BORDER_COLOR));
+      for (FamilyMember member : members) {
+        Rectangle card = cards.get(member.getId());
+        Color background;
+
+        reportProgress(listener, step++, steps);
+        if (card == null)
+          continue;
+
+        switch (member.getGender()) {
+          case MAN:
+            background = config.getValue(ConfigTags.GENDER_MALE_COLOR);
+            break;
+          case WOMAN:
+            background = config.getValue(ConfigTags.GENDER_FEMALE_COLOR);
+            break;
+          default:
+            background = config.getValue(ConfigTags.GENDER_UNKNOWN_COLOR);
+            break;
+        }
+
+        // The border is drawn inside the card, like Swing's LineBorder
+        w.write(String.format(Locale.ROOT, "<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"%s\" stroke=\"%s\"/>", card.x + 1, card.y + 1,
+            card.width - BORDER_WIDTH, card.height - BORDER_WIDTH, toSvg(background), border));
+        w.write(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" dominant-baseline=\"central\" stroke=\"none\">%s</text>\n",
+            (int) card.getCenterX(), (int) card.getCenterY(), escape(labels.get(member.getId()))));
+      }
+      w.write("</g>\n");
+      w.write("</svg>\n");
+    }
+  }
+
+  /**
+   * Writes a link and the lines to the children. Links to members that have no card are skipped.
+   * 
+   * @param w the writer
+   * @param relation the relation
+   * @param cards the bounds of all cards
+   * @param config the config
+   * @throws IOException if an I/O error occured
+   */
+  private void writeLink(Writer w, Relationship relation, Map<Long, Rectangle> cards, WritableConfig config) throws IOException {
+    Rectangle r1 = cards.get(relation.getPartner1());
+    Rectangle r2 = cards.get(relation.getPartner2());
+
+    if (r1 == null || r2 == null)
+      return;
+
+    int x1 = (int) r1.getCenterX(), y1 = (int) r1.getCenterY();
+    int x2 = (int) r2.getCenterX(), y2 = (int) r2.getCenterY();
+    int mx = (x1 + x2) / 2, my = (y1 + y2) / 2;
+    int width = relation.isWedding() ? 2 : 1;
+
+    w.write(String.format(Locale.ROOT, "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\" stroke=\"%s\" stroke-width=\"%d\"%s/>\n", x1, y1, x2, y2,
+        toSvg(config.getValue(ConfigTags.LINK_COLOR)), width, relation.hasEnded() ? " stroke-dasharray=\"9\"" : ""));
+    for (long child : relation.getChildren()) {
+      Rectangle r = cards.get(child);
+
+      if (r == null)
+        continue;
+
+      Color color = config.getValue(relation.isAdopted(child) ? ConfigTags.LINK_ADOPTED_CHILD_COLOR : ConfigTags.LINK_CHILD_COLOR);
+
+      w.write(String.format(Locale.ROOT, "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\" stroke=\"%s\" stroke-width=\"%d\"/>\n", mx, my,
+          (int) r.getCenterX(), (int) r.getCenterY(), toSvg(color), width));
+    }
+  }
+
+  /**
+   * Checks that the export has not been canceled and notifies the listener every
+   * {@link #PROGRESS_STEP} steps.
+   */
+  private static void reportProgress(ProgressListener listener, int step, int steps) {
+    if (step % PROGRESS_STEP == 0) {
+      TaskUtil.checkCanceled();
+      listener.progressChanged((int) (100L * step / steps));
+    }
+  }
+
+  /**
+   * Returns the text displayed on the card of the given member.
+   */
+  private String getLabel(FamilyMember member) {
+    return (member.isDead() ? DEAD_MARK : "") + member.toString();
+  }
+
+  /**
+   * Converts a color to the SVG format.
+   */
+  private static String toSvg(Color color) {
+    return String.format(Locale.ROOT, "#%06x", color.getRGB() & 0xffffff);
+  }
+
+  /**
+   * Escapes XML special characters. Characters that are not allowed in XML documents (control
+   * characters and unpaired surrogates) are removed.
+   */
+  private static String escape(String s) {
+    StringBuilder sb = new StringBuilder(s.length());
+
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+
+      if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+        sb.append(c).append(s.charAt(++i));
+        continue;
+      }
+      if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' || Character.isSurrogate(c) || c == 0xfffe || c == 0xffff)
+        continue;
+
+      switch (c) {
+        case '<':
+          sb.append("&lt;");
+          break;
+        case '>':
+          sb.append("&gt;");
+          break;
+        case '&':
+          sb.append("&amp;");
+          break;
+        case '"':
+          sb.append("&quot;");
+          break;
+        default:
+          sb.append(c);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  private SvgExporter() {}
+}
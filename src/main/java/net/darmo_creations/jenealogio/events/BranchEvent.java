@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.events;
+
+import net.darmo_creations.jenealogio.model.CollapsedBranches;
+import net.darmo_creations.utils.events.AbstractEvent;
+
+/**
+ * Base class for all events related to a collapsed branch.
+ *
+ * @author Damien Vergnet
+ */
+public abstract class BranchEvent extends AbstractEvent {
+  private final long memberId;
+  private final CollapsedBranches.Branch branch;
+
+  /**
+   * Creates an event.
+   * 
+   * @param memberId ID of the member the branch starts from
+   * @param branch the direction of the branch
+   */
+  protected BranchEvent(long memberId, CollapsedBranches.Branch branch) {
+    this.memberId = memberId;
+    this.branch = branch;
+  }
+
+  @Override
+  public boolean isCancelable() {
+    return false;
+  }
+
+  /**
+   * @return ID of the member the branch starts from
+   */
+  public final long getMemberId() {
+    return this.memberId;
+  }
+
+  /**
+   * @return the direction of the branch
+   */
+  public final CollapsedBranches.Branch getBranch() {
+    return this.branch;
+  }
+
+  /**
+   * This event is fired when the summary card of a collapsed branch is double-clicked.
+   *
+   * @author Damien Vergnet
+   */
+  public static class DoubleClicked extends BranchEvent {
+    public DoubleClicked(long memberId, CollapsedBranches.Branch branch) {
+      super(memberId, branch);
+    }
+  }
+}
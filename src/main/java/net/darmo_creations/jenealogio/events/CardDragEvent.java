@@ -68,7 +68,8 @@ public abstract class CardDragEvent extends CardEvent {
   }
 
   /**
-   * This event is fired when a card is being dragged.
+   * This event is fired when a card is being dragged, at most once per frame. The translation
+   * covers all mouse moves since the previous event.
    *
    * @author Damien Vergnet
    */
@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.events;
+
+import net.darmo_creations.utils.events.AbstractEvent;
+
+/**
+ * This event is fired when the user selects a pair of possible duplicates.
+ *
+ * @author Damien Vergnet
+ */
+public final class DuplicateEvent extends AbstractEvent {
+  private final long memberId1, memberId2;
+
+  /**
+   * Creates an event.
+   * 
+   * @param memberId1 the ID of the first member
+   * @param memberId2 the ID of the second member
+   */
+  public DuplicateEvent(long memberId1, long memberId2) {
+    this.memberId1 = memberId1;
+    this.memberId2 = memberId2;
+  }
+
+  /**
+   * @return the ID of the first member
+   */
+  public long getMemberId1() {
+    return this.memberId1;
+  }
+
+  /**
+   * @return the ID of the second member
+   */
+  public long getMemberId2() {
+    return this.memberId2;
+  }
+}
@@ -8,6 +8,7 @@ public enum EventType implements UserEvent.Type {
   OPEN,
   SAVE,
   SAVE_AS,
+  IMPORT_GEDCOM,
   UNDO,
   REDO,
   ADD_CARD,
@@ -17,5 +18,20 @@ public enum EventType implements UserEvent.Type {
   DELETE_CARD,
   DELETE_LINK,
   EDIT_COLORS,
-  EXPORT_IMAGE;
+  EXPORT_IMAGE,
+  AUTO_LAYOUT,
+  FORCE_LAYOUT,
+  TOGGLE_KEEP_ARRANGED,
+  COLLAPSE_DESCENDANTS,
+  COLLAPSE_ANCESTORS,
+  EXPAND_BRANCHES,
+  SELECT_ALL,
+  SELECT_DESCENDANTS,
+  SELECT_GENERATION,
+  INVERT_SELECTION,
+  FIND_CARD,
+  FIND_DUPLICATES,
+  SHOW_STATISTICS,
+  CHECK_TREE,
+  TOGGLE_MINIMAP;
 }
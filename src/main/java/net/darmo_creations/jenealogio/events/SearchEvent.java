@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.events;
+
+import net.darmo_creations.utils.events.AbstractEvent;
+
+/**
+ * This event is fired when the text of the search field changes or when the user asks for the next
+ * matching card.
+ *
+ * @author Damien Vergnet
+ */
+public final class SearchEvent extends AbstractEvent {
+  private final String query;
+  private final boolean next;
+
+  /**
+   * Creates an event.
+   * 
+   * @param query the searched text
+   * @param next if true, the next matching card is wanted; otherwise the first one
+   */
+  public SearchEvent(String query, boolean next) {
+    this.query = query;
+    this.next = next;
+  }
+
+  /**
+   * @return the searched text
+   */
+  public String getQuery() {
+    return this.query;
+  }
+
+  /**
+   * @return true if the next matching card is wanted; false for the first one
+   */
+  public boolean isNext() {
+    return this.next;
+  }
+}
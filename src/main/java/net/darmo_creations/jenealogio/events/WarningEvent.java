@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.events;
+
+import net.darmo_creations.utils.events.AbstractEvent;
+
+/**
+ * This event is fired when the user selects a warning of the tree check.
+ *
+ * @author Damien Vergnet
+ */
+public final class WarningEvent extends AbstractEvent {
+  private final long memberId;
+
+  /**
+   * Creates an event.
+   * 
+   * @param memberId the ID of the member the warning is about
+   */
+  public WarningEvent(long memberId) {
+    this.memberId = memberId;
+  }
+
+  /**
+   * @return the ID of the member the warning is about
+   */
+  public long getMemberId() {
+    return this.memberId;
+  }
+}
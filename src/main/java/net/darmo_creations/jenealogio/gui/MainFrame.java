@@ -19,27 +19,37 @@
 package net.darmo_creations.jenealogio.gui;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFileChooser;
+import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JTextField;
 import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
-import javax.swing.JViewport;
 import javax.swing.KeyStroke;
+import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import net.darmo_creations.gui_framework.ApplicationRegistry;
 import net.darmo_creations.gui_framework.config.WritableConfig;
@@ -47,19 +57,29 @@ import net.darmo_creations.gui_framework.controllers.OneExtensionFileFilter;
 import net.darmo_creations.gui_framework.events.UserEvent;
 import net.darmo_creations.gui_framework.gui.ApplicationFrame;
 import net.darmo_creations.jenealogio.Jenealogio;
+import net.darmo_creations.jenealogio.config.ConfigTags;
 import net.darmo_creations.jenealogio.controllers.MainController;
 import net.darmo_creations.jenealogio.events.EventType;
+import net.darmo_creations.jenealogio.events.SearchEvent;
 import net.darmo_creations.jenealogio.gui.components.display_panel.DisplayPanel;
 import net.darmo_creations.jenealogio.gui.dialog.CardDetailsDialog;
+import net.darmo_creations.jenealogio.gui.dialog.DuplicatesDialog;
+import net.darmo_creations.jenealogio.gui.dialog.StatisticsDialog;
+import net.darmo_creations.jenealogio.gui.dialog.WarningsDialog;
 import net.darmo_creations.jenealogio.gui.dialog.LinkDetailsDialog;
 import net.darmo_creations.jenealogio.gui.dialog.card.CardDialog;
 import net.darmo_creations.jenealogio.gui.dialog.link.LinkDialog;
 import net.darmo_creations.jenealogio.gui.dialog.options.EditColorsDialog;
 import net.darmo_creations.jenealogio.gui.dialog.tree_creation.TreeDialog;
+import net.darmo_creations.jenealogio.model.CollapsedBranches;
 import net.darmo_creations.jenealogio.model.family.Family;
 import net.darmo_creations.jenealogio.model.family.FamilyMember;
 import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.model.family.Statistics;
+import net.darmo_creations.jenealogio.model.family.TreeValidator;
+import net.darmo_creations.jenealogio.model.search.DuplicateDetector;
 import net.darmo_creations.jenealogio.util.Images;
+import net.darmo_creations.jenealogio.util.ProgressListener;
 import net.darmo_creations.utils.FilesUtil;
 import net.darmo_creations.utils.I18n;
 
@@ -71,19 +91,30 @@ import net.darmo_creations.utils.I18n;
 public class MainFrame extends ApplicationFrame<MainController> {
   private static final long serialVersionUID = 2426665404072947885L;
 
-  private JFileChooser treeFileChooser, exportFileChooser;
+  /** Scales proposed when exporting an image. */
+  private static final String[] EXPORT_SCALES = {"×1", "×2", "×4"};
+
+  private JFileChooser treeFileChooser, gedcomFileChooser, exportFileChooser;
   private TreeDialog treeDialog;
   private CardDialog cardDialog;
   private CardDetailsDialog cardDetailsDialog;
   private LinkDialog linkDialog;
   private LinkDetailsDialog linkDetailsDialog;
   private EditColorsDialog editColorsDialog;
+  private DuplicatesDialog duplicatesDialog;
+  private StatisticsDialog statisticsDialog;
+  private WarningsDialog warningsDialog;
 
   private JMenu editMenu;
-  private JMenuItem editTreeItem, saveItem, saveAsItem, exportImageItem, undoItem, redoItem, addCardItem, addLinkItem, editItem, deleteItem;
+  private JMenuItem editTreeItem, saveItem, saveAsItem, exportImageItem, undoItem, redoItem, addCardItem, addLinkItem, editItem, deleteItem,
+      autoLayoutItem, forceLayoutItem, collapseDescendantsItem, collapseAncestorsItem, expandBranchesItem,
+      selectDescendantsItem, selectGenerationItem;
+  private JCheckBoxMenuItem keepArrangedItem;
   private JButton saveBtn, saveAsBtn, undoBtn, redoBtn, addCardBtn, editCardBtn, editLinkBtn, deleteCardBtn, deleteLinkBtn;
   private JToggleButton addLinkBtn;
+  private JTextField searchFld;
   private DisplayPanel displayPnl;
+  private JPanel minimapPnl;
 
   public MainFrame(WritableConfig config) {
     super(config, true, true, true, true, new Dimension(800, 600), true);
@@ -101,25 +132,40 @@ public class MainFrame extends ApplicationFrame<MainController> {
     this.treeFileChooser.setMultiSelectionEnabled(false);
     this.treeFileChooser.setFileFilter(
         new OneExtensionFileFilter(I18n.getLocalizedString("file_type.tree.desc"), Jenealogio.TREE_FILE_EXT));
+    this.gedcomFileChooser = new JFileChooser();
+    this.gedcomFileChooser.setAcceptAllFileFilterUsed(false);
+    this.gedcomFileChooser.setMultiSelectionEnabled(false);
+    this.gedcomFileChooser.setFileFilter(
+        new OneExtensionFileFilter(I18n.getLocalizedString("file_type.gedcom.desc"), Jenealogio.GEDCOM_FILE_EXT));
     this.exportFileChooser = new JFileChooser();
     this.exportFileChooser.setAcceptAllFileFilterUsed(false);
     this.exportFileChooser.setMultiSelectionEnabled(false);
     for (String ext : Jenealogio.IMAGE_FILES_EXTS)
       this.exportFileChooser.addChoosableFileFilter(
           new OneExtensionFileFilter(I18n.toTitleCase(I18n.getLocalizedString("word.image")), ext));
+    this.exportFileChooser.addChoosableFileFilter(
+        new OneExtensionFileFilter(I18n.toTitleCase(I18n.getLocalizedString("word.vector_image")), Jenealogio.SVG_FILE_EXT));
     this.treeDialog = new TreeDialog(this);
     this.cardDialog = new CardDialog(this);
     this.cardDetailsDialog = new CardDetailsDialog(this);
     this.linkDialog = new LinkDialog(this);
     this.linkDetailsDialog = new LinkDetailsDialog(this);
     this.editColorsDialog = new EditColorsDialog(this);
+    this.duplicatesDialog = new DuplicatesDialog(this);
+    this.statisticsDialog = new StatisticsDialog(this);
+    this.warningsDialog = new WarningsDialog(this);
 
     JScrollPane scrollPane = new JScrollPane();
     this.displayPnl = new DisplayPanel(scrollPane);
     this.displayPnl.addDragAndDropListener(controller);
     scrollPane.setViewportView(this.displayPnl);
     add(scrollPane, BorderLayout.CENTER);
+    this.minimapPnl = new JPanel(new BorderLayout());
+    this.minimapPnl.add(this.displayPnl.getMinimap(), BorderLayout.NORTH);
+    this.minimapPnl.setVisible(config.getValue(ConfigTags.SHOW_MINIMAP));
+    add(this.minimapPnl, BorderLayout.EAST);
 
+    this.displayPnl.setSelectionModel(controller.getSelectionModel());
     ApplicationRegistry.EVENTS_BUS.register(this.displayPnl);
   }
 
@@ -153,6 +199,10 @@ public class MainFrame extends ApplicationFrame<MainController> {
     i.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, KeyEvent.CTRL_DOWN_MASK));
     i.addActionListener(listeners.get(EventType.OPEN));
 
+    fileMenu.add(i = new JMenuItem(I18n.getLocalizedString("item.import_gedcom.text")));
+    i.setMnemonic(I18n.getLocalizedMnemonic("item.import_gedcom"));
+    i.addActionListener(listeners.get(EventType.IMPORT_GEDCOM));
+
     fileMenu.addSeparator();
 
     fileMenu.add(this.editTreeItem = new JMenuItem(I18n.getLocalizedString("item.edit_tree.text")));
@@ -229,6 +279,65 @@ public class MainFrame extends ApplicationFrame<MainController> {
     this.deleteItem.setMnemonic(I18n.getLocalizedMnemonic("item.delete"));
     this.deleteItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, 0));
 
+    this.editMenu.add(i = new JMenuItem(I18n.getLocalizedString("item.find_card.text")));
+    i.setMnemonic(I18n.getLocalizedMnemonic("item.find_card"));
+    i.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, KeyEvent.CTRL_DOWN_MASK));
+    i.addActionListener(listeners.get(EventType.FIND_CARD));
+    this.editMenu.add(i = new JMenuItem(I18n.getLocalizedString("item.find_duplicates.text")));
+    i.setMnemonic(I18n.getLocalizedMnemonic("item.find_duplicates"));
+    i.addActionListener(listeners.get(EventType.FIND_DUPLICATES));
+    this.editMenu.add(i = new JMenuItem(I18n.getLocalizedString("item.statistics.text")));
+    i.setMnemonic(I18n.getLocalizedMnemonic("item.statistics"));
+    i.addActionListener(listeners.get(EventType.SHOW_STATISTICS));
+    this.editMenu.add(i = new JMenuItem(I18n.getLocalizedString("item.check_tree.text")));
+    i.setMnemonic(I18n.getLocalizedMnemonic("item.check_tree"));
+    i.addActionListener(listeners.get(EventType.CHECK_TREE));
+
+    JMenu selectMenu = new JMenu(I18n.getLocalizedString("menu.select.text"));
+    selectMenu.setMnemonic(I18n.getLocalizedMnemonic("menu.select"));
+    this.editMenu.add(selectMenu);
+
+    selectMenu.add(i = new JMenuItem(I18n.getLocalizedString("item.select_all.text")));
+    i.setMnemonic(I18n.getLocalizedMnemonic("item.select_all"));
+    i.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_A, KeyEvent.CTRL_DOWN_MASK | KeyEvent.SHIFT_DOWN_MASK));
+    i.addActionListener(listeners.get(EventType.SELECT_ALL));
+    selectMenu.add(this.selectDescendantsItem = new JMenuItem(I18n.getLocalizedString("item.select_descendants.text")));
+    this.selectDescendantsItem.setMnemonic(I18n.getLocalizedMnemonic("item.select_descendants"));
+    this.selectDescendantsItem.addActionListener(listeners.get(EventType.SELECT_DESCENDANTS));
+    selectMenu.add(this.selectGenerationItem = new JMenuItem(I18n.getLocalizedString("item.select_generation.text")));
+    this.selectGenerationItem.setMnemonic(I18n.getLocalizedMnemonic("item.select_generation"));
+    this.selectGenerationItem.addActionListener(listeners.get(EventType.SELECT_GENERATION));
+    selectMenu.add(i = new JMenuItem(I18n.getLocalizedString("item.invert_selection.text")));
+    i.setMnemonic(I18n.getLocalizedMnemonic("item.invert_selection"));
+    i.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_I, KeyEvent.CTRL_DOWN_MASK));
+    i.addActionListener(listeners.get(EventType.INVERT_SELECTION));
+
+    this.editMenu.addSeparator();
+
+    this.editMenu.add(this.autoLayoutItem = new JMenuItem(I18n.getLocalizedString("item.auto_layout.text")));
+    this.autoLayoutItem.setMnemonic(I18n.getLocalizedMnemonic("item.auto_layout"));
+    this.autoLayoutItem.addActionListener(listeners.get(EventType.AUTO_LAYOUT));
+    this.editMenu.add(this.forceLayoutItem = new JMenuItem(I18n.getLocalizedString("item.force_layout.text")));
+    this.forceLayoutItem.setMnemonic(I18n.getLocalizedMnemonic("item.force_layout"));
+    this.forceLayoutItem.addActionListener(listeners.get(EventType.FORCE_LAYOUT));
+
+    this.editMenu.add(this.keepArrangedItem = new JCheckBoxMenuItem(I18n.getLocalizedString("item.keep_arranged.text")));
+    this.keepArrangedItem.setMnemonic(I18n.getLocalizedMnemonic("item.keep_arranged"));
+    this.keepArrangedItem.setSelected(config.getValue(ConfigTags.KEEP_TREE_ARRANGED));
+    this.keepArrangedItem.addActionListener(listeners.get(EventType.TOGGLE_KEEP_ARRANGED));
+
+    this.editMenu.addSeparator();
+
+    this.editMenu.add(this.collapseDescendantsItem = new JMenuItem(I18n.getLocalizedString("item.collapse_descendants.text")));
+    this.collapseDescendantsItem.setMnemonic(I18n.getLocalizedMnemonic("item.collapse_descendants"));
+    this.collapseDescendantsItem.addActionListener(listeners.get(EventType.COLLAPSE_DESCENDANTS));
+    this.editMenu.add(this.collapseAncestorsItem = new JMenuItem(I18n.getLocalizedString("item.collapse_ancestors.text")));
+    this.collapseAncestorsItem.setMnemonic(I18n.getLocalizedMnemonic("item.collapse_ancestors"));
+    this.collapseAncestorsItem.addActionListener(listeners.get(EventType.COLLAPSE_ANCESTORS));
+    this.editMenu.add(this.expandBranchesItem = new JMenuItem(I18n.getLocalizedString("item.expand_branches.text")));
+    this.expandBranchesItem.setMnemonic(I18n.getLocalizedMnemonic("item.expand_branches"));
+    this.expandBranchesItem.addActionListener(listeners.get(EventType.EXPAND_BRANCHES));
+
     menuBar.add(this.editMenu, 1);
 
     // 'Options' menu
@@ -236,6 +345,10 @@ public class MainFrame extends ApplicationFrame<MainController> {
     i.setIcon(Images.COLOR_WHEEL);
     i.setMnemonic(I18n.getLocalizedMnemonic("item.colors"));
     i.addActionListener(listeners.get(EventType.EDIT_COLORS));
+    menuBar.getMenu(2).add(i = new JCheckBoxMenuItem(I18n.getLocalizedString("item.show_minimap.text")), 2);
+    i.setMnemonic(I18n.getLocalizedMnemonic("item.show_minimap"));
+    i.setSelected(config.getValue(ConfigTags.SHOW_MINIMAP));
+    i.addActionListener(listeners.get(EventType.TOGGLE_MINIMAP));
 
     return menuBar;
   }
@@ -317,9 +430,69 @@ public class MainFrame extends ApplicationFrame<MainController> {
     this.deleteLinkBtn.setFocusable(false);
     this.deleteLinkBtn.addActionListener(listeners.get(EventType.DELETE_LINK));
 
+    toolBar.addSeparator();
+
+    toolBar.add(new JLabel(I18n.getLocalizedString("label.search.text") + " "));
+    toolBar.add(this.searchFld = new JTextField(15));
+    this.searchFld.setMaximumSize(this.searchFld.getPreferredSize());
+    this.searchFld.setToolTipText("<html>" + I18n.getLocalizedString("item.find_card.text") + " (Ctrl+F)<br>"
+        + I18n.getLocalizedString("label.search.tooltip") + "</html>");
+    this.searchFld.getDocument().addDocumentListener(new DocumentListener() {
+      @Override
+      public void insertUpdate(DocumentEvent e) {
+        search(false);
+      }
+
+      @Override
+      public void removeUpdate(DocumentEvent e) {
+        search(false);
+      }
+
+      @Override
+      public void changedUpdate(DocumentEvent e) {}
+    });
+    // Enter goes to the next matching card
+    this.searchFld.addActionListener(e -> search(true));
+
     return toolBar;
   }
 
+  /**
+   * Fires a search event with the text of the search field.
+   * 
+   * @param next if true, the next matching card is wanted; otherwise the first one
+   */
+  private void search(boolean next) {
+    ApplicationRegistry.EVENTS_BUS.dispatchEvent(new SearchEvent(this.searchFld.getText(), next));
+  }
+
+  /**
+   * Gives the focus to the search field and selects its text.
+   */
+  public void focusSearchField() {
+    this.searchFld.requestFocusInWindow();
+    this.searchFld.selectAll();
+  }
+
+  /**
+   * Shows whether the searched text matched a card or not.
+   * 
+   * @param found true if a card was found or nothing is searched
+   */
+  public void setSearchResult(boolean found) {
+    this.searchFld.setForeground(found ? UIManager.getColor("TextField.foreground") : Color.RED);
+  }
+
+  /**
+   * Scrolls the display to the given card.
+   * 
+   * @param id the card's member ID
+   * @return true if the card is displayed; false if it is hidden by a collapsed branch
+   */
+  public boolean scrollToCard(long id) {
+    return this.displayPnl.scrollToCard(id);
+  }
+
   /**
    * Updates the menu bar. The last two arguments cannot be true at the same time or an
    * IllegalStateException will be thrown.
@@ -339,6 +512,13 @@ public class MainFrame extends ApplicationFrame<MainController> {
     this.addLinkItem.setEnabled(fileOpen);
     this.editItem.setEnabled(fileOpen && (cardSelected || linkSelected));
     this.deleteItem.setEnabled(fileOpen && (cardSelected || linkSelected));
+    this.autoLayoutItem.setEnabled(fileOpen);
+    this.forceLayoutItem.setEnabled(fileOpen);
+    this.collapseDescendantsItem.setEnabled(fileOpen && cardSelected);
+    this.collapseAncestorsItem.setEnabled(fileOpen && cardSelected);
+    this.expandBranchesItem.setEnabled(fileOpen && cardSelected);
+    this.selectDescendantsItem.setEnabled(fileOpen && cardSelected);
+    this.selectGenerationItem.setEnabled(fileOpen && cardSelected);
 
     this.saveAsBtn.setEnabled(fileOpen);
     this.undoBtn.setEnabled(canUndo);
@@ -386,15 +566,6 @@ public class MainFrame extends ApplicationFrame<MainController> {
     }
   }
 
-  /**
-   * Selects the given panels as background.
-   * 
-   * @param ids panels' IDs
-   */
-  public void setPanelsSelectedAsBackground(List<Long> ids) {
-    this.displayPnl.selectPanelsAsBackground(ids);
-  }
-
   /**
    * Updates the save buttons.
    * 
@@ -414,6 +585,16 @@ public class MainFrame extends ApplicationFrame<MainController> {
     this.addLinkBtn.setSelected(selected);
   }
 
+  /**
+   * Shows or hides the minimap.
+   * 
+   * @param visible true to show the minimap
+   */
+  public void setMinimapVisible(boolean visible) {
+    this.minimapPnl.setVisible(visible);
+    revalidate();
+  }
+
   /**
    * Resets the tree display.
    */
@@ -440,6 +621,28 @@ public class MainFrame extends ApplicationFrame<MainController> {
     this.displayPnl.refresh(family, positions, config);
   }
 
+  /**
+   * Refreshes the tree display using the given cards positions and collapsed branches.
+   * 
+   * @param family the tree
+   * @param positions positions for all cards
+   * @param collapsedBranches the collapsed branches
+   */
+  public void refreshDisplay(Family family, Map<Long, Point> positions, CollapsedBranches collapsedBranches, WritableConfig config) {
+    this.displayPnl.setCollapsedBranches(collapsedBranches);
+    this.displayPnl.refresh(family, positions, config);
+  }
+
+  /**
+   * Makes the tree display follow the changes of the given family. The display must have been
+   * refreshed with this family beforehand.
+   * 
+   * @param family the tree
+   */
+  public void followFamily(Family family) {
+    family.addFamilyListener(this.displayPnl);
+  }
+
   /**
    * @return the positions of all cards
    */
@@ -447,17 +650,34 @@ public class MainFrame extends ApplicationFrame<MainController> {
     return this.displayPnl.getCardsPositions();
   }
 
+  /**
+   * @return the collapsed branches
+   */
+  public CollapsedBranches getCollapsedBranches() {
+    return this.displayPnl.getCollapsedBranches();
+  }
+
+  /**
+   * Moves the given cards.
+   * 
+   * @param locations the new location of each card to move
+   */
+  public void moveCards(Map<Long, Point> locations) {
+    this.displayPnl.moveCards(locations);
+  }
+
+  /**
+   * @return the sizes of all cards
+   */
+  public Map<Long, Dimension> getCardsSizes() {
+    return this.displayPnl.getCardsSizes();
+  }
+
   /**
    * @return the display's current middle coordinate
    */
   public Point getDisplayMiddlePoint() {
-    JViewport viewport = (JViewport) this.displayPnl.getParent();
-    Point pos = viewport.getViewPosition();
-    Dimension size = viewport.getExtentSize();
-    int x = pos.x + size.width / 2;
-    int y = pos.y + size.height / 2;
-
-    return new Point(x, y);
+    return this.displayPnl.getVisibleCenter();
   }
 
   /**
@@ -469,6 +689,32 @@ public class MainFrame extends ApplicationFrame<MainController> {
     return this.displayPnl.exportToImage();
   }
 
+  /**
+   * Exports the display panel to a PNG image written directly to a stream. This method may be
+   * called from any thread.
+   * 
+   * @param out the stream; it is closed when done
+   * @param scale the scale of the image
+   * @param listener receives the progress of the export
+   * @throws IOException if an I/O error occured
+   */
+  public void exportToPng(OutputStream out, double scale, ProgressListener listener) throws IOException {
+    this.displayPnl.exportToPng(out, scale, listener);
+  }
+
+  /**
+   * Asks the user the scale of the image to export.
+   * 
+   * @return the selected scale or nothing if the dialog was dismissed/canceled
+   */
+  public Optional<Integer> showExportScaleDialog() {
+    Object choice = JOptionPane.showInputDialog(this, I18n.getLocalizedString("popup.export_scale.text"),
+        I18n.getLocalizedString("dialog.export_scale.title"), JOptionPane.QUESTION_MESSAGE, null, EXPORT_SCALES, EXPORT_SCALES[0]);
+    if (choice == null)
+      return Optional.empty();
+    return Optional.of(Integer.parseInt(((String) choice).substring(1)));
+  }
+
   /**
    * Shows the "open" file chooser.
    * 
@@ -480,6 +726,17 @@ public class MainFrame extends ApplicationFrame<MainController> {
     return Optional.ofNullable(choice != JFileChooser.APPROVE_OPTION ? null : this.treeFileChooser.getSelectedFile());
   }
 
+  /**
+   * Shows the "import GEDCOM" file chooser.
+   * 
+   * @return the selected file
+   */
+  public Optional<File> showImportGedcomFileChooser() {
+    this.gedcomFileChooser.setDialogTitle(I18n.getLocalizedString("dialog.import_gedcom.title"));
+    int choice = this.gedcomFileChooser.showOpenDialog(this);
+    return Optional.ofNullable(choice != JFileChooser.APPROVE_OPTION ? null : this.gedcomFileChooser.getSelectedFile());
+  }
+
   /**
    * Shows the "save" file chooser. The returned file is is guaranted to have a valid extension.
    * 
@@ -625,6 +882,62 @@ public class MainFrame extends ApplicationFrame<MainController> {
     this.linkDetailsDialog.setVisible(true);
   }
 
+  /**
+   * Shows the "possible duplicates" dialog. The dialog is not modal.
+   * 
+   * @param duplicates the pairs of members that may be the same person
+   * @param family the tree
+   */
+  public void showDuplicatesDialog(List<DuplicateDetector.Duplicate> duplicates, Family family) {
+    this.duplicatesDialog.setDuplicates(duplicates, family);
+    this.duplicatesDialog.setVisible(true);
+  }
+
+  /**
+   * Hides the "possible duplicates" dialog.
+   */
+  public void hideDuplicatesDialog() {
+    this.duplicatesDialog.setVisible(false);
+  }
+
+  /**
+   * Shows the "statistics" dialog.
+   * 
+   * @param statistics the statistics of the tree
+   */
+  public void showStatisticsDialog(Statistics statistics) {
+    this.statisticsDialog.setStatistics(statistics);
+    this.statisticsDialog.setVisible(true);
+  }
+
+  /**
+   * Shows the "tree check" dialog. The dialog is not modal.
+   * 
+   * @param warnings the inconsistencies found in the tree
+   * @param family the tree
+   */
+  public void showWarningsDialog(List<TreeValidator.Warning> warnings, Family family) {
+    updateWarningsDialog(warnings, family);
+    this.warningsDialog.setVisible(true);
+  }
+
+  /**
+   * Updates the warnings of the "tree check" dialog without showing it.
+   * 
+   * @param warnings the inconsistencies found in the tree
+   * @param family the tree
+   */
+  public void updateWarningsDialog(List<TreeValidator.Warning> warnings, Family family) {
+    this.warningsDialog.setWarnings(warnings, family);
+  }
+
+  /**
+   * @return true if the "tree check" dialog is visible
+   */
+  public boolean isWarningsDialogVisible() {
+    return this.warningsDialog.isVisible();
+  }
+
   /**
    * Shows the "edit colors" dialog.
    * 
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.components;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.swing.Icon;
+import javax.swing.JLabel;
+import javax.swing.border.Border;
+import javax.swing.border.LineBorder;
+
+/**
+ * This cache holds what cards have in common so that refreshing thousands of them does not create
+ * or measure anything twice: borders are shared by all cards with the same color and label sizes
+ * are measured once per text, font and icon. It must only be used on the EDT.
+ *
+ * @author Damien Vergnet
+ */
+final class CardCache {
+  /** Maximum number of label sizes kept; the least recently used ones are evicted first. */
+  private static final int MAX_SIZES = 1 << 16;
+  /** Width of card borders. */
+  private static final int BORDER_THICKNESS = 2;
+
+  private final Map<Color, Border> borders;
+  private final LinkedHashMap<SizeKey, Dimension> sizes;
+
+  CardCache() {
+    this.borders = new HashMap<>();
+    this.sizes = new LinkedHashMap<SizeKey, Dimension>(16, 0.75f, true) {
+      private static final long serialVersionUID = 3496731244871187592L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<SizeKey, Dimension> eldest) {
+        return size() > MAX_SIZES;
+      }
+    };
+  }
+
+  /**
+   * Returns the card border of the given color. The same instance is returned for equal colors.
+   * 
+   * @param color border's color
+   * @return the border
+   */
+  Border getBorder(Color color) {
+    return this.borders.computeIfAbsent(color, c -> new LineBorder(c, BORDER_THICKNESS));
+  }
+
+  /**
+   * Returns the preferred size of a label. The label is only measured if no label with the same
+   * text, font and icon was measured before.
+   * 
+   * @param label the label
+   * @return a copy of the preferred size
+   */
+  Dimension getPreferredSize(JLabel label) {
+    SizeKey key = new SizeKey(label.getText(), label.getFont(), label.getIcon());
+    return new Dimension(this.sizes.computeIfAbsent(key, k -> label.getPreferredSize()));
+  }
+
+  /**
+   * Key of measured labels.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class SizeKey {
+    private final String text;
+    private final Font font;
+    private final Icon icon;
+
+    SizeKey(String text, Font font, Icon icon) {
+      this.text = text;
+      this.font = font;
+      this.icon = icon;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.text, this.font, this.icon);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof SizeKey))
+        return false;
+      SizeKey k = (SizeKey) o;
+      return Objects.equals(this.text, k.text) && Objects.equals(this.font, k.font) && this.icon == k.icon;
+    }
+  }
+}
@@ -19,13 +19,14 @@
 package net.darmo_creations.jenealogio.gui.components;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Point;
+import java.awt.Font;
 
+import javax.swing.Icon;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.border.Border;
-import javax.swing.border.LineBorder;
 
 import net.darmo_creations.gui_framework.config.WritableConfig;
 import net.darmo_creations.jenealogio.config.ConfigTags;
@@ -41,6 +42,9 @@ import net.darmo_creations.jenealogio.util.Images;
 public class FamilyMemberPanel extends JPanel {
   private static final long serialVersionUID = 8199650844222484357L;
 
+  /** Borders and label sizes shared by all cards. */
+  private static final CardCache CACHE = new CardCache();
+
   private PanelModel model;
 
   private Border selectedBorder, backgroundBorder, unselectedBorder;
@@ -62,52 +66,72 @@ public class FamilyMemberPanel extends JPanel {
   }
 
   /**
-   * Sets the data to display.
+   * Sets the data to display. Borders are shared with the other cards and the label is measured
+   * only if its text, font or icon was never measured before; nothing is done if the card did not
+   * change.
    * 
    * @param member the member to display
    */
   public void setInfo(FamilyMember member, WritableConfig config) {
-    this.selectedBorder = new LineBorder(config.getValue(ConfigTags.CARD_SELECTED_BORDER_COLOR), 2);
-    this.backgroundBorder = new LineBorder(config.getValue(ConfigTags.CARD_SELECTED_BACKGROUND_BORDER_COLOR), 2);
-    this.unselectedBorder = new LineBorder(config.getValue(ConfigTags.CARD_BORDER_COLOR), 2);
+    Color background = null;
 
     switch (member.getGender()) {
       case UNKNOW:
-        setBackground(config.getValue(ConfigTags.GENDER_UNKNOWN_COLOR));
+        background = config.getValue(ConfigTags.GENDER_UNKNOWN_COLOR);
         break;
       case MAN:
-        setBackground(config.getValue(ConfigTags.GENDER_MALE_COLOR));
+        background = config.getValue(ConfigTags.GENDER_MALE_COLOR);
         break;
       case WOMAN:
-        setBackground(config.getValue(ConfigTags.GENDER_FEMALE_COLOR));
+        background = config.getValue(ConfigTags.GENDER_FEMALE_COLOR);
         break;
     }
+    setBackground(background);
+
+    Border selected = CACHE.getBorder(config.getValue(ConfigTags.CARD_SELECTED_BORDER_COLOR));
+    Border selectedBackground = CACHE.getBorder(config.getValue(ConfigTags.CARD_SELECTED_BACKGROUND_BORDER_COLOR));
+    Border unselected = CACHE.getBorder(config.getValue(ConfigTags.CARD_BORDER_COLOR));
+
+    if (selected != this.selectedBorder || selectedBackground != this.backgroundBorder || unselected != this.unselectedBorder) {
+      this.selectedBorder = selected;
+      this.backgroundBorder = selectedBackground;
+      this.unselectedBorder = unselected;
+      updateBorder();
+    }
 
     this.model.setId(member.getId());
-    this.nameLbl.setIcon(member.isDead() ? Images.TOMBSTONE : null);
-    this.nameLbl.setText(member.toString());
-
-    Dimension size = this.nameLbl.getPreferredSize();
-    size.width += 20;
-    size.height = 30;
-    setSize(size);
-    revalidate();
+
+    Icon icon = member.isDead() ? Images.TOMBSTONE : null;
+    String text = member.toString();
+
+    if (icon != this.nameLbl.getIcon() || !text.equals(this.nameLbl.getText()) || getWidth() == 0) {
+      this.nameLbl.setIcon(icon);
+      this.nameLbl.setText(text);
+
+      Dimension size = CACHE.getPreferredSize(this.nameLbl);
+      size.width += 20;
+      size.height = 30;
+      setSize(size);
+      revalidate();
+    }
   }
 
-  public long getMemberId() {
-    return this.model.getId();
+  /**
+   * @return the text displayed on this card
+   */
+  public String getText() {
+    return this.nameLbl.getText();
   }
 
-  @Override
-  public void setLocation(Point p) {
-    super.setLocation(p);
-    getParent().repaint();
+  /**
+   * @return the font of the text displayed on this card
+   */
+  public Font getTextFont() {
+    return this.nameLbl.getFont();
   }
 
-  @Override
-  public void setLocation(int x, int y) {
-    super.setLocation(x, y);
-    getParent().repaint();
+  public long getMemberId() {
+    return this.model.getId();
   }
 
   /**
@@ -124,7 +148,7 @@ public class FamilyMemberPanel extends JPanel {
    */
   public void setSelected(boolean selected) {
     this.model.setSelected(selected);
-    setBorder(selected ? this.selectedBorder : this.unselectedBorder);
+    updateBorder();
   }
 
   /**
@@ -141,7 +165,19 @@ public class FamilyMemberPanel extends JPanel {
    */
   public void setSelectedBackground(boolean selected) {
     this.model.setSelectedBackground(selected);
-    setBorder(selected ? this.backgroundBorder : this.unselectedBorder);
+    updateBorder();
+  }
+
+  /**
+   * Sets the border matching the selection state.
+   */
+  private void updateBorder() {
+    if (this.model.isSelected())
+      setBorder(this.selectedBorder);
+    else if (this.model.isSelectedBackground())
+      setBorder(this.backgroundBorder);
+    else
+      setBorder(this.unselectedBorder);
   }
 
   /**
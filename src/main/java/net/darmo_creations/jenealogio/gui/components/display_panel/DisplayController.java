@@ -22,11 +22,13 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.util.Optional;
 
 import javax.swing.SwingUtilities;
 
 import net.darmo_creations.gui_framework.ApplicationRegistry;
+import net.darmo_creations.jenealogio.events.BranchEvent;
 import net.darmo_creations.jenealogio.events.CardEvent;
 import net.darmo_creations.jenealogio.events.CardsSelectionEvent;
 import net.darmo_creations.jenealogio.events.LinkEvent;
@@ -37,6 +39,9 @@ import net.darmo_creations.jenealogio.events.LinkEvent;
  * @author Damien Vergnet
  */
 class DisplayController extends MouseAdapter {
+  /** Zoom factor applied for each notch of the mouse wheel. */
+  static final double ZOOM_STEP = 1.1;
+
   private DisplayPanel panel;
   private Point mouseLocation;
   private Point selectionStart;
@@ -80,12 +85,13 @@ class DisplayController extends MouseAdapter {
         ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardsSelectionEvent(opt.get()));
       }
       this.selection = null;
-      repaint();
+      this.panel.repaint();
     }
   }
 
   /**
-   * Deselects all cards and checks if a link was clicked or double-clicked.
+   * Deselects all cards and checks if a link was clicked or double-clicked or if the summary card
+   * of a collapsed branch was double-clicked.
    */
   @Override
   public void mouseClicked(MouseEvent e) {
@@ -98,6 +104,10 @@ class DisplayController extends MouseAdapter {
         if (e.getClickCount() == 2)
           ApplicationRegistry.EVENTS_BUS.dispatchEvent(new LinkEvent.DoubleClicked(ids[0], ids[1]));
       }
+      else if (e.getClickCount() == 2) {
+        this.panel.getSummaryAt(e.getPoint()).ifPresent(
+            summary -> ApplicationRegistry.EVENTS_BUS.dispatchEvent(new BranchEvent.DoubleClicked(summary.getRootId(), summary.getBranch())));
+      }
     }
   }
 
@@ -122,10 +132,23 @@ class DisplayController extends MouseAdapter {
     }
   }
 
+  /**
+   * Zooms in or out if the control key is down, scrolls otherwise.
+   */
+  @Override
+  public void mouseWheelMoved(MouseWheelEvent e) {
+    if (e.isControlDown())
+      this.panel.setZoom(this.panel.getZoom() * Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getPoint());
+    else
+      this.panel.scroll(e);
+  }
+
   private void updateMouseLocation(MouseEvent e) {
     this.mouseLocation = e.getPoint();
     // Selection computation
     if (this.selection != null) {
+      Rectangle oldSelection = new Rectangle(this.selection);
+
       int width = this.mouseLocation.x - this.selectionStart.x;
       int height = this.mouseLocation.y - this.selectionStart.y;
 
@@ -167,11 +190,12 @@ class DisplayController extends MouseAdapter {
 
       this.panel.setVerticalScroll(this.panel.getVerticalScroll() + vTrans);
       this.panel.setHorizontalScroll(this.panel.getHorizontalScroll() + hTrans);
-    }
-    repaint();
-  }
 
-  private void repaint() {
-    this.panel.repaint();
+      // Only the area covered by the old and new selections needs to be repainted
+      Rectangle dirty = oldSelection.union(this.selection);
+      dirty.grow(1, 1);
+      this.panel.repaint(dirty);
+    }
+    this.panel.updateHoveredLink();
   }
 }
@@ -18,7 +18,7 @@
  */
 package net.darmo_creations.jenealogio.gui.components.display_panel;
 
-import java.awt.BasicStroke;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
@@ -29,29 +29,53 @@ import java.awt.dnd.DnDConstants;
 import java.awt.dnd.DropTarget;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TooManyListenersException;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
 
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JViewport;
 import javax.swing.Scrollable;
 import javax.swing.SwingUtilities;
 
 import net.darmo_creations.gui_framework.ApplicationRegistry;
 import net.darmo_creations.gui_framework.config.WritableConfig;
+import net.darmo_creations.jenealogio.config.ColorTag;
 import net.darmo_creations.jenealogio.config.ConfigTags;
 import net.darmo_creations.jenealogio.events.CardDragEvent;
 import net.darmo_creations.jenealogio.events.CardEvent;
 import net.darmo_creations.jenealogio.events.LinkEvent;
 import net.darmo_creations.jenealogio.gui.components.FamilyMemberPanel;
+import net.darmo_creations.jenealogio.model.CollapsedBranches;
+import net.darmo_creations.jenealogio.model.SelectionListener;
+import net.darmo_creations.jenealogio.model.SelectionModel;
 import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyListener;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.PngStreamWriter;
+import net.darmo_creations.jenealogio.util.ProgressListener;
+import net.darmo_creations.utils.I18n;
 import net.darmo_creations.utils.events.SubsribeEvent;
 import net.darmo_creations.utils.swing.drag_and_drop.DragAndDropListener;
 import net.darmo_creations.utils.swing.drag_and_drop.DragAndDropTarget;
@@ -59,27 +83,63 @@ import net.darmo_creations.utils.swing.drag_and_drop.DropTargetHandler;
 
 /**
  * This panel displays the family tree and handles click events. It can notify observers of any
- * action occuring.
+ * action occuring. Once the tree has been displayed with one of the {@code refresh} methods, the
+ * panel follows the changes of the model as a {@link FamilyListener} and only updates the affected
+ * cards and links.
  *
  * @author Damien Vergnet
  */
-public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarget {
+public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarget, FamilyListener {
   private static final long serialVersionUID = 8747904983365363275L;
 
   /** The maximum distance away from a link the mouse must be to count as a hover. */
   private static final int HOVER_DISTANCE = 5;
+  /** The number of pixels rendered at once when exporting to PNG (16 MB of RGB data). */
+  private static final int EXPORT_STRIP_PIXELS = 1 << 22;
+  /** Free space kept after the rightmost and bottommost cards so that the canvas can grow. */
+  private static final int CANVAS_MARGIN = 2000;
+  /** Smallest zoom factor. */
+  public static final double MIN_ZOOM = 0.05;
+  /** Space between a card and the summary card of one of its collapsed branches. */
+  private static final int SUMMARY_GAP = 30;
+  /** Horizontal space around the text of summary cards. */
+  private static final int SUMMARY_PADDING = 10;
 
   private WritableConfig config;
   private DropTarget dropTarget;
   private DisplayController controller;
   private MouseAdapter doubleClickController;
   private Map<Long, FamilyMemberPanel> panels;
-  private List<Link> links;
+  private Map<LinkKey, Link> links;
+  /** The links each card is attached to, either as a partner or as a child. */
+  private Map<Long, Set<Link>> cardsLinks;
+  /** The selected cards; panels only mirror it. */
+  private SelectionModel selection;
+  private SelectionListener selectionListener;
+  /** The link currently under the mouse, if any. */
+  private Link hoveredLink;
+
+  /** The displayed tree. */
+  private Family family;
+  private CollapsedBranches collapsedBranches;
+  /** Members hidden by the collapsed branches; they have neither card nor link. */
+  private CollapsedBranches.HiddenMembers hiddenMembers;
+  /** The positions of the hidden cards, restored when they are shown again. */
+  private Map<Long, Point> hiddenPositions;
+  /** The number of hidden members of each visible collapsed branch, by direction then root. */
+  private Map<CollapsedBranches.Branch, Map<Long, Integer>> summaries;
+
+  /** Renders the static part of the graph (links, and cards when zoomed out) in the background. */
+  private TileRenderer tiles;
+  /** The area covered by all cards, in model coordinates. */
+  private Rectangle contentBounds;
+  /** The zoom factor, between {@link #MIN_ZOOM} and 1. */
+  private double zoom;
 
   private JScrollPane scrollPane;
+  private Minimap minimap;
 
   public DisplayPanel(JScrollPane scrollPane) {
-    setPreferredSize(new Dimension(4000, 4000));
     setLayout(null);
 
     this.controller = new DisplayController(this);
@@ -94,11 +154,26 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
     };
     addMouseListener(this.controller);
     addMouseMotionListener(this.controller);
+    addMouseWheelListener(this.controller);
 
     this.scrollPane = scrollPane;
 
     this.panels = new HashMap<>();
-    this.links = new ArrayList<>();
+    this.links = new LinkedHashMap<>();
+    this.cardsLinks = new HashMap<>();
+    this.hoveredLink = null;
+    this.selection = new SelectionModel();
+    this.selectionListener = this::selectionChanged;
+    this.selection.addSelectionListener(this.selectionListener);
+    this.collapsedBranches = new CollapsedBranches();
+    this.hiddenMembers = this.collapsedBranches.getHiddenMembers(new Family(""));
+    this.hiddenPositions = new HashMap<>();
+    this.summaries = new EnumMap<>(CollapsedBranches.Branch.class);
+    this.tiles = new TileRenderer(() -> createSnapshot(isZoomedOut()), this::repaint);
+    this.contentBounds = new Rectangle();
+    this.zoom = 1;
+    this.minimap = new Minimap(this);
+    updateCanvasSize();
 
     this.dropTarget = new DropTarget(this, DnDConstants.ACTION_COPY_OR_MOVE, null);
   }
@@ -124,7 +199,18 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
   public void reset() {
     this.panels.clear();
     this.links.clear();
+    this.cardsLinks.clear();
+    this.hoveredLink = null;
+    this.family = null;
+    this.collapsedBranches = new CollapsedBranches();
+    this.hiddenMembers = this.collapsedBranches.getHiddenMembers(new Family(""));
+    this.hiddenPositions.clear();
+    this.summaries.clear();
+    this.contentBounds = new Rectangle();
+    invalidateGraph();
     removeAll();
+    updateCanvasSize();
+    this.minimap.rebuild();
   }
 
   /**
@@ -138,94 +224,501 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
 
   /**
    * Refreshes the display from the given model and updates positions of panels specified in the
-   * map.
+   * map. Members hidden by the collapsed branches only get their position updated; cards of
+   * members that are not hidden anymore are created back at their last known position.
    * 
    * @param family the model
    * @param positions the positions
    */
   public void refresh(Family family, Map<Long, Point> positions, WritableConfig config) {
     this.config = config;
-    Set<Long> updatedOrAdded = new HashSet<>();
+    this.family = family;
+    this.hiddenMembers = this.collapsedBranches.getHiddenMembers(family);
+    for (CollapsedBranches.Branch branch : CollapsedBranches.Branch.values())
+      this.summaries.put(branch, this.hiddenMembers.getCounts(branch));
     Set<Long> keysToDelete = new HashSet<>(this.panels.keySet());
+    Set<Long> hiddenToDelete = new HashSet<>(this.hiddenPositions.keySet());
 
     // Add/update members
     family.getAllMembers().forEach(member -> {
       long id = member.getId();
+      Point p = positions != null ? positions.get(id) : null;
 
-      if (this.panels.containsKey(id)) {
+      if (this.hiddenMembers.isHidden(id)) {
+        FamilyMemberPanel panel = this.panels.remove(id);
+
+        if (panel != null) {
+          remove(panel);
+          this.hiddenPositions.put(id, panel.getLocation());
+        }
+        if (p != null)
+          this.hiddenPositions.put(id, p);
+        hiddenToDelete.remove(id);
+      }
+      else if (this.panels.containsKey(id)) {
         FamilyMemberPanel panel = this.panels.get(id);
 
         panel.setInfo(member, this.config);
-        if (positions != null && positions.containsKey(member.getId())) {
-          Point p = positions.get(member.getId());
+        if (p != null)
           panel.setBounds(new Rectangle(p, panel.getSize()));
-        }
       }
       else {
-        FamilyMemberPanel panel = new FamilyMemberPanel(member, this.config);
-        DragController dragController = new DragController(this, panel);
-
-        if (positions != null && positions.containsKey(member.getId())) {
-          Point p = positions.get(member.getId());
-          panel.setBounds(new Rectangle(p, panel.getSize()));
-        }
-        else
-          panel.setBounds(new Rectangle(panel.getSize()));
-        panel.setName("member-" + id);
-        panel.addMouseListener(dragController);
-        panel.addMouseListener(this.doubleClickController);
-        panel.addMouseMotionListener(dragController);
-        this.panels.put(id, panel);
-        add(panel);
+        Point hiddenPosition = this.hiddenPositions.remove(id);
+        addPanel(member, p != null ? p : hiddenPosition != null ? hiddenPosition : new Point());
       }
-      updatedOrAdded.add(id);
+      keysToDelete.remove(id);
     });
+    hiddenToDelete.forEach(this.hiddenPositions::remove);
 
     // Delete members removed from the model
-    keysToDelete.removeAll(updatedOrAdded);
     keysToDelete.forEach(id -> {
       remove(this.panels.get(id));
       this.panels.remove(id);
+      this.cardsLinks.remove(id);
     });
 
-    List<Link> updatedOrAddedLinks = new ArrayList<>();
     // Add/update links
+    Set<LinkKey> linksToDelete = new HashSet<>(this.links.keySet());
     family.getAllRelations().forEach(relation -> {
-      long id1 = relation.getPartner1();
-      long id2 = relation.getPartner2();
-      Map<Long, Boolean> children = new HashMap<>();
-      for (Long id : relation.getChildren()) {
+      updateLink(relation);
+      linksToDelete.remove(new LinkKey(relation.getPartner1(), relation.getPartner2()));
+    });
+
+    // Delete links removed from the model
+    linksToDelete.forEach(this::removeLink);
+
+    this.contentBounds = new Rectangle();
+    this.panels.values().forEach(panel -> this.contentBounds.add(panel.getBounds()));
+    updateCanvasSize();
+    this.minimap.setColors(getBackground(), this.config.getValue(ConfigTags.CARD_BORDER_COLOR));
+    this.minimap.rebuild();
+    invalidateGraph();
+    revalidate();
+    repaint();
+  }
+
+  @Override
+  public void memberAdded(FamilyMember member) {
+    Point center = getVisibleCenter();
+    FamilyMemberPanel panel = addPanel(member, center);
+
+    panel.setLocation(Math.max(0, center.x - panel.getWidth() / 2), Math.max(0, center.y - panel.getHeight() / 2));
+    this.minimap.cardsChanged(Collections.emptySet(), Collections.singleton(panel.getBounds()));
+    extendCanvas(panel.getBounds());
+    invalidateGraph(panel.getBounds(), Collections.singleton(member.getId()), Collections.emptySet());
+    repaint(toView(panel.getBounds()));
+  }
+
+  @Override
+  public void memberUpdated(FamilyMember member) {
+    FamilyMemberPanel panel = this.panels.get(member.getId());
+
+    if (panel != null) {
+      Set<Long> ids = Collections.singleton(member.getId());
+      Collection<Link> attachedLinks = getAttachedLinks(ids);
+      Rectangle dirty = getDirtyRegion(ids, attachedLinks);
+      Rectangle oldBounds = panel.getBounds();
+
+      panel.setInfo(member, this.config);
+      dirty.add(getDirtyRegion(ids, attachedLinks));
+      this.minimap.cardsChanged(Collections.singleton(oldBounds), Collections.singleton(panel.getBounds()));
+      extendCanvas(panel.getBounds());
+      invalidateGraph(dirty, ids, attachedLinks);
+      repaint(toView(dirty));
+    }
+  }
+
+  @Override
+  public void memberRemoved(long id) {
+    Set<Long> ids = Collections.singleton(id);
+    // Computed before the card is removed to include its summary cards
+    Rectangle dirty = getDirtyRegion(ids, Collections.emptySet());
+    FamilyMemberPanel panel = this.panels.remove(id);
+
+    this.hiddenPositions.remove(id);
+
+    if (panel != null) {
+      Rectangle bounds = panel.getBounds();
+
+      remove(panel);
+      this.cardsLinks.remove(id);
+      this.minimap.cardsChanged(Collections.singleton(bounds), Collections.emptySet());
+      invalidateGraph(dirty, ids, Collections.emptySet());
+      repaint(toView(dirty));
+    }
+  }
+
+  @Override
+  public void relationAdded(Relationship relation) {
+    relationUpdated(relation);
+  }
+
+  @Override
+  public void relationUpdated(Relationship relation) {
+    if (!this.collapsedBranches.isEmpty()) {
+      // The relation may change which members are hidden
+      refresh(this.family, null, this.config);
+      return;
+    }
+
+    Link link = this.links.get(new LinkKey(relation.getPartner1(), relation.getPartner2()));
+    Rectangle dirty = link != null ? getFullLinkBounds(link) : new Rectangle(-1, -1);
+
+    link = updateLink(relation);
+    dirty.add(getFullLinkBounds(link));
+    invalidateGraph(dirty, Collections.emptySet(), Collections.singleton(link));
+    repaint(toView(dirty));
+  }
+
+  @Override
+  public void relationRemoved(Relationship relation) {
+    if (!this.collapsedBranches.isEmpty()) {
+      refresh(this.family, null, this.config);
+      return;
+    }
+
+    LinkKey key = new LinkKey(relation.getPartner1(), relation.getPartner2());
+    Link link = this.links.get(key);
+
+    if (link != null) {
+      Rectangle dirty = getFullLinkBounds(link);
+
+      removeLink(key);
+      invalidateGraph(dirty, Collections.emptySet(), Collections.singleton(link));
+      repaint(toView(dirty));
+    }
+  }
+
+  /**
+   * Creates the card for the given member and adds it to this panel.
+   * 
+   * @param member the member
+   * @param location the card's location
+   * @return the new card
+   */
+  private FamilyMemberPanel addPanel(FamilyMember member, Point location) {
+    long id = member.getId();
+    FamilyMemberPanel panel = new FamilyMemberPanel(member, this.config);
+    DragController dragController = new DragController(this, panel);
+
+    panel.setBounds(new Rectangle(location, panel.getSize()));
+    panel.setVisible(!isZoomedOut());
+    panel.setName("member-" + id);
+    updateSelection(panel);
+    panel.addMouseListener(dragController);
+    panel.addMouseListener(this.doubleClickController);
+    panel.addMouseMotionListener(dragController);
+    this.panels.put(id, panel);
+    add(panel);
+
+    return panel;
+  }
+
+  /**
+   * Adds or updates the link for the given relation. Links with a hidden partner are removed and
+   * hidden children are left out.
+   * 
+   * @param relation the relation
+   * @return the link or null if it is hidden
+   */
+  private Link updateLink(Relationship relation) {
+    LinkKey key = new LinkKey(relation.getPartner1(), relation.getPartner2());
+    if (this.hiddenMembers.isHidden(relation.getPartner1()) || this.hiddenMembers.isHidden(relation.getPartner2())) {
+      removeLink(key);
+      return null;
+    }
+    Map<Long, Boolean> children = new HashMap<>();
+    for (Long id : relation.getChildren()) {
+      if (!this.hiddenMembers.isHidden(id))
         children.put(id, relation.isAdopted(id));
-      }
-      Link link = new Link(id1, id2, children, relation.isWedding(), relation.hasEnded());
+    }
+    Link link = this.links.get(key);
 
-      if (this.links.contains(link)) {
-        Link l = this.links.get(this.links.indexOf(link));
+    if (link != null) {
+      detachLink(link);
+      link.setWedding(relation.isWedding());
+      link.setEnded(relation.hasEnded());
+      link.setChildren(children);
+    }
+    else {
+      link = new Link(relation.getPartner1(), relation.getPartner2(), children, relation.isWedding(), relation.hasEnded());
+      this.links.put(key, link);
+    }
+    attachLink(link);
 
-        l.setWedding(link.isWedding());
-        l.setEnded(relation.hasEnded());
-        l.setChildren(link.getChildren());
-      }
-      else {
-        this.links.add(link);
-      }
-      updatedOrAddedLinks.add(link);
-    });
+    return link;
+  }
 
-    // Delete links removed from the model
-    List<Link> linksToDelete = new ArrayList<>(this.links);
-    linksToDelete.removeAll(updatedOrAddedLinks);
-    this.links.removeAll(linksToDelete);
+  /**
+   * Removes a link.
+   * 
+   * @param key the link's key
+   */
+  private void removeLink(LinkKey key) {
+    Link link = this.links.remove(key);
 
-    revalidate();
+    if (link != null) {
+      detachLink(link);
+      if (link == this.hoveredLink)
+        this.hoveredLink = null;
+    }
+  }
+
+  /**
+   * Registers the given link for all the cards it is attached to.
+   * 
+   * @param link the link
+   */
+  private void attachLink(Link link) {
+    this.cardsLinks.computeIfAbsent(link.getParent1(), id -> new HashSet<>()).add(link);
+    this.cardsLinks.computeIfAbsent(link.getParent2(), id -> new HashSet<>()).add(link);
+    link.getChildren().keySet().forEach(child -> this.cardsLinks.computeIfAbsent(child, id -> new HashSet<>()).add(link));
+  }
+
+  /**
+   * Unregisters the given link for all the cards it is attached to.
+   * 
+   * @param link the link
+   */
+  private void detachLink(Link link) {
+    detachLink(link, link.getParent1());
+    detachLink(link, link.getParent2());
+    link.getChildren().keySet().forEach(child -> detachLink(link, child));
+  }
+
+  private void detachLink(Link link, long memberId) {
+    Set<Link> set = this.cardsLinks.get(memberId);
+
+    if (set != null) {
+      set.remove(link);
+      if (set.isEmpty())
+        this.cardsLinks.remove(memberId);
+    }
+  }
+
+  /**
+   * Returns all links attached to the given cards.
+   * 
+   * @param ids the cards
+   * @return the links
+   */
+  private Collection<Link> getAttachedLinks(Set<Long> ids) {
+    Set<Link> links = new LinkedHashSet<>();
+    ids.forEach(id -> links.addAll(this.cardsLinks.getOrDefault(id, Collections.emptySet())));
+    return links;
+  }
+
+  /**
+   * @return the center of the visible area, in model coordinates
+   */
+  public Point getVisibleCenter() {
+    Rectangle r = getVisibleRect();
+    return toModel(new Point(r.x + r.width / 2, r.y + r.height / 2));
+  }
+
+  /**
+   * @return the zoom factor
+   */
+  public double getZoom() {
+    return this.zoom;
+  }
+
+  /**
+   * Sets the zoom factor. The point of the tree under the anchor stays at the same place on screen.
+   * Under a zoom of 1, cards are painted by this panel with less and less details instead of being
+   * displayed as components; they cannot be dragged.
+   * 
+   * @param zoom the new zoom factor; it is clamped between {@link #MIN_ZOOM} and 1
+   * @param anchor the fixed point, in this panel's coordinates
+   */
+  public void setZoom(double zoom, Point anchor) {
+    zoom = Math.max(MIN_ZOOM, Math.min(1, zoom));
+    if (zoom == this.zoom)
+      return;
+
+    Point modelAnchor = toModel(anchor);
+    boolean wasZoomedOut = isZoomedOut();
+    Point view = this.scrollPane.getViewport().getViewPosition();
+
+    this.zoom = zoom;
+    if (wasZoomedOut != isZoomedOut())
+      this.panels.values().forEach(panel -> panel.setVisible(!isZoomedOut()));
+    this.hoveredLink = null;
+    updateCanvasSize();
+    // The scrollbars have to be updated now to be able to scroll to the new position
+    this.scrollPane.validate();
+
+    Point newAnchor = toView(modelAnchor);
+    setHorizontalScroll(view.x + newAnchor.x - anchor.x);
+    setVerticalScroll(view.y + newAnchor.y - anchor.y);
+    // Tiles are kept for each zoom level, only the cards appearing in the graph change the tiles
+    if (wasZoomedOut != isZoomedOut())
+      invalidateGraph();
     repaint();
   }
 
   /**
-   * @return the positions of all panels
+   * @return true if the zoom factor is less than 1
+   */
+  boolean isZoomedOut() {
+    return this.zoom < 1;
+  }
+
+  /**
+   * Converts a point from this panel's coordinates to model coordinates.
+   * 
+   * @param p the point
+   * @return the point in the model
+   */
+  Point toModel(Point p) {
+    return new Point((int) Math.floor(p.x / this.zoom), (int) Math.floor(p.y / this.zoom));
+  }
+
+  /**
+   * Converts an area from this panel's coordinates to model coordinates.
+   * 
+   * @param r the area
+   * @return the area in the model
+   */
+  private Rectangle toModel(Rectangle r) {
+    if (!isZoomedOut())
+      return new Rectangle(r);
+    int x1 = (int) Math.floor(r.x / this.zoom), y1 = (int) Math.floor(r.y / this.zoom);
+    int x2 = (int) Math.ceil((r.x + r.width) / this.zoom), y2 = (int) Math.ceil((r.y + r.height) / this.zoom);
+    return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+  }
+
+  /**
+   * Converts a point from model coordinates to this panel's coordinates.
+   * 
+   * @param p the point
+   * @return the point on this panel
+   */
+  private Point toView(Point p) {
+    return new Point((int) Math.round(p.x * this.zoom), (int) Math.round(p.y * this.zoom));
+  }
+
+  /**
+   * Converts an area from model coordinates to this panel's coordinates. The result is rounded
+   * outwards.
+   * 
+   * @param r the area
+   * @return the area on this panel
+   */
+  private Rectangle toView(Rectangle r) {
+    if (!isZoomedOut())
+      return new Rectangle(r);
+    int x1 = (int) Math.floor(r.x * this.zoom), y1 = (int) Math.floor(r.y * this.zoom);
+    int x2 = (int) Math.ceil((r.x + r.width) * this.zoom), y2 = (int) Math.ceil((r.y + r.height) * this.zoom);
+    return new Rectangle(x1 - 1, y1 - 1, x2 - x1 + 2, y2 - y1 + 2);
+  }
+
+  /**
+   * Makes the canvas grow if the given area is outside of the current content.
+   * 
+   * @param area the area that must be on the canvas, in model coordinates
+   */
+  private void extendCanvas(Rectangle area) {
+    if (!this.contentBounds.contains(area)) {
+      this.contentBounds.add(area);
+      updateCanvasSize();
+    }
+  }
+
+  /**
+   * Updates the preferred size of this panel from the content bounds and the zoom.
+   */
+  private void updateCanvasSize() {
+    int width = (int) Math.ceil((this.contentBounds.x + this.contentBounds.width + CANVAS_MARGIN) * this.zoom);
+    int height = (int) Math.ceil((this.contentBounds.y + this.contentBounds.height + CANVAS_MARGIN) * this.zoom);
+    Dimension size = new Dimension(width, height);
+
+    if (!size.equals(getPreferredSize())) {
+      setPreferredSize(size);
+      revalidate();
+      this.minimap.canvasChanged();
+    }
+  }
+
+  /**
+   * @return the size of the canvas in model coordinates
+   */
+  Dimension getModelSize() {
+    return new Dimension(this.contentBounds.x + this.contentBounds.width + CANVAS_MARGIN,
+        this.contentBounds.y + this.contentBounds.height + CANVAS_MARGIN);
+  }
+
+  /**
+   * @return the bounds of all visible cards, in model coordinates
+   */
+  Collection<Rectangle> getCardsBounds() {
+    List<Rectangle> bounds = new ArrayList<>(this.panels.size());
+    this.panels.values().forEach(panel -> bounds.add(panel.getBounds()));
+    return bounds;
+  }
+
+  /**
+   * Scrolls the view so that the given card is in the center, as far as possible.
+   * 
+   * @param id the card's member ID
+   * @return true if the card is displayed; false if it does not exist or is hidden by a collapsed
+   *         branch
+   */
+  public boolean scrollToCard(long id) {
+    FamilyMemberPanel panel = this.panels.get(id);
+
+    if (panel == null)
+      return false;
+
+    Rectangle r = toView(panel.getBounds());
+    JViewport viewport = getViewport();
+    Dimension extent = viewport.getExtentSize();
+    Dimension view = viewport.getViewSize();
+    int x = (int) r.getCenterX() - extent.width / 2;
+    int y = (int) r.getCenterY() - extent.height / 2;
+
+    x = Math.max(0, Math.min(x, view.width - extent.width));
+    y = Math.max(0, Math.min(y, view.height - extent.height));
+    viewport.setViewPosition(new Point(x, y));
+
+    return true;
+  }
+
+  /**
+   * @return the minimap of this panel
+   */
+  public Minimap getMinimap() {
+    return this.minimap;
+  }
+
+  /**
+   * @return the viewport this panel is displayed in
+   */
+  JViewport getViewport() {
+    return this.scrollPane.getViewport();
+  }
+
+  /**
+   * @return the collapsed branches
+   */
+  public CollapsedBranches getCollapsedBranches() {
+    return new CollapsedBranches(this.collapsedBranches);
+  }
+
+  /**
+   * Sets the collapsed branches. They are taken into account at the next refresh.
+   * 
+   * @param collapsedBranches the collapsed branches
+   */
+  public void setCollapsedBranches(CollapsedBranches collapsedBranches) {
+    this.collapsedBranches = new CollapsedBranches(collapsedBranches);
+  }
+
+  /**
+   * @return the positions of all panels, including the hidden ones
    */
   public Map<Long, Point> getCardsPositions() {
-    Map<Long, Point> points = new HashMap<>();
+    Map<Long, Point> points = new HashMap<>(this.hiddenPositions);
 
     for (Long id : this.panels.keySet()) {
       points.put(id, this.panels.get(id).getLocation());
@@ -234,6 +727,19 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
     return points;
   }
 
+  /**
+   * @return the sizes of all panels
+   */
+  public Map<Long, Dimension> getCardsSizes() {
+    Map<Long, Dimension> sizes = new HashMap<>();
+
+    for (Long id : this.panels.keySet()) {
+      sizes.put(id, this.panels.get(id).getSize());
+    }
+
+    return sizes;
+  }
+
   /**
    * Returns all panels that are fully inside the given zone.
    * 
@@ -241,58 +747,148 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
    * @return all panels inside the zone
    */
   public Optional<long[]> getPanelsInsideRectangle(Rectangle r) {
-    if (r != null)
+    if (r != null) {
+      Rectangle area = toModel(r);
       return Optional.of(
-          this.panels.entrySet().stream().filter(e -> r.contains(e.getValue().getBounds())).mapToLong(e -> e.getKey()).toArray());
+          this.panels.entrySet().stream().filter(e -> area.contains(e.getValue().getBounds())).mapToLong(e -> e.getKey()).toArray());
+    }
     return Optional.empty();
   }
 
   /**
-   * Selects the given panels as background.
+   * Sets the selection model the cards are drawn from.
    * 
-   * @param ids panels' IDs
+   * @param selection the selection model
    */
-  public void selectPanelsAsBackground(List<Long> ids) {
-    this.panels.entrySet().stream().filter(e -> ids.contains(e.getKey())).forEach(e -> e.getValue().setSelectedBackground(true));
-    revalidate();
+  public void setSelectionModel(SelectionModel selection) {
+    this.selection.removeSelectionListener(this.selectionListener);
+    this.selection = selection;
+    this.selection.addSelectionListener(this.selectionListener);
+    this.panels.values().forEach(this::updateSelection);
+    if (isZoomedOut())
+      invalidateGraph();
     repaint();
   }
 
   /**
-   * Called when a card is dragged.
+   * Called when the selection changed. Only the cards that changed are updated and repainted.
+   * 
+   * @param ids the IDs of the cards that changed
+   */
+  private void selectionChanged(long[] ids) {
+    Set<Long> changed = new HashSet<>();
+
+    for (long id : ids) {
+      FamilyMemberPanel panel = this.panels.get(id);
+      if (panel != null) {
+        updateSelection(panel);
+        changed.add(id);
+      }
+    }
+    if (!changed.isEmpty()) {
+      Rectangle dirty = getDirtyRegion(changed, Collections.emptySet());
+
+      if (isZoomedOut())
+        invalidateGraph(dirty, changed, Collections.emptySet());
+      repaint(toView(dirty));
+    }
+  }
+
+  /**
+   * Updates the selection state of a card from the selection model.
+   * 
+   * @param panel the card
+   */
+  private void updateSelection(FamilyMemberPanel panel) {
+    long id = panel.getMemberId();
+
+    if (id == this.selection.getLead())
+      panel.setSelected(true);
+    else
+      panel.setSelectedBackground(this.selection.isSelected(id));
+  }
+
+  /**
+   * Called when a card is dragged. The dragged card and all selected cards are moved at once.
    * 
    * @param evt the event
    */
   @SubsribeEvent
   public void onCardDragged(CardDragEvent.Dragging evt) {
     final Point trans = evt.getTranslation();
-    this.panels.entrySet().stream().filter(
-        e -> e.getKey() != evt.getMemberId() && (e.getValue().isSelectedBackground() || e.getValue().isSelected())).forEach(
-            e -> e.getValue().setLocation(e.getValue().getLocation().x + trans.x, e.getValue().getLocation().y + trans.y));
+    Map<Long, Point> locations = new HashMap<>();
+
+    locations.put(evt.getMemberId(), evt.getNewLocation());
+    this.selection.forEach(id -> {
+      FamilyMemberPanel panel = this.panels.get(id);
+      if (id != evt.getMemberId() && panel != null) {
+        Point p = panel.getLocation();
+        locations.put(id, new Point(p.x + trans.x, p.y + trans.y));
+      }
+    });
+    moveCards(locations);
   }
 
   /**
-   * Called when a card is clicked.
+   * Moves several cards in a single transaction. The graph tiles and the display are updated only
+   * once, on the area covered by the old and new bounds of the moved cards and their links.
+   * 
+   * @param locations the new location of each card to move
+   */
+  public void moveCards(Map<Long, Point> locations) {
+    Set<Long> ids = locations.keySet();
+    Collection<Link> attachedLinks = getAttachedLinks(ids);
+    Rectangle dirty = getDirtyRegion(ids, attachedLinks);
+    List<Rectangle> oldBounds = new ArrayList<>(), newBounds = new ArrayList<>();
+
+    locations.forEach((id, p) -> {
+      FamilyMemberPanel panel = this.panels.get(id);
+      if (panel != null) {
+        oldBounds.add(panel.getBounds());
+        panel.setLocation(p);
+        newBounds.add(panel.getBounds());
+      }
+      else if (this.hiddenPositions.containsKey(id))
+        this.hiddenPositions.put(id, new Point(p));
+    });
+    dirty.add(getDirtyRegion(ids, attachedLinks));
+
+    // Before the canvas grows, the minimap is redrawn from scratch if it does
+    this.minimap.cardsChanged(oldBounds, newBounds);
+    extendCanvas(getDirtyRegion(ids, Collections.emptySet()));
+    invalidateGraph(dirty, ids, attachedLinks);
+    repaint(toView(dirty));
+  }
+
+  /**
+   * Returns the area covered by the given cards and links.
+   * 
+   * @param ids the cards
+   * @param links the links
+   * @return the area covered by the cards and links
+   */
+  private Rectangle getDirtyRegion(Set<Long> ids, Collection<Link> links) {
+    Rectangle dirty = new Rectangle(-1, -1);
+
+    ids.forEach(id -> {
+      FamilyMemberPanel panel = this.panels.get(id);
+      if (panel != null)
+        dirty.add(panel.getBounds());
+    });
+    links.forEach(l -> dirty.add(getFullLinkBounds(l)));
+    ids.forEach(id -> getSummaries(id).forEach(summary -> dirty.add(summary.getFullBounds())));
+
+    return dirty;
+  }
+
+  /**
+   * Called when a card is clicked. Links are deselected; cards follow the selection model.
    * 
    * @param e the event
    */
   @SubsribeEvent
   public void onCardClicked(CardEvent.Clicked e) {
-    this.panels.forEach((pId, panel) -> {
-      if (e.getMemberId() < 0) {
-        panel.setSelected(false);
-      }
-      else {
-        if (pId == e.getMemberId())
-          panel.setSelected(true);
-        else if (e.keepPreviousSelection() && panel.isSelected())
-          panel.setSelectedBackground(true);
-        else if (!e.keepPreviousSelection())
-          panel.setSelected(false);
-      }
-    });
-    this.links.forEach(l -> l.setSelected(false));
-    revalidate();
+    this.links.values().forEach(l -> l.setSelected(false));
     repaint();
   }
 
@@ -303,14 +899,12 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
    */
   @SubsribeEvent
   public void onLinkClicked(LinkEvent.Clicked e) {
-    Optional<Link> optL = this.links.stream().filter(
-        l -> l.getParent1() == e.getPartner1Id() && l.getParent2() == e.getPartner2Id()).findAny();
-
-    if (optL.isPresent()) {
-      Link link = optL.get();
+    Link link = this.links.get(new LinkKey(e.getPartner1Id(), e.getPartner2Id()));
 
-      this.links.forEach(l -> l.setSelected(false));
+    if (link != null) {
+      this.links.values().forEach(l -> l.setSelected(false));
       link.setSelected(true);
+      repaint();
     }
   }
 
@@ -318,17 +912,238 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
    * @return an array containing the two partners' IDs from the currently hovered link
    */
   public Optional<long[]> getHoveredLinkPartners() {
-    for (Link link : this.links) {
-      Rectangle r1 = this.panels.get(link.getParent1()).getBounds();
-      Rectangle r2 = this.panels.get(link.getParent2()).getBounds();
-      Point p1 = new Point(r1.x + r1.width / 2, r1.y + r1.height / 2);
-      Point p2 = new Point(r2.x + r2.width / 2, r2.y + r2.height / 2);
-
-      if (isMouseOnLink(p1, p2)) {
-        return Optional.of(new long[]{link.getParent1(), link.getParent2()});
+    if (this.hoveredLink != null)
+      return Optional.of(new long[]{this.hoveredLink.getParent1(), this.hoveredLink.getParent2()});
+    return Optional.empty();
+  }
+
+  /**
+   * Looks for the link under the mouse and repaints the old and new hovered links if it changed.
+   * Only the area of these links is repainted.
+   */
+  void updateHoveredLink() {
+    Link hovered = null;
+
+    for (Link link : this.links.values()) {
+      if (isMouseOnLink(getCenter(link.getParent1()), getCenter(link.getParent2()))) {
+        hovered = link;
+        break;
       }
     }
-    return Optional.empty();
+
+    if (hovered != this.hoveredLink) {
+      if (this.hoveredLink != null)
+        repaint(toView(getLinkBounds(this.hoveredLink)));
+      if (hovered != null)
+        repaint(toView(getLinkBounds(hovered)));
+      this.hoveredLink = hovered;
+    }
+  }
+
+  /**
+   * Marks the whole graph as outdated. Its tiles will be rendered again.
+   */
+  void invalidateGraph() {
+    this.tiles.invalidate();
+  }
+
+  /**
+   * Marks an area of the graph as outdated after some cards or links changed. Only the shapes of
+   * these cards, their summary cards and these links are replaced in the graph snapshot, and only
+   * the tiles crossing the area will be rendered again.
+   * 
+   * @param region the outdated area, in model coordinates; it must cover the old and new bounds of
+   *          the changed cards and links
+   * @param ids the changed cards, including the removed ones
+   * @param links the changed links, including the removed ones
+   */
+  void invalidateGraph(Rectangle region, Set<Long> ids, Collection<Link> links) {
+    this.tiles.invalidate(region, snapshot -> {
+      Set<Object> keys = new HashSet<>(ids);
+      List<GraphSnapshot.LinkShape> linkShapes = new ArrayList<>();
+      List<GraphSnapshot.CardShape> cardShapes = new ArrayList<>();
+
+      links.forEach(link -> {
+        LinkKey key = link.getKey();
+
+        keys.add(key);
+        // Removed links are not added back
+        if (this.links.get(key) == link)
+          linkShapes.add(createLinkShape(link));
+      });
+      ids.forEach(id -> {
+        FamilyMemberPanel panel = this.panels.get(id);
+
+        if (panel != null) {
+          getSummaries(id).forEach(summary -> addSummaryShapes(summary, linkShapes, cardShapes));
+          if (isZoomedOut())
+            cardShapes.add(createCardShape(panel));
+        }
+      });
+
+      return snapshot.update(region, keys, linkShapes, cardShapes);
+    });
+  }
+
+  /**
+   * Creates an immutable copy of the static part of the graph to be rendered in the background.
+   * 
+   * @param withCards if true, the cards are included to be painted by the renderer
+   * @return the snapshot
+   */
+  private GraphSnapshot createSnapshot(boolean withCards) {
+    List<GraphSnapshot.LinkShape> linkShapes = new ArrayList<>(this.links.size());
+    List<GraphSnapshot.CardShape> cardShapes = new ArrayList<>();
+
+    this.links.values().forEach(link -> linkShapes.add(createLinkShape(link)));
+    getSummaries().forEach(summary -> addSummaryShapes(summary, linkShapes, cardShapes));
+    if (withCards)
+      this.panels.values().forEach(panel -> cardShapes.add(createCardShape(panel)));
+
+    return new GraphSnapshot(linkShapes, cardShapes, this.config.getValue(ConfigTags.LINK_COLOR),
+        this.config.getValue(ConfigTags.LINK_CHILD_COLOR), this.config.getValue(ConfigTags.LINK_ADOPTED_CHILD_COLOR));
+  }
+
+  /**
+   * Adds the shapes of a summary card and of its line to the root card. They share the key of the
+   * root card.
+   * 
+   * @param summary the summary card
+   * @param linkShapes the list to add the line to
+   * @param cardShapes the list to add the card to
+   */
+  private void addSummaryShapes(Summary summary, List<GraphSnapshot.LinkShape> linkShapes, List<GraphSnapshot.CardShape> cardShapes) {
+    FamilyMemberPanel root = this.panels.get(summary.getRootId());
+    Point center = getCenter(summary.getRootId());
+    Rectangle r = summary.getBounds();
+
+    // Summaries are linked to their root like a child to its parents
+    linkShapes.add(new GraphSnapshot.LinkShape(summary.getRootId(), center, center,
+        new Point[]{new Point((int) r.getCenterX(), (int) r.getCenterY())}, new boolean[1], false, false, summary.getFullBounds()));
+    cardShapes.add(new GraphSnapshot.CardShape(summary.getRootId(), r, root.getBackground(),
+        this.config.getValue(ConfigTags.CARD_BORDER_COLOR), root.getForeground(), summary.getText(), root.getTextFont()));
+  }
+
+  /**
+   * Returns the current appearance of a card.
+   * 
+   * @param panel the card
+   * @return the shape of the card
+   */
+  private GraphSnapshot.CardShape createCardShape(FamilyMemberPanel panel) {
+    ColorTag border = ConfigTags.CARD_BORDER_COLOR;
+
+    if (panel.isSelected())
+      border = ConfigTags.CARD_SELECTED_BORDER_COLOR;
+    else if (panel.isSelectedBackground())
+      border = ConfigTags.CARD_SELECTED_BACKGROUND_BORDER_COLOR;
+
+    return new GraphSnapshot.CardShape(panel.getMemberId(), panel.getBounds(), panel.getBackground(), this.config.getValue(border),
+        panel.getForeground(), panel.getText(), panel.getTextFont());
+  }
+
+  /**
+   * Returns the current geometry of a link.
+   * 
+   * @param link the link
+   * @return the shape of the link
+   */
+  private GraphSnapshot.LinkShape createLinkShape(Link link) {
+    int n = link.getChildren().size();
+    Point[] children = new Point[n];
+    boolean[] adopted = new boolean[n];
+    int i = 0;
+
+    for (Map.Entry<Long, Boolean> e : link.getChildren().entrySet()) {
+      children[i] = getCenter(e.getKey());
+      adopted[i] = e.getValue();
+      i++;
+    }
+
+    return new GraphSnapshot.LinkShape(link.getKey(), getCenter(link.getParent1()), getCenter(link.getParent2()), children, adopted,
+        link.isWedding(), link.hasEnded(), getFullLinkBounds(link));
+  }
+
+  /**
+   * @return the summary cards of all visible collapsed branches
+   */
+  private List<Summary> getSummaries() {
+    List<Summary> summaries = new ArrayList<>();
+    this.summaries.forEach((branch, counts) -> counts.forEach((id, count) -> {
+      if (this.panels.containsKey(id))
+        summaries.add(new Summary(id, branch, count));
+    }));
+    return summaries;
+  }
+
+  /**
+   * Returns the summary cards of the collapsed branches starting from the given card.
+   * 
+   * @param memberId the card's member ID
+   * @return the summary cards
+   */
+  private List<Summary> getSummaries(long memberId) {
+    List<Summary> summaries = new ArrayList<>();
+    if (this.panels.containsKey(memberId)) {
+      this.summaries.forEach((branch, counts) -> {
+        Integer count = counts.get(memberId);
+        if (count != null)
+          summaries.add(new Summary(memberId, branch, count));
+      });
+    }
+    return summaries;
+  }
+
+  /**
+   * Returns the summary card at the given location.
+   * 
+   * @param p the location, in view coordinates
+   * @return the summary card under this point, if any
+   */
+  Optional<Summary> getSummaryAt(Point p) {
+    Point m = toModel(p);
+    return getSummaries().stream().filter(summary -> summary.getBounds().contains(m)).findFirst();
+  }
+
+  /**
+   * Returns the center of the given card.
+   * 
+   * @param memberId the card's member ID
+   * @return the center of the card
+   */
+  private Point getCenter(long memberId) {
+    Rectangle r = this.panels.get(memberId).getBounds();
+    return new Point(r.x + r.width / 2, r.y + r.height / 2);
+  }
+
+  /**
+   * Returns the area covered by the line between the two partners of a link.
+   * 
+   * @param link the link
+   * @return the area of the link
+   */
+  private Rectangle getLinkBounds(Link link) {
+    Rectangle r = new Rectangle(getCenter(link.getParent1()));
+
+    r.add(getCenter(link.getParent2()));
+    r.grow(HOVER_DISTANCE, HOVER_DISTANCE);
+
+    return r;
+  }
+
+  /**
+   * Returns the area covered by a link and the lines to its children.
+   * 
+   * @param link the link
+   * @return the area of the link and its children lines
+   */
+  private Rectangle getFullLinkBounds(Link link) {
+    Rectangle r = getLinkBounds(link);
+
+    link.getChildren().keySet().forEach(id -> r.add(getCenter(id)));
+    r.grow(HOVER_DISTANCE, HOVER_DISTANCE);
+
+    return r;
   }
 
   /**
@@ -346,7 +1161,7 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
    *      between a point and a line</a>
    */
   private boolean isMouseOnLink(Point p1, Point p2) {
-    Point m = this.controller.getMouseLocation();
+    Point m = toModel(this.controller.getMouseLocation());
     double dx = p2.getX() - p1.getX();
     double dy = p2.getY() - p1.getY();
     double innerProduct = (m.getX() - p1.getX()) * dx + (m.getY() - p1.getY()) * dy;
@@ -355,10 +1170,9 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
     double a = p2.getY() - p1.getY();
     double b = -(p2.getX() - p1.getX());
     double c = -a * p1.getX() - b * p1.getY();
-    Point p = this.controller.getMouseLocation();
-    double d = Math.abs(a * p.getX() + b * p.getY() + c) / Math.hypot(a, b);
+    double d = Math.abs(a * m.getX() + b * m.getY() + c) / Math.hypot(a, b);
 
-    return mouseInSegmentRange && d <= HOVER_DISTANCE;
+    return mouseInSegmentRange && d <= HOVER_DISTANCE / this.zoom;
   }
 
   public static final int TOP = 1;
@@ -396,6 +1210,15 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
     return res;
   }
 
+  /**
+   * Forwards a mouse wheel event to the scroll pane to scroll the view.
+   * 
+   * @param e the event
+   */
+  void scroll(MouseWheelEvent e) {
+    this.scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(this, e, this.scrollPane));
+  }
+
   /**
    * @return the vertical scrollbar's value
    */
@@ -435,52 +1258,63 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
     if (this.config != null) {
-      // Selection
-      Optional<Rectangle> optStart = this.controller.getSelection();
-      if (optStart.isPresent()) {
-        Rectangle r = optStart.get();
-
-        g2d.setColor(this.config.getValue(ConfigTags.SELECTION_BACKGROUND_COLOR));
-        g2d.fillRect(r.x, r.y, r.width, r.height);
-        g2d.setColor(this.config.getValue(ConfigTags.SELECTION_BORDER_COLOR));
-        g2d.drawRect(r.x, r.y, r.width, r.height);
-      }
+      paintGraph(g2d);
+      paintOverlay(g2d);
+    }
+  }
 
-      // Links
-      this.links.forEach(link -> {
-        final int width = link.isWedding() ? 2 : 1;
-        if (link.hasEnded())
-          g2d.setStroke(new BasicStroke(width, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{9}, 0));
-        else
-          g2d.setStroke(new BasicStroke(width));
-
-        // Link between parents
-        Rectangle r1 = this.panels.get(link.getParent1()).getBounds();
-        Rectangle r2 = this.panels.get(link.getParent2()).getBounds();
-        Point p1 = new Point(r1.x + r1.width / 2, r1.y + r1.height / 2);
-        Point p2 = new Point(r2.x + r2.width / 2, r2.y + r2.height / 2);
-        Point middle = new Point((p1.x + p2.x) / 2, (p1.y + p2.y) / 2);
-
-        if (isMouseOnLink(p1, p2))
-          g2d.setColor(this.config.getValue(ConfigTags.LINK_HOVERED_COLOR));
-        else
-          g2d.setColor(
-              link.isSelected() ? this.config.getValue(ConfigTags.LINK_SELECTED_COLOR) : this.config.getValue(ConfigTags.LINK_COLOR));
-        g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
-
-        g2d.setStroke(new BasicStroke(width));
-        // Links to children
-        link.getChildren().forEach((id, adopted) -> {
-          Rectangle r = this.panels.get(id).getBounds();
-          Point p = new Point(r.x + r.width / 2, r.y + r.height / 2);
-
-          g2d.setColor(this.config.getValue(adopted ? ConfigTags.LINK_ADOPTED_CHILD_COLOR : ConfigTags.LINK_CHILD_COLOR));
-          g2d.drawLine(middle.x, middle.y, p.x, p.y);
-        });
-      });
+  /**
+   * Paints the static part of the graph (links, and cards when zoomed out) from the tiles rendered
+   * in the background.
+   * 
+   * @param g2d the graphics object
+   */
+  private void paintGraph(Graphics2D g2d) {
+    Rectangle visible = getVisibleRect();
+
+    if (!visible.isEmpty())
+      this.tiles.paint(g2d, visible, this.zoom);
+  }
+
+  /**
+   * Paints everything that changes with the mouse: the selection rectangle and the hovered and
+   * selected links.
+   * 
+   * @param g2d the graphics object
+   */
+  private void paintOverlay(Graphics2D g2d) {
+    Graphics2D g = (Graphics2D) g2d.create();
+
+    g.scale(this.zoom, this.zoom);
+    this.links.values().stream().filter(Link::isSelected).forEach(
+        link -> paintLink(g, link, this.config.getValue(ConfigTags.LINK_SELECTED_COLOR)));
+    if (this.hoveredLink != null)
+      paintLink(g, this.hoveredLink, this.config.getValue(ConfigTags.LINK_HOVERED_COLOR));
+    g.dispose();
+
+    // Selection
+    Optional<Rectangle> optStart = this.controller.getSelection();
+    if (optStart.isPresent()) {
+      Rectangle r = optStart.get();
+
+      g2d.setColor(this.config.getValue(ConfigTags.SELECTION_BACKGROUND_COLOR));
+      g2d.fillRect(r.x, r.y, r.width, r.height);
+      g2d.setColor(this.config.getValue(ConfigTags.SELECTION_BORDER_COLOR));
+      g2d.drawRect(r.x, r.y, r.width, r.height);
     }
   }
 
+  /**
+   * Paints the line between the partners of a link.
+   * 
+   * @param g2d the graphics object, in model coordinates
+   * @param link the link to paint
+   * @param color the color of the line
+   */
+  private void paintLink(Graphics2D g2d, Link link, Color color) {
+    GraphSnapshot.paintLink(g2d, createLinkShape(link), color, null, null, false, this.zoom);
+  }
+
   @Override
   public Dimension getPreferredScrollableViewportSize() {
     return getPreferredSize();
@@ -507,25 +1341,136 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
   }
 
   /**
-   * Exports this panel to an image.
+   * Exports this panel to an image. The tree is always exported at a zoom of 1.
    * 
    * @return this panel as an image
    */
   public BufferedImage exportToImage() {
-    BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
-    paint(image.createGraphics());
-
     Point p1 = getTopLeftPoint();
     Point p2 = getBottomRightPoint();
+    BufferedImage image = new BufferedImage(Math.max(1, p2.x - p1.x), Math.max(1, p2.y - p1.y), BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+
+    g.setColor(getBackground());
+    g.fillRect(0, 0, image.getWidth(), image.getHeight());
+    g.translate(-p1.x, -p1.y);
+    paintTree(g, createSnapshot(false));
+    g.dispose();
+
+    return image;
+  }
+
+  /**
+   * Exports this panel to a PNG image written directly to the given stream. The image is rendered
+   * by horizontal strips into a single reusable buffer that is encoded as soon as it is filled;
+   * memory use thus does not depend on the size of the tree nor on the scale. The current zoom is
+   * ignored.
+   * <p>
+   * This method may be called from any thread: each strip is painted in the event dispatch thread
+   * and compressed in the calling one, so that the interface stays responsive between two strips.
+   * The export can be canceled by interrupting the calling thread.
+   * 
+   * @param out the stream to write to; it is closed when done
+   * @param scale the scale of the image (1 for the size displayed on screen)
+   * @param listener receives the progress of the export
+   * @throws IOException if an I/O error occured
+   */
+  public void exportToPng(OutputStream out, double scale, ProgressListener listener) throws IOException {
+    Rectangle bounds = inEventThread(() -> {
+      Point p1 = getTopLeftPoint();
+      Point p2 = getBottomRightPoint();
+      return new Rectangle(p1.x, p1.y, p2.x - p1.x, p2.y - p1.y);
+    });
+    GraphSnapshot snapshot = inEventThread(() -> createSnapshot(false));
+    Color background = getBackground();
+    int width = Math.max(1, (int) Math.ceil(bounds.width * scale));
+    int height = Math.max(1, (int) Math.ceil(bounds.height * scale));
+    int stripHeight = Math.max(1, Math.min(height, EXPORT_STRIP_PIXELS / width));
+    BufferedImage strip = new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_RGB);
+    int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+
+    try (PngStreamWriter writer = new PngStreamWriter(out, width, height)) {
+      for (int y = 0; y < height; y += stripHeight) {
+        int top = y;
+        int rows = Math.min(stripHeight, height - y);
+
+        inEventThread(() -> {
+          Graphics2D g = strip.createGraphics();
+
+          g.setColor(background);
+          g.fillRect(0, 0, width, stripHeight);
+          g.clipRect(0, 0, width, rows);
+          g.translate(0, -top);
+          g.scale(scale, scale);
+          g.translate(-bounds.x, -bounds.y);
+          paintTree(g, snapshot);
+          g.dispose();
+          return null;
+        });
+        writer.writeRows(pixels, 0, width, rows);
+        listener.progressChanged((int) (100L * (y + rows) / height));
+      }
+    }
+  }
+
+  /**
+   * Runs a task in the event dispatch thread and waits for its result.
+   * 
+   * @param task the task
+   * @return the result of the task
+   * @throws CancellationException if the calling thread was interrupted while waiting
+   */
+  private static <T> T inEventThread(Supplier<T> task) {
+    if (SwingUtilities.isEventDispatchThread())
+      return task.get();
+
+    List<T> result = new ArrayList<>(1);
+
+    try {
+      SwingUtilities.invokeAndWait(() -> result.add(task.get()));
+    }
+    catch (InterruptedException ex) {
+      throw new CancellationException();
+    }
+    catch (InvocationTargetException ex) {
+      if (ex.getCause() instanceof RuntimeException)
+        throw (RuntimeException) ex.getCause();
+      throw new RuntimeException(ex.getCause());
+    }
 
-    return image.getSubimage(p1.x, p1.y, p2.x - p1.x, p2.y - p1.y);
+    return result.get(0);
+  }
+
+  /**
+   * Paints the whole tree at a zoom of 1 for an export, whatever the current zoom. Only the links and
+   * cards inside the clip are painted.
+   * 
+   * @param g2d the graphics object, in model coordinates
+   * @param snapshot the links to paint
+   */
+  private void paintTree(Graphics2D g2d, GraphSnapshot snapshot) {
+    Rectangle clip = g2d.getClipBounds();
+
+    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    snapshot.paint(g2d, clip != null ? clip : this.contentBounds, 1);
+    this.panels.values().stream().filter(panel -> clip == null || panel.getBounds().intersects(clip)).forEach(panel -> {
+      Rectangle r = panel.getBounds();
+      Graphics g = g2d.create(r.x, r.y, r.width, r.height);
+      // Cards may be hidden if zoomed out, they have to be laid out to be painted
+      panel.doLayout();
+      panel.print(g);
+      g.dispose();
+    });
   }
 
   /**
    * @return the topmost leftmost point of the tree
    */
   private Point getTopLeftPoint() {
-    Point point = new Point(4000, 4000);
+    if (this.panels.isEmpty())
+      return new Point();
+
+    Point point = new Point(Integer.MAX_VALUE, Integer.MAX_VALUE);
 
     this.panels.values().forEach(p -> {
       Point l = p.getLocation();
@@ -551,6 +1496,107 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
     return point;
   }
 
+  /**
+   * This class identifies the link between two cards, regardless of the partners order.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class LinkKey {
+    private final long id1, id2;
+
+    public LinkKey(long partner1, long partner2) {
+      this.id1 = Math.min(partner1, partner2);
+      this.id2 = Math.max(partner1, partner2);
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+
+      result = prime * result + (int) (this.id1 ^ (this.id1 >>> 32));
+      result = prime * result + (int) (this.id2 ^ (this.id2 >>> 32));
+
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof LinkKey) {
+        LinkKey k = (LinkKey) o;
+        return k.id1 == this.id1 && k.id2 == this.id2;
+      }
+
+      return false;
+    }
+  }
+
+  /**
+   * The card standing for a collapsed branch. It is placed under its root card for descendants and
+   * above it for ancestors, and shows the number of hidden members.
+   *
+   * @author Damien Vergnet
+   */
+  final class Summary {
+    private final long rootId;
+    private final CollapsedBranches.Branch branch;
+    private final String text;
+    private final Rectangle bounds;
+
+    /**
+     * Creates the summary card of a branch.
+     * 
+     * @param rootId ID of the member the branch starts from
+     * @param branch the direction of the branch
+     * @param count the number of hidden members
+     */
+    private Summary(long rootId, CollapsedBranches.Branch branch, int count) {
+      FamilyMemberPanel root = DisplayPanel.this.panels.get(rootId);
+      Rectangle r = root.getBounds();
+      String format = I18n.getLocalizedString("label.collapsed_" + branch.name().toLowerCase() + ".text");
+      int width;
+      int y;
+
+      this.rootId = rootId;
+      this.branch = branch;
+      this.text = String.format(format, NumberFormat.getIntegerInstance().format(count));
+      width = getFontMetrics(root.getTextFont()).stringWidth(this.text) + 2 * SUMMARY_PADDING;
+      if (branch == CollapsedBranches.Branch.DESCENDANTS)
+        y = r.y + r.height + SUMMARY_GAP;
+      else
+        y = r.y - SUMMARY_GAP - r.height;
+      this.bounds = new Rectangle((int) r.getCenterX() - width / 2, y, width, r.height);
+    }
+
+    long getRootId() {
+      return this.rootId;
+    }
+
+    CollapsedBranches.Branch getBranch() {
+      return this.branch;
+    }
+
+    String getText() {
+      return this.text;
+    }
+
+    Rectangle getBounds() {
+      return new Rectangle(this.bounds);
+    }
+
+    /**
+     * @return the area covered by the card and its line to the root card
+     */
+    Rectangle getFullBounds() {
+      Rectangle r = getBounds();
+
+      r.add(getCenter(this.rootId));
+      r.grow(HOVER_DISTANCE, HOVER_DISTANCE);
+
+      return r;
+    }
+  }
+
   /**
    * This class represents a link between two cards.
    *
@@ -587,6 +1633,13 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
       return this.parent2;
     }
 
+    /**
+     * @return the key of this link
+     */
+    public LinkKey getKey() {
+      return new LinkKey(this.parent1, this.parent2);
+    }
+
     public Map<Long, Boolean> getChildren() {
       return this.children;
     }
@@ -19,11 +19,11 @@
 package net.darmo_creations.jenealogio.gui.components.display_panel;
 
 import java.awt.Point;
-import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import net.darmo_creations.gui_framework.ApplicationRegistry;
 import net.darmo_creations.jenealogio.events.CardDragEvent;
@@ -31,19 +31,26 @@ import net.darmo_creations.jenealogio.events.CardEvent;
 import net.darmo_creations.jenealogio.gui.components.FamilyMemberPanel;
 
 /**
- * This controller handles dragging events inside the DisplayPanel.
+ * This controller handles dragging events inside the DisplayPanel. Mouse moves are coalesced: the
+ * card is moved at most once per frame, to the last position of the mouse.
  * 
  * @author Damien Vergnet
  */
 class DragController extends MouseAdapter {
   /** Grid size in pixels */
   static final int GRID_STEP = 10;
+  /** Minimum delay between two moves of the card, in milliseconds (about 60 frames per second). */
+  private static final int FRAME_DELAY = 16;
 
   private DisplayPanel displayPanel;
   private FamilyMemberPanel memberPanel;
   /** The point where the mouse grabbed in the panel. */
   private Point grabPoint;
   private boolean dragging;
+  /** The location the card has to be moved to at the next frame, if any. */
+  private Point pendingLocation;
+  /** Moves the card at the next frame; created on the first drag. */
+  private Timer frameTimer;
 
   /**
    * Creates a controller with the given container and component.
@@ -68,6 +75,9 @@ class DragController extends MouseAdapter {
   @Override
   public void mouseReleased(MouseEvent e) {
     if (this.dragging && SwingUtilities.isLeftMouseButton(e)) {
+      // The last move must be applied before the end of the drag
+      this.frameTimer.stop();
+      flush();
       this.dragging = false;
       ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardDragEvent.Post(this.memberPanel.getMemberId()));
     }
@@ -85,30 +95,47 @@ class DragController extends MouseAdapter {
   @Override
   public void mouseDragged(MouseEvent e) {
     if (SwingUtilities.isLeftMouseButton(e)) {
-      Rectangle bounds = this.memberPanel.getBounds();
-      Rectangle containerBounds = this.displayPanel.getBounds();
       if (this.grabPoint == null)
         mousePressed(e);
-      int newX = Math.max(containerBounds.x,
-          Math.min(containerBounds.width - bounds.width, e.getXOnScreen() - getXOffset() - this.grabPoint.x));
-      int newY = Math.max(containerBounds.y,
-          Math.min(containerBounds.height - bounds.height, e.getYOnScreen() - getYOffset() - this.grabPoint.y));
+      // The canvas grows with the cards, they only have to stay in the positive quarter
+      int newX = Math.max(0, e.getXOnScreen() - getXOffset() - this.grabPoint.x);
+      int newY = Math.max(0, e.getYOnScreen() - getYOffset() - this.grabPoint.y);
       newX = (newX / GRID_STEP) * GRID_STEP;
       newY = (newY / GRID_STEP) * GRID_STEP;
-      Point oldLocation = this.memberPanel.getLocation();
       Point newLocation = new Point(newX, newY);
 
-      if (!oldLocation.equals(newLocation)) {
+      if (!this.memberPanel.getLocation().equals(newLocation) || this.pendingLocation != null) {
         if (!this.dragging) {
           this.dragging = true;
           ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardDragEvent.Pre(this.memberPanel.getMemberId()));
         }
-        this.memberPanel.setLocation(newLocation);
-        ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardDragEvent.Dragging(this.memberPanel.getMemberId(), oldLocation, newLocation));
+        this.pendingLocation = newLocation;
+        if (this.frameTimer == null) {
+          this.frameTimer = new Timer(FRAME_DELAY, ev -> flush());
+          this.frameTimer.setRepeats(false);
+        }
+        if (!this.frameTimer.isRunning())
+          this.frameTimer.start();
       }
     }
   }
 
+  /**
+   * Moves the card to the pending location. The event carries the whole translation since the last
+   * move.
+   */
+  private void flush() {
+    if (this.pendingLocation != null) {
+      Point oldLocation = this.memberPanel.getLocation();
+      Point newLocation = this.pendingLocation;
+
+      this.pendingLocation = null;
+      if (!oldLocation.equals(newLocation))
+        // The display panel moves this card along with the other selected ones
+        ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardDragEvent.Dragging(this.memberPanel.getMemberId(), oldLocation, newLocation));
+    }
+  }
+
   /**
    * @return the onscreen x offset
    */
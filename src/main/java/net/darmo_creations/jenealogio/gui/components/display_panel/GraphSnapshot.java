@@ -0,0 +1,426 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable copy of everything needed to paint the static part of the graph: links and, when
+ * zoomed out, cards. Being immutable, it can be painted from any thread. Shapes are indexed on a
+ * coarse grid so that painting a small area only goes through the shapes near it. When a few shapes
+ * change, {@link #update} returns a new snapshot that shares all untouched cells with this one.
+ *
+ * @author Damien Vergnet
+ */
+final class GraphSnapshot {
+  /** Size of the index cells, in model coordinates. */
+  private static final int CELL_SIZE = 512;
+
+  /** Under this zoom factor, cards are drawn without their label. */
+  static final double LOD_LABELS = 0.5;
+  /** Under this zoom factor, cards are drawn as dots and child links are bundled. */
+  static final double LOD_DOTS = 0.2;
+  /** Size of the dots representing cards at low zoom, in screen pixels. */
+  private static final int DOT_SIZE = 3;
+
+  private final Color linkColor, childColor, adoptedChildColor;
+  private final Map<Long, List<LinkShape>> linksIndex;
+  private final Map<Long, List<CardShape>> cardsIndex;
+
+  /**
+   * Creates a snapshot.
+   * 
+   * @param links the links
+   * @param cards the cards to paint; may be empty if cards are displayed as components
+   * @param linkColor color of the lines between partners
+   * @param childColor color of the lines to children
+   * @param adoptedChildColor color of the lines to adopted children
+   */
+  GraphSnapshot(Collection<LinkShape> links, Collection<CardShape> cards, Color linkColor, Color childColor, Color adoptedChildColor) {
+    this.linkColor = linkColor;
+    this.childColor = childColor;
+    this.adoptedChildColor = adoptedChildColor;
+    this.linksIndex = new HashMap<>();
+    this.cardsIndex = new HashMap<>();
+    links.forEach(link -> index(this.linksIndex, link, link.getBounds()));
+    cards.forEach(card -> index(this.cardsIndex, card, card.getBounds()));
+  }
+
+  private GraphSnapshot(GraphSnapshot snapshot, Map<Long, List<LinkShape>> linksIndex, Map<Long, List<CardShape>> cardsIndex) {
+    this.linkColor = snapshot.linkColor;
+    this.childColor = snapshot.childColor;
+    this.adoptedChildColor = snapshot.adoptedChildColor;
+    this.linksIndex = linksIndex;
+    this.cardsIndex = cardsIndex;
+  }
+
+  /**
+   * Returns a copy of this snapshot where the shapes with the given keys are replaced by new ones.
+   * Only the cells covering the given area are copied; the others are shared with this snapshot.
+   * 
+   * @param area an area covering the bounds of the replaced shapes in this snapshot
+   * @param keys the keys of the shapes to remove
+   * @param links the links to add
+   * @param cards the cards to add
+   * @return the updated snapshot
+   */
+  GraphSnapshot update(Rectangle area, Set<?> keys, Collection<LinkShape> links, Collection<CardShape> cards) {
+    return new GraphSnapshot(this, update(this.linksIndex, area, keys, links), update(this.cardsIndex, area, keys, cards));
+  }
+
+  private static <T extends Element> Map<Long, List<T>> update(Map<Long, List<T>> index, Rectangle area, Set<?> keys,
+      Collection<T> shapes) {
+    Map<Long, List<T>> copy = new HashMap<>(index);
+    // Cells whose list has already been copied and can be modified
+    Set<Long> copied = new HashSet<>();
+
+    forEachCell(area, cell -> {
+      List<T> list = copy.get(cell);
+
+      if (list != null && list.stream().anyMatch(shape -> keys.contains(shape.getKey()))) {
+        List<T> kept = new ArrayList<>(list.size());
+
+        list.stream().filter(shape -> !keys.contains(shape.getKey())).forEach(kept::add);
+        if (kept.isEmpty())
+          copy.remove(cell);
+        else {
+          copy.put(cell, kept);
+          copied.add(cell);
+        }
+      }
+    });
+    shapes.forEach(shape -> forEachCell(shape.getBounds(), cell -> {
+      List<T> list = copy.get(cell);
+
+      if (list == null || !copied.contains(cell)) {
+        list = list == null ? new ArrayList<>() : new ArrayList<>(list);
+        copy.put(cell, list);
+        copied.add(cell);
+      }
+      list.add(shape);
+    }));
+
+    return copy;
+  }
+
+  /**
+   * Paints all shapes crossing the given area.
+   * 
+   * @param g2d the graphics object, in model coordinates
+   * @param area the area to paint, in model coordinates
+   * @param zoom the zoom factor of the graphics object
+   */
+  void paint(Graphics2D g2d, Rectangle area, double zoom) {
+    query(this.linksIndex, area).stream().filter(link -> link.getBounds().intersects(area)).forEach(
+        link -> paintLink(g2d, link, this.linkColor, this.childColor, this.adoptedChildColor, true, zoom));
+    query(this.cardsIndex, area).stream().filter(card -> card.getBounds().intersects(area)).forEach(
+        card -> paintCard(g2d, card, zoom));
+  }
+
+  /**
+   * Paints a link. Lines are at least one pixel wide on screen whatever the zoom. Under a zoom of
+   * {@link #LOD_DOTS}, the lines to the children are bundled into a single bracket above them.
+   * 
+   * @param g2d the graphics object, in model coordinates
+   * @param link the link to paint
+   * @param color the color of the line between the two partners
+   * @param childColor the color of the lines to the children
+   * @param adoptedChildColor the color of the lines to the adopted children
+   * @param withChildren if true, the lines to the children are painted too
+   * @param zoom the zoom factor of the graphics object
+   */
+  static void paintLink(Graphics2D g2d, LinkShape link, Color color, Color childColor, Color adoptedChildColor, boolean withChildren,
+      double zoom) {
+    final float width = (float) Math.max(link.isWedding() ? 2 : 1, 1 / zoom);
+    if (link.hasEnded())
+      g2d.setStroke(new BasicStroke(width, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{9}, 0));
+    else
+      g2d.setStroke(new BasicStroke(width));
+
+    // Link between parents
+    Point p1 = link.getPartner1();
+    Point p2 = link.getPartner2();
+    Point middle = new Point((p1.x + p2.x) / 2, (p1.y + p2.y) / 2);
+
+    g2d.setColor(color);
+    g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
+
+    if (withChildren && zoom < LOD_DOTS) {
+      if (link.getChildrenCount() > 0) {
+        Rectangle children = new Rectangle(middle);
+        for (int i = 0; i < link.getChildrenCount(); i++)
+          children.add(link.getChild(i));
+        int busY = (middle.y + children.y) / 2;
+
+        g2d.setStroke(new BasicStroke(width));
+        g2d.setColor(childColor);
+        g2d.drawLine(middle.x, middle.y, middle.x, busY);
+        g2d.drawLine(children.x, busY, children.x + children.width, busY);
+      }
+    }
+    else if (withChildren) {
+      g2d.setStroke(new BasicStroke(width));
+      // Links to children
+      for (int i = 0; i < link.getChildrenCount(); i++) {
+        Point p = link.getChild(i);
+
+        g2d.setColor(link.isAdopted(i) ? adoptedChildColor : childColor);
+        g2d.drawLine(middle.x, middle.y, p.x, p.y);
+      }
+    }
+  }
+
+  /**
+   * Paints a card when zoomed out. Depending on the zoom, the card is painted as a rectangle with
+   * its label, a plain rectangle or a dot.
+   * 
+   * @param g2d the graphics object, in model coordinates
+   * @param card the card
+   * @param zoom the zoom factor of the graphics object
+   */
+  private static void paintCard(Graphics2D g2d, CardShape card, double zoom) {
+    Rectangle r = card.getBounds();
+
+    g2d.setColor(card.getBackground());
+    if (zoom < LOD_DOTS) {
+      int size = (int) Math.ceil(DOT_SIZE / zoom);
+      g2d.fillRect((int) r.getCenterX() - size / 2, (int) r.getCenterY() - size / 2, size, size);
+    }
+    else {
+      g2d.fillRect(r.x, r.y, r.width, r.height);
+      g2d.setColor(card.getBorder());
+      g2d.setStroke(new BasicStroke(2));
+      g2d.drawRect(r.x + 1, r.y + 1, r.width - 2, r.height - 2);
+
+      if (zoom >= LOD_LABELS) {
+        FontMetrics metrics = g2d.getFontMetrics(card.getFont());
+        String text = card.getText();
+
+        g2d.setFont(card.getFont());
+        g2d.setColor(card.getForeground());
+        g2d.drawString(text, (int) r.getCenterX() - metrics.stringWidth(text) / 2,
+            (int) r.getCenterY() + (metrics.getAscent() - metrics.getDescent()) / 2);
+      }
+    }
+  }
+
+  /**
+   * Adds a shape to all the cells its bounds cover.
+   */
+  private static <T> void index(Map<Long, List<T>> index, T shape, Rectangle bounds) {
+    forEachCell(bounds, cell -> index.computeIfAbsent(cell, c -> new ArrayList<>()).add(shape));
+  }
+
+  /**
+   * Returns all shapes in the cells the given area covers. Each shape is returned once.
+   */
+  private static <T> Collection<T> query(Map<Long, List<T>> index, Rectangle area) {
+    Set<T> shapes = Collections.newSetFromMap(new IdentityHashMap<>());
+    forEachCell(area, cell -> shapes.addAll(index.getOrDefault(cell, Collections.emptyList())));
+    return shapes;
+  }
+
+  private static void forEachCell(Rectangle r, CellConsumer consumer) {
+    int x1 = Math.floorDiv(r.x, CELL_SIZE), x2 = Math.floorDiv(r.x + r.width, CELL_SIZE);
+    int y1 = Math.floorDiv(r.y, CELL_SIZE), y2 = Math.floorDiv(r.y + r.height, CELL_SIZE);
+
+    for (int x = x1; x <= x2; x++)
+      for (int y = y1; y <= y2; y++)
+        consumer.accept(((long) x << 32) | (y & 0xffffffffL));
+  }
+
+  @FunctionalInterface
+  private interface CellConsumer {
+    void accept(long cell);
+  }
+
+  /**
+   * A shape of the snapshot. Shapes are identified by a key so that they can be replaced.
+   *
+   * @author Damien Vergnet
+   */
+  interface Element {
+    /**
+     * @return the key of the card or link this shape belongs to
+     */
+    Object getKey();
+
+    /**
+     * @return the area covered by this shape
+     */
+    Rectangle getBounds();
+  }
+
+  /**
+   * The geometry of a link. Points are the centers of the cards.
+   *
+   * @author Damien Vergnet
+   */
+  static final class LinkShape implements Element {
+    private final Object key;
+    private final Point partner1, partner2;
+    private final Point[] children;
+    private final boolean[] adopted;
+    private final boolean wedding, ended;
+    private final Rectangle bounds;
+
+    /**
+     * Creates a link shape.
+     * 
+     * @param key the key of the link
+     * @param partner1 center of the first partner
+     * @param partner2 center of the second partner
+     * @param children centers of the children
+     * @param adopted for each child, true if adopted
+     * @param wedding true for a wedding
+     * @param ended true if the relationship has ended
+     * @param bounds the area covered by the link and its children lines
+     */
+    LinkShape(Object key, Point partner1, Point partner2, Point[] children, boolean[] adopted, boolean wedding, boolean ended,
+        Rectangle bounds) {
+      this.key = key;
+      this.partner1 = new Point(partner1);
+      this.partner2 = new Point(partner2);
+      this.children = new Point[children.length];
+      for (int i = 0; i < children.length; i++)
+        this.children[i] = new Point(children[i]);
+      this.adopted = adopted.clone();
+      this.wedding = wedding;
+      this.ended = ended;
+      this.bounds = new Rectangle(bounds);
+    }
+
+    Point getPartner1() {
+      return new Point(this.partner1);
+    }
+
+    Point getPartner2() {
+      return new Point(this.partner2);
+    }
+
+    int getChildrenCount() {
+      return this.children.length;
+    }
+
+    Point getChild(int i) {
+      return new Point(this.children[i]);
+    }
+
+    boolean isAdopted(int i) {
+      return this.adopted[i];
+    }
+
+    boolean isWedding() {
+      return this.wedding;
+    }
+
+    boolean hasEnded() {
+      return this.ended;
+    }
+
+    @Override
+    public Object getKey() {
+      return this.key;
+    }
+
+    @Override
+    public Rectangle getBounds() {
+      return new Rectangle(this.bounds);
+    }
+  }
+
+  /**
+   * The appearance of a card painted by the panel.
+   *
+   * @author Damien Vergnet
+   */
+  static final class CardShape implements Element {
+    private final Object key;
+    private final Rectangle bounds;
+    private final Color background, border, foreground;
+    private final String text;
+    private final Font font;
+
+    /**
+     * Creates a card shape.
+     * 
+     * @param key the key of the card
+     * @param bounds card's bounds
+     * @param background background color
+     * @param border border color
+     * @param foreground text color
+     * @param text the label
+     * @param font the label's font
+     */
+    CardShape(Object key, Rectangle bounds, Color background, Color border, Color foreground, String text, Font font) {
+      this.key = key;
+      this.bounds = new Rectangle(bounds);
+      this.background = background;
+      this.border = border;
+      this.foreground = foreground;
+      this.text = text;
+      this.font = font;
+    }
+
+    @Override
+    public Object getKey() {
+      return this.key;
+    }
+
+    @Override
+    public Rectangle getBounds() {
+      return new Rectangle(this.bounds);
+    }
+
+    Color getBackground() {
+      return this.background;
+    }
+
+    Color getBorder() {
+      return this.border;
+    }
+
+    Color getForeground() {
+      return this.foreground;
+    }
+
+    String getText() {
+      return this.text;
+    }
+
+    Font getFont() {
+      return this.font;
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Collection;
+
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+
+/**
+ * This component shows the whole tree at a small scale with the area currently visible in the
+ * display panel. Clicking or dragging in it scrolls the display panel.
+ * <p>
+ * Cards are drawn from their bounds into a cached low-resolution image. The image keeps, for each
+ * pixel, the number of cards covering it; moving cards only updates the pixels they covered and
+ * now cover, the image is never fully redrawn unless the size of the canvas or of this component
+ * changes.
+ *
+ * @author Damien Vergnet
+ */
+public class Minimap extends JComponent {
+  private static final long serialVersionUID = -2418056914367925521L;
+
+  /** Preferred size of the minimap. */
+  private static final Dimension SIZE = new Dimension(200, 150);
+
+  private final DisplayPanel display;
+  private BufferedImage image;
+  /** Pixels of the image. */
+  private int[] pixels;
+  /** Number of cards covering each pixel. */
+  private int[] coverage;
+  /** Model size represented by the image. */
+  private Dimension world;
+  /** Number of pixels per model unit. */
+  private double scale;
+  private Color background, foreground;
+
+  /**
+   * Creates a minimap for the given display panel.
+   * 
+   * @param display the display panel
+   */
+  Minimap(DisplayPanel display) {
+    this.display = display;
+    this.world = new Dimension();
+    this.background = display.getBackground();
+    this.foreground = Color.GRAY;
+    setPreferredSize(SIZE);
+    setBorder(BorderFactory.createEtchedBorder());
+
+    MouseAdapter mouseAdapter = new MouseAdapter() {
+      @Override
+      public void mousePressed(MouseEvent e) {
+        if (SwingUtilities.isLeftMouseButton(e))
+          centerOn(e.getPoint());
+      }
+
+      @Override
+      public void mouseDragged(MouseEvent e) {
+        if (SwingUtilities.isLeftMouseButton(e))
+          centerOn(e.getPoint());
+      }
+    };
+    addMouseListener(mouseAdapter);
+    addMouseMotionListener(mouseAdapter);
+    addComponentListener(new ComponentAdapter() {
+      @Override
+      public void componentResized(ComponentEvent e) {
+        rebuild();
+      }
+    });
+    display.getViewport().addChangeListener(e -> repaint());
+  }
+
+  /**
+   * Sets the colors of the minimap. They are used from the next call to {@link #rebuild()}.
+   * 
+   * @param background the background
+   * @param foreground the color of the cards
+   */
+  void setColors(Color background, Color foreground) {
+    this.background = background;
+    this.foreground = foreground;
+  }
+
+  /**
+   * Redraws the whole image if the size of the canvas changed since the last drawing.
+   */
+  void canvasChanged() {
+    if (!this.display.getModelSize().equals(this.world))
+      rebuild();
+  }
+
+  /**
+   * Redraws the whole image from the bounds of all cards.
+   */
+  void rebuild() {
+    Rectangle area = getImageArea();
+
+    this.world = this.display.getModelSize();
+    if (area.isEmpty() || this.world.width <= 0 || this.world.height <= 0) {
+      this.image = null;
+      repaint();
+      return;
+    }
+
+    this.scale = Math.min((double) area.width / this.world.width, (double) area.height / this.world.height);
+    int width = Math.max(1, (int) Math.ceil(this.world.width * this.scale));
+    int height = Math.max(1, (int) Math.ceil(this.world.height * this.scale));
+    this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    this.pixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+    this.coverage = new int[width * height];
+    Arrays.fill(this.pixels, this.background.getRGB());
+    this.display.getCardsBounds().forEach(r -> cover(r, 1));
+    repaint();
+  }
+
+  /**
+   * Updates the image after some cards moved, appeared, disappeared or changed size. Only the
+   * pixels covered by these cards are updated.
+   * 
+   * @param oldBounds the previous bounds of the cards, in model coordinates
+   * @param newBounds the new bounds of the cards, in model coordinates
+   */
+  void cardsChanged(Collection<Rectangle> oldBounds, Collection<Rectangle> newBounds) {
+    if (!this.display.getModelSize().equals(this.world)) {
+      rebuild();
+      return;
+    }
+    if (this.image == null)
+      return;
+
+    oldBounds.forEach(r -> cover(r, -1));
+    newBounds.forEach(r -> cover(r, 1));
+    repaint();
+  }
+
+  /**
+   * Adds a card to or removes a card from the coverage of the pixels it covers and updates these
+   * pixels. Cards are at least one pixel wide and high.
+   * 
+   * @param bounds the card's bounds, in model coordinates
+   * @param delta 1 to add the card, -1 to remove it
+   */
+  private void cover(Rectangle bounds, int delta) {
+    int width = this.image.getWidth(), height = this.image.getHeight();
+    int x1 = Math.max(0, (int) (bounds.x * this.scale)), y1 = Math.max(0, (int) (bounds.y * this.scale));
+    int x2 = Math.min(width, Math.max(x1 + 1, (int) Math.ceil((bounds.x + bounds.width) * this.scale)));
+    int y2 = Math.min(height, Math.max(y1 + 1, (int) Math.ceil((bounds.y + bounds.height) * this.scale)));
+    int bg = this.background.getRGB(), fg = this.foreground.getRGB();
+
+    for (int y = y1; y < y2; y++) {
+      for (int x = x1; x < x2; x++) {
+        int i = y * width + x;
+        this.coverage[i] = Math.max(0, this.coverage[i] + delta);
+        this.pixels[i] = this.coverage[i] > 0 ? fg : bg;
+      }
+    }
+  }
+
+  /**
+   * Scrolls the display panel so that the given point of the minimap is at the center of the
+   * visible area.
+   * 
+   * @param p the point, in this component's coordinates
+   */
+  private void centerOn(Point p) {
+    if (this.image == null)
+      return;
+
+    Rectangle area = getImageArea();
+    double zoom = this.display.getZoom();
+    JViewport viewport = this.display.getViewport();
+    Dimension extent = viewport.getExtentSize();
+    Dimension view = viewport.getViewSize();
+    int x = (int) ((p.x - area.x) / this.scale * zoom) - extent.width / 2;
+    int y = (int) ((p.y - area.y) / this.scale * zoom) - extent.height / 2;
+
+    x = Math.max(0, Math.min(x, view.width - extent.width));
+    y = Math.max(0, Math.min(y, view.height - extent.height));
+    viewport.setViewPosition(new Point(x, y));
+  }
+
+  /**
+   * @return the area available for the image, inside the border
+   */
+  private Rectangle getImageArea() {
+    return SwingUtilities.calculateInnerArea(this, null);
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    Rectangle area = getImageArea();
+
+    g.setColor(this.background);
+    g.fillRect(area.x, area.y, area.width, area.height);
+    if (this.image == null)
+      return;
+    g.drawImage(this.image, area.x, area.y, null);
+
+    // Visible area
+    Rectangle visible = this.display.getViewport().getViewRect();
+    double factor = this.scale / this.display.getZoom();
+    int x = area.x + (int) (visible.x * factor), y = area.y + (int) (visible.y * factor);
+    int width = Math.max(2, (int) (visible.width * factor)), height = Math.max(2, (int) (visible.height * factor));
+
+    g.setColor(new Color(this.foreground.getRed(), this.foreground.getGreen(), this.foreground.getBlue(), 48));
+    g.fillRect(x, y, width, height);
+    g.setColor(this.foreground);
+    g.drawRect(x, y, width - 1, height - 1);
+  }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * This class renders the static part of the graph as fixed-size tiles on background threads. Tiles
+ * are rendered from an immutable {@link GraphSnapshot} and kept in a cache bounded by bytes. All
+ * methods must be called from the event dispatch thread; rendered tiles are handed back on it.
+ * <p>
+ * Tiles are rendered at discrete zoom levels, one per notch of the mouse wheel. At any other zoom,
+ * the tiles of the nearest level are slightly scaled when painted, so that tiles can be reused
+ * when zooming back and forth.
+ *
+ * @author Damien Vergnet
+ */
+class TileRenderer {
+  /** Size of the tiles, in screen pixels. */
+  static final int TILE_SIZE = 256;
+  /** Maximum amount of memory used by the cached tiles (64 MB). */
+  private static final long MAX_CACHE_BYTES = 64L << 20;
+  private static final long TILE_BYTES = TILE_SIZE * TILE_SIZE * 4L;
+  /** Color painted where a tile is not ready yet. */
+  private static final Color PLACEHOLDER_COLOR = new Color(0, 0, 0, 12);
+
+  private static final ExecutorService EXECUTOR;
+
+  static {
+    AtomicInteger count = new AtomicInteger();
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    EXECUTOR = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "tile-renderer-" + count.incrementAndGet());
+      t.setDaemon(true);
+      t.setPriority(Thread.NORM_PRIORITY - 1);
+      return t;
+    });
+  }
+
+  private final Supplier<GraphSnapshot> snapshotSupplier;
+  private final Consumer<Rectangle> repaintCallback;
+  /** Tiles in access order, the eldest are evicted first. */
+  private final LinkedHashMap<TileKey, Tile> tiles;
+  private GraphSnapshot snapshot;
+  /** The zoom level and the scale of the tiles during the last paint. */
+  private int level;
+  private double scale;
+
+  /**
+   * Creates a renderer.
+   * 
+   * @param snapshotSupplier called on the EDT to get a new snapshot after an invalidation
+   * @param repaintCallback called on the EDT with the area of the screen to repaint when a tile is
+   *          ready
+   */
+  TileRenderer(Supplier<GraphSnapshot> snapshotSupplier, Consumer<Rectangle> repaintCallback) {
+    this.snapshotSupplier = snapshotSupplier;
+    this.repaintCallback = repaintCallback;
+    this.tiles = new LinkedHashMap<>(16, 0.75f, true);
+    this.snapshot = null;
+    this.level = 0;
+    this.scale = 1;
+  }
+
+  /**
+   * Returns the zoom level closest to the given zoom factor.
+   * 
+   * @param zoom the zoom factor
+   * @return the level; the zoom factor of level n is {@code ZOOM_STEP^n}
+   */
+  static int getLevel(double zoom) {
+    return (int) Math.round(Math.log(zoom) / Math.log(DisplayController.ZOOM_STEP));
+  }
+
+  /**
+   * Returns the zoom factor of a level.
+   * 
+   * @param level the level
+   * @return the zoom factor
+   */
+  static double getLevelZoom(int level) {
+    return Math.pow(DisplayController.ZOOM_STEP, level);
+  }
+
+  /**
+   * Paints the tiles covering the visible area. Missing or outdated tiles are scheduled for
+   * rendering. Outdated tiles are still painted until they are replaced; a placeholder is painted
+   * where no tile is available yet.
+   * 
+   * @param g2d the graphics object, in screen coordinates
+   * @param visible the visible area
+   * @param zoom the current zoom factor
+   */
+  void paint(Graphics2D g2d, Rectangle visible, double zoom) {
+    Set<TileKey> wanted = new HashSet<>();
+    int level = getLevel(zoom);
+    double scale = zoom / getLevelZoom(level);
+    // Rounding errors of the zoom factor are ignored, tiles are then painted as is
+    boolean scaled = Math.abs(scale - 1) > 1e-9;
+    Rectangle area = scaled ? scale(visible, 1 / scale) : visible;
+    int x1 = Math.floorDiv(area.x, TILE_SIZE), x2 = Math.floorDiv(area.x + area.width - 1, TILE_SIZE);
+    int y1 = Math.floorDiv(area.y, TILE_SIZE), y2 = Math.floorDiv(area.y + area.height - 1, TILE_SIZE);
+    Graphics2D g = (Graphics2D) g2d.create();
+
+    this.level = level;
+    this.scale = scaled ? scale : 1;
+    if (scaled) {
+      g.scale(scale, scale);
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    }
+    for (int x = x1; x <= x2; x++) {
+      for (int y = y1; y <= y2; y++) {
+        TileKey key = new TileKey(level, x, y);
+        Tile tile = getTile(key);
+
+        wanted.add(key);
+        if (tile.image != null)
+          g.drawImage(tile.image, x * TILE_SIZE, y * TILE_SIZE, null);
+        else {
+          g.setColor(PLACEHOLDER_COLOR);
+          g.fillRect(x * TILE_SIZE, y * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        }
+      }
+    }
+    g.dispose();
+    // Tiles around the visible area are prepared after the visible ones
+    for (int x = x1 - 1; x <= x2 + 1; x++) {
+      for (int y = y1 - 1; y <= y2 + 1; y++) {
+        TileKey key = new TileKey(level, x, y);
+        if (wanted.add(key))
+          getTile(key);
+      }
+    }
+
+    // Tasks for tiles out of sight (scrolled away or previous zoom) are not worth running anymore
+    this.tiles.forEach((key, tile) -> {
+      if (tile.pending != null && !wanted.contains(key)) {
+        tile.pending.cancel(false);
+        tile.pending = null;
+      }
+    });
+    evict(wanted);
+  }
+
+  /**
+   * Returns the tile for the given key and schedules its rendering if needed.
+   */
+  private Tile getTile(TileKey key) {
+    Tile tile = this.tiles.computeIfAbsent(key, k -> new Tile());
+
+    if (!tile.valid && tile.pending == null)
+      schedule(key, tile);
+
+    return tile;
+  }
+
+  /**
+   * Schedules the rendering of a tile.
+   */
+  private void schedule(TileKey key, Tile tile) {
+    if (this.snapshot == null)
+      this.snapshot = this.snapshotSupplier.get();
+
+    final GraphSnapshot snapshot = this.snapshot;
+    final int version = tile.version;
+
+    tile.pending = EXECUTOR.submit(() -> {
+      BufferedImage image = render(snapshot, key);
+
+      SwingUtilities.invokeLater(() -> {
+        // The tile may have been evicted or invalidated in the meantime
+        if (this.tiles.get(key) == tile && tile.version == version) {
+          tile.image = image;
+          tile.valid = true;
+          tile.pending = null;
+          if (key.level == this.level)
+            this.repaintCallback.accept(scale(key.getViewBounds(), this.scale));
+        }
+      });
+    });
+  }
+
+  /**
+   * Renders a tile. Called from a worker thread.
+   */
+  private static BufferedImage render(GraphSnapshot snapshot, TileKey key) {
+    BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g.translate(-key.x * TILE_SIZE, -key.y * TILE_SIZE);
+    g.scale(key.getZoom(), key.getZoom());
+    snapshot.paint(g, key.getModelBounds(), key.getZoom());
+    g.dispose();
+
+    return image;
+  }
+
+  /**
+   * Removes the least recently used tiles until the cache fits in its memory budget. Tiles in use
+   * are kept.
+   */
+  private void evict(Set<TileKey> inUse) {
+    long bytes = this.tiles.size() * TILE_BYTES;
+    Iterator<Map.Entry<TileKey, Tile>> it = this.tiles.entrySet().iterator();
+
+    while (bytes > MAX_CACHE_BYTES && it.hasNext()) {
+      Map.Entry<TileKey, Tile> e = it.next();
+      if (!inUse.contains(e.getKey())) {
+        if (e.getValue().pending != null)
+          e.getValue().pending.cancel(false);
+        it.remove();
+        bytes -= TILE_BYTES;
+      }
+    }
+  }
+
+  /**
+   * Marks all tiles as outdated.
+   */
+  void invalidate() {
+    this.snapshot = null;
+    this.tiles.values().forEach(this::invalidate);
+  }
+
+  /**
+   * Marks all tiles crossing the given area as outdated, at every zoom level. The current snapshot
+   * is updated instead of being created again.
+   * 
+   * @param region the area, in model coordinates
+   * @param update returns the snapshot updated with the changes inside the area
+   */
+  void invalidate(Rectangle region, UnaryOperator<GraphSnapshot> update) {
+    if (this.snapshot != null)
+      this.snapshot = update.apply(this.snapshot);
+    this.tiles.forEach((key, tile) -> {
+      if (key.getModelBounds().intersects(region))
+        invalidate(tile);
+    });
+  }
+
+  /**
+   * Scales an area, rounding outwards.
+   */
+  private static Rectangle scale(Rectangle r, double scale) {
+    int x1 = (int) Math.floor(r.x * scale), y1 = (int) Math.floor(r.y * scale);
+    int x2 = (int) Math.ceil((r.x + r.width) * scale), y2 = (int) Math.ceil((r.y + r.height) * scale);
+    return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+  }
+
+  private void invalidate(Tile tile) {
+    tile.valid = false;
+    tile.version++;
+    if (tile.pending != null) {
+      tile.pending.cancel(false);
+      tile.pending = null;
+    }
+  }
+
+  /**
+   * A cached tile. The image is kept when invalidated until a new one is ready.
+   *
+   * @author Damien Vergnet
+   */
+  private static class Tile {
+    BufferedImage image;
+    boolean valid;
+    /** Incremented on each invalidation to discard renderings of older versions. */
+    int version;
+    Future<?> pending;
+  }
+
+  /**
+   * Identifies a tile by its zoom level and its position in the tile grid.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class TileKey {
+    private final int level;
+    private final int x, y;
+
+    TileKey(int level, int x, int y) {
+      this.level = level;
+      this.x = x;
+      this.y = y;
+    }
+
+    /**
+     * @return the zoom factor of this tile's level
+     */
+    double getZoom() {
+      return getLevelZoom(this.level);
+    }
+
+    /**
+     * @return the area covered by this tile on screen
+     */
+    Rectangle getViewBounds() {
+      return new Rectangle(this.x * TILE_SIZE, this.y * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+    }
+
+    /**
+     * @return the area covered by this tile in the model, rounded outwards
+     */
+    Rectangle getModelBounds() {
+      double zoom = getZoom();
+      int x1 = (int) Math.floor(this.x * TILE_SIZE / zoom), y1 = (int) Math.floor(this.y * TILE_SIZE / zoom);
+      int x2 = (int) Math.ceil((this.x + 1) * TILE_SIZE / zoom), y2 = (int) Math.ceil((this.y + 1) * TILE_SIZE / zoom);
+      return new Rectangle(x1 - 1, y1 - 1, x2 - x1 + 2, y2 - y1 + 2);
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+
+      result = prime * result + this.level;
+      result = prime * result + this.x;
+      result = prime * result + this.y;
+
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof TileKey) {
+        TileKey k = (TileKey) o;
+        return k.level == this.level && k.x == this.x && k.y == this.y;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.dialog;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+
+import net.darmo_creations.gui_framework.ApplicationRegistry;
+import net.darmo_creations.jenealogio.events.DuplicateEvent;
+import net.darmo_creations.jenealogio.gui.MainFrame;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.search.DuplicateDetector;
+import net.darmo_creations.jenealogio.util.Images;
+import net.darmo_creations.utils.I18n;
+import net.darmo_creations.utils.swing.dialog.AbstractDialog;
+import net.darmo_creations.utils.swing.dialog.DefaultDialogController;
+
+/**
+ * This dialog lists the pairs of members that may be the same person. It is not modal so that the
+ * user can fix the tree while reviewing the list; selecting a pair shows it in the tree.
+ *
+ * @author Damien Vergnet
+ */
+public class DuplicatesDialog extends AbstractDialog {
+  private static final long serialVersionUID = -2457183569914837042L;
+
+  private JLabel countLbl;
+  private JList<String> list;
+  private long[][] pairs;
+
+  /**
+   * Creates a dialog.
+   * 
+   * @param owner the owner
+   */
+  public DuplicatesDialog(MainFrame owner) {
+    super(owner, Mode.CLOSE_OPTION, false);
+    setIconImage(Images.JENEALOGIO.getImage());
+    setTitle(I18n.getLocalizedString("dialog.duplicates.title"));
+    this.pairs = new long[0][];
+
+    this.countLbl = new JLabel();
+    this.countLbl.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+    add(this.countLbl, BorderLayout.NORTH);
+    this.list = new JList<>(new DefaultListModel<>());
+    this.list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    this.list.addListSelectionListener(e -> {
+      int index = this.list.getSelectedIndex();
+      if (!e.getValueIsAdjusting() && index >= 0)
+        ApplicationRegistry.EVENTS_BUS.dispatchEvent(new DuplicateEvent(this.pairs[index][0], this.pairs[index][1]));
+    });
+    JScrollPane scroll = new JScrollPane(this.list);
+    scroll.setPreferredSize(new Dimension(450, 300));
+    add(scroll, BorderLayout.CENTER);
+
+    setActionListener(new DefaultDialogController<>(this));
+
+    pack();
+    setLocationRelativeTo(owner);
+  }
+
+  /**
+   * Sets the displayed pairs.
+   * 
+   * @param duplicates the pairs, the most likely first
+   * @param family the tree the pairs belong to
+   */
+  public void setDuplicates(List<DuplicateDetector.Duplicate> duplicates, Family family) {
+    DefaultListModel<String> model = new DefaultListModel<>();
+    String format = I18n.getLocalizedString("label.duplicate.text");
+
+    this.pairs = new long[duplicates.size()][];
+    for (int i = 0; i < this.pairs.length; i++) {
+      DuplicateDetector.Duplicate d = duplicates.get(i);
+
+      this.pairs[i] = new long[]{d.getMemberId1(), d.getMemberId2()};
+      model.addElement(String.format(format, name(family, d.getMemberId1()), name(family, d.getMemberId2()),
+          Math.round(d.getScore() * 100)));
+    }
+    // Replacing the model at once avoids firing an event for each element
+    this.list.setModel(model);
+    this.countLbl.setText(String.format(I18n.getLocalizedString("label.duplicates_count.text"), this.pairs.length));
+  }
+
+  private static String name(Family family, long id) {
+    return family.getMember(id).map(Object::toString).orElse("?");
+  }
+}
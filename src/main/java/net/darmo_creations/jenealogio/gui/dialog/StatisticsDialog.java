@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.dialog;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.function.ToIntFunction;
+
+import javax.swing.JEditorPane;
+import javax.swing.JScrollPane;
+
+import net.darmo_creations.jenealogio.gui.MainFrame;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Statistics;
+import net.darmo_creations.jenealogio.util.Images;
+import net.darmo_creations.utils.I18n;
+import net.darmo_creations.utils.swing.dialog.AbstractDialog;
+import net.darmo_creations.utils.swing.dialog.DefaultDialogController;
+
+/**
+ * This dialog shows the statistics of the current tree.
+ *
+ * @author Damien Vergnet
+ */
+public class StatisticsDialog extends AbstractDialog {
+  private static final long serialVersionUID = 6370874154398302371L;
+
+  private JEditorPane textPane;
+
+  /**
+   * Creates a dialog.
+   * 
+   * @param owner the owner
+   */
+  public StatisticsDialog(MainFrame owner) {
+    super(owner, Mode.CLOSE_OPTION, true);
+    setIconImage(Images.JENEALOGIO.getImage());
+    setTitle(I18n.getLocalizedString("dialog.statistics.title"));
+
+    this.textPane = new JEditorPane("text/html", "");
+    this.textPane.setEditable(false);
+    JScrollPane scroll = new JScrollPane(this.textPane);
+    scroll.setPreferredSize(new Dimension(450, 500));
+    add(scroll, BorderLayout.CENTER);
+
+    setActionListener(new DefaultDialogController<>(this));
+
+    pack();
+    setLocationRelativeTo(owner);
+  }
+
+  /**
+   * Sets the displayed statistics.
+   * 
+   * @param statistics the statistics
+   */
+  public void setStatistics(Statistics statistics) {
+    StringBuilder html = new StringBuilder("<html><body>");
+
+    html.append("<p>").append(format("label.statistics_members.text", statistics.getMembersCount())).append("</p>");
+
+    html.append("<table><tr><th>").append(label("statistics_century")).append("</th><th>").append(label("statistics_men")).append(
+        "</th><th>").append(label("statistics_women")).append("</th><th>").append(label("statistics_unknown_gender")).append("</th></tr>");
+    for (int century = statistics.getFirstCentury(); century <= statistics.getLastCentury(); century++) {
+      int c = century;
+      appendRow(html, (c * 100) + "–" + (c * 100 + 99), g -> statistics.getCount(c, g));
+    }
+    appendRow(html, label("statistics_unknown_century"), statistics::getUnknownCenturyCount);
+    appendRow(html, "", statistics::getCount);
+    html.append("</table>");
+
+    html.append("<p>").append(format("label.statistics_lifespan.text", years(statistics.getAverageLifespan()))).append("<br/>");
+    html.append(format("label.statistics_first_child.text", years(statistics.getAverageAgeAtFirstChild()))).append("<br/>");
+    html.append(format("label.statistics_couples.text", statistics.getCouplesCount(), number(statistics.getAverageChildrenPerCouple())))
+        .append("<br/>");
+    html.append(format("label.statistics_generations.text", statistics.getGenerationsCount())).append("</p>");
+
+    appendList(html, "statistics_family_names", statistics.getMostCommonFamilyNames());
+    appendList(html, "statistics_first_names", statistics.getMostCommonFirstNames());
+    appendList(html, "statistics_locations", statistics.getMostCommonLocations());
+
+    this.textPane.setText(html.append("</body></html>").toString());
+    this.textPane.setCaretPosition(0);
+  }
+
+  private static void appendRow(StringBuilder html, String header, ToIntFunction<Gender> counts) {
+    html.append("<tr><th>").append(header).append("</th>");
+    for (Gender gender : new Gender[]{Gender.MAN, Gender.WOMAN, Gender.UNKNOW})
+      html.append("<td align=\"right\">").append(counts.applyAsInt(gender)).append("</td>");
+    html.append("</tr>");
+  }
+
+  private static void appendList(StringBuilder html, String key, Map<String, Integer> values) {
+    html.append("<p><b>").append(label(key)).append("</b></p><ol>");
+    values.forEach((value, count) -> html.append("<li>").append(escape(value)).append(" (").append(count).append(")</li>"));
+    html.append("</ol>");
+  }
+
+  private static String years(OptionalDouble value) {
+    return value.isPresent() ? number(value) + " " + I18n.getLocalizedString("word.year.plural") : I18n.getLocalizedString("word.unknown");
+  }
+
+  private static String number(OptionalDouble value) {
+    return value.isPresent() ? String.format("%.1f", value.getAsDouble()) : I18n.getLocalizedString("word.unknown");
+  }
+
+  private static String label(String key) {
+    return I18n.getLocalizedString("label." + key + ".text");
+  }
+
+  private static String format(String key, Object... args) {
+    return String.format(I18n.getLocalizedString(key), args);
+  }
+
+  private static String escape(String text) {
+    return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+  }
+}
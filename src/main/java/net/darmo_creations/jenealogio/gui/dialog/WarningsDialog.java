@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.dialog;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+
+import net.darmo_creations.gui_framework.ApplicationRegistry;
+import net.darmo_creations.jenealogio.events.WarningEvent;
+import net.darmo_creations.jenealogio.gui.MainFrame;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.TreeValidator;
+import net.darmo_creations.jenealogio.util.Images;
+import net.darmo_creations.utils.I18n;
+import net.darmo_creations.utils.swing.dialog.AbstractDialog;
+import net.darmo_creations.utils.swing.dialog.DefaultDialogController;
+
+/**
+ * This dialog lists the inconsistencies found in the tree. It is not modal and its list is updated
+ * as the tree is edited; selecting a warning shows the member it is about in the tree.
+ *
+ * @author Damien Vergnet
+ */
+public class WarningsDialog extends AbstractDialog {
+  private static final long serialVersionUID = 2937409815683470172L;
+
+  private JLabel countLbl;
+  private JList<String> list;
+  private long[] members;
+
+  /**
+   * Creates a dialog.
+   * 
+   * @param owner the owner
+   */
+  public WarningsDialog(MainFrame owner) {
+    super(owner, Mode.CLOSE_OPTION, false);
+    setIconImage(Images.JENEALOGIO.getImage());
+    setTitle(I18n.getLocalizedString("dialog.warnings.title"));
+    this.members = new long[0];
+
+    this.countLbl = new JLabel();
+    this.countLbl.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+    add(this.countLbl, BorderLayout.NORTH);
+    this.list = new JList<>(new DefaultListModel<>());
+    this.list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    this.list.addListSelectionListener(e -> {
+      int index = this.list.getSelectedIndex();
+      if (!e.getValueIsAdjusting() && index >= 0)
+        ApplicationRegistry.EVENTS_BUS.dispatchEvent(new WarningEvent(this.members[index]));
+    });
+    JScrollPane scroll = new JScrollPane(this.list);
+    scroll.setPreferredSize(new Dimension(550, 300));
+    add(scroll, BorderLayout.CENTER);
+
+    setActionListener(new DefaultDialogController<>(this));
+
+    pack();
+    setLocationRelativeTo(owner);
+  }
+
+  /**
+   * Sets the displayed warnings.
+   * 
+   * @param warnings the warnings
+   * @param family the tree the warnings are about
+   */
+  public void setWarnings(List<TreeValidator.Warning> warnings, Family family) {
+    DefaultListModel<String> model = new DefaultListModel<>();
+
+    this.members = new long[warnings.size()];
+    for (int i = 0; i < this.members.length; i++) {
+      TreeValidator.Warning w = warnings.get(i);
+
+      this.members[i] = w.getMemberId();
+      model.addElement(String.format(I18n.getLocalizedString(w.getType().getUnlocalizedMessage()), name(family, w.getMemberId()),
+          name(family, w.getOtherMemberId())));
+    }
+    // Replacing the model at once avoids firing an event for each element
+    this.list.setModel(model);
+    this.countLbl.setText(String.format(I18n.getLocalizedString("label.warnings_count.text"), this.members.length));
+  }
+
+  private static String name(Family family, long id) {
+    return family.getMember(id).map(Object::toString).orElse(String.valueOf(id));
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+
+/**
+ * This class holds the branches of a tree the user collapsed. A collapsed branch is identified by
+ * the member it starts from and its direction: all descendants or all ancestors of this member are
+ * then hidden and replaced by a single summary card.
+ *
+ * @author Damien Vergnet
+ */
+public final class CollapsedBranches {
+  /**
+   * The direction of a branch.
+   *
+   * @author Damien Vergnet
+   */
+  public static enum Branch {
+    ANCESTORS,
+    DESCENDANTS;
+  }
+
+  private final Map<Branch, Set<Long>> roots;
+
+  /**
+   * Creates an empty set of collapsed branches.
+   */
+  public CollapsedBranches() {
+    this.roots = new EnumMap<>(Branch.class);
+    for (Branch branch : Branch.values())
+      this.roots.put(branch, new HashSet<>());
+  }
+
+  /**
+   * Creates a copy of the given branches.
+   * 
+   * @param branches the branches to copy
+   */
+  public CollapsedBranches(CollapsedBranches branches) {
+    this();
+    branches.roots.forEach((branch, ids) -> this.roots.get(branch).addAll(ids));
+  }
+
+  /**
+   * @return true if no branches are collapsed
+   */
+  public boolean isEmpty() {
+    return this.roots.values().stream().allMatch(Set::isEmpty);
+  }
+
+  /**
+   * Tells if a branch is collapsed.
+   * 
+   * @param memberId the member the branch starts from
+   * @param branch the direction
+   * @return true if the branch is collapsed
+   */
+  public boolean isCollapsed(long memberId, Branch branch) {
+    return this.roots.get(branch).contains(memberId);
+  }
+
+  /**
+   * Collapses a branch.
+   * 
+   * @param memberId the member the branch starts from
+   * @param branch the direction
+   */
+  public void collapse(long memberId, Branch branch) {
+    this.roots.get(branch).add(memberId);
+  }
+
+  /**
+   * Expands a branch.
+   * 
+   * @param memberId the member the branch starts from
+   * @param branch the direction
+   */
+  public void expand(long memberId, Branch branch) {
+    this.roots.get(branch).remove(memberId);
+  }
+
+  /**
+   * Returns the members whose branch in the given direction is collapsed.
+   * 
+   * @param branch the direction
+   * @return the members' IDs
+   */
+  public Set<Long> getRoots(Branch branch) {
+    return new HashSet<>(this.roots.get(branch));
+  }
+
+  /**
+   * Computes the members hidden by the collapsed branches. Descendants come with the partners that
+   * married into the branch (members with no known parents and whose partners are all hidden).
+   * Parents and children are indexed once, the cost is thus linear in the size of the tree.
+   * 
+   * @param family the tree
+   * @return the hidden members
+   */
+  public HiddenMembers getHiddenMembers(Family family) {
+    Set<Long> hidden = new HashSet<>();
+    Map<Branch, Map<Long, Integer>> counts = new EnumMap<>(Branch.class);
+
+    if (isEmpty()) {
+      for (Branch branch : Branch.values())
+        counts.put(branch, Collections.emptyMap());
+      return new HiddenMembers(hidden, counts);
+    }
+
+    Set<Long> members = family.getAllMembersIds();
+    Map<Long, List<Long>> parents = new HashMap<>(), children = new HashMap<>(), partners = new HashMap<>();
+    for (Relationship r : family.getAllRelations()) {
+      long p1 = r.getPartner1(), p2 = r.getPartner2();
+      partners.computeIfAbsent(p1, k -> new ArrayList<>()).add(p2);
+      partners.computeIfAbsent(p2, k -> new ArrayList<>()).add(p1);
+      for (long child : r.getChildren()) {
+        parents.computeIfAbsent(child, k -> new ArrayList<>()).add(p1);
+        parents.get(child).add(p2);
+        children.computeIfAbsent(p1, k -> new ArrayList<>()).add(child);
+        children.computeIfAbsent(p2, k -> new ArrayList<>()).add(child);
+      }
+    }
+
+    for (Branch branch : Branch.values()) {
+      Map<Long, Integer> branchCounts = new HashMap<>();
+      for (long root : this.roots.get(branch)) {
+        if (!members.contains(root))
+          continue;
+        Set<Long> branchMembers = collect(root, branch == Branch.DESCENDANTS ? children : parents);
+        if (branch == Branch.DESCENDANTS) {
+          // Partners who married into the branch
+          Set<Long> inLaws = new HashSet<>();
+          for (long id : branchMembers)
+            for (long partner : partners.getOrDefault(id, Collections.emptyList()))
+              if (partner != root && !branchMembers.contains(partner) && !parents.containsKey(partner)
+                  && branchMembers.containsAll(partners.get(partner)))
+                inLaws.add(partner);
+          branchMembers.addAll(inLaws);
+        }
+        hidden.addAll(branchMembers);
+        branchCounts.put(root, branchMembers.size());
+      }
+      counts.put(branch, branchCounts);
+    }
+
+    return new HiddenMembers(hidden, counts);
+  }
+
+  /**
+   * Collects all members reachable from a root through the given edges, the root excluded.
+   */
+  private static Set<Long> collect(long root, Map<Long, List<Long>> edges) {
+    Set<Long> visited = new HashSet<>();
+    Deque<Long> queue = new ArrayDeque<>();
+
+    queue.add(root);
+    while (!queue.isEmpty()) {
+      for (long next : edges.getOrDefault(queue.poll(), Collections.emptyList()))
+        if (next != root && visited.add(next))
+          queue.add(next);
+    }
+
+    return visited;
+  }
+
+  @Override
+  public int hashCode() {
+    return this.roots.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    return this.roots.equals(((CollapsedBranches) obj).roots);
+  }
+
+  /**
+   * The members hidden by some collapsed branches.
+   *
+   * @author Damien Vergnet
+   */
+  public static final class HiddenMembers {
+    private final Set<Long> members;
+    private final Map<Branch, Map<Long, Integer>> counts;
+
+    private HiddenMembers(Set<Long> members, Map<Branch, Map<Long, Integer>> counts) {
+      this.members = members;
+      this.counts = counts;
+    }
+
+    /**
+     * Tells if a member is hidden.
+     * 
+     * @param memberId the member's ID
+     * @return true if the member is hidden by at least one branch
+     */
+    public boolean isHidden(long memberId) {
+      return this.members.contains(memberId);
+    }
+
+    /**
+     * Returns the number of members hidden by each collapsed branch in the given direction.
+     * Branches starting from a hidden member are not returned.
+     * 
+     * @param branch the direction
+     * @return the number of hidden members for each branch's root
+     */
+    public Map<Long, Integer> getCounts(Branch branch) {
+      Map<Long, Integer> counts = new HashMap<>(this.counts.get(branch));
+      counts.keySet().removeIf(this::isHidden);
+      return counts;
+    }
+  }
+}
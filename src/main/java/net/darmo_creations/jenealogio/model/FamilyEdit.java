@@ -32,16 +32,29 @@ import net.darmo_creations.jenealogio.model.family.Family;
 public final class FamilyEdit {
   private final Family family;
   private final Map<Long, Point> locations;
+  private final CollapsedBranches collapsedBranches;
 
   /**
-   * Creates an edit.
+   * Creates an edit with no collapsed branches.
    * 
    * @param family the family
    * @param locations locations for all cards
    */
   public FamilyEdit(final Family family, final Map<Long, Point> locations) {
+    this(family, locations, new CollapsedBranches());
+  }
+
+  /**
+   * Creates an edit.
+   * 
+   * @param family the family
+   * @param locations locations for all cards, including the hidden ones
+   * @param collapsedBranches the collapsed branches
+   */
+  public FamilyEdit(final Family family, final Map<Long, Point> locations, final CollapsedBranches collapsedBranches) {
     this.family = family.clone();
     this.locations = new HashMap<>(locations);
+    this.collapsedBranches = new CollapsedBranches(collapsedBranches);
   }
 
   /**
@@ -58,12 +71,20 @@ public final class FamilyEdit {
     return new HashMap<>(this.locations);
   }
 
+  /**
+   * @return the collapsed branches
+   */
+  public CollapsedBranches getCollapsedBranches() {
+    return new CollapsedBranches(this.collapsedBranches);
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
     result = prime * result + ((this.family == null) ? 0 : this.family.hashCode());
     result = prime * result + ((this.locations == null) ? 0 : this.locations.hashCode());
+    result = prime * result + this.collapsedBranches.hashCode();
     return result;
   }
 
@@ -88,6 +109,8 @@ public final class FamilyEdit {
     }
     else if (!this.locations.equals(other.locations))
       return false;
+    if (!this.collapsedBranches.equals(other.collapsedBranches))
+      return false;
     return true;
   }
 }
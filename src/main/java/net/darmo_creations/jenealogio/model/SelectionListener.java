@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model;
+
+/**
+ * A selection listener is notified each time the selection it is registered to changes.
+ *
+ * @author Damien Vergnet
+ * @see SelectionModel#addSelectionListener(SelectionListener)
+ */
+@FunctionalInterface
+public interface SelectionListener {
+  /**
+   * Called after the selection changed.
+   * 
+   * @param changedIds IDs of the members that were selected or deselected or that became or stopped
+   *          being the lead
+   */
+  void selectionChanged(long[] changedIds);
+}
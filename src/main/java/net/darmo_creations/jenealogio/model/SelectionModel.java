@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import net.darmo_creations.jenealogio.util.LongHashSet;
+
+/**
+ * This class holds the selected cards. One of them may be the lead, the card that was clicked last
+ * and that single-card actions apply to; the others are selected in the background. Selected IDs
+ * are stored in a primitive set, bulk operations thus cost a few array accesses per card.
+ * Registered {@link SelectionListener}s are notified once per operation with the IDs that changed.
+ *
+ * @author Damien Vergnet
+ */
+public class SelectionModel {
+  /** Value of the lead when there is none. */
+  public static final long NONE = -1;
+
+  private final LongHashSet selected;
+  private long lead;
+  private final List<SelectionListener> listeners;
+
+  /**
+   * Creates an empty selection.
+   */
+  public SelectionModel() {
+    this.selected = new LongHashSet();
+    this.lead = NONE;
+    this.listeners = new ArrayList<>();
+  }
+
+  /**
+   * Registers a listener.
+   * 
+   * @param listener the listener
+   */
+  public void addSelectionListener(SelectionListener listener) {
+    this.listeners.add(listener);
+  }
+
+  /**
+   * Unregisters a listener.
+   * 
+   * @param listener the listener
+   */
+  public void removeSelectionListener(SelectionListener listener) {
+    this.listeners.remove(listener);
+  }
+
+  /**
+   * @return the ID of the lead card or {@link #NONE}
+   */
+  public long getLead() {
+    return this.lead;
+  }
+
+  /**
+   * Tells if a card is selected, either as the lead or in the background.
+   * 
+   * @param id the card's member ID
+   * @return true if the card is selected
+   */
+  public boolean isSelected(long id) {
+    return this.selected.contains(id);
+  }
+
+  /**
+   * @return true if no cards are selected
+   */
+  public boolean isEmpty() {
+    return this.selected.isEmpty();
+  }
+
+  /**
+   * @return the number of selected cards
+   */
+  public int size() {
+    return this.selected.size();
+  }
+
+  /**
+   * @return the IDs of all selected cards, lead included
+   */
+  public long[] getSelected() {
+    return this.selected.toArray();
+  }
+
+  /**
+   * Calls the given action for each selected card, lead included.
+   * 
+   * @param action the action
+   */
+  public void forEach(LongConsumer action) {
+    this.selected.forEach(action);
+  }
+
+  /**
+   * Selects a card as the lead, as done by a click.
+   * 
+   * @param id the card's member ID
+   * @param keepPrevious if true, the previous selection is kept in the background; otherwise it is
+   *          cleared
+   */
+  public void select(long id, boolean keepPrevious) {
+    LongHashSet changed = new LongHashSet();
+
+    if (!keepPrevious)
+      clear(changed);
+    if (this.lead != NONE)
+      changed.add(this.lead);
+    this.lead = id;
+    this.selected.add(id);
+    changed.add(id);
+    fireChange(changed);
+  }
+
+  /**
+   * Deselects all cards.
+   */
+  public void clear() {
+    LongHashSet changed = new LongHashSet();
+    clear(changed);
+    fireChange(changed);
+  }
+
+  /**
+   * Adds cards to the selection, in the background.
+   * 
+   * @param ids the cards' member IDs
+   */
+  public void addAll(long[] ids) {
+    LongHashSet changed = new LongHashSet(ids.length);
+
+    for (long id : ids)
+      if (this.selected.add(id))
+        changed.add(id);
+    fireChange(changed);
+  }
+
+  /**
+   * Deselects the given cards. The lead is kept unless it is one of them.
+   * 
+   * @param ids the cards' member IDs
+   */
+  public void removeAll(long[] ids) {
+    LongHashSet changed = new LongHashSet(ids.length);
+
+    for (long id : ids) {
+      if (this.selected.remove(id)) {
+        changed.add(id);
+        if (id == this.lead)
+          this.lead = NONE;
+      }
+    }
+    fireChange(changed);
+  }
+
+  /**
+   * Replaces the selection by the given cards, in the background.
+   * 
+   * @param ids the cards' member IDs
+   */
+  public void setSelection(long[] ids) {
+    LongHashSet changed = new LongHashSet(ids.length + this.selected.size());
+
+    clear(changed);
+    for (long id : ids)
+      if (this.selected.add(id))
+        changed.add(id);
+    fireChange(changed);
+  }
+
+  /**
+   * Inverts the selection: selected cards are deselected and the other ones are selected in the
+   * background.
+   * 
+   * @param allIds the IDs of all cards
+   */
+  public void invert(long[] allIds) {
+    LongHashSet changed = new LongHashSet(allIds.length);
+
+    if (this.lead != NONE) {
+      changed.add(this.lead);
+      this.lead = NONE;
+    }
+    for (long id : allIds) {
+      if (!this.selected.remove(id))
+        this.selected.add(id);
+      changed.add(id);
+    }
+    fireChange(changed);
+  }
+
+  /**
+   * Deselects all cards and records their IDs in the given set.
+   */
+  private void clear(LongHashSet changed) {
+    this.selected.forEach(changed::add);
+    this.selected.clear();
+    this.lead = NONE;
+  }
+
+  private void fireChange(LongHashSet changed) {
+    if (!changed.isEmpty()) {
+      long[] ids = changed.toArray();
+      this.listeners.forEach(l -> l.selectionChanged(ids));
+    }
+  }
+}
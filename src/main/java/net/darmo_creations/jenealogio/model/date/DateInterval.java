@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.date;
+
+import java.util.Optional;
+
+/**
+ * An interval of days, used to compare incomplete dates. A date with only a year covers the whole
+ * year and a date with a year and a month covers the whole month; dates without a year cannot be
+ * placed in time. Two intervals overlapping means that the dates they come from may be the same
+ * day.
+ * <p>
+ * Days are numbered as if all months had 31 days so that numbers increase with dates without
+ * looking at a calendar; there are thus gaps between months.
+ *
+ * @author Damien Vergnet
+ */
+public final class DateInterval {
+  /** Number of years a person is considered to live at most when a date is missing. */
+  public static final int MAX_LIFESPAN = 120;
+
+  private static final int DAYS_IN_MONTH = 31;
+  private static final int DAYS_IN_YEAR = 12 * DAYS_IN_MONTH;
+
+  private final int start, end;
+
+  /**
+   * Creates an interval.
+   * 
+   * @param start the first day
+   * @param end the last day, included
+   */
+  private DateInterval(int start, int end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Returns the interval of days a date may stand for.
+   * 
+   * @param date the date
+   * @return the interval or nothing if the year is not set
+   */
+  public static Optional<DateInterval> of(Date date) {
+    if (!date.isYearSet())
+      return Optional.empty();
+
+    int year = date.getYear() * DAYS_IN_YEAR;
+
+    if (!date.isMonthSet())
+      return Optional.of(new DateInterval(year, year + DAYS_IN_YEAR - 1));
+    int month = year + (date.getMonth() - 1) * DAYS_IN_MONTH;
+    if (!date.isDateSet())
+      return Optional.of(new DateInterval(month, month + DAYS_IN_MONTH - 1));
+    return Optional.of(new DateInterval(month + date.getDate() - 1, month + date.getDate() - 1));
+  }
+
+  /**
+   * Returns the interval covering whole years.
+   * 
+   * @param from the first year
+   * @param to the last year, included
+   * @return the interval
+   */
+  public static DateInterval ofYears(int from, int to) {
+    return new DateInterval(from * DAYS_IN_YEAR, (to + 1) * DAYS_IN_YEAR - 1);
+  }
+
+  /**
+   * Returns the interval during which a person may have been alive. If the death date is missing,
+   * the person is considered to live at most {@link #MAX_LIFESPAN} years; if the birth date is
+   * missing, the person is considered to be born at most {@link #MAX_LIFESPAN} years before death.
+   * 
+   * @param birth the birth date
+   * @param death the death date
+   * @return the interval or nothing if neither date has a year
+   */
+  public static Optional<DateInterval> lifespan(Optional<Date> birth, Optional<Date> death) {
+    Optional<DateInterval> b = birth.flatMap(DateInterval::of);
+    Optional<DateInterval> d = death.flatMap(DateInterval::of);
+
+    if (b.isPresent() && d.isPresent())
+      return Optional.of(new DateInterval(b.get().start, Math.max(b.get().end, d.get().end)));
+    if (b.isPresent())
+      return Optional.of(new DateInterval(b.get().start, b.get().end + MAX_LIFESPAN * DAYS_IN_YEAR));
+    return d.map(i -> new DateInterval(i.start - MAX_LIFESPAN * DAYS_IN_YEAR, i.end));
+  }
+
+  /**
+   * @return the first day
+   */
+  public int getStart() {
+    return this.start;
+  }
+
+  /**
+   * @return the last day, included
+   */
+  public int getEnd() {
+    return this.end;
+  }
+
+  /**
+   * Returns an interval starting on the same day as this one and ending the given number of months
+   * later than this one.
+   * 
+   * @param months the number of months
+   * @return the extended interval
+   */
+  public DateInterval extendByMonths(int months) {
+    return new DateInterval(this.start, this.end + months * DAYS_IN_MONTH);
+  }
+
+  /**
+   * Tells if this interval and the given one have days in common.
+   * 
+   * @param other the other interval
+   * @return true if they overlap
+   */
+  public boolean overlaps(DateInterval other) {
+    return this.start <= other.end && other.start <= this.end;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * this.start + this.end;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof DateInterval))
+      return false;
+    DateInterval other = (DateInterval) obj;
+    return this.start == other.start && this.end == other.end;
+  }
+
+  @Override
+  public String toString() {
+    return "[" + this.start + ", " + this.end + "]";
+  }
+}
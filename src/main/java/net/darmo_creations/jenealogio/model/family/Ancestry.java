@@ -0,0 +1,492 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import net.darmo_creations.jenealogio.util.LongHashSet;
+import net.darmo_creations.jenealogio.util.LongIntHashMap;
+
+/**
+ * The parent-child links of a family, with a topological order of its members: parents come before
+ * their children. The order tells in constant time that a member is not an ancestor of another one
+ * when it comes after it; otherwise only the members placed between them are searched.
+ * <p>
+ * The order is maintained with the algorithm of Pearce and Kelly: when a link goes against the
+ * order, only the members placed between the parent and the child are moved. If the family has
+ * members that are their own ancestor, no such order exists; queries then search the whole graph
+ * and the order is rebuilt once links have been removed.
+ * <p>
+ * Each member is given a slot, an index in the arrays holding its links and position. Slots of
+ * removed members are not reused.
+ *
+ * @author Damien Vergnet
+ */
+final class Ancestry {
+  private static final int[] NONE = new int[0];
+  private static final int NO_SLOT = -1;
+
+  /** The slot of each member. */
+  private final LongIntHashMap slots;
+  private long[] ids;
+  private boolean[] present;
+  /** Parents and children of each slot; a link appears once for each relation it comes from. */
+  private int[][] parents, children;
+  /** The position of each slot in the order. */
+  private int[] order;
+  private int size;
+  private int nextPosition;
+  /** True if the order is a topological order. */
+  private boolean ordered;
+  /** True if links have been removed while the order was not topological. */
+  private boolean stale;
+  /** Searches mark the slots they visit with their own number to avoid clearing marks. */
+  private int[] marks;
+  private int search;
+  private int[] stack;
+
+  /**
+   * Creates the links of the given members and relations.
+   * 
+   * @param members the members
+   * @param relations the relations
+   */
+  Ancestry(Collection<FamilyMember> members, Collection<Relationship> relations) {
+    this.slots = new LongIntHashMap(members.size());
+    allocate(Math.max(16, members.size()));
+    members.forEach(m -> addSlot(m.getId()));
+
+    // Links are counted first so that each array is allocated once
+    int[] childrenCounts = new int[this.size], parentsCounts = new int[this.size];
+    for (Relationship relation : relations) {
+      forEachLink(relation, (parent, child) -> {
+        childrenCounts[parent]++;
+        parentsCounts[child]++;
+      });
+    }
+    for (int i = 0; i < this.size; i++) {
+      this.children[i] = childrenCounts[i] == 0 ? NONE : new int[childrenCounts[i]];
+      this.parents[i] = parentsCounts[i] == 0 ? NONE : new int[parentsCounts[i]];
+    }
+    for (Relationship relation : relations) {
+      forEachLink(relation, (parent, child) -> {
+        this.children[parent][--childrenCounts[parent]] = child;
+        this.parents[child][--parentsCounts[child]] = parent;
+      });
+    }
+    sort();
+  }
+
+  /**
+   * Adds a member without links.
+   * 
+   * @param id the member's ID
+   */
+  void addMember(long id) {
+    int slot = this.slots.get(id, NO_SLOT);
+
+    if (slot == NO_SLOT) {
+      if (this.size == this.ids.length)
+        allocate(2 * this.size);
+      slot = addSlot(id);
+    }
+    else {
+      this.present[slot] = true;
+    }
+    this.order[slot] = this.nextPosition++;
+  }
+
+  /**
+   * Removes a member and all its links.
+   * 
+   * @param id the member's ID
+   */
+  void removeMember(long id) {
+    int slot = slot(id);
+
+    if (slot != NO_SLOT) {
+      for (int parent : this.parents[slot])
+        this.children[parent] = removeAll(this.children[parent], slot);
+      for (int child : this.children[slot])
+        this.parents[child] = removeAll(this.parents[child], slot);
+      this.parents[slot] = NONE;
+      this.children[slot] = NONE;
+      this.present[slot] = false;
+      linksRemoved();
+    }
+  }
+
+  /**
+   * Adds the links between the partners of a relation and its children.
+   * 
+   * @param relation the relation
+   */
+  void addLinks(Relationship relation) {
+    forEachLink(relation, this::addLink);
+  }
+
+  /**
+   * Removes the links between the partners of a relation and its children.
+   * 
+   * @param relation the relation
+   */
+  void removeLinks(Relationship relation) {
+    forEachLink(relation, (parent, child) -> {
+      this.children[parent] = removeOne(this.children[parent], child);
+      this.parents[child] = removeOne(this.parents[child], parent);
+    });
+    linksRemoved();
+  }
+
+  /**
+   * Tells if giving children to two partners would make a member their own ancestor.
+   * 
+   * @param partner1 the ID of the first partner
+   * @param partner2 the ID of the second partner
+   * @param children the IDs of the children
+   * @return true if one of the children is one of the partners or one of their ancestors
+   */
+  boolean createsCycle(long partner1, long partner2, Collection<Long> children) {
+    for (long child : children) {
+      for (long partner : new long[]{partner1, partner2}) {
+        if (child == partner || isAncestor(child, partner))
+          return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Tells if a member is an ancestor of another one.
+   * 
+   * @param ancestorId the ID of the supposed ancestor
+   * @param memberId the ID of the member
+   * @return true if the first member is a parent, grandparent, etc. of the second one
+   */
+  boolean isAncestor(long ancestorId, long memberId) {
+    int ancestor = slot(ancestorId), member = slot(memberId);
+
+    if (ancestor == NO_SLOT || member == NO_SLOT)
+      return false;
+    if (this.stale)
+      sort();
+    // Ancestors of a member come before it, those placed before the ancestor cannot lead to it
+    int bound = this.ordered ? this.order[ancestor] : Integer.MIN_VALUE;
+    if (this.ordered && bound >= this.order[member])
+      return false;
+
+    int top = startSearch(member);
+    while (top > 0) {
+      for (int parent : this.parents[this.stack[--top]]) {
+        if (parent == ancestor)
+          return true;
+        if (this.order[parent] > bound && this.marks[parent] != this.search) {
+          this.marks[parent] = this.search;
+          this.stack[top++] = parent;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the ancestors of the given members.
+   * 
+   * @param ids the members' IDs
+   * @return the IDs of the ancestors, the given members excluded unless they are their own ancestor
+   */
+  LongHashSet getAncestors(long... ids) {
+    LongHashSet ancestors = new LongHashSet();
+    int top = startSearch(NO_SLOT);
+
+    for (long id : ids) {
+      int slot = slot(id);
+      if (slot != NO_SLOT)
+        this.stack[top++] = slot;
+    }
+    while (top > 0) {
+      for (int parent : this.parents[this.stack[--top]]) {
+        if (this.marks[parent] != this.search) {
+          this.marks[parent] = this.search;
+          this.stack[top++] = parent;
+          ancestors.add(this.ids[parent]);
+        }
+      }
+    }
+
+    return ancestors;
+  }
+
+  /**
+   * Tells if a member has parents in the family.
+   * 
+   * @param id the member's ID
+   * @return true if the member is a child of at least one member
+   */
+  boolean hasParents(long id) {
+    int slot = slot(id);
+    return slot != NO_SLOT && this.parents[slot].length > 0;
+  }
+
+  private void addLink(int parent, int child) {
+    this.children[parent] = append(this.children[parent], child);
+    this.parents[child] = append(this.parents[child], parent);
+    if (this.ordered && this.order[parent] > this.order[child])
+      reorder(parent, child);
+  }
+
+  private void linksRemoved() {
+    if (!this.ordered)
+      this.stale = true;
+  }
+
+  /**
+   * Moves the members placed between a child and its parent so that the parent comes first. The
+   * descendants of the child placed before the parent and the ancestors of the parent placed after
+   * the child share their positions, ancestors first.
+   */
+  private void reorder(int parent, int child) {
+    int lower = this.order[child], upper = this.order[parent];
+    int[] descendants = collect(child, this.children, lower, upper, parent);
+
+    if (descendants == null) {
+      // The new link closes a cycle
+      this.ordered = false;
+      return;
+    }
+    int[] ancestors = collect(parent, this.parents, lower, upper, NO_SLOT);
+    int[] moved = new int[ancestors.length + descendants.length];
+    int[] positions = new int[moved.length];
+
+    sortByPosition(ancestors);
+    sortByPosition(descendants);
+    System.arraycopy(ancestors, 0, moved, 0, ancestors.length);
+    System.arraycopy(descendants, 0, moved, ancestors.length, descendants.length);
+    for (int i = 0; i < moved.length; i++)
+      positions[i] = this.order[moved[i]];
+    Arrays.sort(positions);
+    for (int i = 0; i < moved.length; i++)
+      this.order[moved[i]] = positions[i];
+  }
+
+  /**
+   * Collects the slots reachable from a slot whose position is between the given bounds.
+   * 
+   * @param start the first slot
+   * @param links the links to follow
+   * @param lower the lowest position
+   * @param upper the highest position
+   * @param forbidden a slot that must not be reached
+   * @return the slots or null if the forbidden slot was reached
+   */
+  private int[] collect(int start, int[][] links, int lower, int upper, int forbidden) {
+    int[] visited = new int[16];
+    int count = 0;
+    int top = startSearch(start);
+
+    while (top > 0) {
+      int slot = this.stack[--top];
+
+      if (count == visited.length)
+        visited = Arrays.copyOf(visited, 2 * count);
+      visited[count++] = slot;
+      for (int next : links[slot]) {
+        if (next == forbidden)
+          return null;
+        if (this.order[next] >= lower && this.order[next] <= upper && this.marks[next] != this.search) {
+          this.marks[next] = this.search;
+          this.stack[top++] = next;
+        }
+      }
+    }
+
+    return Arrays.copyOf(visited, count);
+  }
+
+  /**
+   * Starts a new search by pushing a slot on the stack.
+   * 
+   * @param slot the first slot or NO_SLOT
+   * @return the size of the stack
+   */
+  private int startSearch(int slot) {
+    if (++this.search == 0) {
+      // The numbers have wrapped around, old marks must be cleared
+      Arrays.fill(this.marks, 0);
+      this.search = 1;
+    }
+    if (slot == NO_SLOT)
+      return 0;
+    this.marks[slot] = this.search;
+    this.stack[0] = slot;
+    return 1;
+  }
+
+  private void sortByPosition(int[] slots) {
+    long[] keys = new long[slots.length];
+    // Positions and slots are packed together to sort them as primitives
+    for (int i = 0; i < slots.length; i++)
+      keys[i] = (long) this.order[slots[i]] << 32 | slots[i];
+    Arrays.sort(keys);
+    for (int i = 0; i < slots.length; i++)
+      slots[i] = (int) keys[i];
+  }
+
+  /**
+   * Computes a new order by placing each member after all its parents. Members that are their own
+   * ancestor, and their descendants, are placed last in any order.
+   */
+  private void sort() {
+    int[] remainingParents = new int[this.size];
+    int[] queue = new int[this.size];
+    int head = 0, tail = 0;
+    int members = 0;
+
+    this.nextPosition = 0;
+    for (int i = 0; i < this.size; i++) {
+      if (this.present[i]) {
+        members++;
+        remainingParents[i] = this.parents[i].length;
+        if (remainingParents[i] == 0)
+          queue[tail++] = i;
+      }
+    }
+    while (head < tail) {
+      int slot = queue[head++];
+
+      this.order[slot] = this.nextPosition++;
+      for (int child : this.children[slot]) {
+        if (--remainingParents[child] == 0)
+          queue[tail++] = child;
+      }
+    }
+    this.ordered = tail == members;
+    if (!this.ordered) {
+      for (int i = 0; i < this.size; i++) {
+        if (remainingParents[i] > 0)
+          this.order[i] = this.nextPosition++;
+      }
+    }
+    this.stale = false;
+  }
+
+  /**
+   * @return the slot of the member or NO_SLOT if it is not in the family
+   */
+  private int slot(long id) {
+    int slot = this.slots.get(id, NO_SLOT);
+    return slot != NO_SLOT && this.present[slot] ? slot : NO_SLOT;
+  }
+
+  private int addSlot(long id) {
+    int slot = this.size++;
+
+    this.slots.put(id, slot);
+    this.ids[slot] = id;
+    this.present[slot] = true;
+    this.parents[slot] = NONE;
+    this.children[slot] = NONE;
+    return slot;
+  }
+
+  /**
+   * Resizes the arrays.
+   * 
+   * @param capacity the new capacity
+   */
+  private void allocate(int capacity) {
+    if (this.ids == null) {
+      this.ids = new long[capacity];
+      this.present = new boolean[capacity];
+      this.parents = new int[capacity][];
+      this.children = new int[capacity][];
+      this.order = new int[capacity];
+      this.marks = new int[capacity];
+      this.stack = new int[capacity];
+    }
+    else {
+      this.ids = Arrays.copyOf(this.ids, capacity);
+      this.present = Arrays.copyOf(this.present, capacity);
+      this.parents = Arrays.copyOf(this.parents, capacity);
+      this.children = Arrays.copyOf(this.children, capacity);
+      this.order = Arrays.copyOf(this.order, capacity);
+      this.marks = Arrays.copyOf(this.marks, capacity);
+      this.stack = Arrays.copyOf(this.stack, capacity);
+    }
+  }
+
+  /**
+   * Calls the action for each link of a relation whose parent and child are in the family.
+   */
+  private void forEachLink(Relationship relation, SlotsConsumer action) {
+    int partner1 = slot(relation.getPartner1()), partner2 = slot(relation.getPartner2());
+
+    for (long id : relation.children()) {
+      int child = slot(id);
+
+      if (child != NO_SLOT) {
+        if (partner1 != NO_SLOT)
+          action.accept(partner1, child);
+        if (partner2 != NO_SLOT)
+          action.accept(partner2, child);
+      }
+    }
+  }
+
+  private static int[] append(int[] values, int value) {
+    int[] array = Arrays.copyOf(values, values.length + 1);
+    array[values.length] = value;
+    return array;
+  }
+
+  /**
+   * Removes one occurrence of a value from an array.
+   */
+  private static int[] removeOne(int[] values, int value) {
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == value) {
+        if (values.length == 1)
+          return NONE;
+        int[] array = Arrays.copyOf(values, values.length - 1);
+        System.arraycopy(values, i + 1, array, i, values.length - i - 1);
+        return array;
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Removes all occurrences of a value from an array.
+   */
+  private static int[] removeAll(int[] values, int value) {
+    int[] array = Arrays.stream(values).filter(v -> v != value).toArray();
+    return array.length == 0 ? NONE : array;
+  }
+
+  /**
+   * A function taking a parent's and a child's slots.
+   *
+   * @author Damien Vergnet
+   */
+  @FunctionalInterface
+  private interface SlotsConsumer {
+    void accept(int parent, int child);
+  }
+}
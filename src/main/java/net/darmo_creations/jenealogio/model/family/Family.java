@@ -18,16 +18,28 @@
  */
 package net.darmo_creations.jenealogio.model.family;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import net.darmo_creations.jenealogio.util.LongHashSet;
+import net.darmo_creations.jenealogio.util.StringPool;
+
 /**
- * A family has members and each member can be in relationships.
+ * A family has members and each member can be in relationships. Every change made to the members and
+ * relations is notified to the registered {@link FamilyListener}s.
  * 
  * @author Damien Vergnet
  */
@@ -38,8 +50,23 @@ public class Family implements Cloneable {
   private String name;
   /** Members */
   private Set<FamilyMember> members;
+  /** Members by ID */
+  private Map<Long, FamilyMember> membersById;
   /** Relationships */
   private Set<Relationship> relations;
+  /** Listeners; they are not copied by {@link #clone()} */
+  private List<FamilyListener> listeners;
+  /** Indexes used by queries; they are not copied by {@link #clone()} */
+  private List<MemberIndex> indexes;
+  /**
+   * Names and locations of members and relations; strings are never removed from it. It is shared
+   * with the clones of this family.
+   */
+  private StringPool strings;
+  /** Locations of members, created when first needed; it is not copied by {@link #clone()} */
+  private Gazetteer gazetteer;
+  /** Parent-child links, created when first needed; it is not copied by {@link #clone()} */
+  private Ancestry ancestry;
 
   /**
    * Creates a family with no members and no relations.
@@ -62,7 +89,120 @@ public class Family implements Cloneable {
     this.globalId = globalId;
     setName(name);
     this.members = Objects.requireNonNull(members);
+    this.membersById = new HashMap<>();
+    this.strings = new StringPool();
+    members.forEach(m -> {
+      m.internStrings(this.strings);
+      this.membersById.put(m.getId(), m);
+    });
     this.relations = Objects.requireNonNull(relations);
+    relations.forEach(r -> r.internStrings(this.strings));
+    this.listeners = new ArrayList<>();
+    this.indexes = new ArrayList<>();
+  }
+
+  /**
+   * Creates a copy of a family. Members and relations are copied but their strings, already pooled,
+   * are not interned again: the copy uses the same pool.
+   * 
+   * @param family the family to copy
+   */
+  private Family(Family family) {
+    this.globalId = family.globalId;
+    this.name = family.name;
+    this.members = new HashSet<>();
+    this.membersById = new HashMap<>();
+    family.members.forEach(m -> {
+      FamilyMember copy = m.clone();
+      this.members.add(copy);
+      this.membersById.put(copy.getId(), copy);
+    });
+    this.relations = new HashSet<>();
+    family.relations.forEach(r -> this.relations.add(r.clone()));
+    this.strings = family.strings;
+    this.listeners = new ArrayList<>();
+    this.indexes = new ArrayList<>();
+  }
+
+  /**
+   * Registers a listener that will be notified of every change made to this family.
+   * 
+   * @param listener the listener
+   */
+  public void addFamilyListener(FamilyListener listener) {
+    this.listeners.add(Objects.requireNonNull(listener));
+  }
+
+  /**
+   * Unregisters a listener.
+   * 
+   * @param listener the listener
+   */
+  public void removeFamilyListener(FamilyListener listener) {
+    this.listeners.remove(listener);
+  }
+
+  /**
+   * Registers an index that queries can use. The index is also registered as a listener.
+   * 
+   * @param index the index
+   * @see #query()
+   */
+  public void addMemberIndex(MemberIndex index) {
+    addFamilyListener(index);
+    this.indexes.add(index);
+  }
+
+  /**
+   * Unregisters an index.
+   * 
+   * @param index the index
+   */
+  public void removeMemberIndex(MemberIndex index) {
+    removeFamilyListener(index);
+    this.indexes.remove(index);
+  }
+
+  /**
+   * Returns the registered indexes. The gender index is created the first time.
+   */
+  List<MemberIndex> getMemberIndexes() {
+    if (this.indexes.stream().noneMatch(i -> i instanceof GenderIndex))
+      addMemberIndex(new GenderIndex(this.members));
+    return this.indexes;
+  }
+
+  /**
+   * Returns the gazetteer of this family, created the first time. It is then kept up to date as
+   * members change.
+   * 
+   * @return the gazetteer
+   */
+  public Gazetteer getGazetteer() {
+    if (this.gazetteer == null) {
+      this.gazetteer = new Gazetteer();
+      this.members.forEach(this.gazetteer::put);
+    }
+    return this.gazetteer;
+  }
+
+  /**
+   * Creates a query matching all members of this family. Criteria can then be added to it.
+   * 
+   * @return a new query
+   * @see MemberQuery
+   */
+  public MemberQuery query() {
+    return new MemberQuery(this);
+  }
+
+  /**
+   * Notifies all listeners.
+   * 
+   * @param action the action to perform on each listener
+   */
+  private void fireChange(Consumer<FamilyListener> action) {
+    this.listeners.forEach(action);
   }
 
   /**
@@ -90,6 +230,25 @@ public class Family implements Cloneable {
     return this.members.stream().map(member -> member.clone()).collect(Collectors.toSet());
   }
 
+  /**
+   * Returns the IDs of all the members. Unlike {@link #getAllMembers()}, members are not copied.
+   * 
+   * @return the IDs of all the members
+   */
+  public Set<Long> getAllMembersIds() {
+    return this.members.stream().map(FamilyMember::getId).collect(Collectors.toSet());
+  }
+
+  /**
+   * Returns a read-only view of the members. Unlike {@link #getAllMembers()}, members are not copied
+   * and must not be modified.
+   * 
+   * @return all the members
+   */
+  public Set<FamilyMember> getMembersView() {
+    return Collections.unmodifiableSet(this.members);
+  }
+
   /**
    * Gets the member with the given ID.
    * 
@@ -97,7 +256,24 @@ public class Family implements Cloneable {
    * @return the member or nothing if none were found
    */
   public Optional<FamilyMember> getMember(long id) {
-    return this.members.stream().filter(member -> member.getId() == id).findAny().map(member -> member.clone());
+    return Optional.ofNullable(member(id)).map(member -> member.clone());
+  }
+
+  /**
+   * @return the internal set of members
+   */
+  Set<FamilyMember> members() {
+    return this.members;
+  }
+
+  /**
+   * Returns the member with the given ID. The returned object is not a copy.
+   * 
+   * @param id the ID
+   * @return the member or null if none were found
+   */
+  FamilyMember member(long id) {
+    return this.membersById.get(id);
   }
 
   /**
@@ -107,7 +283,16 @@ public class Family implements Cloneable {
    * @param member the new member
    */
   public void addMember(FamilyMember member) {
-    this.members.add(member.clone(getNextMemberId()));
+    FamilyMember m = member.clone(getNextMemberId());
+
+    m.internStrings(this.strings);
+    this.members.add(m);
+    this.membersById.put(m.getId(), m);
+    if (this.gazetteer != null)
+      this.gazetteer.put(m);
+    if (this.ancestry != null)
+      this.ancestry.addMember(m.getId());
+    fireChange(l -> l.memberAdded(m.clone()));
   }
 
   /**
@@ -116,11 +301,18 @@ public class Family implements Cloneable {
    * @param member the member's updated data
    */
   public void updateMember(FamilyMember member) {
-    Predicate<FamilyMember> p = m -> m.getId() == member.getId();
-
-    if (this.members.stream().anyMatch(p)) {
-      this.members.removeIf(p);
-      this.members.add(member.clone());
+    FamilyMember old = this.membersById.get(member.getId());
+
+    if (old != null) {
+      FamilyMember m = member.clone();
+
+      m.internStrings(this.strings);
+      this.members.remove(old);
+      this.members.add(m);
+      this.membersById.put(m.getId(), m);
+      if (this.gazetteer != null)
+        this.gazetteer.put(m);
+      fireChange(l -> l.memberUpdated(m.clone()));
     }
   }
 
@@ -131,14 +323,34 @@ public class Family implements Cloneable {
    * @param id the ID of the member to remove
    */
   public void removeMember(long id) {
+    List<Relationship> removed = new ArrayList<>();
+    List<Relationship> updated = new ArrayList<>();
+
     for (Iterator<Relationship> it = this.relations.iterator(); it.hasNext();) {
       Relationship relation = it.next();
-      if (relation.isInRelationship(id))
+      if (relation.isInRelationship(id)) {
         it.remove();
-      else if (relation.isChild(id))
+        removed.add(relation);
+      }
+      else if (relation.isChild(id)) {
         relation.removeChild(id);
+        updated.add(relation.clone());
+      }
+    }
+    FamilyMember member = this.membersById.remove(id);
+
+    if (member != null) {
+      this.members.remove(member);
+      if (this.gazetteer != null)
+        this.gazetteer.remove(id);
+      if (this.ancestry != null) {
+        removed.forEach(this.ancestry::removeLinks);
+        this.ancestry.removeMember(id);
+      }
+      removed.forEach(r -> fireChange(l -> l.relationRemoved(r.clone())));
+      updated.forEach(r -> fireChange(l -> l.relationUpdated(r)));
+      fireChange(l -> l.memberRemoved(id));
     }
-    this.members.removeIf(m -> m.getId() == id);
   }
 
   /**
@@ -150,6 +362,23 @@ public class Family implements Cloneable {
     return this.relations.stream().map(r -> r.clone()).collect(Collectors.toSet());
   }
 
+  /**
+   * Returns a read-only view of the relations. Unlike {@link #getAllRelations()}, relations are not
+   * copied and must not be modified.
+   * 
+   * @return all the relations
+   */
+  public Set<Relationship> getRelationsView() {
+    return Collections.unmodifiableSet(this.relations);
+  }
+
+  /**
+   * @return the internal set of relations
+   */
+  Set<Relationship> relations() {
+    return this.relations;
+  }
+
   /**
    * Gets the relation for the given members.
    * 
@@ -179,10 +408,18 @@ public class Family implements Cloneable {
    * nothing will happen.
    * 
    * @param relation the new relation
+   * @throws IllegalArgumentException if a member would become their own ancestor
    */
   public void addRelation(Relationship relation) {
     if (!areInRelationship(relation.getPartner1(), relation.getPartner2())) {
-      this.relations.add(relation.clone());
+      if (ancestry().createsCycle(relation.getPartner1(), relation.getPartner2(), relation.children()))
+        throw new IllegalArgumentException("a member would be their own ancestor");
+      Relationship r = relation.clone();
+
+      r.internStrings(this.strings);
+      this.relations.add(r);
+      this.ancestry.addLinks(r);
+      fireChange(l -> l.relationAdded(r.clone()));
     }
   }
 
@@ -190,17 +427,33 @@ public class Family implements Cloneable {
    * Updates the given relation. If the relation does not exist in this family, nothing will happen.
    * 
    * @param relation the relation's new data
+   * @throws IllegalArgumentException if a member would become their own ancestor
    */
   public void updateRelation(Relationship relation) {
     Predicate<Relationship> p = r -> r.isInRelationship(relation.getPartner1()) && r.isInRelationship(relation.getPartner2());
+    List<Relationship> old = this.relations.stream().filter(p).collect(Collectors.toList());
 
-    if (this.relations.stream().anyMatch(p)) {
+    if (!old.isEmpty()) {
       relation.getChildren().forEach(id -> {
         if (!getMember(id).isPresent())
           throw new IllegalStateException("member ID '" + id + "' does not exist");
       });
+      // Only new children are checked so that a family that already has cycles can still be edited
+      Set<Long> newChildren = new HashSet<>(relation.children());
+      old.forEach(r -> newChildren.removeAll(r.children()));
+      // The old links are removed first as the new ones may only be valid without them
+      old.forEach(ancestry()::removeLinks);
+      if (this.ancestry.createsCycle(relation.getPartner1(), relation.getPartner2(), newChildren)) {
+        old.forEach(this.ancestry::addLinks);
+        throw new IllegalArgumentException("a member would be their own ancestor");
+      }
+      Relationship r = relation.clone();
+
+      r.internStrings(this.strings);
       this.relations.removeIf(p);
-      this.relations.add(relation.clone());
+      this.relations.add(r);
+      this.ancestry.addLinks(r);
+      fireChange(l -> l.relationUpdated(r.clone()));
     }
   }
 
@@ -210,7 +463,16 @@ public class Family implements Cloneable {
    * @param relation the relation to delete
    */
   public void removeRelationship(Relationship relation) {
-    this.relations.removeIf(r -> r.isInRelationship(relation.getPartner1()) && r.isInRelationship(relation.getPartner2()));
+    List<Relationship> old = this.relations.stream().filter(
+        r -> r.isInRelationship(relation.getPartner1()) && r.isInRelationship(relation.getPartner2())).collect(
+            Collectors.toList());
+
+    if (!old.isEmpty()) {
+      this.relations.removeIf(old::contains);
+      if (this.ancestry != null)
+        old.forEach(this.ancestry::removeLinks);
+      old.forEach(r -> fireChange(l -> l.relationRemoved(r.clone())));
+    }
   }
 
   /**
@@ -231,7 +493,55 @@ public class Family implements Cloneable {
    * @return true if and only if the member has known parents
    */
   public boolean hasParents(long memberId) {
-    return this.relations.stream().anyMatch(r -> r.getChildren().contains(memberId));
+    return ancestry().hasParents(memberId);
+  }
+
+  /**
+   * Tells if a member is an ancestor of another one. The answer is immediate when the first member
+   * cannot be an ancestor of the second one; otherwise only the members between them are searched.
+   * 
+   * @param ancestorId the ID of the supposed ancestor
+   * @param memberId the ID of the member
+   * @return true if the first member is a parent, grandparent, etc. of the second one
+   */
+  public boolean isAncestor(long ancestorId, long memberId) {
+    return ancestry().isAncestor(ancestorId, memberId);
+  }
+
+  /**
+   * @return the parent-child links, created on the first call
+   */
+  private Ancestry ancestry() {
+    if (this.ancestry == null)
+      this.ancestry = new Ancestry(this.members, this.relations);
+    return this.ancestry;
+  }
+
+  /**
+   * Returns all descendants of a member: children, grandchildren and so on. The children of each
+   * member are indexed once so that the cost is linear in the size of the family.
+   * 
+   * @param memberId member's ID
+   * @return the IDs of all descendants, the member excluded
+   */
+  public Set<Long> getDescendants(long memberId) {
+    Map<Long, List<Long>> children = new HashMap<>();
+    Set<Long> descendants = new HashSet<>();
+    Deque<Long> queue = new ArrayDeque<>();
+
+    this.relations.forEach(r -> {
+      children.computeIfAbsent(r.getPartner1(), k -> new ArrayList<>()).addAll(r.getChildren());
+      children.computeIfAbsent(r.getPartner2(), k -> new ArrayList<>()).addAll(r.getChildren());
+    });
+    queue.add(memberId);
+    while (!queue.isEmpty()) {
+      for (long child : children.getOrDefault(queue.poll(), Collections.emptyList())) {
+        if (child != memberId && descendants.add(child))
+          queue.add(child);
+      }
+    }
+
+    return descendants;
   }
 
   /**
@@ -282,7 +592,9 @@ public class Family implements Cloneable {
       all.removeIf(m -> m.compareBirthdays(y).orElse(1) <= 0);
     }
 
-    all.removeIf(m -> children.contains(m.getId()) || hasParents(m.getId()));
+    // Ancestors of the partners would become their own ancestor
+    LongHashSet ancestors = ancestry().getAncestors(partner1.getId(), partner2.getId());
+    all.removeIf(m -> children.contains(m.getId()) || hasParents(m.getId()) || ancestors.contains(m.getId()));
 
     return all;
   }
@@ -308,7 +620,7 @@ public class Family implements Cloneable {
 
   @Override
   public Family clone() {
-    return new Family(this.globalId, this.name, getAllMembers(), getAllRelations());
+    return new Family(this);
   }
 
   @Override
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+/**
+ * A family listener is notified of every change made to the members and relations of a family it
+ * is registered to. All methods do nothing by default.
+ *
+ * @author Damien Vergnet
+ * @see Family#addFamilyListener(FamilyListener)
+ */
+public interface FamilyListener {
+  /**
+   * Called after a member has been added.
+   * 
+   * @param member a copy of the new member, with its final ID
+   */
+  default void memberAdded(FamilyMember member) {}
+
+  /**
+   * Called after a member has been updated.
+   * 
+   * @param member a copy of the member's new data
+   */
+  default void memberUpdated(FamilyMember member) {}
+
+  /**
+   * Called after a member has been removed. Relations that were affected by the removal have
+   * already been notified.
+   * 
+   * @param id the removed member's ID
+   */
+  default void memberRemoved(long id) {}
+
+  /**
+   * Called after a relation has been added.
+   * 
+   * @param relation a copy of the new relation
+   */
+  default void relationAdded(Relationship relation) {}
+
+  /**
+   * Called after a relation has been updated.
+   * 
+   * @param relation a copy of the relation's new data
+   */
+  default void relationUpdated(Relationship relation) {}
+
+  /**
+   * Called after a relation has been removed.
+   * 
+   * @param relation a copy of the removed relation
+   */
+  default void relationRemoved(Relationship relation) {}
+}
@@ -20,12 +20,16 @@ package net.darmo_creations.jenealogio.model.family;
 
 import java.awt.image.BufferedImage;
 import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
 import net.darmo_creations.jenealogio.model.date.Date;
 import net.darmo_creations.jenealogio.util.CalendarUtil;
 import net.darmo_creations.jenealogio.util.Images;
+import net.darmo_creations.jenealogio.util.StringPool;
+import net.darmo_creations.jenealogio.util.TextUtil;
 import net.darmo_creations.utils.Nullable;
 
 /**
@@ -48,6 +52,9 @@ import net.darmo_creations.utils.Nullable;
  * @author Damien Vergnet
  */
 public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
+  /** Value returned by {@link #getBirthYear()} and {@link #getDeathYear()} for unknown years. */
+  public static final int UNKNOWN_YEAR = Integer.MIN_VALUE;
+
   private final long id;
   private BufferedImage image;
   private String familyName;
@@ -209,6 +216,24 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
     this.otherNames = otherNames;
   }
 
+  /**
+   * Returns the words of all the names of this member: family name, use name, first name and other
+   * names, in this order.
+   * 
+   * @return the normalized words
+   * @see TextUtil#tokenize(String)
+   */
+  public List<String> getNameWords() {
+    List<String> words = new ArrayList<>();
+
+    for (String name : new String[]{this.familyName, this.useName, this.firstName, this.otherNames}) {
+      if (name != null)
+        words.addAll(TextUtil.tokenize(name));
+    }
+
+    return words;
+  }
+
   /**
    * @return true if and only if this person is a man
    */
@@ -246,6 +271,22 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
     return Optional.ofNullable(this.birthDate != null ? this.birthDate.clone() : null);
   }
 
+  /**
+   * @return the birth date or null; the returned object is not a copy
+   */
+  Date birthDate() {
+    return this.birthDate;
+  }
+
+  /**
+   * Returns the birth year. Unlike {@link #getBirthDate()}, this method does not copy the date.
+   * 
+   * @return the birth year or {@link #UNKNOWN_YEAR} if it is not known
+   */
+  public int getBirthYear() {
+    return year(this.birthDate);
+  }
+
   /**
    * Sets the birth date. May be null.
    * 
@@ -267,11 +308,12 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
    * @return this person's age
    */
   public Optional<Period> getAge() {
-    if (!getBirthDate().isPresent() || !getDeathDate().isPresent() && isDead())
+    // The dates are only read, they do not need to be copied
+    if (this.birthDate == null || this.deathDate == null && isDead())
       return Optional.empty();
 
-    Date currentDate = isDead() ? getDeathDate().get() : CalendarUtil.getCurrentDate();
-    Date birthDate = getBirthDate().get();
+    Date currentDate = isDead() ? this.deathDate : CalendarUtil.getCurrentDate();
+    Date birthDate = this.birthDate;
 
     if (!birthDate.isIncomplete() && !currentDate.isIncomplete()) {
       int currentMonth = currentDate.getMonth();
@@ -370,6 +412,26 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
     return Optional.ofNullable(this.deathDate != null ? this.deathDate.clone() : null);
   }
 
+  /**
+   * @return the death date or null; the returned object is not a copy
+   */
+  Date deathDate() {
+    return this.deathDate;
+  }
+
+  /**
+   * Returns the death year. Unlike {@link #getDeathDate()}, this method does not copy the date.
+   * 
+   * @return the death year or {@link #UNKNOWN_YEAR} if it is not known
+   */
+  public int getDeathYear() {
+    return year(this.deathDate);
+  }
+
+  private static int year(Date date) {
+    return date != null && date.isYearSet() ? date.getYear() : UNKNOWN_YEAR;
+  }
+
   /**
    * Sets the death date. May be null. Updates the {@code dead} boolean.
    * 
@@ -401,7 +463,7 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
    * Updates the {@code dead} boolean.
    */
   private void updateDeath() {
-    this.dead = getDeathDate().isPresent() || getDeathLocation().isPresent();
+    this.dead = this.deathDate != null || this.deathLocation != null;
   }
 
   /**
@@ -549,6 +611,21 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
     return getFirstName().orElse("?") + " " + getFamilyName().orElse("?");
   }
 
+  /**
+   * Replaces the names and locations by their instances from the pool. Fields are set directly as
+   * setters may change the {@code dead} boolean.
+   * 
+   * @param pool the pool
+   */
+  void internStrings(StringPool pool) {
+    this.familyName = pool.intern(this.familyName);
+    this.useName = pool.intern(this.useName);
+    this.firstName = pool.intern(this.firstName);
+    this.otherNames = pool.intern(this.otherNames);
+    this.birthLocation = pool.intern(this.birthLocation);
+    this.deathLocation = pool.intern(this.deathLocation);
+  }
+
   /**
    * Copies this member and sets the copy's ID.
    * 
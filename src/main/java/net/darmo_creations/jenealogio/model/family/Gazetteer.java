@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import net.darmo_creations.jenealogio.util.TextUtil;
+
+/**
+ * The gazetteer of a family gives an ID to each distinct birth and death location of its members.
+ * Locations are compared on their words without accents nor case, so "Saint-Étienne" and
+ * "saint etienne" are the same location. Grouping and counting members by location can then be
+ * done on ints rather than strings.
+ * <p>
+ * IDs start at 0 and are never reused: a location keeps its ID while the family exists, even if no
+ * member refers to it anymore. The gazetteer is kept up to date by its family.
+ *
+ * @author Damien Vergnet
+ * @see Family#getGazetteer()
+ */
+public final class Gazetteer {
+  /** Location ID of members without a location. */
+  public static final int NONE = -1;
+
+  /** Location IDs by normalized name. */
+  private final Map<String, Integer> ids;
+  /** Location IDs by name as written, to avoid normalizing the same names again. */
+  private final Map<String, Integer> writtenIds;
+  /** The name of each location, as first written. */
+  private final List<String> names;
+  /** Position of each member in the following arrays. */
+  private final Map<Long, Integer> slots;
+  private long[] members;
+  private int[] birthLocations, deathLocations;
+  private int size;
+
+  Gazetteer() {
+    this.ids = new HashMap<>();
+    this.writtenIds = new HashMap<>();
+    this.names = new ArrayList<>();
+    this.slots = new HashMap<>();
+    this.members = new long[16];
+    this.birthLocations = new int[16];
+    this.deathLocations = new int[16];
+  }
+
+  /**
+   * @return the number of locations
+   */
+  public int getLocationsCount() {
+    return this.names.size();
+  }
+
+  /**
+   * Returns the ID of a location.
+   * 
+   * @param location the location
+   * @return the ID or {@link #NONE} if no member ever had this location
+   */
+  public int getId(String location) {
+    return this.ids.getOrDefault(key(location), NONE);
+  }
+
+  /**
+   * Returns the name of a location as it was first written.
+   * 
+   * @param id the location's ID
+   * @return the name
+   * @throws IndexOutOfBoundsException if the ID is unknown
+   */
+  public String getName(int id) {
+    return this.names.get(id);
+  }
+
+  /**
+   * Returns the ID of the birth location of a member.
+   * 
+   * @param memberId the member's ID
+   * @return the location's ID or {@link #NONE} if the member or its location is unknown
+   */
+  public int getBirthLocationId(long memberId) {
+    Integer slot = this.slots.get(memberId);
+    return slot != null ? this.birthLocations[slot] : NONE;
+  }
+
+  /**
+   * Returns the ID of the death location of a member.
+   * 
+   * @param memberId the member's ID
+   * @return the location's ID or {@link #NONE} if the member or its location is unknown
+   */
+  public int getDeathLocationId(long memberId) {
+    Integer slot = this.slots.get(memberId);
+    return slot != null ? this.deathLocations[slot] : NONE;
+  }
+
+  /**
+   * Counts the members born in each location.
+   * 
+   * @return the number of members for each location ID
+   */
+  public int[] countBirthLocations() {
+    return count(this.birthLocations);
+  }
+
+  /**
+   * Counts the members who died in each location.
+   * 
+   * @return the number of members for each location ID
+   */
+  public int[] countDeathLocations() {
+    return count(this.deathLocations);
+  }
+
+  /**
+   * Returns the members born in a location.
+   * 
+   * @param locationId the location's ID
+   * @return the IDs of the members
+   */
+  public long[] getBornIn(int locationId) {
+    return find(this.birthLocations, locationId);
+  }
+
+  /**
+   * Returns the members who died in a location.
+   * 
+   * @param locationId the location's ID
+   * @return the IDs of the members
+   */
+  public long[] getDeadIn(int locationId) {
+    return find(this.deathLocations, locationId);
+  }
+
+  private int[] count(int[] locations) {
+    int[] counts = new int[this.names.size()];
+
+    for (int i = 0; i < this.size; i++) {
+      if (locations[i] != NONE)
+        counts[locations[i]]++;
+    }
+
+    return counts;
+  }
+
+  private long[] find(int[] locations, int locationId) {
+    long[] found = new long[this.size];
+    int n = 0;
+
+    for (int i = 0; i < this.size; i++) {
+      if (locations[i] == locationId)
+        found[n++] = this.members[i];
+    }
+
+    return Arrays.copyOf(found, n);
+  }
+
+  /**
+   * Adds or updates a member.
+   * 
+   * @param member the member
+   */
+  void put(FamilyMember member) {
+    Integer slot = this.slots.get(member.getId());
+
+    if (slot == null) {
+      if (this.size == this.members.length) {
+        int capacity = 2 * this.size;
+        this.members = Arrays.copyOf(this.members, capacity);
+        this.birthLocations = Arrays.copyOf(this.birthLocations, capacity);
+        this.deathLocations = Arrays.copyOf(this.deathLocations, capacity);
+      }
+      slot = this.size++;
+      this.slots.put(member.getId(), slot);
+      this.members[slot] = member.getId();
+    }
+    this.birthLocations[slot] = idOf(member.getBirthLocation());
+    this.deathLocations[slot] = idOf(member.getDeathLocation());
+  }
+
+  /**
+   * Removes a member. The last member takes its place so that arrays have no holes.
+   * 
+   * @param memberId the member's ID
+   */
+  void remove(long memberId) {
+    Integer slot = this.slots.remove(memberId);
+
+    if (slot != null) {
+      int last = --this.size;
+      if (slot != last) {
+        this.members[slot] = this.members[last];
+        this.birthLocations[slot] = this.birthLocations[last];
+        this.deathLocations[slot] = this.deathLocations[last];
+        this.slots.put(this.members[slot], slot);
+      }
+    }
+  }
+
+  /**
+   * Returns the ID of a location, giving it one if it has none.
+   */
+  private int idOf(Optional<String> location) {
+    if (!location.isPresent())
+      return NONE;
+    return this.writtenIds.computeIfAbsent(location.get(), name -> {
+      String key = key(name);
+      if (key.isEmpty())
+        return NONE;
+      return this.ids.computeIfAbsent(key, k -> {
+        this.names.add(name);
+        return this.names.size() - 1;
+      });
+    });
+  }
+
+  /**
+   * Returns the words of a location without accents nor case, separated by spaces.
+   */
+  private static String key(String location) {
+    return String.join(" ", TextUtil.tokenize(location));
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.darmo_creations.jenealogio.util.LongHashSet;
+
+/**
+ * This index holds the members of each gender. Every family has one, created by its first query.
+ *
+ * @author Damien Vergnet
+ */
+class GenderIndex implements MemberIndex {
+  private final Map<Gender, LongHashSet> members;
+  private final Map<Long, Gender> genders;
+
+  /**
+   * Indexes the members of a family.
+   * 
+   * @param members the members
+   */
+  GenderIndex(Iterable<FamilyMember> members) {
+    this.members = new EnumMap<>(Gender.class);
+    for (Gender gender : Gender.values())
+      this.members.put(gender, new LongHashSet());
+    this.genders = new HashMap<>();
+    members.forEach(this::memberAdded);
+  }
+
+  @Override
+  public long estimate(MemberQuery.Criterion criterion) {
+    if (criterion instanceof MemberQuery.GenderCriterion)
+      return this.members.get(((MemberQuery.GenderCriterion) criterion).getGender()).size();
+    return -1;
+  }
+
+  @Override
+  public LongHashSet lookup(MemberQuery.Criterion criterion) {
+    return this.members.get(((MemberQuery.GenderCriterion) criterion).getGender());
+  }
+
+  @Override
+  public void memberAdded(FamilyMember member) {
+    this.members.get(member.getGender()).add(member.getId());
+    this.genders.put(member.getId(), member.getGender());
+  }
+
+  @Override
+  public void memberUpdated(FamilyMember member) {
+    memberRemoved(member.getId());
+    memberAdded(member);
+  }
+
+  @Override
+  public void memberRemoved(long id) {
+    Gender gender = this.genders.remove(id);
+    if (gender != null)
+      this.members.get(gender).remove(id);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import net.darmo_creations.jenealogio.util.LongHashSet;
+
+/**
+ * An index gives the members matching some kinds of {@link MemberQuery.Criterion criteria} without
+ * looking at all members. Indexes registered to a family are used by its queries and kept up to
+ * date as listeners.
+ *
+ * @author Damien Vergnet
+ * @see Family#addMemberIndex(MemberIndex)
+ */
+public interface MemberIndex extends FamilyListener {
+  /**
+   * Estimates the number of members matching a criterion. The estimate should be cheap to compute
+   * and may be an upper bound.
+   * 
+   * @param criterion the criterion
+   * @return the estimate; -1 if this index cannot look for this criterion
+   */
+  long estimate(MemberQuery.Criterion criterion);
+
+  /**
+   * Returns the IDs of the members matching a criterion. The returned set may also contain members
+   * that do not match, they are filtered out afterwards. It must not be modified by the caller.
+   * 
+   * @param criterion a criterion this index gave an estimate for
+   * @return the IDs of all matching members
+   */
+  LongHashSet lookup(MemberQuery.Criterion criterion);
+}
@@ -0,0 +1,529 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import net.darmo_creations.jenealogio.model.date.DateInterval;
+import net.darmo_creations.jenealogio.util.LongHashSet;
+import net.darmo_creations.jenealogio.util.TextUtil;
+
+/**
+ * A query returns the members of a family matching all of its criteria. For instance:
+ * 
+ * <pre>
+ * family.query().bornBetween(1850, 1900).gender(Gender.WOMAN).birthLocationLike("Lyon").deceased().stream()
+ * </pre>
+ * <p>
+ * When the results are consumed, the query asks the indexes registered to the family for an
+ * estimate of each criterion and walks the members given by the most selective one. The IDs given
+ * by other indexes with few enough members are used to discard members before looking at them;
+ * every criterion is then checked on the remaining members. Without any suitable index, all members
+ * are checked.
+ * <p>
+ * Results are computed lazily and must be consumed before the family is modified, in the thread
+ * owning the family.
+ *
+ * @author Damien Vergnet
+ * @see Family#query()
+ * @see MemberIndex
+ */
+public final class MemberQuery {
+  /**
+   * Number of times more members than the walked ones an index may return to be used to discard
+   * members.
+   */
+  private static final int MAX_FILTER_RATIO = 4;
+
+  private final Family family;
+  private final List<Criterion> criteria;
+
+  /**
+   * Creates a query matching all members.
+   * 
+   * @param family the family
+   */
+  MemberQuery(Family family) {
+    this.family = family;
+    this.criteria = new ArrayList<>();
+  }
+
+  /**
+   * Keeps the members born between the given years.
+   * 
+   * @param from the first year
+   * @param to the last year, included
+   * @return this query
+   */
+  public MemberQuery bornBetween(int from, int to) {
+    return add(new YearCriterion(DateField.BIRTH, from, to));
+  }
+
+  /**
+   * Keeps the members who died between the given years.
+   * 
+   * @param from the first year
+   * @param to the last year, included
+   * @return this query
+   */
+  public MemberQuery diedBetween(int from, int to) {
+    return add(new YearCriterion(DateField.DEATH, from, to));
+  }
+
+  /**
+   * Keeps the members who may have been alive during the given year.
+   * 
+   * @param year the year
+   * @return this query
+   * @see #aliveBetween(int, int)
+   */
+  public MemberQuery aliveIn(int year) {
+    return aliveBetween(year, year);
+  }
+
+  /**
+   * Keeps the members who may have been alive at some point between the given years. Members with
+   * neither a birth nor a death year are left out.
+   * 
+   * @param from the first year
+   * @param to the last year, included
+   * @return this query
+   * @see DateInterval#lifespan(Optional, Optional)
+   */
+  public MemberQuery aliveBetween(int from, int to) {
+    return add(new LifespanCriterion(from, to));
+  }
+
+  /**
+   * Keeps the members of the given gender.
+   * 
+   * @param gender the gender
+   * @return this query
+   */
+  public MemberQuery gender(Gender gender) {
+    return add(new GenderCriterion(gender));
+  }
+
+  /**
+   * Keeps the members whose names contain words starting with each word of the given text. Accents
+   * and case are ignored.
+   * 
+   * @param text the text
+   * @return this query
+   */
+  public MemberQuery nameLike(String text) {
+    return add(new TextCriterion(TextField.NAME, text));
+  }
+
+  /**
+   * Keeps the members whose birth location contains words starting with each word of the given
+   * text. Accents and case are ignored.
+   * 
+   * @param text the text
+   * @return this query
+   */
+  public MemberQuery birthLocationLike(String text) {
+    return add(new TextCriterion(TextField.BIRTH_LOCATION, text));
+  }
+
+  /**
+   * Keeps the members whose death location contains words starting with each word of the given
+   * text. Accents and case are ignored.
+   * 
+   * @param text the text
+   * @return this query
+   */
+  public MemberQuery deathLocationLike(String text) {
+    return add(new TextCriterion(TextField.DEATH_LOCATION, text));
+  }
+
+  /**
+   * Keeps the dead members.
+   * 
+   * @return this query
+   */
+  public MemberQuery deceased() {
+    return add(new DeathCriterion(true));
+  }
+
+  /**
+   * Keeps the living members.
+   * 
+   * @return this query
+   */
+  public MemberQuery alive() {
+    return add(new DeathCriterion(false));
+  }
+
+  /**
+   * Keeps the members matching a predicate. The predicate is given copies of the members. No index
+   * is used for this criterion.
+   * 
+   * @param predicate the predicate
+   * @return this query
+   */
+  public MemberQuery where(Predicate<FamilyMember> predicate) {
+    return add(new PredicateCriterion(predicate));
+  }
+
+  private MemberQuery add(Criterion criterion) {
+    this.criteria.add(criterion);
+    return this;
+  }
+
+  /**
+   * @return the criteria of this query
+   */
+  public List<Criterion> getCriteria() {
+    return Collections.unmodifiableList(this.criteria);
+  }
+
+  /**
+   * Returns the matching members. The returned members are copies.
+   * 
+   * @return a lazy stream of the matching members
+   */
+  public Stream<FamilyMember> stream() {
+    return matches().map(FamilyMember::clone);
+  }
+
+  /**
+   * Returns the IDs of the matching members.
+   * 
+   * @return a lazy stream of the IDs
+   */
+  public LongStream ids() {
+    return matches().mapToLong(FamilyMember::getId);
+  }
+
+  /**
+   * @return the number of matching members
+   */
+  public long count() {
+    return matches().count();
+  }
+
+  /**
+   * Returns the first matching member found. The order of members is not specified.
+   * 
+   * @return a copy of a matching member or nothing if there are none
+   */
+  public Optional<FamilyMember> findAny() {
+    return stream().findAny();
+  }
+
+  /**
+   * Returns a stream of the family's own members matching all criteria. The query is planned when
+   * the stream is consumed.
+   */
+  private Stream<FamilyMember> matches() {
+    return StreamSupport.stream(() -> plan().spliterator(), Spliterator.DISTINCT | Spliterator.NONNULL, false);
+  }
+
+  /**
+   * Chooses the indexes to use and returns the matching members.
+   */
+  private Stream<FamilyMember> plan() {
+    Map<Criterion, MemberIndex> indexes = new IdentityHashMap<>();
+    Map<Criterion, Long> estimates = new IdentityHashMap<>();
+    Criterion driver = null;
+
+    for (Criterion criterion : this.criteria) {
+      for (MemberIndex index : this.family.getMemberIndexes()) {
+        long estimate = index.estimate(criterion);
+        if (estimate >= 0 && estimate < estimates.getOrDefault(criterion, Long.MAX_VALUE)) {
+          estimates.put(criterion, estimate);
+          indexes.put(criterion, index);
+        }
+      }
+      if (estimates.containsKey(criterion) && (driver == null || estimates.get(criterion) < estimates.get(driver)))
+        driver = criterion;
+    }
+
+    Stream<FamilyMember> members;
+    if (driver == null)
+      members = this.family.members().stream();
+    else {
+      LongHashSet ids = indexes.get(driver).lookup(driver);
+      List<LongHashSet> filters = new ArrayList<>();
+
+      for (Criterion criterion : indexes.keySet()) {
+        if (criterion != driver && estimates.get(criterion) <= (long) ids.size() * MAX_FILTER_RATIO)
+          filters.add(indexes.get(criterion).lookup(criterion));
+      }
+      // The IDs are copied as the index may give its own set
+      members = LongStream.of(ids.toArray()).filter(id -> filters.stream().allMatch(f -> f.contains(id))).mapToObj(this.family::member)
+          .filter(Objects::nonNull);
+    }
+
+    return members.filter(m -> this.criteria.stream().allMatch(c -> c.test(m)));
+  }
+
+  /**
+   * The dates criteria may apply to.
+   *
+   * @author Damien Vergnet
+   */
+  public enum DateField {
+    BIRTH, DEATH;
+  }
+
+  /**
+   * The texts criteria may apply to.
+   *
+   * @author Damien Vergnet
+   */
+  public enum TextField {
+    /** Family, use, first and other names. */
+    NAME,
+    BIRTH_LOCATION,
+    DEATH_LOCATION;
+  }
+
+  /**
+   * A condition members must match.
+   *
+   * @author Damien Vergnet
+   */
+  public static abstract class Criterion {
+    /**
+     * Tells if a member matches this criterion.
+     * 
+     * @param member the member
+     * @return true if it matches
+     */
+    public abstract boolean test(FamilyMember member);
+  }
+
+  /**
+   * Matches members whose birth or death year is within a range.
+   *
+   * @author Damien Vergnet
+   */
+  public static final class YearCriterion extends Criterion {
+    private final DateField field;
+    private final int from, to;
+
+    private YearCriterion(DateField field, int from, int to) {
+      this.field = Objects.requireNonNull(field);
+      this.from = from;
+      this.to = to;
+    }
+
+    /**
+     * @return the date to check
+     */
+    public DateField getField() {
+      return this.field;
+    }
+
+    /**
+     * @return the first year
+     */
+    public int getFrom() {
+      return this.from;
+    }
+
+    /**
+     * @return the last year, included
+     */
+    public int getTo() {
+      return this.to;
+    }
+
+    @Override
+    public boolean test(FamilyMember member) {
+      int year = this.field == DateField.BIRTH ? member.getBirthYear() : member.getDeathYear();
+      return year != FamilyMember.UNKNOWN_YEAR && year >= this.from && year <= this.to;
+    }
+  }
+
+  /**
+   * Matches members who may have been alive during a range of years.
+   *
+   * @author Damien Vergnet
+   */
+  public static final class LifespanCriterion extends Criterion {
+    private final int from, to;
+    private final DateInterval interval;
+
+    private LifespanCriterion(int from, int to) {
+      this.from = from;
+      this.to = to;
+      this.interval = DateInterval.ofYears(from, to);
+    }
+
+    /**
+     * @return the first year
+     */
+    public int getFrom() {
+      return this.from;
+    }
+
+    /**
+     * @return the last year, included
+     */
+    public int getTo() {
+      return this.to;
+    }
+
+    @Override
+    public boolean test(FamilyMember member) {
+      // The dates are not copied, they are only read
+      return DateInterval.lifespan(Optional.ofNullable(member.birthDate()), Optional.ofNullable(member.deathDate()))
+          .map(i -> i.overlaps(this.interval)).orElse(false);
+    }
+  }
+
+  /**
+   * Matches members of a gender.
+   *
+   * @author Damien Vergnet
+   */
+  public static final class GenderCriterion extends Criterion {
+    private final Gender gender;
+
+    private GenderCriterion(Gender gender) {
+      this.gender = Objects.requireNonNull(gender);
+    }
+
+    /**
+     * @return the gender
+     */
+    public Gender getGender() {
+      return this.gender;
+    }
+
+    @Override
+    public boolean test(FamilyMember member) {
+      return member.getGender() == this.gender;
+    }
+  }
+
+  /**
+   * Matches members having a text containing words starting with each word of a query.
+   *
+   * @author Damien Vergnet
+   */
+  public static final class TextCriterion extends Criterion {
+    private final TextField field;
+    private final String text;
+    private final List<String> words;
+
+    private TextCriterion(TextField field, String text) {
+      this.field = Objects.requireNonNull(field);
+      this.text = Objects.requireNonNull(text);
+      this.words = TextUtil.tokenize(text);
+    }
+
+    /**
+     * @return the text to check
+     */
+    public TextField getField() {
+      return this.field;
+    }
+
+    /**
+     * @return the searched text
+     */
+    public String getText() {
+      return this.text;
+    }
+
+    /**
+     * @return the normalized words of the searched text
+     */
+    public List<String> getWords() {
+      return Collections.unmodifiableList(this.words);
+    }
+
+    @Override
+    public boolean test(FamilyMember member) {
+      List<String> memberWords = new ArrayList<>();
+
+      switch (this.field) {
+        case NAME:
+          memberWords.addAll(member.getNameWords());
+          break;
+        case BIRTH_LOCATION:
+          member.getBirthLocation().ifPresent(s -> memberWords.addAll(TextUtil.tokenize(s)));
+          break;
+        case DEATH_LOCATION:
+          member.getDeathLocation().ifPresent(s -> memberWords.addAll(TextUtil.tokenize(s)));
+          break;
+      }
+
+      return this.words.stream().allMatch(w -> memberWords.stream().anyMatch(m -> m.startsWith(w)));
+    }
+  }
+
+  /**
+   * Matches dead or living members.
+   *
+   * @author Damien Vergnet
+   */
+  public static final class DeathCriterion extends Criterion {
+    private final boolean dead;
+
+    private DeathCriterion(boolean dead) {
+      this.dead = dead;
+    }
+
+    /**
+     * @return true if dead members are wanted; false for living ones
+     */
+    public boolean isDead() {
+      return this.dead;
+    }
+
+    @Override
+    public boolean test(FamilyMember member) {
+      return member.isDead() == this.dead;
+    }
+  }
+
+  /**
+   * Matches members with a predicate.
+   *
+   * @author Damien Vergnet
+   */
+  public static final class PredicateCriterion extends Criterion {
+    private final Predicate<FamilyMember> predicate;
+
+    private PredicateCriterion(Predicate<FamilyMember> predicate) {
+      this.predicate = Objects.requireNonNull(predicate);
+    }
+
+    @Override
+    public boolean test(FamilyMember member) {
+      return this.predicate.test(member.clone());
+    }
+  }
+}
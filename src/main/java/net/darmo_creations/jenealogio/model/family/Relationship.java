@@ -18,14 +18,18 @@
  */
 package net.darmo_creations.jenealogio.model.family;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
 
 import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.util.StringPool;
 import net.darmo_creations.utils.Nullable;
 
 /**
@@ -190,6 +194,17 @@ public final class Relationship implements Comparable<Relationship>, Cloneable {
     this.partner2 = id;
   }
 
+  /**
+   * Returns both partners, the lowest ID first. As a family has at most one relation for each
+   * couple, this list identifies the relation.
+   * 
+   * @return the partners' IDs
+   */
+  public List<Long> getPartners() {
+    long p1 = this.partner1, p2 = this.partner2;
+    return Collections.unmodifiableList(Arrays.asList(Math.min(p1, p2), Math.max(p1, p2)));
+  }
+
   /**
    * Tells if the given person is a child from this wedding.
    * 
@@ -207,6 +222,13 @@ public final class Relationship implements Comparable<Relationship>, Cloneable {
     return new HashSet<>(this.children);
   }
 
+  /**
+   * @return the internal set of children's IDs
+   */
+  Set<Long> children() {
+    return this.children;
+  }
+
   /**
    * Adds a child to this relation. The child must be different from the two partners and not
    * already present in the children list.
@@ -280,6 +302,15 @@ public final class Relationship implements Comparable<Relationship>, Cloneable {
     return Optional.ofNullable(this.adoptions.get(id));
   }
 
+  /**
+   * Replaces the location by its instance from the pool.
+   * 
+   * @param pool the pool
+   */
+  void internStrings(StringPool pool) {
+    this.location = pool.intern(this.location);
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
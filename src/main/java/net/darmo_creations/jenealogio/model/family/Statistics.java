@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+/**
+ * Statistics of a family at a given time. They are computed by a {@link StatisticsEngine}.
+ * <p>
+ * Centuries are numbered by their hundreds: century 19 goes from 1900 to 1999.
+ *
+ * @author Damien Vergnet
+ */
+public final class Statistics {
+  private final int membersCount;
+  private final int firstCentury;
+  /** Members by century then gender; the last row holds the members without a birth year. */
+  private final int[] counts;
+  private final OptionalDouble averageLifespan;
+  private final OptionalDouble averageAgeAtFirstChild;
+  private final int couplesCount;
+  private final OptionalDouble averageChildrenPerCouple;
+  private final int generationsCount;
+  private final Map<String, Integer> familyNames, firstNames, locations;
+
+  Statistics(int membersCount, int firstCentury, int[] counts, OptionalDouble averageLifespan, OptionalDouble averageAgeAtFirstChild,
+      int couplesCount, OptionalDouble averageChildrenPerCouple, int generationsCount, Map<String, Integer> familyNames,
+      Map<String, Integer> firstNames, Map<String, Integer> locations) {
+    this.membersCount = membersCount;
+    this.firstCentury = firstCentury;
+    this.counts = counts;
+    this.averageLifespan = averageLifespan;
+    this.averageAgeAtFirstChild = averageAgeAtFirstChild;
+    this.couplesCount = couplesCount;
+    this.averageChildrenPerCouple = averageChildrenPerCouple;
+    this.generationsCount = generationsCount;
+    this.familyNames = Collections.unmodifiableMap(familyNames);
+    this.firstNames = Collections.unmodifiableMap(firstNames);
+    this.locations = Collections.unmodifiableMap(locations);
+  }
+
+  /**
+   * @return the number of members
+   */
+  public int getMembersCount() {
+    return this.membersCount;
+  }
+
+  /**
+   * @param gender the gender
+   * @return the number of members of the given gender
+   */
+  public int getCount(Gender gender) {
+    int count = 0;
+    for (int i = gender.ordinal(); i < this.counts.length; i += Gender.values().length)
+      count += this.counts[i];
+    return count;
+  }
+
+  /**
+   * @return the century of the earliest known birth
+   */
+  public int getFirstCentury() {
+    return this.firstCentury;
+  }
+
+  /**
+   * @return the century of the latest known birth; it is less than the first century if no birth
+   *         years are known
+   */
+  public int getLastCentury() {
+    return this.firstCentury + this.counts.length / Gender.values().length - 2;
+  }
+
+  /**
+   * Returns the number of members of a gender born during a century.
+   * 
+   * @param century the century
+   * @param gender the gender
+   * @return the number of members
+   */
+  public int getCount(int century, Gender gender) {
+    if (century < getFirstCentury() || century > getLastCentury())
+      return 0;
+    return this.counts[(century - this.firstCentury) * Gender.values().length + gender.ordinal()];
+  }
+
+  /**
+   * @param gender the gender
+   * @return the number of members of the given gender whose birth year is not known
+   */
+  public int getUnknownCenturyCount(Gender gender) {
+    return this.counts[this.counts.length - Gender.values().length + gender.ordinal()];
+  }
+
+  /**
+   * @return the average lifespan in years of dead members whose birth and death years are known
+   */
+  public OptionalDouble getAverageLifespan() {
+    return this.averageLifespan;
+  }
+
+  /**
+   * @return the average age in years of parents at the birth of their first child, adopted
+   *         children excluded
+   */
+  public OptionalDouble getAverageAgeAtFirstChild() {
+    return this.averageAgeAtFirstChild;
+  }
+
+  /**
+   * @return the number of relations
+   */
+  public int getCouplesCount() {
+    return this.couplesCount;
+  }
+
+  /**
+   * @return the average number of children per relation
+   */
+  public OptionalDouble getAverageChildrenPerCouple() {
+    return this.averageChildrenPerCouple;
+  }
+
+  /**
+   * @return the number of generations of the longest line of descent
+   */
+  public int getGenerationsCount() {
+    return this.generationsCount;
+  }
+
+  /**
+   * @return the most common family names with their number of members, the most common first
+   */
+  public Map<String, Integer> getMostCommonFamilyNames() {
+    return this.familyNames;
+  }
+
+  /**
+   * @return the most common first names with their number of members, the most common first
+   */
+  public Map<String, Integer> getMostCommonFirstNames() {
+    return this.firstNames;
+  }
+
+  /**
+   * @return the most common birth and death locations with their number of births and deaths, the
+   *         most common first
+   */
+  public Map<String, Integer> getMostCommonLocations() {
+    return this.locations;
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import net.darmo_creations.jenealogio.util.LongIntHashMap;
+import net.darmo_creations.jenealogio.util.TaskUtil;
+
+/**
+ * This class computes the statistics of a family.
+ * <p>
+ * The engine copies the data it needs into arrays at construction, using accessors that do not copy
+ * dates. Statistics are then computed in a single pass over the members, split among the threads
+ * of the common fork-join pool; each task fills its own counters and the counters are summed when
+ * tasks are joined. The number of generations is computed apart, in linear time.
+ *
+ * @author Damien Vergnet
+ */
+public class StatisticsEngine {
+  /** Number of names and locations reported. */
+  private static final int TOP_COUNT = 10;
+  /** Number of members under which a task is not split. */
+  private static final int TASK_SIZE = 8192;
+  /** Value of members without children. */
+  private static final int NO_CHILD = Integer.MAX_VALUE;
+  private static final int GENDERS = Gender.values().length;
+
+  private final int[] genders;
+  private final int[] birthYears, deathYears;
+  /** The earliest birth year of the biological children of each member. */
+  private final int[] firstChildYears;
+  private final String[] familyNames, firstNames;
+  private final int firstCentury, centuriesCount;
+  /** The number of children of each relation. */
+  private final int[] childrenCounts;
+  /**
+   * The children of each member are at indexes {@code childrenStarts[i]} to
+   * {@code childrenStarts[i + 1]}; children that are not in the family are -1.
+   */
+  private final int[] childrenStarts, children;
+  /** The number of births and deaths for each location ID. */
+  private final int[] locationsCounts;
+  private final String[] locations;
+
+  /**
+   * Creates an engine for the given tree. As it reads the members, it has to be created in the
+   * thread owning the family.
+   * 
+   * @param family the tree
+   */
+  public StatisticsEngine(Family family) {
+    Set<FamilyMember> members = family.members();
+    int n = members.size();
+    LongIntHashMap indexes = new LongIntHashMap(n);
+    int minYear = Integer.MAX_VALUE, maxYear = Integer.MIN_VALUE;
+    int i = 0;
+
+    this.genders = new int[n];
+    this.birthYears = new int[n];
+    this.deathYears = new int[n];
+    this.familyNames = new String[n];
+    this.firstNames = new String[n];
+    for (FamilyMember m : members) {
+      indexes.put(m.getId(), i);
+      this.genders[i] = m.getGender().ordinal();
+      this.birthYears[i] = m.getBirthYear();
+      this.deathYears[i] = m.getDeathYear();
+      this.familyNames[i] = m.getFamilyName().orElse(null);
+      this.firstNames[i] = m.getFirstName().orElse(null);
+      if (this.birthYears[i] != FamilyMember.UNKNOWN_YEAR) {
+        minYear = Math.min(minYear, this.birthYears[i]);
+        maxYear = Math.max(maxYear, this.birthYears[i]);
+      }
+      i++;
+    }
+    if (minYear <= maxYear) {
+      this.firstCentury = Math.floorDiv(minYear, 100);
+      this.centuriesCount = Math.floorDiv(maxYear, 100) - this.firstCentury + 1;
+    }
+    else {
+      this.firstCentury = 0;
+      this.centuriesCount = 0;
+    }
+
+    // Each relation is resolved once into the indexes of its partners and children
+    Set<Relationship> relations = family.relations();
+    int relationsCount = relations.size();
+    int[] partners = new int[2 * relationsCount];
+    int[] relationsStarts = new int[relationsCount + 1];
+    int[] relationsChildren;
+    int[] relationsFirstChildYears = new int[relationsCount];
+    int r = 0;
+
+    this.childrenCounts = new int[relationsCount];
+    for (Relationship relation : relations)
+      this.childrenCounts[r++] = relation.children().size();
+    for (r = 0; r < relationsCount; r++)
+      relationsStarts[r + 1] = relationsStarts[r] + this.childrenCounts[r];
+    relationsChildren = new int[relationsStarts[relationsCount]];
+    r = 0;
+    for (Relationship relation : relations) {
+      int size = relationsStarts[r];
+      int first = NO_CHILD;
+
+      partners[2 * r] = indexes.get(relation.getPartner1(), -1);
+      partners[2 * r + 1] = indexes.get(relation.getPartner2(), -1);
+      for (long childId : relation.children()) {
+        int c = indexes.get(childId, -1);
+        if (c < 0)
+          continue;
+        relationsChildren[size++] = c;
+        if (this.birthYears[c] != FamilyMember.UNKNOWN_YEAR && !relation.isAdopted(childId))
+          first = Math.min(first, this.birthYears[c]);
+      }
+      // Unknown children are dropped
+      Arrays.fill(relationsChildren, size, relationsStarts[r + 1], -1);
+      relationsFirstChildYears[r++] = first;
+    }
+
+    // The children of each member are counted first to lay them out in a single array
+    this.firstChildYears = new int[n];
+    this.childrenStarts = new int[n + 1];
+    Arrays.fill(this.firstChildYears, NO_CHILD);
+    for (r = 0; r < 2 * relationsCount; r++) {
+      int p = partners[r];
+      if (p >= 0) {
+        this.childrenStarts[p + 1] += relationsStarts[r / 2 + 1] - relationsStarts[r / 2];
+        this.firstChildYears[p] = Math.min(this.firstChildYears[p], relationsFirstChildYears[r / 2]);
+      }
+    }
+    for (int j = 0; j < n; j++)
+      this.childrenStarts[j + 1] += this.childrenStarts[j];
+    this.children = new int[this.childrenStarts[n]];
+    int[] sizes = new int[n];
+    Arrays.fill(this.children, -1);
+    for (r = 0; r < 2 * relationsCount; r++) {
+      int p = partners[r];
+      if (p >= 0) {
+        for (int j = relationsStarts[r / 2]; j < relationsStarts[r / 2 + 1]; j++)
+          this.children[this.childrenStarts[p] + sizes[p]++] = relationsChildren[j];
+      }
+    }
+
+    Gazetteer gazetteer = family.getGazetteer();
+    this.locationsCounts = gazetteer.countBirthLocations();
+    int[] deaths = gazetteer.countDeathLocations();
+    this.locations = new String[this.locationsCounts.length];
+    for (int j = 0; j < this.locations.length; j++) {
+      this.locationsCounts[j] += deaths[j];
+      this.locations[j] = gazetteer.getName(j);
+    }
+  }
+
+  /**
+   * Computes the statistics.
+   * 
+   * @return the statistics
+   * @throws CancellationException if the thread was interrupted
+   */
+  public Statistics compute() {
+    // Tasks run in the pool's threads, they check the calling thread to know if it was interrupted
+    Counters counters = ForkJoinPool.commonPool().invoke(new MembersTask(Thread.currentThread(), 0, this.genders.length));
+    TaskUtil.checkCanceled();
+    int generations = countGenerations();
+    Map<String, Integer> locations = new HashMap<>();
+
+    for (int i = 0; i < this.locations.length; i++) {
+      if (this.locationsCounts[i] > 0)
+        locations.put(this.locations[i], this.locationsCounts[i]);
+    }
+
+    return new Statistics(this.genders.length, this.firstCentury, counters.counts, average(counters.lifespans, counters.lifespansCount),
+        average(counters.ages, counters.agesCount), this.childrenCounts.length, Arrays.stream(this.childrenCounts).average(),
+        generations, top(counters.familyNames), top(counters.firstNames), top(locations));
+  }
+
+  /**
+   * Computes the depth of each member by visiting parents before their children. Members that are
+   * their own ancestors are never visited.
+   * 
+   * @return the largest depth
+   */
+  private int countGenerations() {
+    int n = this.genders.length;
+    int[] parents = new int[n];
+    int[] depths = new int[n];
+    int[] queue = new int[n];
+    int head = 0, tail = 0;
+    int max = 0;
+
+    for (int c : this.children) {
+      if (c >= 0)
+        parents[c]++;
+    }
+    for (int i = 0; i < n; i++) {
+      if (parents[i] == 0) {
+        depths[i] = 1;
+        queue[tail++] = i;
+      }
+    }
+    while (head < tail) {
+      int i = queue[head++];
+
+      max = Math.max(max, depths[i]);
+      for (int j = this.childrenStarts[i]; j < this.childrenStarts[i + 1]; j++) {
+        int c = this.children[j];
+        if (c < 0)
+          continue;
+        depths[c] = Math.max(depths[c], depths[i] + 1);
+        if (--parents[c] == 0)
+          queue[tail++] = c;
+      }
+    }
+
+    return max;
+  }
+
+  private static OptionalDouble average(long sum, int count) {
+    return count > 0 ? OptionalDouble.of((double) sum / count) : OptionalDouble.empty();
+  }
+
+  /**
+   * Returns the most common values, the most common first.
+   * 
+   * @param counts the number of occurrences of each value
+   */
+  private static Map<String, Integer> top(Map<String, Integer> counts) {
+    // The least common value is at the head of the queue, ties are broken by name
+    PriorityQueue<Map.Entry<String, Integer>> queue = new PriorityQueue<>(
+        Comparator.comparing((Map.Entry<String, Integer> e) -> e.getValue()).thenComparing(Map.Entry::getKey, Comparator.reverseOrder()));
+
+    for (Map.Entry<String, Integer> e : counts.entrySet()) {
+      queue.add(e);
+      if (queue.size() > TOP_COUNT)
+        queue.poll();
+    }
+
+    List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+    while (!queue.isEmpty())
+      entries.add(queue.poll());
+    Collections.reverse(entries);
+    Map<String, Integer> top = new LinkedHashMap<>();
+    entries.forEach(e -> top.put(e.getKey(), e.getValue()));
+    return top;
+  }
+
+  /**
+   * The counters filled by a task.
+   *
+   * @author Damien Vergnet
+   */
+  private final class Counters {
+    /** Members by century then gender, members without a birth year last. */
+    final int[] counts = new int[(StatisticsEngine.this.centuriesCount + 1) * GENDERS];
+    final Map<String, Integer> familyNames = new HashMap<>(), firstNames = new HashMap<>();
+    long lifespans, ages;
+    int lifespansCount, agesCount;
+
+    void add(Counters other) {
+      for (int i = 0; i < this.counts.length; i++)
+        this.counts[i] += other.counts[i];
+      this.lifespans += other.lifespans;
+      this.lifespansCount += other.lifespansCount;
+      this.ages += other.ages;
+      this.agesCount += other.agesCount;
+      other.familyNames.forEach((k, v) -> this.familyNames.merge(k, v, Integer::sum));
+      other.firstNames.forEach((k, v) -> this.firstNames.merge(k, v, Integer::sum));
+    }
+  }
+
+  /**
+   * Counts a range of members, splitting it if it is too large.
+   *
+   * @author Damien Vergnet
+   */
+  private final class MembersTask extends RecursiveTask<Counters> {
+    private static final long serialVersionUID = 4150927834183716583L;
+
+    private final Thread caller;
+    private final int from, to;
+
+    MembersTask(Thread caller, int from, int to) {
+      this.caller = caller;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Counters compute() {
+      if (this.to - this.from > TASK_SIZE) {
+        int middle = (this.from + this.to) >>> 1;
+        MembersTask left = new MembersTask(this.caller, this.from, middle);
+        MembersTask right = new MembersTask(this.caller, middle, this.to);
+
+        left.fork();
+        Counters counters = right.compute();
+        Counters other = left.join();
+        // The smallest maps are merged into the largest ones
+        if (other.familyNames.size() + other.firstNames.size() > counters.familyNames.size() + counters.firstNames.size()) {
+          other.add(counters);
+          return other;
+        }
+        counters.add(other);
+        return counters;
+      }
+
+      TaskUtil.checkCanceled(this.caller);
+      StatisticsEngine e = StatisticsEngine.this;
+      Counters counters = new Counters();
+      for (int i = this.from; i < this.to; i++) {
+        int birth = e.birthYears[i], death = e.deathYears[i];
+        int row = birth != FamilyMember.UNKNOWN_YEAR ? Math.floorDiv(birth, 100) - e.firstCentury : e.centuriesCount;
+
+        counters.counts[row * GENDERS + e.genders[i]]++;
+        if (birth != FamilyMember.UNKNOWN_YEAR && death != FamilyMember.UNKNOWN_YEAR && death >= birth) {
+          counters.lifespans += death - birth;
+          counters.lifespansCount++;
+        }
+        if (birth != FamilyMember.UNKNOWN_YEAR && e.firstChildYears[i] != NO_CHILD && e.firstChildYears[i] >= birth) {
+          counters.ages += e.firstChildYears[i] - birth;
+          counters.agesCount++;
+        }
+        if (e.familyNames[i] != null)
+          counters.familyNames.merge(e.familyNames[i], 1, Integer::sum);
+        if (e.firstNames[i] != null)
+          counters.firstNames.merge(e.firstNames[i], 1, Integer::sum);
+      }
+      return counters;
+    }
+  }
+}
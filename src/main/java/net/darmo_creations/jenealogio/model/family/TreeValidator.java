@@ -0,0 +1,636 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.date.DateInterval;
+import net.darmo_creations.jenealogio.util.LongHashSet;
+import net.darmo_creations.jenealogio.util.LongIntHashMap;
+
+/**
+ * A validator looks for inconsistencies in a family:
+ * <ul>
+ * <li>children born before one of their parents or more than 9 months after their death;</li>
+ * <li>relations starting or ending outside of the lifespan of a partner;</li>
+ * <li>children adopted before being born;</li>
+ * <li>members that are their own ancestor;</li>
+ * <li>relations referring to members that are not in the family.</li>
+ * </ul>
+ * Incomplete dates are only reported when every date they may stand for is inconsistent.
+ * <p>
+ * The whole family is checked at construction in linear time, members that are their own ancestor
+ * being found as the strongly connected components of the graph of parents. The validator must then
+ * be registered as a listener of the family: after each change, only the relations of the changed
+ * member or the changed relation are checked again, only the ancestors of a changed relation are
+ * searched for new cycles and only the members of cycles through the children taken from a
+ * relation are checked again.
+ *
+ * @author Damien Vergnet
+ * @see Family#addFamilyListener(FamilyListener)
+ */
+public class TreeValidator implements FamilyListener {
+  /** Number of months after the death of a parent during which a child may still be born. */
+  private static final int PREGNANCY_MONTHS = 9;
+
+  /** Birth and death intervals of each member. */
+  private final Map<Long, Lifespan> members;
+  /** Relations by partners, the lowest ID first. */
+  private final Map<List<Long>, Link> relations;
+  /** The relations each member is a partner or a child of. */
+  private final Map<Long, List<Link>> membersRelations;
+  private final Map<Link, List<Warning>> relationsWarnings;
+  /** Members that are their own ancestor. */
+  private final LongHashSet ownAncestors;
+  private final List<ValidationListener> listeners;
+
+  /**
+   * Creates a validator and checks the whole family. This constructor must be called from the
+   * thread owning the family.
+   * 
+   * @param family the family
+   */
+  public TreeValidator(Family family) {
+    this.members = new HashMap<>();
+    this.relations = new HashMap<>();
+    this.membersRelations = new HashMap<>();
+    this.relationsWarnings = new HashMap<>();
+    this.ownAncestors = new LongHashSet();
+    this.listeners = new ArrayList<>();
+
+    for (FamilyMember member : family.members())
+      this.members.put(member.getId(), new Lifespan(member));
+    for (Relationship relation : family.relations())
+      putRelation(relation);
+    this.relations.values().forEach(this::checkRelation);
+    findAllCycles();
+  }
+
+  /**
+   * Adds a listener.
+   * 
+   * @param listener the listener
+   */
+  public void addValidationListener(ValidationListener listener) {
+    this.listeners.add(listener);
+  }
+
+  /**
+   * Removes a listener.
+   * 
+   * @param listener the listener
+   */
+  public void removeValidationListener(ValidationListener listener) {
+    this.listeners.remove(listener);
+  }
+
+  /**
+   * @return all current warnings, in no particular order
+   */
+  public List<Warning> getWarnings() {
+    List<Warning> warnings = new ArrayList<>();
+
+    this.relationsWarnings.values().forEach(warnings::addAll);
+    this.ownAncestors.forEach(id -> warnings.add(new Warning(Warning.Type.OWN_ANCESTOR, id, -1)));
+
+    return warnings;
+  }
+
+  @Override
+  public void memberAdded(FamilyMember member) {
+    this.members.put(member.getId(), new Lifespan(member));
+    checkRelations(member.getId());
+    fireChange();
+  }
+
+  @Override
+  public void memberUpdated(FamilyMember member) {
+    this.members.put(member.getId(), new Lifespan(member));
+    checkRelations(member.getId());
+    fireChange();
+  }
+
+  @Override
+  public void memberRemoved(long id) {
+    this.members.remove(id);
+    this.ownAncestors.remove(id);
+    checkRelations(id);
+    fireChange();
+  }
+
+  @Override
+  public void relationAdded(Relationship relation) {
+    Link link = putRelation(relation);
+    checkRelation(link);
+    findCycles(link);
+    fireChange();
+  }
+
+  @Override
+  public void relationUpdated(Relationship relation) {
+    Link old = removeRelation(relation);
+    Link link = putRelation(relation);
+    checkRelation(link);
+    // Removed children may have broken cycles
+    if (old != null)
+      checkOwnAncestors(old.children);
+    findCycles(link);
+    fireChange();
+  }
+
+  @Override
+  public void relationRemoved(Relationship relation) {
+    Link old = removeRelation(relation);
+    if (old != null)
+      checkOwnAncestors(old.children);
+    fireChange();
+  }
+
+  private void fireChange() {
+    this.listeners.forEach(l -> l.warningsChanged(this));
+  }
+
+  /**
+   * Stores a relation and indexes it by member.
+   * 
+   * @return the stored relation
+   */
+  private Link putRelation(Relationship relation) {
+    Link link = new Link(relation);
+
+    this.relations.put(link.key, link);
+    for (long id : link.partners)
+      this.membersRelations.computeIfAbsent(id, k -> new ArrayList<>(2)).add(link);
+    for (long id : link.children)
+      this.membersRelations.computeIfAbsent(id, k -> new ArrayList<>(2)).add(link);
+
+    return link;
+  }
+
+  /**
+   * Removes a relation with its warnings.
+   * 
+   * @return the removed relation or null if it was unknown
+   */
+  private Link removeRelation(Relationship relation) {
+    Link link = this.relations.remove(relation.getPartners());
+
+    if (link != null) {
+      this.relationsWarnings.remove(link);
+      for (long id : link.partners)
+        unindex(id, link);
+      for (long id : link.children)
+        unindex(id, link);
+    }
+
+    return link;
+  }
+
+  private void unindex(long memberId, Link link) {
+    List<Link> links = this.membersRelations.get(memberId);
+
+    if (links != null) {
+      links.remove(link);
+      if (links.isEmpty())
+        this.membersRelations.remove(memberId);
+    }
+  }
+
+  /**
+   * Checks again the relations a member is a partner or a child of.
+   */
+  private void checkRelations(long memberId) {
+    this.membersRelations.getOrDefault(memberId, Collections.emptyList()).forEach(this::checkRelation);
+  }
+
+  /**
+   * Checks the dates and members of a relation and replaces its warnings.
+   */
+  private void checkRelation(Link link) {
+    List<Warning> warnings = new ArrayList<>(0);
+    long[] partners = link.partners;
+
+    for (int i = 0; i < 2; i++) {
+      Lifespan lifespan = this.members.get(partners[i]);
+
+      if (lifespan == null) {
+        warnings.add(new Warning(Warning.Type.UNKNOWN_MEMBER, partners[i], partners[1 - i]));
+        continue;
+      }
+      if (before(link.start, lifespan.birth) || before(link.end, lifespan.birth))
+        warnings.add(new Warning(Warning.Type.RELATION_BEFORE_BIRTH, partners[i], partners[1 - i]));
+      if (before(lifespan.death, link.start) || before(lifespan.death, link.end))
+        warnings.add(new Warning(Warning.Type.RELATION_AFTER_DEATH, partners[i], partners[1 - i]));
+    }
+
+    for (int i = 0; i < link.children.length; i++) {
+      long child = link.children[i];
+      Lifespan lifespan = this.members.get(child);
+
+      if (lifespan == null) {
+        warnings.add(new Warning(Warning.Type.UNKNOWN_MEMBER, child, partners[0]));
+        continue;
+      }
+      for (long partner : partners) {
+        Lifespan parent = this.members.get(partner);
+        if (parent == null)
+          continue;
+        if (before(lifespan.birth, parent.birth))
+          warnings.add(new Warning(Warning.Type.CHILD_BORN_BEFORE_PARENT, child, partner));
+        if (parent.death != null && before(parent.death.extendByMonths(PREGNANCY_MONTHS), lifespan.birth))
+          warnings.add(new Warning(Warning.Type.CHILD_BORN_AFTER_PARENT_DEATH, child, partner));
+      }
+      if (before(link.adoptions[i], lifespan.birth))
+        warnings.add(new Warning(Warning.Type.ADOPTION_BEFORE_BIRTH, child, -1));
+    }
+
+    if (warnings.isEmpty())
+      this.relationsWarnings.remove(link);
+    else
+      this.relationsWarnings.put(link, warnings);
+  }
+
+  /**
+   * Tells if the first interval is surely before the second one. Missing intervals are never
+   * before any other.
+   */
+  private static boolean before(DateInterval interval1, DateInterval interval2) {
+    return interval1 != null && interval2 != null && interval1.getEnd() < interval2.getStart();
+  }
+
+  /**
+   * Finds all members that are their own ancestor: they are the members of the strongly connected
+   * components of more than one member and the members that are their own child. Components are
+   * found with Tarjan's algorithm, made iterative so that long lines of descent do not overflow the
+   * stack.
+   */
+  private void findAllCycles() {
+    int n = this.members.size();
+    long[] ids = new long[n];
+    LongIntHashMap indexes = new LongIntHashMap(n);
+    int i = 0;
+
+    for (long id : this.members.keySet()) {
+      ids[i] = id;
+      indexes.put(id, i++);
+    }
+
+    // The children of each member, as indexes
+    int[] starts = new int[n + 1];
+    for (Link link : this.relations.values()) {
+      for (long partner : link.partners) {
+        int p = indexes.get(partner, -1);
+        if (p >= 0)
+          starts[p + 1] += link.children.length;
+      }
+    }
+    for (i = 0; i < n; i++)
+      starts[i + 1] += starts[i];
+    int[] children = new int[starts[n]];
+    int[] sizes = new int[n];
+    for (Link link : this.relations.values()) {
+      for (long partner : link.partners) {
+        int p = indexes.get(partner, -1);
+        if (p >= 0) {
+          for (long child : link.children)
+            children[starts[p] + sizes[p]++] = indexes.get(child, -1);
+        }
+      }
+    }
+
+    int[] order = new int[n], lowLinks = new int[n];
+    // Position of the next child to visit for each member on the call stack
+    int[] next = new int[n];
+    boolean[] onStack = new boolean[n];
+    int[] stack = new int[n], callStack = new int[n];
+    int stackSize = 0, counter = 0;
+
+    Arrays.fill(order, -1);
+    for (int root = 0; root < n; root++) {
+      if (order[root] >= 0)
+        continue;
+      int depth = 0;
+      callStack[depth++] = root;
+      order[root] = lowLinks[root] = counter++;
+      next[root] = starts[root];
+      stack[stackSize++] = root;
+      onStack[root] = true;
+
+      while (depth > 0) {
+        int v = callStack[depth - 1];
+
+        if (next[v] < starts[v + 1]) {
+          int w = children[next[v]++];
+          if (w < 0)
+            continue;
+          if (order[w] < 0) {
+            order[w] = lowLinks[w] = counter++;
+            next[w] = starts[w];
+            stack[stackSize++] = w;
+            onStack[w] = true;
+            callStack[depth++] = w;
+          }
+          else if (onStack[w])
+            lowLinks[v] = Math.min(lowLinks[v], order[w]);
+          continue;
+        }
+
+        depth--;
+        if (depth > 0) {
+          int parent = callStack[depth - 1];
+          lowLinks[parent] = Math.min(lowLinks[parent], lowLinks[v]);
+        }
+        if (lowLinks[v] == order[v]) {
+          int w, size = 0;
+          int top = stackSize;
+          do {
+            w = stack[--stackSize];
+            onStack[w] = false;
+            size++;
+          } while (w != v);
+          if (size > 1 || isOwnChild(v, starts, children)) {
+            for (int j = stackSize; j < top; j++)
+              this.ownAncestors.add(ids[stack[j]]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Tells if a member is among its own children, given as indexes.
+   */
+  private static boolean isOwnChild(int member, int[] starts, int[] children) {
+    for (int i = starts[member]; i < starts[member + 1]; i++) {
+      if (children[i] == member)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Looks for members that became their own ancestor because of the given relation: they are the
+   * descendants of its children that are also ancestors of its partners.
+   */
+  private void findCycles(Link link) {
+    LongHashSet ancestors = new LongHashSet();
+    Deque<Long> queue = new ArrayDeque<>();
+
+    for (long partner : link.partners) {
+      if (ancestors.add(partner))
+        queue.add(partner);
+    }
+    while (!queue.isEmpty()) {
+      for (long parent : parents(queue.poll())) {
+        if (ancestors.add(parent))
+          queue.add(parent);
+      }
+    }
+
+    LongHashSet visited = new LongHashSet();
+    for (long child : link.children) {
+      if (ancestors.contains(child) && visited.add(child))
+        queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      long id = queue.poll();
+
+      this.ownAncestors.add(id);
+      for (long child : children(id)) {
+        if (ancestors.contains(child) && visited.add(child))
+          queue.add(child);
+      }
+    }
+  }
+
+  /**
+   * Checks again if the members that were their own ancestor through one of the given children,
+   * taken from a relation, still are. A cycle broken by removing a child went through one of these
+   * children and all its members are their own ancestor: they are found by walking down from the
+   * children through the members that are their own ancestor only.
+   */
+  private void checkOwnAncestors(long[] removedChildren) {
+    LongHashSet candidates = new LongHashSet();
+    Deque<Long> queue = new ArrayDeque<>();
+
+    for (long child : removedChildren) {
+      if (this.ownAncestors.contains(child) && candidates.add(child))
+        queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      for (long child : children(queue.poll())) {
+        if (this.ownAncestors.contains(child) && candidates.add(child))
+          queue.add(child);
+      }
+    }
+
+    for (long id : candidates.toArray()) {
+      if (!isOwnAncestor(id))
+        this.ownAncestors.remove(id);
+    }
+  }
+
+  private boolean isOwnAncestor(long memberId) {
+    LongHashSet visited = new LongHashSet();
+    Deque<Long> queue = new ArrayDeque<>();
+
+    queue.add(memberId);
+    while (!queue.isEmpty()) {
+      for (long parent : parents(queue.poll())) {
+        if (parent == memberId)
+          return true;
+        if (visited.add(parent))
+          queue.add(parent);
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return the partners of the relations the member is a child of
+   */
+  private List<Long> parents(long memberId) {
+    List<Long> parents = new ArrayList<>();
+
+    for (Link link : this.membersRelations.getOrDefault(memberId, Collections.emptyList())) {
+      if (link.isChild(memberId))
+        parents.addAll(link.key);
+    }
+
+    return parents;
+  }
+
+  /**
+   * @return the children of the relations the member is a partner of
+   */
+  private List<Long> children(long memberId) {
+    List<Long> children = new ArrayList<>();
+
+    for (Link link : this.membersRelations.getOrDefault(memberId, Collections.emptyList())) {
+      if (link.key.contains(memberId)) {
+        for (long child : link.children)
+          children.add(child);
+      }
+    }
+
+    return children;
+  }
+
+  /**
+   * The birth and death intervals of a member, null if unknown.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class Lifespan {
+    final DateInterval birth, death;
+
+    Lifespan(FamilyMember member) {
+      this.birth = interval(member.birthDate());
+      this.death = interval(member.deathDate());
+    }
+  }
+
+  /**
+   * The data of a relation needed to check it. Links are compared by identity.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class Link {
+    final List<Long> key;
+    final long[] partners;
+    final long[] children;
+    /** The intervals of the start and end dates, null if unknown. */
+    final DateInterval start, end;
+    /** The interval of the adoption date of each child, null if unknown. */
+    final DateInterval[] adoptions;
+
+    Link(Relationship relation) {
+      this.key = relation.getPartners();
+      this.partners = new long[]{relation.getPartner1(), relation.getPartner2()};
+      this.children = new long[relation.children().size()];
+      this.adoptions = new DateInterval[this.children.length];
+      int i = 0;
+      for (long child : relation.children()) {
+        this.children[i] = child;
+        this.adoptions[i++] = interval(relation.getAdoptionDate(child).orElse(null));
+      }
+      this.start = interval(relation.getDate().orElse(null));
+      this.end = interval(relation.getEndDate().orElse(null));
+    }
+
+    boolean isChild(long id) {
+      for (long child : this.children) {
+        if (child == id)
+          return true;
+      }
+      return false;
+    }
+  }
+
+  private static DateInterval interval(Date date) {
+    return date != null ? DateInterval.of(date).orElse(null) : null;
+  }
+
+  /**
+   * An inconsistency found by a validator.
+   *
+   * @author Damien Vergnet
+   */
+  public static final class Warning {
+    private final Type type;
+    private final long memberId, otherMemberId;
+
+    private Warning(Type type, long memberId, long otherMemberId) {
+      this.type = type;
+      this.memberId = memberId;
+      this.otherMemberId = otherMemberId;
+    }
+
+    /**
+     * @return the kind of inconsistency
+     */
+    public Type getType() {
+      return this.type;
+    }
+
+    /**
+     * @return the ID of the member the warning is about
+     */
+    public long getMemberId() {
+      return this.memberId;
+    }
+
+    /**
+     * @return the ID of the parent or partner involved or -1 if there are none
+     */
+    public long getOtherMemberId() {
+      return this.otherMemberId;
+    }
+
+    @Override
+    public String toString() {
+      return this.type + "(" + this.memberId + ", " + this.otherMemberId + ")";
+    }
+
+    /**
+     * Kinds of inconsistencies. Each type has a message that takes the names of the member and of
+     * the other member as arguments.
+     *
+     * @author Damien Vergnet
+     */
+    public enum Type {
+      /** A child is born before a parent, the other member. */
+      CHILD_BORN_BEFORE_PARENT("warning.child_born_before_parent.text"),
+      /** A child is born more than 9 months after the death of a parent, the other member. */
+      CHILD_BORN_AFTER_PARENT_DEATH("warning.child_born_after_parent_death.text"),
+      /** A relation with the other member starts or ends before the member is born. */
+      RELATION_BEFORE_BIRTH("warning.relation_before_birth.text"),
+      /** A relation with the other member starts or ends after the member died. */
+      RELATION_AFTER_DEATH("warning.relation_after_death.text"),
+      /** A child is adopted before being born. */
+      ADOPTION_BEFORE_BIRTH("warning.adoption_before_birth.text"),
+      /** A member is their own ancestor. */
+      OWN_ANCESTOR("warning.own_ancestor.text"),
+      /** A relation of the other member refers to a member that is not in the family. */
+      UNKNOWN_MEMBER("warning.unknown_member.text");
+
+      private final String message;
+
+      private Type(String message) {
+        this.message = message;
+      }
+
+      /**
+       * @return the unlocalized message
+       */
+      public String getUnlocalizedMessage() {
+        return this.message;
+      }
+    }
+  }
+}
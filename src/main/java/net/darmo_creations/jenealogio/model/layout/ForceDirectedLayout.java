@@ -0,0 +1,464 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.layout;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.ProgressListener;
+import net.darmo_creations.jenealogio.util.TaskUtil;
+
+/**
+ * This class arranges a tree with a force-directed (Fruchterman-Reingold) algorithm. Related
+ * cards attract each other while all cards repel each other; unlike {@link GenerationalLayout},
+ * generations are not kept in rows, which gives more readable results for dense trees with many
+ * marriages between relatives.
+ * <p>
+ * Repulsion is approximated with a Barnes-Hut quad-tree, so that each iteration costs O(n log n)
+ * instead of O(n²), and forces are computed in parallel on the common fork-join pool. The layout
+ * may start from the current positions of the cards, in which case the tree is only relaxed
+ * instead of being rebuilt from scratch.
+ *
+ * @author Damien Vergnet
+ */
+public class ForceDirectedLayout implements TreeLayout {
+  /** Preferred distance between two related cards. */
+  public static final int IDEAL_DISTANCE = 150;
+
+  /** Number of iterations. */
+  private static final int ITERATIONS = 200;
+  /** Barnes-Hut opening criterion: a cell is approximated if its size/distance ratio is below. */
+  private static final double THETA = 0.8;
+  /** Strength of the force pulling every card towards the center of the tree. */
+  private static final double GRAVITY = 0.02;
+  /** Distance under which two cards are considered at this minimum distance. */
+  private static final double MIN_DISTANCE = 1;
+  /** Number of cards under which forces are computed by a single task. */
+  private static final int TASK_SIZE = 512;
+
+  private final long[] ids;
+  private final int[][] neighbors;
+  private final int[] widths, heights;
+  private final double[] x, y;
+  private final boolean seeded;
+
+  /**
+   * Creates a layout for the given tree and copies its relations.
+   * 
+   * @param family the tree
+   * @param positions the current position of each card; cards with no position are placed near
+   *          their relatives. If empty, the layout starts from random positions.
+   * @param sizes the size of each card; missing ones default to
+   *          {@link GenerationalLayout#DEFAULT_CARD_SIZE}
+   */
+  public ForceDirectedLayout(Family family, Map<Long, Point> positions, Map<Long, Dimension> sizes) {
+    this(family.getAllMembersIds(), family.getAllRelations(), positions, sizes);
+  }
+
+  /**
+   * Creates a layout for the given members and relations.
+   * 
+   * @param members members' IDs
+   * @param relations all relations between these members
+   * @param positions the current position of each card; cards with no position are placed near
+   *          their relatives. If empty, the layout starts from random positions.
+   * @param sizes the size of each card; missing ones default to
+   *          {@link GenerationalLayout#DEFAULT_CARD_SIZE}
+   */
+  public ForceDirectedLayout(Set<Long> members, Collection<Relationship> relations, Map<Long, Point> positions,
+      Map<Long, Dimension> sizes) {
+    int n = members.size();
+    Map<Long, Integer> indexes = new HashMap<>(2 * n);
+
+    this.ids = members.stream().mapToLong(Long::longValue).sorted().toArray();
+    this.widths = new int[n];
+    this.heights = new int[n];
+    for (int i = 0; i < n; i++) {
+      Dimension size = sizes.getOrDefault(this.ids[i], GenerationalLayout.DEFAULT_CARD_SIZE);
+      indexes.put(this.ids[i], i);
+      this.widths[i] = size.width;
+      this.heights[i] = size.height;
+    }
+
+    List<List<Integer>> neighbors = new ArrayList<>(n);
+    for (int i = 0; i < n; i++)
+      neighbors.add(new ArrayList<>());
+    for (Relationship r : relations) {
+      Integer p1 = indexes.get(r.getPartner1()), p2 = indexes.get(r.getPartner2());
+      if (p1 == null || p2 == null)
+        continue;
+      link(neighbors, p1, p2);
+      for (long childId : r.getChildren()) {
+        Integer c = indexes.get(childId);
+        if (c != null) {
+          link(neighbors, p1, c);
+          link(neighbors, p2, c);
+        }
+      }
+    }
+    this.neighbors = new int[n][];
+    for (int i = 0; i < n; i++)
+      this.neighbors[i] = neighbors.get(i).stream().mapToInt(Integer::intValue).distinct().toArray();
+
+    this.x = new double[n];
+    this.y = new double[n];
+    this.seeded = !positions.isEmpty();
+    seed(positions);
+  }
+
+  private static void link(List<List<Integer>> neighbors, int i, int j) {
+    if (i != j) {
+      neighbors.get(i).add(j);
+      neighbors.get(j).add(i);
+    }
+  }
+
+  /**
+   * Sets the initial positions. Cards with a known position start from its center, the others are
+   * put near a placed relative or at random in a square big enough to hold the whole tree.
+   * 
+   * @param positions the known positions
+   */
+  private void seed(Map<Long, Point> positions) {
+    int n = this.ids.length;
+    boolean[] placed = new boolean[n];
+    // Fixed seed so that the same tree always gives the same layout
+    Random random = new Random(n);
+    double side = IDEAL_DISTANCE * Math.sqrt(n);
+
+    for (int i = 0; i < n; i++) {
+      Point p = positions.get(this.ids[i]);
+      if (p != null) {
+        this.x[i] = p.x + this.widths[i] / 2.0;
+        this.y[i] = p.y + this.heights[i] / 2.0;
+        placed[i] = true;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      if (placed[i])
+        continue;
+      int relative = -1;
+      for (int j : this.neighbors[i])
+        if (placed[j]) {
+          relative = j;
+          break;
+        }
+      if (relative >= 0) {
+        double angle = 2 * Math.PI * random.nextDouble();
+        this.x[i] = this.x[relative] + IDEAL_DISTANCE * Math.cos(angle);
+        this.y[i] = this.y[relative] + IDEAL_DISTANCE * Math.sin(angle);
+      }
+      else {
+        this.x[i] = side * random.nextDouble();
+        this.y[i] = side * random.nextDouble();
+      }
+      placed[i] = true;
+    }
+  }
+
+  @Override
+  public Map<Long, Point> compute(ProgressListener listener) {
+    int n = this.ids.length;
+    Map<Long, Point> locations = new HashMap<>(2 * n);
+
+    if (n == 0) {
+      listener.progressChanged(100);
+      return locations;
+    }
+
+    double[] x = Arrays.copyOf(this.x, n), y = Arrays.copyOf(this.y, n);
+    double[] dx = new double[n], dy = new double[n];
+    // A seeded layout is only relaxed: cards are allowed to move less
+    double temperature = this.seeded ? IDEAL_DISTANCE : IDEAL_DISTANCE * Math.max(1, Math.sqrt(n) / 4);
+    double cooling = temperature / ITERATIONS;
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+      TaskUtil.checkCanceled();
+      QuadTree tree = new QuadTree(x, y);
+      pool.invoke(new ForcesTask(tree, x, y, dx, dy, 0, n));
+      for (int i = 0; i < n; i++) {
+        double length = Math.hypot(dx[i], dy[i]);
+        if (length > 0) {
+          double step = Math.min(length, temperature) / length;
+          x[i] += dx[i] * step;
+          y[i] += dy[i] * step;
+        }
+      }
+      temperature -= cooling;
+      listener.progressChanged(100 * (iteration + 1) / ITERATIONS);
+    }
+
+    double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+    for (int i = 0; i < n; i++) {
+      minX = Math.min(minX, x[i] - this.widths[i] / 2.0);
+      minY = Math.min(minY, y[i] - this.heights[i] / 2.0);
+    }
+    for (int i = 0; i < n; i++) {
+      int left = (int) Math.round(x[i] - this.widths[i] / 2.0 - minX) + GenerationalLayout.MARGIN;
+      int top = (int) Math.round(y[i] - this.heights[i] / 2.0 - minY) + GenerationalLayout.MARGIN;
+      locations.put(this.ids[i], new Point(left, top));
+    }
+
+    return locations;
+  }
+
+  /**
+   * Computes the displacement of a range of cards. Each task writes to its own range of the
+   * displacement arrays; the positions and the quad-tree are only read.
+   *
+   * @author Damien Vergnet
+   */
+  private final class ForcesTask extends RecursiveAction {
+    private static final long serialVersionUID = 3816459128045683710L;
+
+    private final QuadTree tree;
+    private final double[] x, y, dx, dy;
+    private final int from, to;
+
+    ForcesTask(QuadTree tree, double[] x, double[] y, double[] dx, double[] dy, int from, int to) {
+      this.tree = tree;
+      this.x = x;
+      this.y = y;
+      this.dx = dx;
+      this.dy = dy;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from > TASK_SIZE) {
+        int middle = (this.from + this.to) >>> 1;
+        invokeAll(new ForcesTask(this.tree, this.x, this.y, this.dx, this.dy, this.from, middle),
+            new ForcesTask(this.tree, this.x, this.y, this.dx, this.dy, middle, this.to));
+        return;
+      }
+
+      double k = IDEAL_DISTANCE;
+      double centerX = this.tree.getCenterX(), centerY = this.tree.getCenterY();
+      double[] force = new double[2];
+      int[] stack = new int[QuadTree.STACK_SIZE];
+
+      for (int i = this.from; i < this.to; i++) {
+        double xi = this.x[i], yi = this.y[i];
+
+        // Repulsion: k² / d
+        force[0] = force[1] = 0;
+        this.tree.repulsion(i, xi, yi, k * k, force, stack);
+        double fx = force[0], fy = force[1];
+
+        // Attraction: d² / k
+        for (int j : ForceDirectedLayout.this.neighbors[i]) {
+          double ddx = xi - this.x[j], ddy = yi - this.y[j];
+          double d = Math.hypot(ddx, ddy);
+          fx -= ddx * d / k;
+          fy -= ddy * d / k;
+        }
+
+        // Gravity keeps unrelated groups together
+        fx -= GRAVITY * (xi - centerX);
+        fy -= GRAVITY * (yi - centerY);
+
+        this.dx[i] = fx;
+        this.dy[i] = fy;
+      }
+    }
+  }
+
+  /**
+   * A Barnes-Hut quad-tree. Each cell holds the number of cards it contains and the sum of their
+   * positions; distant cells are then seen as a single heavy card. Cells are stored in flat arrays
+   * to avoid allocating one object per cell at each iteration.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class QuadTree {
+    /** Maximum depth; cards still sharing a cell at this depth are merged. */
+    private static final int MAX_DEPTH = 40;
+    /** Size of the stack needed to traverse the tree. */
+    static final int STACK_SIZE = 3 * MAX_DEPTH + 4;
+    /** Value of {@link #point} for cells that were split. */
+    private static final int SPLIT = -1;
+
+    private final double[] px, py;
+    private double[] minX, minY, size, sumX, sumY;
+    private int[] mass, point, children;
+    private int count;
+
+    /**
+     * Builds the tree for the given points.
+     */
+    QuadTree(double[] px, double[] py) {
+      int n = px.length;
+      this.px = px;
+      this.py = py;
+      allocate(4 * n + 1);
+
+      double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+      for (int i = 0; i < n; i++) {
+        x0 = Math.min(x0, px[i]);
+        y0 = Math.min(y0, py[i]);
+        x1 = Math.max(x1, px[i]);
+        y1 = Math.max(y1, py[i]);
+      }
+      newCell(x0, y0, Math.max(Math.max(x1 - x0, y1 - y0), MIN_DISTANCE) * 1.001);
+      for (int i = 0; i < n; i++)
+        insert(i);
+    }
+
+    /**
+     * @return the x coordinate of the center of mass of all points
+     */
+    double getCenterX() {
+      return this.sumX[0] / this.mass[0];
+    }
+
+    /**
+     * @return the y coordinate of the center of mass of all points
+     */
+    double getCenterY() {
+      return this.sumY[0] / this.mass[0];
+    }
+
+    private void insert(int p) {
+      int cell = 0;
+
+      for (int depth = 0;; depth++) {
+        add(cell, p);
+        if (this.mass[cell] == 1) {
+          this.point[cell] = p;
+          return;
+        }
+        if (depth == MAX_DEPTH)
+          return;
+        if (this.point[cell] != SPLIT) {
+          int q = this.point[cell];
+          int child = child(cell, q);
+          this.point[cell] = SPLIT;
+          add(child, q);
+          this.point[child] = q;
+        }
+        cell = child(cell, p);
+      }
+    }
+
+    private void add(int cell, int p) {
+      this.mass[cell]++;
+      this.sumX[cell] += this.px[p];
+      this.sumY[cell] += this.py[p];
+    }
+
+    /**
+     * Returns the child of a cell that contains the given point, creating it if needed.
+     */
+    private int child(int cell, int p) {
+      double half = this.size[cell] / 2;
+      int quadrant = (this.px[p] >= this.minX[cell] + half ? 1 : 0) + (this.py[p] >= this.minY[cell] + half ? 2 : 0);
+      int index = 4 * cell + quadrant;
+
+      if (this.children[index] == 0) {
+        int child = newCell(this.minX[cell] + (quadrant & 1) * half, this.minY[cell] + (quadrant >> 1) * half, half);
+        // Arrays may have been reallocated
+        this.children[index] = child;
+      }
+      return this.children[index];
+    }
+
+    private int newCell(double x, double y, double size) {
+      if (this.count == this.mass.length)
+        allocate(2 * this.count);
+      int cell = this.count++;
+      this.minX[cell] = x;
+      this.minY[cell] = y;
+      this.size[cell] = size;
+      this.point[cell] = SPLIT;
+      return cell;
+    }
+
+    private void allocate(int capacity) {
+      if (this.mass == null) {
+        this.minX = new double[capacity];
+        this.minY = new double[capacity];
+        this.size = new double[capacity];
+        this.sumX = new double[capacity];
+        this.sumY = new double[capacity];
+        this.mass = new int[capacity];
+        this.point = new int[capacity];
+        this.children = new int[4 * capacity];
+      }
+      else {
+        this.minX = Arrays.copyOf(this.minX, capacity);
+        this.minY = Arrays.copyOf(this.minY, capacity);
+        this.size = Arrays.copyOf(this.size, capacity);
+        this.sumX = Arrays.copyOf(this.sumX, capacity);
+        this.sumY = Arrays.copyOf(this.sumY, capacity);
+        this.mass = Arrays.copyOf(this.mass, capacity);
+        this.point = Arrays.copyOf(this.point, capacity);
+        this.children = Arrays.copyOf(this.children, 4 * capacity);
+      }
+    }
+
+    /**
+     * Adds the repulsion exerted on a point by all the others to the given force vector.
+     * 
+     * @param p the point's index
+     * @param x the point's x coordinate
+     * @param y the point's y coordinate
+     * @param k2 the squared ideal distance
+     * @param force the force vector to update
+     * @param stack an array of {@link #STACK_SIZE} integers used for the traversal
+     */
+    void repulsion(int p, double x, double y, double k2, double[] force, int[] stack) {
+      int top = 0;
+      stack[top++] = 0;
+
+      while (top > 0) {
+        int cell = stack[--top];
+        int m = this.mass[cell];
+        if (m == 0 || this.point[cell] == p && m == 1)
+          continue;
+
+        double dx = x - this.sumX[cell] / m, dy = y - this.sumY[cell] / m;
+        double d2 = dx * dx + dy * dy;
+        if (this.point[cell] == SPLIT && this.size[cell] * this.size[cell] >= THETA * THETA * d2) {
+          for (int i = 0; i < 4; i++)
+            if (this.children[4 * cell + i] != 0)
+              stack[top++] = this.children[4 * cell + i];
+          continue;
+        }
+        double f = k2 * m / Math.max(d2, MIN_DISTANCE * MIN_DISTANCE);
+        force[0] += dx * f;
+        force[1] += dy * f;
+      }
+    }
+  }
+}
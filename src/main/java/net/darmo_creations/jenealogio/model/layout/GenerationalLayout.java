@@ -0,0 +1,572 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.layout;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongIntHashMap;
+import net.darmo_creations.jenealogio.util.ProgressListener;
+import net.darmo_creations.jenealogio.util.TaskUtil;
+
+/**
+ * This class arranges a tree in layers, one per generation (Sugiyama-style layout). Generations
+ * are assigned from the parent relationships, partners being kept in the same generation. Each
+ * layer is then ordered with the barycenter heuristic to reduce crossings and cards are finally
+ * placed as close as possible to their parents and children without overlapping.
+ *
+ * @author Damien Vergnet
+ */
+public class GenerationalLayout implements TreeLayout {
+  /** Size used for cards with no given size. */
+  public static final Dimension DEFAULT_CARD_SIZE = new Dimension(100, 30);
+  /** Space between the top of two consecutive generations. */
+  public static final int LAYER_HEIGHT = 100;
+  /** Space between two partners. */
+  public static final int PARTNERS_GAP = 20;
+  /** Space between two unrelated cards. */
+  public static final int CARDS_GAP = 40;
+  /** Space kept on the top and left sides of the tree. */
+  public static final int MARGIN = 20;
+
+  /** Number of ordering sweeps (each one goes down then up). */
+  private static final int ORDERING_SWEEPS = 4;
+  /** Number of placement passes (each one goes down then up). */
+  private static final int PLACEMENT_PASSES = 4;
+  /** Maximum number of passes to stabilize generations. */
+  private static final int MAX_GENERATION_PASSES = 100;
+
+  private final long[] ids;
+  private final int[][] parents, children, partners;
+  private final int[] widths;
+
+  /**
+   * Creates a layout for the given tree and copies its parent and partner links.
+   * 
+   * @param family the tree
+   * @param sizes the size of each card; missing ones default to {@link #DEFAULT_CARD_SIZE}
+   */
+  public GenerationalLayout(Family family, Map<Long, Dimension> sizes) {
+    this(family.getAllMembersIds(), family.getAllRelations(), sizes);
+  }
+
+  /**
+   * Creates a layout for the given members and relations.
+   * 
+   * @param members members' IDs
+   * @param relations all relations between these members
+   * @param sizes the size of each card; missing ones default to {@link #DEFAULT_CARD_SIZE}
+   */
+  public GenerationalLayout(Set<Long> members, Collection<Relationship> relations, Map<Long, Dimension> sizes) {
+    int n = members.size();
+    LongIntHashMap indexes = new LongIntHashMap(n);
+
+    this.ids = members.stream().mapToLong(Long::longValue).sorted().toArray();
+    this.widths = new int[n];
+    for (int i = 0; i < n; i++) {
+      indexes.put(this.ids[i], i);
+      this.widths[i] = sizes.getOrDefault(this.ids[i], DEFAULT_CARD_SIZE).width;
+    }
+
+    // Links are counted first so that each array is allocated once
+    int[] parentsCounts = new int[n], childrenCounts = new int[n], partnersCounts = new int[n];
+    List<int[]> families = new ArrayList<>(relations.size());
+    for (Relationship r : relations) {
+      int p1 = indexes.get(r.getPartner1(), -1), p2 = indexes.get(r.getPartner2(), -1);
+      if (p1 < 0 || p2 < 0)
+        continue;
+      Set<Long> children = r.getChildren();
+      // Partners then children
+      int[] family = new int[2 + children.size()];
+      int size = 2;
+      family[0] = p1;
+      family[1] = p2;
+      for (long childId : children) {
+        int c = indexes.get(childId, -1);
+        if (c >= 0) {
+          family[size++] = c;
+          parentsCounts[c] += 2;
+        }
+      }
+      families.add(Arrays.copyOf(family, size));
+      partnersCounts[p1]++;
+      partnersCounts[p2]++;
+      childrenCounts[p1] += size - 2;
+      childrenCounts[p2] += size - 2;
+    }
+
+    this.parents = allocate(parentsCounts);
+    this.children = allocate(childrenCounts);
+    this.partners = allocate(partnersCounts);
+    Arrays.fill(parentsCounts, 0);
+    Arrays.fill(childrenCounts, 0);
+    Arrays.fill(partnersCounts, 0);
+    for (int[] family : families) {
+      int p1 = family[0], p2 = family[1];
+      this.partners[p1][partnersCounts[p1]++] = p2;
+      this.partners[p2][partnersCounts[p2]++] = p1;
+      for (int i = 2; i < family.length; i++) {
+        int c = family[i];
+        this.parents[c][parentsCounts[c]++] = p1;
+        this.parents[c][parentsCounts[c]++] = p2;
+        this.children[p1][childrenCounts[p1]++] = c;
+        this.children[p2][childrenCounts[p2]++] = c;
+      }
+    }
+    removeDuplicates(this.parents);
+    removeDuplicates(this.children);
+    removeDuplicates(this.partners);
+  }
+
+  /**
+   * Computes the generation of each member. Generation 0 is the oldest one. A child is always at
+   * least one generation below its parents and partners are in the same generation. Members
+   * without parents are placed just above their oldest child.
+   * 
+   * @return the generation of each member
+   */
+  public Map<Long, Integer> computeGenerations() {
+    int[] gen = generations();
+    Map<Long, Integer> result = new HashMap<>();
+
+    for (int i = 0; i < gen.length; i++)
+      result.put(this.ids[i], gen[i]);
+
+    return result;
+  }
+
+  @Override
+  public Map<Long, Point> compute(ProgressListener listener) {
+    int n = this.ids.length;
+    Map<Long, Point> locations = new HashMap<>(2 * n);
+
+    if (n == 0) {
+      listener.progressChanged(100);
+      return locations;
+    }
+
+    int[] gen = generations();
+    listener.progressChanged(10);
+    TaskUtil.checkCanceled();
+
+    int[][] layers = order(gen, listener);
+    double[] x = place(layers, listener);
+
+    double minX = Double.MAX_VALUE;
+    for (int i = 0; i < n; i++)
+      minX = Math.min(minX, x[i] - this.widths[i] / 2.0);
+    for (int i = 0; i < n; i++) {
+      int left = (int) Math.round(x[i] - this.widths[i] / 2.0 - minX) + MARGIN;
+      locations.put(this.ids[i], new Point(left, MARGIN + gen[i] * LAYER_HEIGHT));
+    }
+    listener.progressChanged(100);
+
+    return locations;
+  }
+
+  /**
+   * Assigns generations. Rules are applied repeatedly in topological order until nothing changes.
+   * In case of a cycle in the relations, the process is stopped after a fixed number of passes.
+   * Generations are then renumbered so that there is no empty layer.
+   */
+  private int[] generations() {
+    int n = this.ids.length;
+    int[] gen = new int[n];
+    int[] order = topologicalOrder();
+    boolean changed = true;
+
+    for (int pass = 0; changed && pass < MAX_GENERATION_PASSES; pass++) {
+      changed = false;
+      for (int v : order) {
+        for (int p : this.parents[v]) {
+          if (gen[v] < gen[p] + 1) {
+            gen[v] = gen[p] + 1;
+            changed = true;
+          }
+        }
+        for (int q : this.partners[v]) {
+          if (gen[v] < gen[q]) {
+            gen[v] = gen[q];
+            changed = true;
+          }
+        }
+      }
+      // Members without parents go just above their oldest child (in-laws' parents for instance)
+      for (int i = n - 1; i >= 0; i--) {
+        int v = order[i];
+        if (this.parents[v].length == 0 && this.children[v].length > 0) {
+          int min = Integer.MAX_VALUE;
+          for (int c : this.children[v])
+            min = Math.min(min, gen[c]);
+          if (gen[v] < min - 1) {
+            gen[v] = min - 1;
+            changed = true;
+          }
+        }
+      }
+      TaskUtil.checkCanceled();
+    }
+
+    // Remove empty generations
+    int[] sorted = Arrays.stream(gen).distinct().sorted().toArray();
+    for (int i = 0; i < n; i++)
+      gen[i] = Arrays.binarySearch(sorted, gen[i]);
+
+    return gen;
+  }
+
+  /**
+   * @return members sorted so that parents come before their children; members in a cycle are put
+   *         at the end
+   */
+  private int[] topologicalOrder() {
+    int n = this.ids.length;
+    int[] inDegree = new int[n];
+    int[] order = new int[n];
+    boolean[] done = new boolean[n];
+    Deque<Integer> queue = new ArrayDeque<>();
+    int k = 0;
+
+    for (int i = 0; i < n; i++) {
+      inDegree[i] = this.parents[i].length;
+      if (inDegree[i] == 0)
+        queue.add(i);
+    }
+    while (!queue.isEmpty()) {
+      int v = queue.poll();
+      order[k++] = v;
+      done[v] = true;
+      for (int c : this.children[v])
+        if (--inDegree[c] == 0)
+          queue.add(c);
+    }
+    for (int i = 0; i < n; i++)
+      if (!done[i])
+        order[k++] = i;
+
+    return order;
+  }
+
+  /**
+   * Orders the members of each layer. Partners in the same layer are grouped into units that are
+   * moved together. The initial order is the breadth-first traversal order of the tree, then units
+   * are sorted by the barycenter of their parents (going down) or children (going up).
+   * 
+   * @return the members of each layer, from left to right
+   */
+  private int[][] order(int[] gen, ProgressListener listener) {
+    int n = this.ids.length;
+    int layersNb = Arrays.stream(gen).max().getAsInt() + 1;
+    int[] unitOf = partnerUnits(gen);
+    int[] visit = traversalOrder();
+    double[] pos = new double[n];
+
+    // Units of each layer
+    List<List<int[]>> layers = new ArrayList<>();
+    Map<Integer, List<Integer>> unitMembers = new HashMap<>();
+    for (int i = 0; i < n; i++)
+      unitMembers.computeIfAbsent(unitOf[i], u -> new ArrayList<>()).add(i);
+    for (int l = 0; l < layersNb; l++)
+      layers.add(new ArrayList<>());
+    for (List<Integer> members : unitMembers.values()) {
+      int[] unit = members.stream().mapToInt(Integer::intValue).toArray();
+      layers.get(gen[unit[0]]).add(unit);
+    }
+
+    double[] key = new double[n];
+    for (int i = 0; i < n; i++)
+      key[i] = visit[i];
+    for (List<int[]> layer : layers) {
+      sortLayer(layer, key);
+      updatePositions(layer, pos);
+    }
+
+    for (int sweep = 0; sweep < ORDERING_SWEEPS; sweep++) {
+      for (int l = 1; l < layersNb; l++)
+        reorder(layers.get(l), this.parents, pos, key);
+      for (int l = layersNb - 2; l >= 0; l--)
+        reorder(layers.get(l), this.children, pos, key);
+      listener.progressChanged(10 + 50 * (sweep + 1) / ORDERING_SWEEPS);
+      TaskUtil.checkCanceled();
+    }
+
+    int[][] result = new int[layersNb][];
+    for (int l = 0; l < layersNb; l++)
+      result[l] = layers.get(l).stream().flatMapToInt(Arrays::stream).toArray();
+
+    return result;
+  }
+
+  /**
+   * Sorts the units of a layer by the barycenter of the neighbors of their members.
+   * 
+   * @param layer the layer
+   * @param neighbors the neighbors to use (parents or children)
+   * @param pos current normalized positions
+   * @param key buffer for the sort keys
+   */
+  private void reorder(List<int[]> layer, int[][] neighbors, double[] pos, double[] key) {
+    for (int[] unit : layer) {
+      for (int v : unit) {
+        if (neighbors[v].length == 0)
+          key[v] = pos[v];
+        else {
+          double sum = 0;
+          for (int u : neighbors[v])
+            sum += pos[u];
+          key[v] = sum / neighbors[v].length;
+        }
+      }
+    }
+    sortLayer(layer, key);
+    updatePositions(layer, pos);
+  }
+
+  /**
+   * Sorts the members inside each unit then the units by the mean key of their members. Sorts are
+   * stable so that ties keep the previous order. The key of the first member of each unit is
+   * replaced by the key of the unit.
+   */
+  private static void sortLayer(List<int[]> layer, double[] key) {
+    for (int[] unit : layer) {
+      // Units hold a few partners, an insertion sort avoids boxing them
+      double sum = key[unit[0]];
+      for (int i = 1; i < unit.length; i++) {
+        int v = unit[i], j = i - 1;
+        sum += key[v];
+        while (j >= 0 && key[unit[j]] > key[v]) {
+          unit[j + 1] = unit[j];
+          j--;
+        }
+        unit[j + 1] = v;
+      }
+      key[unit[0]] = sum / unit.length;
+    }
+    layer.sort(Comparator.comparingDouble(unit -> key[unit[0]]));
+  }
+
+  /**
+   * Sets the position of each member of the layer to its rank divided by the size of the layer.
+   */
+  private static void updatePositions(List<int[]> layer, double[] pos) {
+    int size = layer.stream().mapToInt(unit -> unit.length).sum();
+    int rank = 0;
+
+    for (int[] unit : layer)
+      for (int v : unit)
+        pos[v] = (double) rank++ / size;
+  }
+
+  /**
+   * Groups partners of the same generation. Each member is given the ID of its group.
+   */
+  private int[] partnerUnits(int[] gen) {
+    int n = this.ids.length;
+    int[] unit = new int[n];
+
+    Arrays.fill(unit, -1);
+    for (int i = 0; i < n; i++) {
+      if (unit[i] >= 0)
+        continue;
+      Deque<Integer> stack = new ArrayDeque<>();
+      stack.push(i);
+      unit[i] = i;
+      while (!stack.isEmpty()) {
+        int v = stack.pop();
+        for (int q : this.partners[v]) {
+          if (unit[q] < 0 && gen[q] == gen[v]) {
+            unit[q] = i;
+            stack.push(q);
+          }
+        }
+      }
+    }
+
+    return unit;
+  }
+
+  /**
+   * @return the rank of each member in a breadth-first traversal going from the members without
+   *         parents to their partners and children
+   */
+  private int[] traversalOrder() {
+    int n = this.ids.length;
+    int[] visit = new int[n];
+    Deque<Integer> queue = new ArrayDeque<>();
+    int k = 0;
+
+    Arrays.fill(visit, -1);
+    for (int i = 0; i < n; i++) {
+      if (visit[i] >= 0 || this.parents[i].length > 0)
+        continue;
+      visit[i] = k++;
+      queue.add(i);
+      while (!queue.isEmpty()) {
+        int v = queue.poll();
+        for (int[] next : new int[][]{this.partners[v], this.children[v]}) {
+          for (int u : next) {
+            if (visit[u] < 0) {
+              visit[u] = k++;
+              queue.add(u);
+            }
+          }
+        }
+      }
+    }
+    // Members only reachable through a cycle
+    for (int i = 0; i < n; i++)
+      if (visit[i] < 0)
+        visit[i] = k++;
+
+    return visit;
+  }
+
+  /**
+   * Computes the horizontal center of each card. Cards are placed in their layer order and pulled
+   * towards the mean center of their parents (going down) then of their children (going up).
+   * 
+   * @return the center of each card
+   */
+  private double[] place(int[][] layers, ProgressListener listener) {
+    int n = this.ids.length;
+    double[] x = new double[n];
+
+    // Initial compact placement
+    for (int[] layer : layers)
+      align(layer, new double[layer.length], x);
+
+    for (int pass = 0; pass < PLACEMENT_PASSES; pass++) {
+      for (int l = 1; l < layers.length; l++)
+        align(layers[l], desired(layers[l], this.parents, x), x);
+      for (int l = layers.length - 2; l >= 0; l--)
+        align(layers[l], desired(layers[l], this.children, x), x);
+      listener.progressChanged(60 + 40 * (pass + 1) / PLACEMENT_PASSES);
+      TaskUtil.checkCanceled();
+    }
+
+    return x;
+  }
+
+  /**
+   * @return the mean center of the neighbors of each member of the layer, or its current center if
+   *         it has none
+   */
+  private static double[] desired(int[] layer, int[][] neighbors, double[] x) {
+    double[] desired = new double[layer.length];
+
+    for (int i = 0; i < layer.length; i++) {
+      int v = layer[i];
+      if (neighbors[v].length == 0)
+        desired[i] = x[v];
+      else {
+        double sum = 0;
+        for (int u : neighbors[v])
+          sum += x[u];
+        desired[i] = sum / neighbors[v].length;
+      }
+    }
+
+    return desired;
+  }
+
+  /**
+   * Places the cards of a layer as close as possible (least squares) to the desired centers while
+   * keeping their order and the minimum gaps. This is an isotonic regression solved with the pool
+   * adjacent violators algorithm in linear time.
+   * 
+   * @param layer the members of the layer from left to right
+   * @param desired the desired center of each member
+   * @param x receives the centers
+   */
+  private void align(int[] layer, double[] desired, double[] x) {
+    int m = layer.length;
+    double[] offset = new double[m];
+
+    for (int i = 1; i < m; i++) {
+      int a = layer[i - 1], b = layer[i];
+      int gap = contains(this.partners[a], b) ? PARTNERS_GAP : CARDS_GAP;
+      offset[i] = offset[i - 1] + (this.widths[a] + this.widths[b]) / 2.0 + gap;
+    }
+
+    // Blocks of merged values: mean and size
+    double[] mean = new double[m];
+    int[] size = new int[m];
+    int blocks = 0;
+    for (int i = 0; i < m; i++) {
+      mean[blocks] = desired[i] - offset[i];
+      size[blocks] = 1;
+      blocks++;
+      while (blocks > 1 && mean[blocks - 2] > mean[blocks - 1]) {
+        int s = size[blocks - 2] + size[blocks - 1];
+        mean[blocks - 2] = (mean[blocks - 2] * size[blocks - 2] + mean[blocks - 1] * size[blocks - 1]) / s;
+        size[blocks - 2] = s;
+        blocks--;
+      }
+    }
+    for (int b = 0, i = 0; b < blocks; b++)
+      for (int j = 0; j < size[b]; j++, i++)
+        x[layer[i]] = mean[b] + offset[i];
+  }
+
+  private static boolean contains(int[] array, int value) {
+    for (int v : array)
+      if (v == value)
+        return true;
+    return false;
+  }
+
+  private static int[][] allocate(int[] sizes) {
+    int[][] arrays = new int[sizes.length][];
+    for (int i = 0; i < sizes.length; i++)
+      arrays[i] = new int[sizes[i]];
+    return arrays;
+  }
+
+  /**
+   * Removes the values appearing more than once in each array, keeping the first occurrence.
+   */
+  private static void removeDuplicates(int[][] arrays) {
+    for (int i = 0; i < arrays.length; i++) {
+      int[] array = arrays[i];
+      int size = 0;
+
+      next: for (int j = 0; j < array.length; j++) {
+        for (int k = 0; k < size; k++) {
+          if (array[k] == array[j])
+            continue next;
+        }
+        array[size++] = array[j];
+      }
+      if (size < array.length)
+        arrays[i] = Arrays.copyOf(array, size);
+    }
+  }
+}
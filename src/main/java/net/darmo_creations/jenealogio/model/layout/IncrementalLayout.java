@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.layout;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.darmo_creations.jenealogio.model.family.Relationship;
+
+/**
+ * This class re-arranges a single family after a change instead of the whole tree. The children of
+ * a couple are placed side by side, centered one generation below the couple, in their current
+ * left-to-right order. Cards of that row that would overlap them are pushed sideways; every other
+ * card keeps its position.
+ *
+ * @author Damien Vergnet
+ */
+public class IncrementalLayout {
+  private final Map<Long, Point> positions;
+  private final Map<Long, Dimension> sizes;
+
+  /**
+   * Creates a layout working on the given positions. The maps are not modified.
+   * 
+   * @param positions the current position of each card
+   * @param sizes the size of each card; missing ones default to
+   *          {@link GenerationalLayout#DEFAULT_CARD_SIZE}
+   */
+  public IncrementalLayout(Map<Long, Point> positions, Map<Long, Dimension> sizes) {
+    this.positions = positions;
+    this.sizes = sizes;
+  }
+
+  /**
+   * Re-arranges the children of the given relation and the cards of their row that collide with
+   * them.
+   * 
+   * @param relation the relation whose family changed
+   * @return the new position of each moved card
+   */
+  public Map<Long, Point> relayout(Relationship relation) {
+    Map<Long, Point> moved = new HashMap<>();
+    Rectangle parent1 = getBounds(relation.getPartner1());
+    Rectangle parent2 = getBounds(relation.getPartner2());
+
+    if (parent1 == null || parent2 == null)
+      return moved;
+
+    // Children, in their current order
+    List<Card> block = new ArrayList<>();
+    for (long id : relation.getChildren()) {
+      Rectangle r = getBounds(id);
+      if (r != null)
+        block.add(new Card(id, r));
+    }
+    // None of the children has a card yet
+    if (block.isEmpty())
+      return moved;
+    block.sort(Comparator.comparingDouble(c -> c.bounds.getCenterX()));
+
+    int y = Math.max(parent1.y, parent2.y) + GenerationalLayout.LAYER_HEIGHT;
+    int height = block.stream().mapToInt(c -> c.bounds.height).max().getAsInt();
+    int width = block.stream().mapToInt(c -> c.bounds.width).sum() + (block.size() - 1) * GenerationalLayout.CARDS_GAP;
+    double middle = (parent1.getCenterX() + parent2.getCenterX()) / 2;
+    int left = Math.max(0, (int) Math.round(middle - width / 2.0));
+
+    // Other cards of the row, split around the middle of the couple
+    List<Card> leftSide = new ArrayList<>(), rightSide = new ArrayList<>();
+    Rectangle row = new Rectangle(Integer.MIN_VALUE / 2, y, Integer.MAX_VALUE, height);
+    this.positions.keySet().forEach(id -> {
+      if (!relation.isChild(id)) {
+        Rectangle r = getBounds(id);
+        if (r.intersects(row))
+          (r.getCenterX() < middle ? leftSide : rightSide).add(new Card(id, r));
+      }
+    });
+    leftSide.sort(Comparator.comparingInt((Card c) -> c.bounds.x).reversed());
+    rightSide.sort(Comparator.comparingInt(c -> c.bounds.x));
+
+    // Cards pushed to the left must stay in the positive quarter, the block is moved right instead
+    left += Math.max(0, -pushLeft(leftSide, left, false));
+    pushLeft(leftSide, left, true);
+    int right = left;
+    for (Card c : block) {
+      c.bounds.setLocation(right, y);
+      right += c.bounds.width + GenerationalLayout.CARDS_GAP;
+    }
+    pushRight(rightSide, right - GenerationalLayout.CARDS_GAP);
+
+    for (List<Card> cards : Arrays.asList(block, leftSide, rightSide))
+      for (Card c : cards)
+        if (!c.bounds.getLocation().equals(this.positions.get(c.id)))
+          moved.put(c.id, c.bounds.getLocation());
+
+    return moved;
+  }
+
+  /**
+   * Pushes cards to the left of a limit so that they do not overlap it. A pushed card pushes the
+   * next one in turn.
+   * 
+   * @param cards the cards, from right to left
+   * @param limit the x coordinate cards must stay on the left of
+   * @param apply if false, the cards are not actually moved
+   * @return the leftmost x coordinate reached by the cards, limit if there are none
+   */
+  private static int pushLeft(List<Card> cards, int limit, boolean apply) {
+    int min = limit;
+
+    limit -= GenerationalLayout.CARDS_GAP;
+    for (Card c : cards) {
+      int x = Math.min(c.bounds.x, limit - c.bounds.width);
+      // Cards that do not have to move stop the push, the next ones were already in place
+      if (x == c.bounds.x)
+        break;
+      if (apply)
+        c.bounds.x = x;
+      min = Math.min(min, x);
+      limit = x - GenerationalLayout.CARDS_GAP;
+    }
+
+    return min;
+  }
+
+  /**
+   * Pushes cards to the right of a limit so that they do not overlap it. A pushed card pushes the
+   * next one in turn.
+   * 
+   * @param cards the cards, from left to right
+   * @param limit the x coordinate cards must stay on the right of
+   */
+  private static void pushRight(List<Card> cards, int limit) {
+    limit += GenerationalLayout.CARDS_GAP;
+    for (Card c : cards) {
+      if (c.bounds.x >= limit)
+        break;
+      c.bounds.x = limit;
+      limit = c.bounds.x + c.bounds.width + GenerationalLayout.CARDS_GAP;
+    }
+  }
+
+  private Rectangle getBounds(long id) {
+    Point p = this.positions.get(id);
+    if (p == null)
+      return null;
+    return new Rectangle(p, this.sizes.getOrDefault(id, GenerationalLayout.DEFAULT_CARD_SIZE));
+  }
+
+  /**
+   * A card being moved.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class Card {
+    final long id;
+    final Rectangle bounds;
+
+    Card(long id, Rectangle bounds) {
+      this.id = id;
+      this.bounds = bounds;
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.layout;
+
+import java.awt.Point;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import net.darmo_creations.jenealogio.util.ProgressListener;
+import net.darmo_creations.jenealogio.util.TaskUtil;
+
+/**
+ * A layout computes the position of every card of a tree. Layouts copy the tree data they need when
+ * they are created, which must happen in the thread owning the family; {@link #compute} may then
+ * run in a background task (see {@link TaskUtil}).
+ *
+ * @author Damien Vergnet
+ */
+public interface TreeLayout {
+  /**
+   * Computes the position of every card.
+   * 
+   * @param listener receives the progress
+   * @return the top-left corner of each card
+   * @throws CancellationException if the current thread was interrupted
+   */
+  Map<Long, Point> compute(ProgressListener listener);
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongConsumer;
+
+import net.darmo_creations.jenealogio.model.date.DateInterval;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.MemberIndex;
+import net.darmo_creations.jenealogio.model.family.MemberQuery;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.IntervalTree;
+import net.darmo_creations.jenealogio.util.LongHashSet;
+
+/**
+ * This index answers timeline queries: who was born, died or may have been alive during some
+ * years, and which relations started or ended then. Dates are turned into {@link DateInterval}s so
+ * that incomplete dates match every year they may stand for.
+ * <p>
+ * Each kind of date is held in an {@link IntervalTree}, answering queries in O(log n + k) time for
+ * k results. Dates changed since a tree was built are looked at separately until they are numerous
+ * enough for the next query to rebuild it.
+ * <p>
+ * Registered as an index of the family, it is also used by queries on years.
+ *
+ * @author Damien Vergnet
+ * @see Family#addMemberIndex(MemberIndex)
+ */
+public class DateIndex implements MemberIndex {
+  private final Intervals births, deaths, lifespans;
+  private final Intervals relationsStarts, relationsEnds;
+  /** The relations, by internal ID. */
+  private final Map<Long, Relationship> relations;
+  /** The internal IDs of relations, by partners. */
+  private final Map<List<Long>, Long> relationsIds;
+  private long nextRelationId;
+
+  /**
+   * Indexes all members and relations of a family. The index has to be registered to the family to
+   * follow its changes.
+   * 
+   * @param family the family
+   */
+  public DateIndex(Family family) {
+    this.births = new Intervals();
+    this.deaths = new Intervals();
+    this.lifespans = new Intervals();
+    this.relationsStarts = new Intervals();
+    this.relationsEnds = new Intervals();
+    this.relations = new HashMap<>();
+    this.relationsIds = new HashMap<>();
+    family.getAllMembers().forEach(this::memberAdded);
+    family.getAllRelations().forEach(this::relationAdded);
+  }
+
+  /**
+   * Returns the members born between the given years.
+   * 
+   * @param from the first year
+   * @param to the last year, included
+   * @return the IDs of the members, in no particular order
+   */
+  public long[] bornBetween(int from, int to) {
+    return collect(this.births, from, to);
+  }
+
+  /**
+   * Returns the members who died between the given years.
+   * 
+   * @param from the first year
+   * @param to the last year, included
+   * @return the IDs of the members, in no particular order
+   */
+  public long[] diedBetween(int from, int to) {
+    return collect(this.deaths, from, to);
+  }
+
+  /**
+   * Returns the members who may have been alive at some point between the given years.
+   * 
+   * @param from the first year
+   * @param to the last year, included
+   * @return the IDs of the members, in no particular order
+   * @see DateInterval#lifespan(Optional, Optional)
+   */
+  public long[] aliveBetween(int from, int to) {
+    return collect(this.lifespans, from, to);
+  }
+
+  /**
+   * Returns the relations that started between the given years, for instance the weddings of a
+   * decade.
+   * 
+   * @param from the first year
+   * @param to the last year, included
+   * @return copies of the relations
+   */
+  public List<Relationship> relationsStartedBetween(int from, int to) {
+    return collectRelations(this.relationsStarts, from, to);
+  }
+
+  /**
+   * Returns the relations that ended between the given years.
+   * 
+   * @param from the first year
+   * @param to the last year, included
+   * @return copies of the relations
+   */
+  public List<Relationship> relationsEndedBetween(int from, int to) {
+    return collectRelations(this.relationsEnds, from, to);
+  }
+
+  @Override
+  public long estimate(MemberQuery.Criterion criterion) {
+    Intervals intervals = intervals(criterion);
+    if (intervals == null)
+      return -1;
+    return intervals.count(range(criterion));
+  }
+
+  @Override
+  public LongHashSet lookup(MemberQuery.Criterion criterion) {
+    Intervals intervals = intervals(criterion);
+    DateInterval range = range(criterion);
+    LongHashSet ids = new LongHashSet(intervals.count(range));
+
+    intervals.query(range, ids::add);
+    return ids;
+  }
+
+  /**
+   * Returns the dates a criterion applies to or null if it is not about years.
+   */
+  private Intervals intervals(MemberQuery.Criterion criterion) {
+    if (criterion instanceof MemberQuery.YearCriterion)
+      return ((MemberQuery.YearCriterion) criterion).getField() == MemberQuery.DateField.BIRTH ? this.births : this.deaths;
+    if (criterion instanceof MemberQuery.LifespanCriterion)
+      return this.lifespans;
+    return null;
+  }
+
+  /**
+   * Returns the years of a criterion about years.
+   */
+  private static DateInterval range(MemberQuery.Criterion criterion) {
+    if (criterion instanceof MemberQuery.YearCriterion) {
+      MemberQuery.YearCriterion c = (MemberQuery.YearCriterion) criterion;
+      return DateInterval.ofYears(c.getFrom(), c.getTo());
+    }
+    MemberQuery.LifespanCriterion c = (MemberQuery.LifespanCriterion) criterion;
+    return DateInterval.ofYears(c.getFrom(), c.getTo());
+  }
+
+  private static long[] collect(Intervals intervals, int from, int to) {
+    DateInterval range = DateInterval.ofYears(from, to);
+    long[] ids = new long[intervals.count(range)];
+    int[] size = {0};
+
+    intervals.query(range, id -> ids[size[0]++] = id);
+    return size[0] == ids.length ? ids : Arrays.copyOf(ids, size[0]);
+  }
+
+  private List<Relationship> collectRelations(Intervals intervals, int from, int to) {
+    List<Relationship> found = new ArrayList<>();
+    for (long id : collect(intervals, from, to))
+      found.add(this.relations.get(id).clone());
+    return found;
+  }
+
+  @Override
+  public void memberAdded(FamilyMember member) {
+    long id = member.getId();
+
+    member.getBirthDate().flatMap(DateInterval::of).ifPresent(i -> this.births.put(id, i));
+    member.getDeathDate().flatMap(DateInterval::of).ifPresent(i -> this.deaths.put(id, i));
+    DateInterval.lifespan(member.getBirthDate(), member.getDeathDate()).ifPresent(i -> this.lifespans.put(id, i));
+  }
+
+  @Override
+  public void memberUpdated(FamilyMember member) {
+    memberRemoved(member.getId());
+    memberAdded(member);
+  }
+
+  @Override
+  public void memberRemoved(long id) {
+    this.births.remove(id);
+    this.deaths.remove(id);
+    this.lifespans.remove(id);
+  }
+
+  @Override
+  public void relationAdded(Relationship relation) {
+    long id = this.nextRelationId++;
+
+    this.relations.put(id, relation);
+    this.relationsIds.put(relation.getPartners(), id);
+    relation.getDate().flatMap(DateInterval::of).ifPresent(i -> this.relationsStarts.put(id, i));
+    relation.getEndDate().flatMap(DateInterval::of).ifPresent(i -> this.relationsEnds.put(id, i));
+  }
+
+  @Override
+  public void relationUpdated(Relationship relation) {
+    relationRemoved(relation);
+    relationAdded(relation);
+  }
+
+  @Override
+  public void relationRemoved(Relationship relation) {
+    Long id = this.relationsIds.remove(relation.getPartners());
+
+    if (id != null) {
+      this.relations.remove(id);
+      this.relationsStarts.remove(id);
+      this.relationsEnds.remove(id);
+    }
+  }
+
+  /**
+   * The intervals of one kind of date, by ID. Intervals are held in a tree; those added or removed
+   * since it was built are kept aside and the tree is only rebuilt once they are too many, so that
+   * editing the family between queries does not rebuild it each time.
+   *
+   * @author Damien Vergnet
+   */
+  private static final class Intervals {
+    /** Minimum number of changes that trigger a rebuild. */
+    private static final int MIN_CHANGES = 64;
+
+    private final Map<Long, DateInterval> intervals;
+    private IntervalTree tree;
+    /** IDs held by the tree. */
+    private LongHashSet inTree;
+    /** Intervals added since the tree was built. */
+    private final Map<Long, DateInterval> added;
+    /** IDs of the tree that were removed or changed since it was built. */
+    private final LongHashSet removed;
+
+    Intervals() {
+      this.intervals = new HashMap<>();
+      this.inTree = new LongHashSet();
+      this.tree = new IntervalTree(new int[0], new int[0], new long[0]);
+      this.added = new HashMap<>();
+      this.removed = new LongHashSet();
+    }
+
+    void put(long id, DateInterval interval) {
+      remove(id);
+      this.intervals.put(id, interval);
+      this.added.put(id, interval);
+    }
+
+    void remove(long id) {
+      if (this.intervals.remove(id) != null) {
+        this.added.remove(id);
+        if (this.inTree.contains(id))
+          this.removed.add(id);
+      }
+    }
+
+    /**
+     * Counts the intervals overlapping a range. Changes since the tree was built are not all taken
+     * into account, the count may be higher than the actual number.
+     */
+    int count(DateInterval range) {
+      update();
+      return this.tree.count(range.getStart(), range.getEnd()) + this.added.size();
+    }
+
+    /**
+     * Calls the given action with the ID of each interval overlapping the range.
+     */
+    void query(DateInterval range, LongConsumer action) {
+      update();
+      this.tree.query(range.getStart(), range.getEnd(), id -> {
+        if (!this.removed.contains(id))
+          action.accept(id);
+      });
+      this.added.forEach((id, interval) -> {
+        if (interval.overlaps(range))
+          action.accept(id);
+      });
+    }
+
+    /**
+     * Rebuilds the tree if there are too many changes since it was built.
+     */
+    private void update() {
+      if (this.added.size() + this.removed.size() <= Math.max(MIN_CHANGES, this.intervals.size() / 16))
+        return;
+
+      int n = this.intervals.size(), i = 0;
+      int[] starts = new int[n], ends = new int[n];
+      long[] ids = new long[n];
+
+      this.inTree = new LongHashSet(n);
+      for (Map.Entry<Long, DateInterval> e : this.intervals.entrySet()) {
+        ids[i] = e.getKey();
+        starts[i] = e.getValue().getStart();
+        ends[i] = e.getValue().getEnd();
+        this.inTree.add(ids[i]);
+        i++;
+      }
+      this.tree = new IntervalTree(starts, ends, ids);
+      this.added.clear();
+      this.removed.clear();
+    }
+  }
+}
@@ -0,0 +1,527 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.ProgressListener;
+import net.darmo_creations.jenealogio.util.TaskUtil;
+import net.darmo_creations.jenealogio.util.TextUtil;
+
+/**
+ * This class looks for members that are likely to be the same person, for instance after two
+ * trees have been merged.
+ * <p>
+ * Comparing all pairs of members would cost O(n²). Members are instead put in blocks sharing a key:
+ * the phonetic code of their family name with their birth decade or with the code of their first
+ * name, and the code of their first name with their birth decade to catch misspelled family names.
+ * Only members of the same block are compared;
+ * blocks too large to compare all their pairs are sorted by name and each member is compared with
+ * its closest neighbors only. Pairs are scored on names, dates, locations and the names of their
+ * relatives, and blocks are processed in parallel on the common fork-join pool.
+ * <p>
+ * Names, dates and relatives are copied when the detector is created, in the thread owning the
+ * family, so that {@link #detect} can run as a background task.
+ *
+ * @author Damien Vergnet
+ */
+public class DuplicateDetector {
+  /** Score from which two members are reported. */
+  public static final double MIN_SCORE = 0.8;
+
+  /** Number of members above which a block is compared with a sliding window. */
+  private static final int MAX_BLOCK_SIZE = 200;
+  /** Number of following members each member of a large block is compared with. */
+  private static final int WINDOW = 30;
+  /** Number of comparisons under which blocks are processed by a single task. */
+  private static final int TASK_SIZE = 20_000;
+  /** Number of parts the blocks are split into to report progress and check for cancellation. */
+  private static final int STEPS = 20;
+  /** Value of unknown years. */
+  private static final int NO_YEAR = FamilyMember.UNKNOWN_YEAR;
+  /** Maximum difference between two birth or death years of the same person. */
+  private static final int MAX_YEARS_GAP = 10;
+
+  private static final double NAMES_WEIGHT = 3;
+  private static final double BIRTH_WEIGHT = 2;
+  private static final double DEATH_WEIGHT = 1;
+  private static final double LOCATION_WEIGHT = 1;
+  private static final double RELATIVES_WEIGHT = 2;
+
+  private final long[] ids;
+  private final String[] familyNames, firstNames, birthLocations, deathLocations;
+  private final String[] familyCodes, firstCodes;
+  private final int[] birthYears, deathYears;
+  private final Gender[] genders;
+  /** The indexes of the parents, partners and children of each member. */
+  private final int[][] relatives;
+  /** The names of the relatives of each member, as sorted keys of their phonetic codes. */
+  private final int[][] relativesNames;
+
+  /**
+   * Creates a detector for the given tree and computes the phonetic codes of every member.
+   * 
+   * @param family the tree
+   */
+  public DuplicateDetector(Family family) {
+    List<FamilyMember> members = new ArrayList<>(family.getAllMembers());
+    int n = members.size();
+    Map<Long, Integer> indexes = new HashMap<>(2 * n);
+    // Names are often shared by many people, their codes are computed only once
+    Map<String, String> codes = new HashMap<>();
+
+    members.sort(Comparator.comparingLong(FamilyMember::getId));
+    this.ids = new long[n];
+    this.familyNames = new String[n];
+    this.firstNames = new String[n];
+    this.birthLocations = new String[n];
+    this.deathLocations = new String[n];
+    this.familyCodes = new String[n];
+    this.firstCodes = new String[n];
+    this.birthYears = new int[n];
+    this.deathYears = new int[n];
+    this.genders = new Gender[n];
+    for (int i = 0; i < n; i++) {
+      FamilyMember m = members.get(i);
+
+      indexes.put(m.getId(), i);
+      this.ids[i] = m.getId();
+      this.familyNames[i] = normalize(m.getFamilyName());
+      this.firstNames[i] = normalize(m.getFirstName());
+      this.birthLocations[i] = normalize(m.getBirthLocation());
+      this.deathLocations[i] = normalize(m.getDeathLocation());
+      this.familyCodes[i] = codes.computeIfAbsent(this.familyNames[i], DuplicateDetector::code);
+      this.firstCodes[i] = codes.computeIfAbsent(this.firstNames[i], DuplicateDetector::code);
+      this.birthYears[i] = m.getBirthYear();
+      this.deathYears[i] = m.getDeathYear();
+      this.genders[i] = m.getGender();
+    }
+
+    // Each relation is turned into a list of member indexes: both partners then the children
+    List<int[]> relations = new ArrayList<>();
+    int[] degrees = new int[n];
+    for (Relationship r : family.getAllRelations()) {
+      int[] relation = new int[2 + r.getChildren().size()];
+      int size = 0;
+      Integer p1 = indexes.get(r.getPartner1()), p2 = indexes.get(r.getPartner2());
+
+      relation[size++] = p1 != null ? p1 : -1;
+      relation[size++] = p2 != null ? p2 : -1;
+      for (long childId : r.getChildren()) {
+        Integer c = indexes.get(childId);
+        if (c != null)
+          relation[size++] = c;
+      }
+      relations.add(Arrays.copyOf(relation, size));
+      forEachRelatives(relation, size, (x, y) -> degrees[x]++);
+    }
+    this.relatives = new int[n][];
+    for (int i = 0; i < n; i++)
+      this.relatives[i] = new int[degrees[i]];
+    Arrays.fill(degrees, 0);
+    for (int[] relation : relations)
+      forEachRelatives(relation, relation.length, (x, y) -> this.relatives[x][degrees[x]++] = y);
+
+    // The names of relatives are compared as numbers
+    Map<String, Integer> namesKeys = new HashMap<>();
+    int[] nameKeys = new int[n];
+    for (int i = 0; i < n; i++)
+      nameKeys[i] = namesKeys.computeIfAbsent(this.firstCodes[i] + " " + this.familyCodes[i], k -> namesKeys.size());
+    this.relativesNames = new int[n][];
+    for (int i = 0; i < n; i++) {
+      this.relatives[i] = sortedDistinct(this.relatives[i]);
+      int[] names = new int[this.relatives[i].length];
+      for (int j = 0; j < names.length; j++)
+        names[j] = nameKeys[this.relatives[i][j]];
+      this.relativesNames[i] = sortedDistinct(names);
+    }
+  }
+
+  /**
+   * Calls the given function for each pair of direct relatives of a relation, in both directions.
+   * 
+   * @param members the partners, -1 if unknown, then the children
+   * @param size the number of members
+   * @param action the function
+   */
+  private static void forEachRelatives(int[] members, int size, IntBinaryConsumer action) {
+    if (members[0] >= 0 && members[1] >= 0) {
+      action.accept(members[0], members[1]);
+      action.accept(members[1], members[0]);
+    }
+    for (int c = 2; c < size; c++) {
+      for (int p = 0; p < 2; p++) {
+        if (members[p] >= 0) {
+          action.accept(members[p], members[c]);
+          action.accept(members[c], members[p]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sorts an array and removes duplicate values.
+   * 
+   * @return an array, that may be the given one
+   */
+  private static int[] sortedDistinct(int[] values) {
+    if (values.length < 2)
+      return values;
+    Arrays.sort(values);
+    int size = 1;
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] != values[size - 1])
+        values[size++] = values[i];
+    }
+    return size == values.length ? values : Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Looks for duplicates.
+   * 
+   * @param listener the progress listener
+   * @return the pairs of members that may be the same person, the most likely first
+   * @throws CancellationException if the thread was interrupted
+   */
+  public List<Duplicate> detect(ProgressListener listener) {
+    List<int[]> blocks = createBlocks();
+    Map<Long, Duplicate> duplicates = new HashMap<>();
+    int n = this.ids.length;
+
+    listener.progressChanged(0);
+    for (int step = 0; step < STEPS; step++) {
+      int from = blocks.size() * step / STEPS, to = blocks.size() * (step + 1) / STEPS;
+
+      TaskUtil.checkCanceled();
+      // Pairs found in several blocks are only kept once
+      for (Duplicate d : ForkJoinPool.commonPool().invoke(new BlocksTask(blocks, from, to)))
+        duplicates.putIfAbsent(d.index1 * (long) n + d.index2, d);
+      listener.progressChanged(100 * (step + 1) / STEPS);
+    }
+
+    List<Duplicate> result = new ArrayList<>(duplicates.values());
+    result.sort(Comparator.comparingDouble(Duplicate::getScore).reversed());
+    return result;
+  }
+
+  /**
+   * Puts members in blocks. Members that share no key with any other member are left out.
+   */
+  private List<int[]> createBlocks() {
+    Map<String, List<Integer>> keys = new HashMap<>();
+
+    for (int i = 0; i < this.ids.length; i++) {
+      String name = this.familyCodes[i], first = this.firstCodes[i];
+      int year = this.birthYears[i];
+
+      if (!name.isEmpty()) {
+        // Two overlapping decades so that close years in different decades share a block
+        if (year != NO_YEAR) {
+          addToBlock(keys, "D" + name + " " + Math.floorDiv(year, 10), i);
+          addToBlock(keys, "E" + name + " " + Math.floorDiv(year + 5, 10), i);
+        }
+        if (!first.isEmpty())
+          addToBlock(keys, "F" + name + " " + first, i);
+      }
+      // Catches misspelled family names
+      if (!first.isEmpty() && year != NO_YEAR)
+        addToBlock(keys, "G" + first + " " + Math.floorDiv(year, 10), i);
+    }
+
+    List<int[]> blocks = new ArrayList<>();
+    keys.values().forEach(block -> {
+      if (block.size() > 1)
+        blocks.add(block.stream().mapToInt(Integer::intValue).toArray());
+    });
+    // Large blocks are spread between the steps so that progress is regular
+    Collections.shuffle(blocks, new Random(0));
+
+    return blocks;
+  }
+
+  private static void addToBlock(Map<String, List<Integer>> blocks, String key, int index) {
+    blocks.computeIfAbsent(key, k -> new ArrayList<>()).add(index);
+  }
+
+  /**
+   * Compares the members of a block.
+   * 
+   * @param block the members' indexes
+   * @param duplicates the list the found duplicates are added to
+   */
+  private void compareBlock(int[] block, List<Duplicate> duplicates) {
+    if (block.length <= MAX_BLOCK_SIZE) {
+      for (int a = 0; a < block.length; a++)
+        for (int b = a + 1; b < block.length; b++)
+          compare(block[a], block[b], duplicates);
+    }
+    else {
+      Integer[] sorted = Arrays.stream(block).boxed().toArray(Integer[]::new);
+
+      Arrays.sort(sorted, Comparator.comparing((Integer i) -> this.firstNames[i]).thenComparing(i -> this.familyNames[i]));
+      for (int a = 0; a < sorted.length; a++)
+        for (int b = a + 1; b < Math.min(sorted.length, a + 1 + WINDOW); b++)
+          compare(sorted[a], sorted[b], duplicates);
+    }
+  }
+
+  /**
+   * Compares two members and adds them to the list if they are likely to be the same person.
+   */
+  private void compare(int i, int j, List<Duplicate> duplicates) {
+    double score = score(i, j);
+
+    if (score > 0)
+      duplicates.add(new Duplicate(Math.min(i, j), Math.max(i, j), score));
+  }
+
+  /**
+   * Computes the likelihood that two members are the same person. The score is the weighted mean
+   * of the similarities of the data known for both members. Texts are compared last and the
+   * comparison stops as soon as the score cannot reach {@link #MIN_SCORE} anymore.
+   * 
+   * @return the score, between 0 and 1; 0 if they cannot be the same person or if the score is
+   *         below {@link #MIN_SCORE}
+   */
+  private double score(int i, int j) {
+    if (this.genders[i] != Gender.UNKNOW && this.genders[j] != Gender.UNKNOW && this.genders[i] != this.genders[j])
+      return 0;
+    if (Arrays.binarySearch(this.relatives[i], j) >= 0)
+      return 0;
+    if (yearsGap(this.birthYears[i], this.birthYears[j]) > MAX_YEARS_GAP
+        || yearsGap(this.deathYears[i], this.deathYears[j]) > MAX_YEARS_GAP)
+      return 0;
+
+    boolean birth = this.birthYears[i] != NO_YEAR && this.birthYears[j] != NO_YEAR;
+    boolean death = this.deathYears[i] != NO_YEAR && this.deathYears[j] != NO_YEAR;
+    boolean birthLocation = !this.birthLocations[i].isEmpty() && !this.birthLocations[j].isEmpty();
+    boolean deathLocation = !this.deathLocations[i].isEmpty() && !this.deathLocations[j].isEmpty();
+    // Copies of a person often have different relatives, only shared ones are taken into account
+    double relatives = jaccard(this.relativesNames[i], this.relativesNames[j]);
+    double weights = 2 * NAMES_WEIGHT + (birth ? BIRTH_WEIGHT : 0) + (death ? DEATH_WEIGHT : 0) + (birthLocation ? LOCATION_WEIGHT : 0)
+        + (deathLocation ? LOCATION_WEIGHT : 0) + (relatives > 0 ? RELATIVES_WEIGHT : 0);
+    double maxLoss = weights * (1 - MIN_SCORE), loss = 0;
+
+    if (birth)
+      loss += BIRTH_WEIGHT * (1 - yearsSimilarity(this.birthYears[i], this.birthYears[j]));
+    if (death)
+      loss += DEATH_WEIGHT * (1 - yearsSimilarity(this.deathYears[i], this.deathYears[j]));
+    if (relatives > 0)
+      loss += RELATIVES_WEIGHT * (1 - relatives);
+    if (loss > maxLoss)
+      return 0;
+    loss += NAMES_WEIGHT * (1 - nameSimilarity(this.familyNames[i], this.familyNames[j], this.familyCodes[i], this.familyCodes[j],
+        (maxLoss - loss) / NAMES_WEIGHT));
+    if (loss > maxLoss)
+      return 0;
+    loss += NAMES_WEIGHT
+        * (1 - nameSimilarity(this.firstNames[i], this.firstNames[j], this.firstCodes[i], this.firstCodes[j], (maxLoss - loss) / NAMES_WEIGHT));
+    if (loss > maxLoss)
+      return 0;
+    if (birthLocation)
+      loss += LOCATION_WEIGHT * (1 - similarity(this.birthLocations[i], this.birthLocations[j], (maxLoss - loss) / LOCATION_WEIGHT));
+    if (loss > maxLoss)
+      return 0;
+    if (deathLocation)
+      loss += LOCATION_WEIGHT * (1 - similarity(this.deathLocations[i], this.deathLocations[j], (maxLoss - loss) / LOCATION_WEIGHT));
+    if (loss > maxLoss)
+      return 0;
+
+    return 1 - loss / weights;
+  }
+
+  /**
+   * Compares two names. Names sounding the same are considered almost equal; a missing name
+   * neither matches nor differs.
+   * 
+   * @param maxDissimilarity the dissimilarity above which the exact value is not needed
+   */
+  private static double nameSimilarity(String name1, String name2, String code1, String code2, double maxDissimilarity) {
+    if (name1.isEmpty() || name2.isEmpty())
+      return 0.5;
+    if (!code1.isEmpty() && code1.equals(code2))
+      return Math.max(similarity(name1, name2, 0.1), 0.9);
+    return similarity(name1, name2, maxDissimilarity);
+  }
+
+  /**
+   * Returns 1 minus the edit distance divided by the length of the longest text. The distance is
+   * only computed up to the given bound; if it is exceeded, the returned value is below
+   * {@code 1 - maxDissimilarity} but not exact.
+   * 
+   * @param maxDissimilarity the dissimilarity above which the exact value is not needed
+   */
+  private static double similarity(String s1, String s2, double maxDissimilarity) {
+    if (s1.equals(s2))
+      return 1;
+    if (maxDissimilarity < 0)
+      return 0;
+    int length = Math.max(s1.length(), s2.length());
+    return 1 - (double) Phonetics.distance(s1, s2, (int) (maxDissimilarity * length)) / length;
+  }
+
+  private static double yearsSimilarity(int year1, int year2) {
+    return Math.max(0, 1 - Math.abs(year1 - year2) / 5.0);
+  }
+
+  private static int yearsGap(int year1, int year2) {
+    return year1 == NO_YEAR || year2 == NO_YEAR ? 0 : Math.abs(year1 - year2);
+  }
+
+  /**
+   * Returns the size of the intersection of two sorted arrays divided by the size of their union.
+   */
+  private static double jaccard(int[] a, int[] b) {
+    int common = 0;
+
+    for (int x = 0, y = 0; x < a.length && y < b.length;) {
+      if (a[x] == b[y]) {
+        common++;
+        x++;
+        y++;
+      }
+      else if (a[x] < b[y])
+        x++;
+      else
+        y++;
+    }
+
+    return common == 0 ? 0 : (double) common / (a.length + b.length - common);
+  }
+
+  private static String normalize(Optional<String> text) {
+    return text.map(TextUtil::normalize).orElse("").trim();
+  }
+
+  /**
+   * Returns the French phonetic code of the first word of a name.
+   */
+  private static String code(String name) {
+    List<String> words = TextUtil.tokenize(name);
+    return words.isEmpty() ? "" : Phonetics.french(words.get(0));
+  }
+
+  /**
+   * A function taking two ints.
+   *
+   * @author Damien Vergnet
+   */
+  @FunctionalInterface
+  private interface IntBinaryConsumer {
+    void accept(int x, int y);
+  }
+
+  /**
+   * Compares the members of a range of blocks. Tasks only read the detector's data.
+   *
+   * @author Damien Vergnet
+   */
+  private final class BlocksTask extends RecursiveTask<List<Duplicate>> {
+    private static final long serialVersionUID = -6016539218385311829L;
+
+    private final List<int[]> blocks;
+    private final int from, to;
+
+    BlocksTask(List<int[]> blocks, int from, int to) {
+      this.blocks = blocks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected List<Duplicate> compute() {
+      long comparisons = 0;
+
+      for (int i = this.from; i < this.to; i++)
+        comparisons += comparisons(this.blocks.get(i).length);
+      if (comparisons > TASK_SIZE && this.to - this.from > 1) {
+        int middle = (this.from + this.to) >>> 1;
+        BlocksTask left = new BlocksTask(this.blocks, this.from, middle);
+        BlocksTask right = new BlocksTask(this.blocks, middle, this.to);
+
+        left.fork();
+        List<Duplicate> duplicates = right.compute();
+        duplicates.addAll(left.join());
+        return duplicates;
+      }
+
+      List<Duplicate> duplicates = new ArrayList<>();
+      for (int i = this.from; i < this.to; i++)
+        compareBlock(this.blocks.get(i), duplicates);
+      return duplicates;
+    }
+
+    private long comparisons(int size) {
+      return size <= MAX_BLOCK_SIZE ? (long) size * (size - 1) / 2 : (long) size * WINDOW;
+    }
+  }
+
+  /**
+   * Two members that may be the same person.
+   *
+   * @author Damien Vergnet
+   */
+  public final class Duplicate {
+    private final int index1, index2;
+    private final double score;
+
+    private Duplicate(int index1, int index2, double score) {
+      this.index1 = index1;
+      this.index2 = index2;
+      this.score = score;
+    }
+
+    /**
+     * @return the ID of the first member
+     */
+    public long getMemberId1() {
+      return DuplicateDetector.this.ids[this.index1];
+    }
+
+    /**
+     * @return the ID of the second member
+     */
+    public long getMemberId2() {
+      return DuplicateDetector.this.ids[this.index2];
+    }
+
+    /**
+     * @return the likelihood that both members are the same person, between {@link #MIN_SCORE}
+     *         and 1
+     */
+    public double getScore() {
+      return this.score;
+    }
+  }
+}
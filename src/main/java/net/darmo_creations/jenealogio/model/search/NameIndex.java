@@ -0,0 +1,264 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyListener;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.util.LongHashSet;
+import net.darmo_creations.jenealogio.util.TextUtil;
+
+/**
+ * This index finds members whose names are spelled differently than searched: "Vernet" finds
+ * "Vergnet" and "Vergné". A word of a name matches a searched word if they have the same Soundex or
+ * French phonetic code or if they differ by a few letters. The index is kept up to date by
+ * registering it as a listener of the family.
+ * <p>
+ * Codes point to the words that have them and letter trigrams point to the words containing them.
+ * A word a few edits away shares most of its trigrams with the searched word, so only the words of
+ * its rarest trigrams are compared letter by letter and a search never walks all the names of the
+ * tree.
+ *
+ * @author Damien Vergnet
+ * @see Phonetics
+ * @see Family#addFamilyListener(FamilyListener)
+ */
+public class NameIndex implements FamilyListener {
+  /** The members having each word. */
+  private final Map<String, LongHashSet> members;
+  /** The words having each phonetic code; Soundex codes start with a digit after the first letter. */
+  private final Map<String, Set<String>> codes;
+  /** The words containing each trigram. */
+  private final Map<String, Set<String>> trigrams;
+  /** The distinct words of each member. */
+  private final Map<Long, String[]> words;
+
+  /**
+   * Indexes the names of all members of a family. The index has to be registered as a listener of
+   * the family to follow its changes.
+   * 
+   * @param family the family
+   */
+  public NameIndex(Family family) {
+    this.members = new HashMap<>();
+    this.codes = new HashMap<>();
+    this.trigrams = new HashMap<>();
+    this.words = new HashMap<>();
+    family.getAllMembers().forEach(this::add);
+  }
+
+  /**
+   * Returns the members whose names match a query. A member matches if each word of the query is
+   * a variant of one of the words of its names.
+   * 
+   * @param query the query
+   * @param limit the maximum number of members to return
+   * @return the IDs of at most {@code limit} matching members, in no particular order; empty if the
+   *         query has no words
+   * @see #getVariants(String)
+   */
+  public long[] search(String query, int limit) {
+    List<LongHashSet> matches = new ArrayList<>();
+    LongHashSet found = new LongHashSet();
+
+    for (String term : new LinkedHashSet<>(TextUtil.tokenize(query))) {
+      LongHashSet ids = new LongHashSet();
+
+      getVariants(term).forEach(w -> this.members.get(w).forEach(ids::add));
+      if (ids.isEmpty())
+        return new long[0];
+      matches.add(ids);
+    }
+    if (matches.isEmpty() || limit <= 0)
+      return new long[0];
+
+    LongHashSet smallest = matches.get(0);
+    for (LongHashSet ids : matches)
+      if (ids.size() < smallest.size())
+        smallest = ids;
+    smallest.allMatch(id -> {
+      if (matches.stream().allMatch(ids -> ids.contains(id)))
+        found.add(id);
+      return found.size() < limit;
+    });
+
+    return found.toArray();
+  }
+
+  /**
+   * Returns the indexed words that are variants of a word: words with the same Soundex or French
+   * phonetic code and words at most one or two edits away, depending on the word's length.
+   * 
+   * @param word the word
+   * @return the variants, including the word itself if it is indexed
+   */
+  public Set<String> getVariants(String word) {
+    String w = TextUtil.normalize(word);
+    Set<String> variants = new HashSet<>();
+    int maxDistance = maxDistance(w);
+
+    for (String code : codes(w))
+      variants.addAll(this.codes.getOrDefault(code, Collections.emptySet()));
+    if (this.members.containsKey(w))
+      variants.add(w);
+
+    if (maxDistance > 0) {
+      List<Set<String>> postings = new ArrayList<>();
+      Set<String> candidates = new HashSet<>();
+
+      trigrams(w).forEach(trigram -> postings.add(this.trigrams.getOrDefault(trigram, Collections.emptySet())));
+      // An edit changes at most 3 trigrams, variants thus share at least this many trigrams with the
+      // word and are found among the words of the rarest trigrams
+      int threshold = Math.max(1, postings.size() - 3 * maxDistance);
+      postings.sort(Comparator.comparingInt(Set::size));
+      for (int i = 0; i <= postings.size() - threshold; i++)
+        candidates.addAll(postings.get(i));
+      candidates.forEach(candidate -> {
+        if (Phonetics.distance(w, candidate, maxDistance) <= maxDistance)
+          variants.add(candidate);
+      });
+    }
+
+    return variants;
+  }
+
+  @Override
+  public void memberAdded(FamilyMember member) {
+    add(member);
+  }
+
+  @Override
+  public void memberUpdated(FamilyMember member) {
+    remove(member.getId());
+    add(member);
+  }
+
+  @Override
+  public void memberRemoved(long id) {
+    remove(id);
+  }
+
+  /**
+   * Indexes the names of a member.
+   */
+  private void add(FamilyMember member) {
+    Set<String> memberWords = new LinkedHashSet<>();
+    long id = member.getId();
+
+    memberWords.addAll(member.getNameWords());
+
+    for (String w : memberWords) {
+      LongHashSet ids = this.members.get(w);
+
+      if (ids == null) {
+        this.members.put(w, ids = new LongHashSet());
+        codes(w).forEach(code -> this.codes.computeIfAbsent(code, k -> new HashSet<>()).add(w));
+        trigrams(w).forEach(trigram -> this.trigrams.computeIfAbsent(trigram, k -> new HashSet<>()).add(w));
+      }
+      ids.add(id);
+    }
+    this.words.put(id, memberWords.toArray(new String[memberWords.size()]));
+  }
+
+  /**
+   * Removes the names of a member from the index. Words no other member has are forgotten.
+   */
+  private void remove(long id) {
+    String[] memberWords = this.words.remove(id);
+
+    if (memberWords != null) {
+      for (String w : memberWords) {
+        LongHashSet ids = this.members.get(w);
+
+        ids.remove(id);
+        if (ids.isEmpty()) {
+          this.members.remove(w);
+          codes(w).forEach(code -> removeFrom(this.codes, code, w));
+          trigrams(w).forEach(trigram -> removeFrom(this.trigrams, trigram, w));
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes a word from the set of the given key and the key if its set becomes empty.
+   */
+  private static void removeFrom(Map<String, Set<String>> map, String key, String word) {
+    Set<String> set = map.get(key);
+
+    set.remove(word);
+    if (set.isEmpty())
+      map.remove(key);
+  }
+
+  /**
+   * Returns the phonetic codes of a word. Words with digits, like numbers in names, have none.
+   */
+  private static List<String> codes(String word) {
+    List<String> codes = new ArrayList<>(2);
+
+    if (!word.chars().allMatch(Character::isLetter))
+      return codes;
+
+    String soundex = Phonetics.soundex(word);
+    String french = Phonetics.french(word);
+
+    if (!soundex.isEmpty())
+      codes.add(soundex);
+    if (!french.isEmpty() && !french.equals(soundex))
+      codes.add(french);
+
+    return codes;
+  }
+
+  /**
+   * Returns the distinct trigrams of a word, padded at both ends.
+   */
+  private static Set<String> trigrams(String word) {
+    String padded = "  " + word + "  ";
+    Set<String> trigrams = new HashSet<>();
+
+    for (int i = 0; i + 3 <= padded.length(); i++)
+      trigrams.add(padded.substring(i, i + 3));
+
+    return trigrams;
+  }
+
+  /**
+   * Returns the number of edits allowed for a word: none for short words, where a single letter
+   * changes the name, one up to six letters and two for longer words.
+   */
+  private static int maxDistance(String word) {
+    if (word.length() <= 3)
+      return 0;
+    if (word.length() <= 6)
+      return 1;
+    return 2;
+  }
+}
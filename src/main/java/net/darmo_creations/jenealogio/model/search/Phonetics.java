@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.search;
+
+import java.util.regex.Pattern;
+
+/**
+ * Phonetic codes and edit distance used to match spelling variants of names. All functions expect
+ * words normalized by {@link net.darmo_creations.jenealogio.util.TextUtil#normalize(String)}.
+ * 
+ * @author Damien Vergnet
+ */
+public final class Phonetics {
+  /** Soundex digit of each letter from 'a' to 'z'; '0' for vowels, '-' for h and w. */
+  private static final String SOUNDEX_CODES = "0123012-02245501262301-202";
+  /** French substitutions of letter groups, applied in order. */
+  private static final String[][] FRENCH_GROUPS = {
+    {"eaux", "o"}, {"eau", "o"}, {"aux", "o"}, {"au", "o"}, {"ou", "u"}, {"oi", "oa"}, {"oy", "oa"},
+    {"ph", "f"}, {"sch", "s"}, {"ch", "s"}, {"sh", "s"}, {"qu", "k"}, {"ck", "k"}, {"gn", "n"},
+    {"gue", "ke"}, {"gui", "ki"}, {"ge", "je"}, {"gi", "ji"}, {"gy", "ji"}, {"ce", "se"}, {"ci", "si"}, {"cy", "si"},
+    {"th", "t"}, {"h", ""}, {"c", "k"}, {"q", "k"}, {"g", "k"}, {"x", "ks"}, {"z", "s"}, {"w", "v"}, {"y", "i"},
+  };
+  /** French substitutions of sounds depending on the next letters, applied in order. */
+  private static final Object[][] FRENCH_SOUNDS = {
+    // Nasal vowels, unless followed by a vowel
+    {Pattern.compile("[ae]in(?![aeiou])"), "in"},
+    {Pattern.compile("[ae][nm](?![aeiou])"), "an"},
+    {Pattern.compile("[iu][nm](?![aeiou])"), "in"},
+    {Pattern.compile("om(?![aeiou])"), "on"},
+    {Pattern.compile("[ae]i"), "e"},
+    // Silent endings
+    {Pattern.compile("(?<=.)(er|ez|et)$"), "e"},
+    {Pattern.compile("(?<=.)[dtsp]+$"), ""},
+    {Pattern.compile("(?<=.)e+$"), ""},
+  };
+
+  /**
+   * Computes the American Soundex code of a word: its first letter followed by three digits.
+   * 
+   * @param word the normalized word
+   * @return the code; empty if the word has no letters from a to z
+   */
+  public static String soundex(String word) {
+    StringBuilder code = new StringBuilder(4);
+    char last = 0;
+
+    for (int i = 0; i < word.length() && code.length() < 4; i++) {
+      char c = word.charAt(i);
+
+      if (c < 'a' || c > 'z')
+        continue;
+
+      char digit = SOUNDEX_CODES.charAt(c - 'a');
+
+      if (code.length() == 0) {
+        code.append(Character.toUpperCase(c));
+        last = digit;
+      }
+      // Letters with the same code separated by h or w are coded once
+      else if (digit != '-') {
+        if (digit != '0' && digit != last)
+          code.append(digit);
+        last = digit;
+      }
+    }
+    if (code.length() == 0)
+      return "";
+    while (code.length() < 4)
+      code.append('0');
+
+    return code.toString();
+  }
+
+  /**
+   * Computes a phonetic code suited to French names. Letter groups sounding the same are replaced
+   * by a single spelling, silent endings are dropped and doubled letters are merged; "Vergnet",
+   * "Vergné" and "Vernet" thus have the same code.
+   * 
+   * @param word the normalized word
+   * @return the code; empty if the word has no letters from a to z
+   */
+  public static String french(String word) {
+    StringBuilder sb = new StringBuilder(word.length());
+
+    for (int i = 0; i < word.length(); i++) {
+      char c = word.charAt(i);
+      if (c >= 'a' && c <= 'z')
+        sb.append(c);
+    }
+
+    String s = sb.toString();
+
+    for (String[] group : FRENCH_GROUPS)
+      s = s.replace(group[0], group[1]);
+    for (Object[] sound : FRENCH_SOUNDS)
+      s = ((Pattern) sound[0]).matcher(s).replaceAll((String) sound[1]);
+
+    sb.setLength(0);
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (i == 0 || c != s.charAt(i - 1))
+        sb.append(c);
+    }
+
+    return sb.toString().toUpperCase();
+  }
+
+  /**
+   * Computes the Levenshtein distance between two words if it is not greater than a bound. Only
+   * the cells of the matrix at most {@code max} away from the diagonal are computed.
+   * 
+   * @param a a word
+   * @param b another word
+   * @param max the bound
+   * @return the distance if it is at most {@code max}; {@code max + 1} otherwise
+   */
+  public static int distance(String a, String b, int max) {
+    int n = a.length(), m = b.length();
+
+    if (Math.abs(n - m) > max)
+      return max + 1;
+
+    int[] previous = new int[m + 1], current = new int[m + 1];
+    final int far = max + 1;
+
+    for (int j = 0; j <= m; j++)
+      previous[j] = j <= max ? j : far;
+    for (int i = 1; i <= n; i++) {
+      int from = Math.max(1, i - max), to = Math.min(m, i + max);
+      int rowMin = far;
+
+      current[0] = i <= max ? i : far;
+      if (from > 1)
+        current[from - 1] = far;
+      for (int j = from; j <= to; j++) {
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+
+        current[j] = Math.min(d, far);
+        rowMin = Math.min(rowMin, current[j]);
+      }
+      if (to < m)
+        current[to + 1] = far;
+      if (rowMin > max && current[0] > max)
+        return far;
+
+      int[] tmp = previous;
+      previous = current;
+      current = tmp;
+    }
+
+    return Math.min(previous[m], far);
+  }
+
+  private Phonetics() {}
+}
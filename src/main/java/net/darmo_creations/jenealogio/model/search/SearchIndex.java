@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyListener;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.MemberIndex;
+import net.darmo_creations.jenealogio.model.family.MemberQuery;
+import net.darmo_creations.jenealogio.util.LongHashSet;
+import net.darmo_creations.jenealogio.util.TextUtil;
+
+/**
+ * This index finds members from the words of their names, birth and death locations and comment.
+ * Words are compared without accents nor case and each word of a query matches the words it is a
+ * prefix of. The index is kept up to date by registering it as a listener of the family.
+ * <p>
+ * Each word points to the members that have it, sorted words thus give all members having a word
+ * starting with a given prefix without looking at the other members. A search walks the members of
+ * the query word with the fewest members and checks the other words against the words of each
+ * member, stopping as soon as enough members were found.
+ * <p>
+ * Registered as an index of the family, it is also used by queries looking for texts.
+ *
+ * @author Damien Vergnet
+ * @see Family#addFamilyListener(FamilyListener)
+ * @see Family#addMemberIndex(MemberIndex)
+ */
+public class SearchIndex implements MemberIndex {
+  /** The members having each word. */
+  private final NavigableMap<String, LongHashSet> postings;
+  /** The distinct words of each member. */
+  private final Map<Long, String[]> words;
+
+  /**
+   * Indexes all members of a family. The index has to be registered as a listener of the family to
+   * follow its changes.
+   * 
+   * @param family the family
+   */
+  public SearchIndex(Family family) {
+    this.postings = new TreeMap<>();
+    this.words = new HashMap<>();
+    family.getAllMembers().forEach(this::add);
+  }
+
+  /**
+   * Returns the members matching a query. A member matches if each word of the query is the
+   * beginning of one of its words.
+   * 
+   * @param query the query
+   * @param limit the maximum number of members to return
+   * @return the IDs of at most {@code limit} matching members, in no particular order; empty if the
+   *         query has no words
+   */
+  public long[] search(String query, int limit) {
+    return find(TextUtil.tokenize(query), limit).toArray();
+  }
+
+  /**
+   * Returns the first member matching a query.
+   * 
+   * @param query the query
+   * @return the ID of the first matching member
+   * @see #search(String, int)
+   */
+  public Optional<Long> searchFirst(String query) {
+    long[] ids = search(query, 1);
+    return ids.length > 0 ? Optional.of(ids[0]) : Optional.empty();
+  }
+
+  /**
+   * Gives an estimate for {@link MemberQuery.TextCriterion}s. All texts are indexed together so
+   * the returned members may have the words in another text than the one of the criterion.
+   */
+  @Override
+  public long estimate(MemberQuery.Criterion criterion) {
+    if (!(criterion instanceof MemberQuery.TextCriterion))
+      return -1;
+
+    List<String> words = ((MemberQuery.TextCriterion) criterion).getWords();
+    int fewest = Integer.MAX_VALUE;
+
+    if (words.isEmpty())
+      return -1;
+    for (String word : words)
+      fewest = Math.min(fewest, count(word, fewest));
+    return fewest;
+  }
+
+  @Override
+  public LongHashSet lookup(MemberQuery.Criterion criterion) {
+    return find(((MemberQuery.TextCriterion) criterion).getWords(), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the members having words starting with each of the given terms.
+   * 
+   * @param words the normalized terms
+   * @param limit the maximum number of members to return
+   * @return at most {@code limit} matching members
+   */
+  private LongHashSet find(List<String> words, int limit) {
+    List<String> terms = new ArrayList<>(new LinkedHashSet<>(words));
+    LongHashSet found = new LongHashSet();
+
+    if (terms.isEmpty() || limit <= 0)
+      return found;
+
+    // Members are walked from the word with the fewest members
+    String driver = null;
+    int fewest = Integer.MAX_VALUE;
+    for (String term : terms) {
+      int count = count(term, fewest);
+      if (count < fewest) {
+        fewest = count;
+        driver = term;
+      }
+    }
+    if (fewest == 0)
+      return found;
+    terms.remove(driver);
+
+    for (LongHashSet ids : prefixed(driver).values()) {
+      boolean full = !ids.allMatch(id -> {
+        if (matchesAll(this.words.get(id), terms))
+          found.add(id);
+        return found.size() < limit;
+      });
+      if (full)
+        break;
+    }
+
+    return found;
+  }
+
+  @Override
+  public void memberAdded(FamilyMember member) {
+    add(member);
+  }
+
+  @Override
+  public void memberUpdated(FamilyMember member) {
+    remove(member.getId());
+    add(member);
+  }
+
+  @Override
+  public void memberRemoved(long id) {
+    remove(id);
+  }
+
+  /**
+   * Indexes a member.
+   */
+  private void add(FamilyMember member) {
+    Set<String> memberWords = new LinkedHashSet<>();
+    long id = member.getId();
+
+    memberWords.addAll(member.getNameWords());
+    member.getBirthLocation().ifPresent(s -> memberWords.addAll(TextUtil.tokenize(s)));
+    member.getDeathLocation().ifPresent(s -> memberWords.addAll(TextUtil.tokenize(s)));
+    member.getComment().ifPresent(s -> memberWords.addAll(TextUtil.tokenize(s)));
+
+    memberWords.forEach(w -> this.postings.computeIfAbsent(w, k -> new LongHashSet()).add(id));
+    this.words.put(id, memberWords.toArray(new String[memberWords.size()]));
+  }
+
+  /**
+   * Removes a member from the index.
+   */
+  private void remove(long id) {
+    String[] memberWords = this.words.remove(id);
+
+    if (memberWords != null) {
+      for (String w : memberWords) {
+        LongHashSet ids = this.postings.get(w);
+        ids.remove(id);
+        if (ids.isEmpty())
+          this.postings.remove(w);
+      }
+    }
+  }
+
+  /**
+   * Returns the members of all words starting with the given prefix.
+   */
+  private NavigableMap<String, LongHashSet> prefixed(String prefix) {
+    return this.postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+  }
+
+  /**
+   * Counts the members of all words starting with the given prefix, stopping once the bound is
+   * reached. Members having several such words are counted several times.
+   */
+  private int count(String prefix, int bound) {
+    int count = 0;
+
+    for (LongHashSet ids : prefixed(prefix).values()) {
+      count += ids.size();
+      if (count >= bound)
+        break;
+    }
+
+    return count;
+  }
+
+  /**
+   * Tells if each term is the beginning of one of the words.
+   */
+  private static boolean matchesAll(String[] words, List<String> terms) {
+    for (String term : terms) {
+      boolean matches = false;
+
+      for (int i = 0; i < words.length && !matches; i++)
+        matches = words[i].startsWith(term);
+      if (!matches)
+        return false;
+    }
+    return true;
+  }
+}
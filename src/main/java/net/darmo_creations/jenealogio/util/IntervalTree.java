@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * An immutable set of intervals of ints, each labeled with a long, that finds the intervals
+ * overlapping a given range in O(log n + k) time for k results.
+ * <p>
+ * Intervals are sorted by start and seen as a balanced binary search tree whose root is the middle
+ * of the array; each node also holds the largest end of its subtree so that subtrees ending before
+ * the range are skipped. The ends are also kept sorted to count overlapping intervals in O(log n).
+ *
+ * @author Damien Vergnet
+ */
+public final class IntervalTree {
+  private final int[] starts, ends, maxEnds, sortedEnds;
+  private final long[] labels;
+
+  /**
+   * Creates a tree. All arrays must have the same length.
+   * 
+   * @param starts the starts of the intervals
+   * @param ends the ends of the intervals, included
+   * @param labels the labels of the intervals
+   */
+  public IntervalTree(int[] starts, int[] ends, long[] labels) {
+    int n = starts.length;
+    Integer[] order = new Integer[n];
+
+    if (ends.length != n || labels.length != n)
+      throw new IllegalArgumentException("arrays must have the same length");
+    for (int i = 0; i < n; i++)
+      order[i] = i;
+    Arrays.sort(order, (i, j) -> Integer.compare(starts[i], starts[j]));
+
+    this.starts = new int[n];
+    this.ends = new int[n];
+    this.labels = new long[n];
+    for (int i = 0; i < n; i++) {
+      this.starts[i] = starts[order[i]];
+      this.ends[i] = ends[order[i]];
+      this.labels[i] = labels[order[i]];
+    }
+    this.maxEnds = new int[n];
+    computeMaxEnds(0, n);
+    this.sortedEnds = this.ends.clone();
+    Arrays.sort(this.sortedEnds);
+  }
+
+  /**
+   * Computes the largest end of the subtree between the two indexes.
+   */
+  private int computeMaxEnds(int from, int to) {
+    if (from >= to)
+      return Integer.MIN_VALUE;
+    int middle = (from + to) >>> 1;
+    int max = Math.max(this.ends[middle], Math.max(computeMaxEnds(from, middle), computeMaxEnds(middle + 1, to)));
+    this.maxEnds[middle] = max;
+    return max;
+  }
+
+  /**
+   * @return the number of intervals
+   */
+  public int size() {
+    return this.starts.length;
+  }
+
+  /**
+   * Calls the given action with the label of each interval overlapping the range.
+   * 
+   * @param from the start of the range
+   * @param to the end of the range, included
+   * @param action the action
+   */
+  public void query(int from, int to, LongConsumer action) {
+    query(0, this.starts.length, from, to, action);
+  }
+
+  private void query(int lo, int hi, int from, int to, LongConsumer action) {
+    while (lo < hi) {
+      int middle = (lo + hi) >>> 1;
+
+      if (this.maxEnds[middle] < from)
+        return;
+      query(lo, middle, from, to, action);
+      // Intervals on the right start even later
+      if (this.starts[middle] > to)
+        return;
+      if (this.ends[middle] >= from)
+        action.accept(this.labels[middle]);
+      lo = middle + 1;
+    }
+  }
+
+  /**
+   * Counts the intervals overlapping a range. An interval overlaps the range unless it starts after
+   * the range or ends before it, which cannot both happen.
+   * 
+   * @param from the start of the range
+   * @param to the end of the range, included
+   * @return the number of overlapping intervals
+   */
+  public int count(int from, int to) {
+    if (from > to)
+      return 0;
+    return countAtMost(this.starts, to) - countAtMost(this.sortedEnds, (long) from - 1);
+  }
+
+  /**
+   * Returns the number of values of a sorted array that are lower than or equal to the given one.
+   */
+  private static int countAtMost(int[] sorted, long value) {
+    int lo = 0, hi = sorted.length;
+
+    while (lo < hi) {
+      int middle = (lo + hi) >>> 1;
+      if (sorted[middle] <= value)
+        lo = middle + 1;
+      else
+        hi = middle;
+    }
+
+    return lo;
+  }
+}
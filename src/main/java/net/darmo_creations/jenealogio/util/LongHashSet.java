@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * A set of primitive longs backed by an open-addressing hash table with linear probing. Unlike a
+ * {@code Set<Long>}, values are not boxed; adding, removing and looking up a value cost a few array
+ * accesses. {@link Long#MIN_VALUE} is used to mark free slots and cannot be stored.
+ *
+ * @author Damien Vergnet
+ */
+public final class LongHashSet {
+  private static final long FREE = Long.MIN_VALUE;
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] table;
+  private int size;
+
+  /**
+   * Creates an empty set.
+   */
+  public LongHashSet() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * Creates an empty set able to hold the given number of values without growing.
+   * 
+   * @param expectedSize the expected number of values
+   */
+  public LongHashSet(int expectedSize) {
+    this.table = newTable(capacityFor(expectedSize));
+  }
+
+  /**
+   * @return the number of values
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return true if this set is empty
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Tells if this set contains a value.
+   * 
+   * @param value the value
+   * @return true if the value is in this set
+   */
+  public boolean contains(long value) {
+    return value != FREE && this.table[indexOf(value)] == value;
+  }
+
+  /**
+   * Adds a value.
+   * 
+   * @param value the value
+   * @return true if the value was not already in this set
+   * @throws IllegalArgumentException if the value is {@link Long#MIN_VALUE}
+   */
+  public boolean add(long value) {
+    if (value == FREE)
+      throw new IllegalArgumentException("unsupported value " + value);
+    int i = indexOf(value);
+    if (this.table[i] == value)
+      return false;
+    this.table[i] = value;
+    // Tables are kept at most half full
+    if (++this.size > this.table.length / 2)
+      rehash(this.table.length * 2);
+    return true;
+  }
+
+  /**
+   * Removes a value.
+   * 
+   * @param value the value
+   * @return true if the value was in this set
+   */
+  public boolean remove(long value) {
+    if (value == FREE)
+      return false;
+    int i = indexOf(value);
+    if (this.table[i] != value)
+      return false;
+
+    // Values after the removed one are shifted back so that no probing sequence is broken
+    int mask = this.table.length - 1;
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      long v = this.table[j];
+      if (v == FREE)
+        break;
+      int home = hash(v) & mask;
+      // Move v into the hole if its home is not between the hole and its current slot
+      if (i <= j ? home <= i || home > j : home <= i && home > j) {
+        this.table[i] = v;
+        i = j;
+      }
+    }
+    this.table[i] = FREE;
+    this.size--;
+    return true;
+  }
+
+  /**
+   * Removes all values.
+   */
+  public void clear() {
+    if (this.size > 0) {
+      Arrays.fill(this.table, FREE);
+      this.size = 0;
+    }
+  }
+
+  /**
+   * Calls the given action for each value, in no particular order. The set must not be modified by
+   * the action.
+   * 
+   * @param action the action
+   */
+  public void forEach(LongConsumer action) {
+    for (long v : this.table)
+      if (v != FREE)
+        action.accept(v);
+  }
+
+  /**
+   * Tests the values against a predicate until one of them does not match.
+   * 
+   * @param predicate the predicate
+   * @return true if all values match, false as soon as one does not
+   */
+  public boolean allMatch(LongPredicate predicate) {
+    for (long v : this.table)
+      if (v != FREE && !predicate.test(v))
+        return false;
+    return true;
+  }
+
+  /**
+   * @return all values, in no particular order
+   */
+  public long[] toArray() {
+    long[] values = new long[this.size];
+    int n = 0;
+    for (long v : this.table)
+      if (v != FREE)
+        values[n++] = v;
+    return values;
+  }
+
+  /**
+   * Returns the slot holding the given value or the free slot where it would be inserted.
+   */
+  private int indexOf(long value) {
+    int mask = this.table.length - 1;
+    int i = hash(value) & mask;
+    while (this.table[i] != FREE && this.table[i] != value)
+      i = (i + 1) & mask;
+    return i;
+  }
+
+  private void rehash(int capacity) {
+    long[] old = this.table;
+    this.table = newTable(capacity);
+    for (long v : old)
+      if (v != FREE)
+        this.table[indexOf(v)] = v;
+  }
+
+  /**
+   * Mixes the bits of a value so that consecutive IDs spread over the table.
+   */
+  private static int hash(long value) {
+    long h = value * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private static int capacityFor(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity / 2 < expectedSize)
+      capacity *= 2;
+    return capacity;
+  }
+
+  private static long[] newTable(int capacity) {
+    long[] table = new long[capacity];
+    Arrays.fill(table, FREE);
+    return table;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive longs to primitive ints backed by an open-addressing hash table with linear
+ * probing. Unlike a {@code Map<Long, Integer>}, keys and values are not boxed and a lookup costs a
+ * few array accesses. {@link Long#MIN_VALUE} is used to mark free slots and cannot be used as a
+ * key. Entries cannot be removed.
+ *
+ * @author Damien Vergnet
+ * @see LongHashSet
+ */
+public final class LongIntHashMap {
+  private static final long FREE = Long.MIN_VALUE;
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] keys;
+  private int[] values;
+  private int size;
+
+  /**
+   * Creates an empty map.
+   */
+  public LongIntHashMap() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * Creates an empty map able to hold the given number of entries without growing.
+   * 
+   * @param expectedSize the expected number of entries
+   */
+  public LongIntHashMap(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity / 2 < expectedSize)
+      capacity *= 2;
+    this.keys = newTable(capacity);
+    this.values = new int[capacity];
+  }
+
+  /**
+   * @return the number of entries
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns the value of a key.
+   * 
+   * @param key the key
+   * @param defaultValue the value returned if the key is not in this map
+   * @return the value of the key or the default value
+   */
+  public int get(long key, int defaultValue) {
+    if (key == FREE)
+      return defaultValue;
+    int i = indexOf(key);
+    return this.keys[i] == key ? this.values[i] : defaultValue;
+  }
+
+  /**
+   * Sets the value of a key.
+   * 
+   * @param key the key
+   * @param value the value
+   * @throws IllegalArgumentException if the key is {@link Long#MIN_VALUE}
+   */
+  public void put(long key, int value) {
+    if (key == FREE)
+      throw new IllegalArgumentException("unsupported key " + key);
+    int i = indexOf(key);
+    this.values[i] = value;
+    if (this.keys[i] == key)
+      return;
+    this.keys[i] = key;
+    // Tables are kept at most half full
+    if (++this.size > this.keys.length / 2)
+      rehash(this.keys.length * 2);
+  }
+
+  /**
+   * Returns the slot holding the given key or the free slot where it would be inserted.
+   */
+  private int indexOf(long key) {
+    int mask = this.keys.length - 1;
+    int i = hash(key) & mask;
+    while (this.keys[i] != FREE && this.keys[i] != key)
+      i = (i + 1) & mask;
+    return i;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = this.keys;
+    int[] oldValues = this.values;
+    this.keys = newTable(capacity);
+    this.values = new int[capacity];
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] != FREE) {
+        int i = indexOf(oldKeys[j]);
+        this.keys[i] = oldKeys[j];
+        this.values[i] = oldValues[j];
+      }
+    }
+  }
+
+  /**
+   * Mixes the bits of a key so that consecutive IDs spread over the table.
+   */
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private static long[] newTable(int capacity) {
+    long[] table = new long[capacity];
+    Arrays.fill(table, FREE);
+    return table;
+  }
+}
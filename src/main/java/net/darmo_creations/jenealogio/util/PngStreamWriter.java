@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * This class writes a 8-bit RGB PNG image row by row to a stream. Rows are compressed as soon as
+ * they are given so the whole image never has to be held in memory.
+ *
+ * @author Damien Vergnet
+ */
+public class PngStreamWriter implements Closeable {
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+  /** Maximum size of an IDAT chunk */
+  private static final int CHUNK_SIZE = 1 << 16;
+  /** Sub filter: each byte is stored as the difference with the same byte of the previous pixel */
+  private static final int FILTER_SUB = 1;
+
+  private final DataOutputStream out;
+  private final int width, height;
+  private final ChunkOutputStream chunks;
+  private final DeflaterOutputStream idat;
+  private final Deflater deflater;
+  private final byte[] row;
+  private int rowsWritten;
+
+  /**
+   * Creates a writer and writes the image header.
+   * 
+   * @param out the stream to write to; it is closed by {@link #close()}
+   * @param width image width
+   * @param height image height
+   * @throws IOException if an I/O error occured
+   */
+  public PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+    if (width <= 0 || height <= 0)
+      throw new IllegalArgumentException("invalid image size " + width + "x" + height);
+    this.out = new DataOutputStream(out);
+    this.width = width;
+    this.height = height;
+    this.row = new byte[1 + 3 * width];
+    this.rowsWritten = 0;
+
+    this.out.write(SIGNATURE);
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    DataOutputStream h = new DataOutputStream(header);
+    h.writeInt(width);
+    h.writeInt(height);
+    h.writeByte(8); // Bit depth
+    h.writeByte(2); // Color type: RGB
+    h.writeByte(0); // Compression: deflate
+    h.writeByte(0); // Filter method: adaptive
+    h.writeByte(0); // No interlace
+    writeChunk(this.out, "IHDR", header.toByteArray(), header.size());
+
+    this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    this.chunks = new ChunkOutputStream(this.out);
+    this.idat = new DeflaterOutputStream(this.chunks, this.deflater, CHUNK_SIZE);
+  }
+
+  /**
+   * Writes the next rows of the image.
+   * 
+   * @param rgb the pixels, one int per pixel (alpha is ignored)
+   * @param offset index of the first pixel of the first row
+   * @param scanline distance between the first pixels of two consecutive rows
+   * @param rows the number of rows to write
+   * @throws IOException if an I/O error occured
+   */
+  public void writeRows(int[] rgb, int offset, int scanline, int rows) throws IOException {
+    if (this.rowsWritten + rows > this.height)
+      throw new IllegalStateException("too many rows");
+
+    for (int y = 0; y < rows; y++) {
+      int i = offset + y * scanline;
+      int prevR = 0, prevG = 0, prevB = 0;
+
+      this.row[0] = FILTER_SUB;
+      for (int x = 0, j = 1; x < this.width; x++, i++) {
+        int pixel = rgb[i];
+        int r = (pixel >> 16) & 0xff;
+        int g = (pixel >> 8) & 0xff;
+        int b = pixel & 0xff;
+
+        this.row[j++] = (byte) (r - prevR);
+        this.row[j++] = (byte) (g - prevG);
+        this.row[j++] = (byte) (b - prevB);
+        prevR = r;
+        prevG = g;
+        prevB = b;
+      }
+      this.idat.write(this.row);
+    }
+    this.rowsWritten += rows;
+  }
+
+  /**
+   * Finishes the image data, writes the end chunk and closes the underlying stream. All rows must
+   * have been written.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (this.rowsWritten != this.height)
+        throw new IllegalStateException("missing rows: " + this.rowsWritten + "/" + this.height);
+      this.idat.finish();
+      this.chunks.flush();
+      writeChunk(this.out, "IEND", new byte[0], 0);
+    }
+    finally {
+      this.deflater.end();
+      this.out.close();
+    }
+  }
+
+  /**
+   * Writes a chunk.
+   * 
+   * @param out the stream
+   * @param type chunk's type
+   * @param data chunk's data
+   * @param length the number of bytes to write from data
+   */
+  private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+
+    crc.update(typeBytes);
+    crc.update(data, 0, length);
+    out.writeInt(length);
+    out.write(typeBytes);
+    out.write(data, 0, length);
+    out.writeInt((int) crc.getValue());
+  }
+
+  /**
+   * This stream splits the compressed data into IDAT chunks.
+   *
+   * @author Damien Vergnet
+   */
+  private static class ChunkOutputStream extends OutputStream {
+    private final DataOutputStream out;
+    private final byte[] buffer;
+    private int size;
+
+    ChunkOutputStream(DataOutputStream out) {
+      this.out = out;
+      this.buffer = new byte[CHUNK_SIZE];
+      this.size = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (this.size == this.buffer.length)
+        flush();
+      this.buffer[this.size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (this.size == this.buffer.length)
+          flush();
+        int n = Math.min(len, this.buffer.length - this.size);
+        System.arraycopy(b, off, this.buffer, this.size, n);
+        this.size += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (this.size > 0) {
+        writeChunk(this.out, "IDAT", this.buffer, this.size);
+        this.size = 0;
+      }
+    }
+
+    /**
+     * Writes the remaining data; the underlying stream is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+/**
+ * Receives the progress of a long task. Tasks may call it from any thread.
+ *
+ * @author Damien Vergnet
+ */
+@FunctionalInterface
+public interface ProgressListener {
+  /** A listener that ignores all notifications. */
+  ProgressListener NONE = progress -> {};
+
+  /**
+   * Called when the task progressed.
+   * 
+   * @param progress the progress, between 0 and 100
+   */
+  void progressChanged(int progress);
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of strings: equal strings given to {@link #intern(String)} come back as the same
+ * instance, so that values repeated many times are only stored once. Unlike
+ * {@link String#intern()}, the pool can be dropped with the data it was used for.
+ *
+ * @author Damien Vergnet
+ */
+public final class StringPool {
+  private final Map<String, String> strings;
+
+  /**
+   * Creates an empty pool.
+   */
+  public StringPool() {
+    this.strings = new HashMap<>();
+  }
+
+  /**
+   * Returns the instance of the pool equal to the given string, adding it if there is none.
+   * 
+   * @param s the string; may be null
+   * @return the pooled string or null if the argument is null
+   */
+  public String intern(String s) {
+    if (s == null)
+      return null;
+    String pooled = this.strings.putIfAbsent(s, s);
+    return pooled != null ? pooled : s;
+  }
+
+  /**
+   * @return the number of distinct strings
+   */
+  public int size() {
+    return this.strings.size();
+  }
+}
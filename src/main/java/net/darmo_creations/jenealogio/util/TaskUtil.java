@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Useful functions for long tasks run in the background. Such tasks are given a
+ * {@link ProgressListener} and are canceled by interrupting the thread running them, which they
+ * check regularly with {@link #checkCanceled()}.
+ * 
+ * @author Damien Vergnet
+ */
+public final class TaskUtil {
+  /**
+   * Stops the current task if its thread has been interrupted.
+   * 
+   * @throws CancellationException if the current thread was interrupted
+   */
+  public static void checkCanceled() {
+    if (Thread.currentThread().isInterrupted())
+      throw new CancellationException();
+  }
+
+  /**
+   * Stops a subtask if the thread running the whole task has been interrupted. Subtasks run by
+   * other threads, like those of a fork-join pool, are not interrupted when the task is canceled.
+   * 
+   * @param caller the thread running the whole task
+   * @throws CancellationException if the given thread was interrupted
+   */
+  public static void checkCanceled(Thread caller) {
+    if (caller.isInterrupted())
+      throw new CancellationException();
+  }
+
+  private TaskUtil() {}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Useful functions to compare texts typed by users.
+ * 
+ * @author Damien Vergnet
+ */
+public final class TextUtil {
+  /**
+   * Normalizes a text for comparison: accents and other diacritical marks are removed and letters
+   * are lowercased ("Émile" becomes "emile").
+   * 
+   * @param text the text
+   * @return the normalized text
+   */
+  public static String normalize(String text) {
+    if (isAscii(text))
+      return text.toLowerCase(Locale.ROOT);
+
+    String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+    StringBuilder sb = new StringBuilder(decomposed.length());
+
+    for (int i = 0; i < decomposed.length(); i++) {
+      char c = decomposed.charAt(i);
+      int type = Character.getType(c);
+
+      if (type != Character.NON_SPACING_MARK && type != Character.COMBINING_SPACING_MARK && type != Character.ENCLOSING_MARK)
+        sb.append(c);
+    }
+
+    return sb.toString().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Splits a text into normalized words. Any character that is neither a letter nor a digit
+   * separates words.
+   * 
+   * @param text the text
+   * @return the normalized words, in order
+   * @see #normalize(String)
+   */
+  public static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<>();
+    String normalized = normalize(text);
+    int start = -1;
+
+    for (int i = 0; i <= normalized.length(); i++) {
+      boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+
+      if (wordChar && start < 0)
+        start = i;
+      else if (!wordChar && start >= 0) {
+        tokens.add(normalized.substring(start, i));
+        start = -1;
+      }
+    }
+
+    return tokens;
+  }
+
+  /**
+   * Tells if a text only has ASCII characters, which have no marks to remove.
+   */
+  private static boolean isAscii(String text) {
+    for (int i = 0; i < text.length(); i++)
+      if (text.charAt(i) >= 0x80)
+        return false;
+    return true;
+  }
+
+  private TextUtil() {}
+}
@@ -4,8 +4,26 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import net.darmo_creations.jenealogio.dao.GedcomReaderTest;
+import net.darmo_creations.jenealogio.model.CollapsedBranchesTest;
+import net.darmo_creations.jenealogio.model.SelectionModelTest;
+import net.darmo_creations.jenealogio.model.date.DateIntervalTest;
 import net.darmo_creations.jenealogio.model.family.FamilyMemberTest;
+import net.darmo_creations.jenealogio.model.family.FamilyTest;
+import net.darmo_creations.jenealogio.model.family.GazetteerTest;
+import net.darmo_creations.jenealogio.model.family.MemberQueryTest;
+import net.darmo_creations.jenealogio.model.family.StatisticsEngineTest;
+import net.darmo_creations.jenealogio.model.family.TreeValidatorTest;
+import net.darmo_creations.jenealogio.model.layout.IncrementalLayoutTest;
+import net.darmo_creations.jenealogio.model.search.DuplicateDetectorTest;
+import net.darmo_creations.jenealogio.model.search.NameIndexTest;
+import net.darmo_creations.jenealogio.model.search.PhoneticsTest;
+import net.darmo_creations.jenealogio.model.search.SearchIndexTest;
+import net.darmo_creations.jenealogio.util.IntervalTreeTest;
+import net.darmo_creations.jenealogio.util.LongHashSetTest;
+import net.darmo_creations.jenealogio.util.PngStreamWriterTest;
+import net.darmo_creations.jenealogio.util.StringPoolTest;
 
 @RunWith(Suite.class)
-@SuiteClasses({FamilyMemberTest.class})
+@SuiteClasses({FamilyMemberTest.class, PngStreamWriterTest.class, LongHashSetTest.class, PhoneticsTest.class, NameIndexTest.class, IntervalTreeTest.class, DateIntervalTest.class, MemberQueryTest.class, TreeValidatorTest.class, FamilyTest.class, GedcomReaderTest.class, IncrementalLayoutTest.class, CollapsedBranchesTest.class, SelectionModelTest.class, SearchIndexTest.class, DuplicateDetectorTest.class, StringPoolTest.class, GazetteerTest.class, StatisticsEngineTest.class})
 public class AllTests {}
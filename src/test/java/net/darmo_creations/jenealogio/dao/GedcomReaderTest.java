@@ -0,0 +1,101 @@
+package net.darmo_creations.jenealogio.dao;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class GedcomReaderTest {
+  @Test
+  public void testFullDate() {
+    assertEquals(date(1850, 1, 12), GedcomReader.parseDate("12 JAN 1850"));
+    assertEquals(date(1850, 12, 31), GedcomReader.parseDate(" 31 dec 1850 "));
+  }
+
+  @Test
+  public void testPartialDates() {
+    assertEquals(date(1850, 3, 0), GedcomReader.parseDate("MAR 1850"));
+    assertEquals(date(1850, 0, 0), GedcomReader.parseDate("1850"));
+  }
+
+  @Test
+  public void testLoneNumberIsYear() {
+    assertEquals(date(12, 0, 0), GedcomReader.parseDate("12"));
+    assertEquals(date(476, 0, 0), GedcomReader.parseDate("476"));
+  }
+
+  @Test
+  public void testDayWithoutMonthDropped() {
+    assertEquals(date(1850, 0, 0), GedcomReader.parseDate("12 1850"));
+  }
+
+  @Test
+  public void testInvalidDayDropped() {
+    assertEquals(date(1850, 2, 0), GedcomReader.parseDate("30 FEB 1850"));
+    assertEquals(date(1852, 2, 29), GedcomReader.parseDate("29 FEB 1852"));
+  }
+
+  @Test
+  public void testDualYears() {
+    assertEquals(date(1700, 2, 11), GedcomReader.parseDate("11 FEB 1700/01"));
+    assertEquals(date(1699, 0, 0), GedcomReader.parseDate("1699/700"));
+  }
+
+  @Test
+  public void testApproximateDates() {
+    assertEquals(date(1850, 0, 0), GedcomReader.parseDate("ABT 1850"));
+    assertEquals(date(1850, 5, 0), GedcomReader.parseDate("EST MAY 1850"));
+    assertEquals(date(1850, 0, 0), GedcomReader.parseDate("BEF 1850"));
+    assertEquals(date(1850, 0, 0), GedcomReader.parseDate("AFT 1850"));
+  }
+
+  @Test
+  public void testRanges() {
+    assertEquals(date(1850, 0, 0), GedcomReader.parseDate("BET 1850 AND 1860"));
+    assertEquals(date(1850, 6, 1), GedcomReader.parseDate("BET 1 JUN 1850 AND 3 JUL 1850"));
+  }
+
+  @Test
+  public void testPeriods() {
+    assertEquals(date(1850, 0, 0), GedcomReader.parseDate("FROM 1850 TO 1860"));
+    assertEquals(date(1850, 0, 0), GedcomReader.parseDate("FROM 1850"));
+    assertEquals(date(1860, 0, 0), GedcomReader.parseDate("TO 1860"));
+  }
+
+  @Test
+  public void testInterpretedDate() {
+    assertEquals(date(1850, 0, 0), GedcomReader.parseDate("INT 1850 (about the war)"));
+    assertEquals(0, GedcomReader.parseDate("(in the spring)"));
+  }
+
+  @Test
+  public void testCalendars() {
+    assertEquals(date(1850, 1, 2), GedcomReader.parseDate("@#DGREGORIAN@ 2 JAN 1850"));
+    assertEquals(date(1700, 0, 0), GedcomReader.parseDate("@#DJULIAN@ 1700"));
+    assertEquals(0, GedcomReader.parseDate("@#DHEBREW@ 5610"));
+    assertEquals(0, GedcomReader.parseDate("@#DFRENCH R@ 1 VEND 8"));
+    assertEquals(0, GedcomReader.parseDate("@#DJULIAN"));
+  }
+
+  @Test
+  public void testBeforeCommonEra() {
+    assertEquals(0, GedcomReader.parseDate("44 BC"));
+    assertEquals(0, GedcomReader.parseDate("44 B.C."));
+  }
+
+  @Test
+  public void testInvalidDates() {
+    assertEquals(0, GedcomReader.parseDate(""));
+    assertEquals(0, GedcomReader.parseDate("JAN"));
+    assertEquals(0, GedcomReader.parseDate("unknown"));
+    assertEquals(0, GedcomReader.parseDate("1850 JAN"));
+    assertEquals(0, GedcomReader.parseDate("1850 1860"));
+    assertEquals(0, GedcomReader.parseDate("12345"));
+  }
+
+  /**
+   * Packs a date the way {@link GedcomReader#parseDate(String)} does.
+   */
+  private static int date(int year, int month, int day) {
+    return (year * 13 + month) * 32 + day;
+  }
+}
@@ -0,0 +1,197 @@
+package net.darmo_creations.jenealogio.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.CollapsedBranches.Branch;
+import net.darmo_creations.jenealogio.model.CollapsedBranches.HiddenMembers;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+
+public class CollapsedBranchesTest {
+  private static final int MEMBERS = 14;
+
+  private Family family;
+
+  /**
+   * <pre>
+   * 1 + 2      9 + 10
+   *   |          |
+   *   3 + 4      |
+   *     |        |
+   *  +--+-----+  |
+   *  |        |  |
+   *  5 + 7    6 + 8      6 + 12 + 13
+   *    |
+   *    11
+   * </pre>
+   * 
+   * 4 and 7 have no parents, 8 has parents, 12 is also the partner of 13.
+   */
+  @Before
+  public void setUp() {
+    Set<FamilyMember> members = new HashSet<>();
+    for (long id = 0; id < MEMBERS; id++)
+      members.add(new FamilyMember(id, null, null, null, null, null, Gender.UNKNOW, null, null, null, null, false, null));
+    Set<Relationship> relations = new HashSet<>();
+    relations.add(relation(1, 2, 3));
+    relations.add(relation(3, 4, 5, 6));
+    relations.add(relation(5, 7, 11));
+    relations.add(relation(9, 10, 8));
+    relations.add(relation(6, 8));
+    relations.add(relation(6, 12));
+    relations.add(relation(12, 13));
+    this.family = new Family(MEMBERS, "test", members, relations);
+  }
+
+  @Test
+  public void testNothingCollapsed() {
+    HiddenMembers hidden = new CollapsedBranches().getHiddenMembers(this.family);
+    for (long id = 0; id < MEMBERS; id++)
+      assertFalse(hidden.isHidden(id));
+    assertTrue(hidden.getCounts(Branch.DESCENDANTS).isEmpty());
+    assertTrue(hidden.getCounts(Branch.ANCESTORS).isEmpty());
+  }
+
+  @Test
+  public void testDescendantsWithInLaws() {
+    CollapsedBranches branches = new CollapsedBranches();
+    branches.collapse(3, Branch.DESCENDANTS);
+    HiddenMembers hidden = branches.getHiddenMembers(this.family);
+
+    // 7 married into the branch, 8 has parents and 12 has another partner
+    assertEquals(set(5, 6, 7, 11), hiddenMembers(hidden));
+    assertEquals(Collections.singletonMap(3L, 4), hidden.getCounts(Branch.DESCENDANTS));
+  }
+
+  @Test
+  public void testRootSpouseVisible() {
+    CollapsedBranches branches = new CollapsedBranches();
+    branches.collapse(3, Branch.DESCENDANTS);
+    HiddenMembers hidden = branches.getHiddenMembers(this.family);
+
+    assertFalse(hidden.isHidden(3));
+    // 4 has no parents and all their partners are the root
+    assertFalse(hidden.isHidden(4));
+  }
+
+  @Test
+  public void testInLawWithoutParentsHidden() {
+    CollapsedBranches branches = new CollapsedBranches();
+    branches.collapse(1, Branch.DESCENDANTS);
+    HiddenMembers hidden = branches.getHiddenMembers(this.family);
+
+    // The partner of a hidden child is hidden too when they have no parents
+    assertTrue(hidden.isHidden(4));
+    assertTrue(hidden.isHidden(7));
+    assertFalse(hidden.isHidden(2));
+  }
+
+  @Test
+  public void testPartnerWithParentsVisible() {
+    CollapsedBranches branches = new CollapsedBranches();
+    branches.collapse(4, Branch.DESCENDANTS);
+    HiddenMembers hidden = branches.getHiddenMembers(this.family);
+
+    assertTrue(hidden.isHidden(6));
+    assertFalse(hidden.isHidden(8));
+    assertFalse(hidden.isHidden(9));
+    // Also the partner of a visible member
+    assertFalse(hidden.isHidden(12));
+  }
+
+  @Test
+  public void testNestedRoots() {
+    CollapsedBranches branches = new CollapsedBranches();
+    branches.collapse(3, Branch.DESCENDANTS);
+    branches.collapse(5, Branch.DESCENDANTS);
+    HiddenMembers hidden = branches.getHiddenMembers(this.family);
+
+    assertEquals(set(5, 6, 7, 11), hiddenMembers(hidden));
+    // The inner root is hidden, its summary card is not shown
+    assertEquals(Collections.singletonMap(3L, 4), hidden.getCounts(Branch.DESCENDANTS));
+
+    // The inner branch stays collapsed once the outer one is expanded
+    branches.expand(3, Branch.DESCENDANTS);
+    hidden = branches.getHiddenMembers(this.family);
+    assertEquals(set(11), hiddenMembers(hidden));
+    assertEquals(Collections.singletonMap(5L, 1), hidden.getCounts(Branch.DESCENDANTS));
+  }
+
+  @Test
+  public void testNestedAncestors() {
+    CollapsedBranches branches = new CollapsedBranches();
+    branches.collapse(5, Branch.ANCESTORS);
+    branches.collapse(3, Branch.ANCESTORS);
+    HiddenMembers hidden = branches.getHiddenMembers(this.family);
+
+    assertEquals(set(1, 2, 3, 4), hiddenMembers(hidden));
+    assertEquals(Collections.singletonMap(5L, 4), hidden.getCounts(Branch.ANCESTORS));
+    assertTrue(hidden.getCounts(Branch.DESCENDANTS).isEmpty());
+  }
+
+  @Test
+  public void testBothDirections() {
+    CollapsedBranches branches = new CollapsedBranches();
+    branches.collapse(6, Branch.ANCESTORS);
+    branches.collapse(6, Branch.DESCENDANTS);
+    HiddenMembers hidden = branches.getHiddenMembers(this.family);
+
+    // 6 has no children
+    assertEquals(set(1, 2, 3, 4), hiddenMembers(hidden));
+    assertEquals(Collections.singletonMap(6L, 4), hidden.getCounts(Branch.ANCESTORS));
+    assertEquals(Collections.singletonMap(6L, 0), hidden.getCounts(Branch.DESCENDANTS));
+  }
+
+  @Test
+  public void testUnknownRootIgnored() {
+    CollapsedBranches branches = new CollapsedBranches();
+    branches.collapse(MEMBERS, Branch.DESCENDANTS);
+    HiddenMembers hidden = branches.getHiddenMembers(this.family);
+
+    assertEquals(set(), hiddenMembers(hidden));
+    assertTrue(hidden.getCounts(Branch.DESCENDANTS).isEmpty());
+  }
+
+  @Test
+  public void testCopy() {
+    CollapsedBranches branches = new CollapsedBranches();
+    branches.collapse(3, Branch.DESCENDANTS);
+    CollapsedBranches copy = new CollapsedBranches(branches);
+
+    assertEquals(branches, copy);
+    copy.expand(3, Branch.DESCENDANTS);
+    assertTrue(copy.isEmpty());
+    assertTrue(branches.isCollapsed(3, Branch.DESCENDANTS));
+  }
+
+  private static Set<Long> hiddenMembers(HiddenMembers hidden) {
+    Set<Long> set = new HashSet<>();
+    for (long id = 0; id < MEMBERS; id++)
+      if (hidden.isHidden(id))
+        set.add(id);
+    return set;
+  }
+
+  private static Relationship relation(long partner1, long partner2, long... children) {
+    Set<Long> set = new HashSet<>();
+    for (long child : children)
+      set.add(child);
+    return new Relationship(null, null, false, false, null, partner1, partner2, set, Collections.emptyMap());
+  }
+
+  private static Set<Long> set(long... ids) {
+    Set<Long> set = new HashSet<>();
+    for (long id : ids)
+      set.add(id);
+    return set;
+  }
+}
@@ -0,0 +1,110 @@
+package net.darmo_creations.jenealogio.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SelectionModelTest {
+  private SelectionModel selection;
+  private List<long[]> changes;
+
+  @Before
+  public void setUp() {
+    this.selection = new SelectionModel();
+    this.changes = new ArrayList<>();
+    this.selection.addSelectionListener(ids -> {
+      long[] sorted = ids.clone();
+      Arrays.sort(sorted);
+      this.changes.add(sorted);
+    });
+  }
+
+  @Test
+  public void testSelect() {
+    this.selection.select(1, false);
+    this.selection.select(2, true);
+    assertEquals(2, this.selection.getLead());
+    assertTrue(this.selection.isSelected(1));
+    assertTrue(this.selection.isSelected(2));
+
+    this.selection.select(3, false);
+    assertEquals(3, this.selection.getLead());
+    assertEquals(1, this.selection.size());
+    assertArrayEquals(new long[]{1, 2, 3}, this.changes.get(2));
+  }
+
+  @Test
+  public void testAddAllKeepsLead() {
+    this.selection.select(1, false);
+    this.selection.addAll(new long[]{1, 2, 3});
+    assertEquals(1, this.selection.getLead());
+    assertEquals(3, this.selection.size());
+    assertArrayEquals(new long[]{2, 3}, this.changes.get(1));
+  }
+
+  @Test
+  public void testSetSelectionResetsLead() {
+    this.selection.select(1, false);
+    this.selection.setSelection(new long[]{1, 2});
+    assertEquals(SelectionModel.NONE, this.selection.getLead());
+    assertEquals(2, this.selection.size());
+  }
+
+  @Test
+  public void testRemoveAllKeepsLead() {
+    this.selection.select(1, false);
+    this.selection.addAll(new long[]{2, 3});
+    this.selection.removeAll(new long[]{2, 4});
+
+    assertEquals(1, this.selection.getLead());
+    assertTrue(this.selection.isSelected(1));
+    assertFalse(this.selection.isSelected(2));
+    assertTrue(this.selection.isSelected(3));
+    // Only the cards that were selected are notified
+    assertArrayEquals(new long[]{2}, this.changes.get(2));
+  }
+
+  @Test
+  public void testRemoveAllRemovesLead() {
+    this.selection.select(1, false);
+    this.selection.addAll(new long[]{2});
+    this.selection.removeAll(new long[]{1});
+
+    assertEquals(SelectionModel.NONE, this.selection.getLead());
+    assertArrayEquals(new long[]{2}, this.selection.getSelected());
+  }
+
+  @Test
+  public void testRemoveAllNothingSelected() {
+    this.selection.select(1, false);
+    this.selection.removeAll(new long[]{2, 3});
+    assertEquals(1, this.changes.size());
+  }
+
+  @Test
+  public void testInvert() {
+    this.selection.select(1, false);
+    this.selection.invert(new long[]{1, 2, 3});
+
+    assertEquals(SelectionModel.NONE, this.selection.getLead());
+    assertFalse(this.selection.isSelected(1));
+    assertTrue(this.selection.isSelected(2));
+    assertTrue(this.selection.isSelected(3));
+  }
+
+  @Test
+  public void testClear() {
+    this.selection.select(1, false);
+    this.selection.addAll(new long[]{2});
+    this.selection.clear();
+
+    assertTrue(this.selection.isEmpty());
+    assertEquals(SelectionModel.NONE, this.selection.getLead());
+    assertArrayEquals(new long[]{1, 2}, this.changes.get(2));
+  }
+}
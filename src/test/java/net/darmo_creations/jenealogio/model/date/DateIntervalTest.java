@@ -0,0 +1,107 @@
+package net.darmo_creations.jenealogio.model.date;
+
+import static org.junit.Assert.*;
+
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class DateIntervalTest {
+  @Test
+  public void testNoYear() {
+    assertFalse(DateInterval.of(date(0, 5, 12)).isPresent());
+  }
+
+  @Test
+  public void testYearOnly() {
+    DateInterval year = DateInterval.of(date(1850, 0, 0)).get();
+    assertEquals(DateInterval.ofYears(1850, 1850), year);
+    assertTrue(year.overlaps(DateInterval.of(date(1850, 1, 1)).get()));
+    assertTrue(year.overlaps(DateInterval.of(date(1850, 12, 31)).get()));
+    assertFalse(year.overlaps(DateInterval.of(date(1851, 1, 1)).get()));
+    assertFalse(year.overlaps(DateInterval.of(date(1849, 12, 31)).get()));
+  }
+
+  @Test
+  public void testYearAndMonth() {
+    DateInterval month = DateInterval.of(date(1850, 3, 0)).get();
+    assertTrue(month.overlaps(DateInterval.of(date(1850, 3, 1)).get()));
+    assertTrue(month.overlaps(DateInterval.of(date(1850, 3, 31)).get()));
+    assertFalse(month.overlaps(DateInterval.of(date(1850, 4, 1)).get()));
+    assertFalse(month.overlaps(DateInterval.of(date(1850, 2, 28)).get()));
+    assertTrue(month.overlaps(DateInterval.of(date(1850, 0, 0)).get()));
+  }
+
+  @Test
+  public void testFullDate() {
+    DateInterval day = DateInterval.of(date(1850, 3, 14)).get();
+    assertEquals(day.getStart(), day.getEnd());
+    assertTrue(day.overlaps(DateInterval.of(date(1850, 3, 14)).get()));
+    assertFalse(day.overlaps(DateInterval.of(date(1850, 3, 15)).get()));
+  }
+
+  @Test
+  public void testOrder() {
+    assertTrue(DateInterval.of(date(1850, 12, 31)).get().getEnd() < DateInterval.of(date(1851, 1, 1)).get().getStart());
+    assertTrue(DateInterval.of(date(1850, 2, 28)).get().getEnd() < DateInterval.of(date(1850, 3, 1)).get().getStart());
+  }
+
+  @Test
+  public void testOfYears() {
+    DateInterval years = DateInterval.ofYears(1900, 1910);
+    assertTrue(years.overlaps(DateInterval.of(date(1900, 1, 1)).get()));
+    assertTrue(years.overlaps(DateInterval.of(date(1910, 12, 31)).get()));
+    assertFalse(years.overlaps(DateInterval.of(date(1911, 0, 0)).get()));
+  }
+
+  @Test
+  public void testLifespanBothDates() {
+    DateInterval life = DateInterval.lifespan(Optional.of(date(1850, 0, 0)), Optional.of(date(1910, 5, 0))).get();
+    assertTrue(life.overlaps(DateInterval.ofYears(1850, 1850)));
+    assertTrue(life.overlaps(DateInterval.ofYears(1910, 1910)));
+    assertFalse(life.overlaps(DateInterval.ofYears(1911, 1911)));
+    assertFalse(life.overlaps(DateInterval.ofYears(1849, 1849)));
+  }
+
+  @Test
+  public void testLifespanMissingDeath() {
+    DateInterval life = DateInterval.lifespan(Optional.of(date(1850, 0, 0)), Optional.empty()).get();
+    assertTrue(life.overlaps(DateInterval.ofYears(1850 + DateInterval.MAX_LIFESPAN, 1850 + DateInterval.MAX_LIFESPAN)));
+    assertFalse(life.overlaps(DateInterval.ofYears(1851 + DateInterval.MAX_LIFESPAN, 2100)));
+  }
+
+  @Test
+  public void testLifespanMissingBirth() {
+    DateInterval life = DateInterval.lifespan(Optional.empty(), Optional.of(date(1950, 0, 0))).get();
+    assertTrue(life.overlaps(DateInterval.ofYears(1950 - DateInterval.MAX_LIFESPAN, 1950 - DateInterval.MAX_LIFESPAN)));
+    assertFalse(life.overlaps(DateInterval.ofYears(1700, 1949 - DateInterval.MAX_LIFESPAN)));
+    assertFalse(life.overlaps(DateInterval.ofYears(1951, 1951)));
+  }
+
+  @Test
+  public void testLifespanNoYears() {
+    assertFalse(DateInterval.lifespan(Optional.empty(), Optional.empty()).isPresent());
+    assertFalse(DateInterval.lifespan(Optional.of(date(0, 5, 0)), Optional.empty()).isPresent());
+  }
+
+  @Test
+  public void testExtendByMonths() {
+    DateInterval month = DateInterval.of(date(1850, 11, 0)).get().extendByMonths(2);
+    assertTrue(month.overlaps(DateInterval.of(date(1851, 1, 31)).get()));
+    assertFalse(month.overlaps(DateInterval.of(date(1851, 2, 1)).get()));
+  }
+
+  /**
+   * Builds a date; zeros stand for unset parts.
+   */
+  private static Date date(int year, int month, int day) {
+    DateBuilder builder = new DateBuilder();
+    if (year != 0)
+      builder.setYear(year);
+    if (month != 0)
+      builder.setMonth(month);
+    if (day != 0)
+      builder.setDate(day);
+    return builder.getDate();
+  }
+}
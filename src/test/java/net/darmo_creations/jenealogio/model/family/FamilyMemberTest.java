@@ -15,6 +15,7 @@ import net.darmo_creations.jenealogio.model.date.Date;
 import net.darmo_creations.jenealogio.model.date.DateBuilder;
 import net.darmo_creations.jenealogio.model.family.FamilyMember;
 import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.util.CalendarUtil;
 import net.darmo_creations.jenealogio.util.Images;
 
 public class FamilyMemberTest {
@@ -141,6 +142,85 @@ public class FamilyMemberTest {
     assertEquals(Period.of(0, 10, 29), this.m1.getAge().get());
   }
 
+  @Test
+  public void testBirthYear() {
+    assertEquals(1932, this.m2.getBirthYear());
+    this.m1.setBirthDate(getPartialDate(1850, 0, 0));
+    assertEquals(1850, this.m1.getBirthYear());
+  }
+
+  @Test
+  public void testUnknownBirthYear() {
+    assertEquals(FamilyMember.UNKNOWN_YEAR, this.m1.getBirthYear());
+    this.m1.setBirthDate(getPartialDate(0, 3, 12));
+    assertEquals(FamilyMember.UNKNOWN_YEAR, this.m1.getBirthYear());
+  }
+
+  @Test
+  public void testDeathYear() {
+    assertEquals(1999, this.m2.getDeathYear());
+    this.m1.setDeathDate(getPartialDate(1914, 8, 0));
+    assertEquals(1914, this.m1.getDeathYear());
+  }
+
+  @Test
+  public void testUnknownDeathYear() {
+    assertEquals(FamilyMember.UNKNOWN_YEAR, this.m1.getDeathYear());
+    this.m1.setDeathDate(getPartialDate(0, 0, 11));
+    assertEquals(FamilyMember.UNKNOWN_YEAR, this.m1.getDeathYear());
+  }
+
+  @Test
+  public void testNoAgeWithoutBirthDate() {
+    this.m1.setDeathDate(getDate(2000, 1, 1));
+    assertFalse(this.m1.getAge().isPresent());
+  }
+
+  @Test
+  public void testNoAgeWithoutDeathDate() {
+    this.m1.setBirthDate(getDate(2000, 1, 1));
+    this.m1.setDeathLocation("London");
+    assertFalse(this.m1.getAge().isPresent());
+    this.m1.setDeathLocation(null);
+    this.m1.setDead(true);
+    assertFalse(this.m1.getAge().isPresent());
+  }
+
+  @Test
+  public void testAgeMonths() {
+    this.m1.setBirthDate(getPartialDate(2000, 3, 0));
+    this.m1.setDeathDate(getDate(2002, 1, 15));
+    assertEquals(Period.of(1, 10, 0), this.m1.getAge().get());
+  }
+
+  @Test
+  public void testAgeYears() {
+    this.m1.setBirthDate(getPartialDate(2000, 0, 0));
+    this.m1.setDeathDate(getDate(2010, 6, 15));
+    assertEquals(Period.ofYears(10), this.m1.getAge().get());
+  }
+
+  @Test
+  public void testNoAgeWithoutBirthYear() {
+    this.m1.setBirthDate(getPartialDate(0, 6, 15));
+    this.m1.setDeathDate(getDate(2010, 6, 15));
+    assertFalse(this.m1.getAge().isPresent());
+  }
+
+  @Test
+  public void testAgeAlive() {
+    int year = CalendarUtil.getCurrentDate().getYear();
+    this.m1.setBirthDate(getPartialDate(year - 20, 0, 0));
+    assertEquals(Period.ofYears(20), this.m1.getAge().get());
+  }
+
+  @Test
+  public void testAgeDoesNotChangeDates() {
+    this.m2.getAge();
+    assertEquals(getDate(1932, 12, 2), this.m2.getBirthDate().get());
+    assertEquals(getDate(1999, 12, 16), this.m2.getDeathDate().get());
+  }
+
   @Test
   public void testYoungerThan() {
     this.m1.setBirthDate(getDate(2000, 1, 2));
@@ -181,6 +261,22 @@ public class FamilyMemberTest {
     assertFalse(this.m1.compareBirthdays(p1).isPresent());
   }
 
+  /**
+   * Builds a date; zeros stand for unset parts.
+   */
+  private static Date getPartialDate(int year, int month, int day) {
+    DateBuilder builder = new DateBuilder();
+
+    if (year != 0)
+      builder.setYear(year);
+    if (month != 0)
+      builder.setMonth(month);
+    if (day != 0)
+      builder.setDate(day);
+
+    return builder.getDate();
+  }
+
   private static Date getDate(int year, int month, int day) {
     DateBuilder builder = new DateBuilder();
 
@@ -0,0 +1,341 @@
+package net.darmo_creations.jenealogio.model.family;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.util.StringPool;
+
+public class FamilyTest {
+  private Family family;
+  /** Number of changes notified to the listeners. */
+  private int changes;
+
+  @Before
+  public void setUp() {
+    this.family = new Family("test");
+    this.changes = 0;
+    this.family.addFamilyListener(new FamilyListener() {
+      @Override
+      public void relationAdded(Relationship relation) {
+        FamilyTest.this.changes++;
+      }
+
+      @Override
+      public void relationUpdated(Relationship relation) {
+        FamilyTest.this.changes++;
+      }
+
+      @Override
+      public void relationRemoved(Relationship relation) {
+        FamilyTest.this.changes++;
+      }
+    });
+  }
+
+  @Test
+  public void testAncestors() {
+    long a = add(), b = add(), c = add(), d = add(), e = add();
+    this.family.addRelation(relation(a, b, c));
+    this.family.addRelation(relation(c, d, e));
+
+    assertTrue(this.family.isAncestor(a, e));
+    assertTrue(this.family.isAncestor(c, e));
+    assertFalse(this.family.isAncestor(e, a));
+    assertFalse(this.family.isAncestor(d, a));
+    assertFalse(this.family.isAncestor(a, a));
+    assertTrue(this.family.hasParents(e));
+    assertFalse(this.family.hasParents(a));
+  }
+
+  @Test
+  public void testAddRelationCycleRejected() {
+    long a = add(), b = add(), c = add(), d = add(), e = add();
+    this.family.addRelation(relation(a, b, c));
+    this.family.addRelation(relation(c, d, e));
+    this.changes = 0;
+
+    try {
+      this.family.addRelation(relation(e, b, a));
+      fail("cycle not detected");
+    }
+    catch (IllegalArgumentException ex) {
+      // Expected
+    }
+    assertFalse(this.family.areInRelationship(e, b));
+    assertFalse(this.family.isAncestor(e, a));
+    assertEquals(0, this.changes);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAddRelationParentOfPartner() {
+    long a = add(), b = add(), c = add(), d = add();
+    this.family.addRelation(relation(a, b, c));
+    this.family.addRelation(relation(c, d, a));
+  }
+
+  @Test
+  public void testAddExistingRelationIgnored() {
+    long a = add(), b = add(), c = add();
+    this.family.addRelation(relation(a, b));
+    this.family.addRelation(relation(b, a, c));
+    assertTrue(this.family.getRelation(a, b).get().getChildren().isEmpty());
+    assertEquals(1, this.changes);
+  }
+
+  @Test
+  public void testReorderAfterInsertion() {
+    // Members are placed in the order they are added; the parents come after their child
+    long child = add(), parent1 = add(), parent2 = add(), grandParent1 = add(), grandParent2 = add();
+    this.family.addRelation(relation(parent1, parent2, child));
+    this.family.addRelation(relation(grandParent1, grandParent2, parent1));
+
+    assertTrue(this.family.isAncestor(grandParent1, child));
+    assertTrue(this.family.isAncestor(parent2, child));
+    assertFalse(this.family.isAncestor(child, grandParent1));
+    assertFalse(this.family.isAncestor(parent2, parent1));
+
+    // The child can still become the parent of new members but not of its ancestors
+    long other = add(), grandChild = add();
+    this.family.addRelation(relation(child, other, grandChild));
+    assertTrue(this.family.isAncestor(grandParent2, grandChild));
+    try {
+      this.family.addRelation(relation(grandChild, add(), grandParent1));
+      fail("cycle not detected");
+    }
+    catch (IllegalArgumentException ex) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testRemoveRelation() {
+    long a = add(), b = add(), c = add(), d = add(), e = add();
+    this.family.addRelation(relation(a, b, c));
+    this.family.addRelation(relation(c, d, e));
+    assertTrue(this.family.isAncestor(a, e));
+
+    this.family.removeRelationship(relation(a, b));
+    assertFalse(this.family.isAncestor(a, e));
+    assertFalse(this.family.hasParents(c));
+    // The removed link no longer prevents the reverse one
+    this.family.addRelation(relation(e, add(), a));
+    assertTrue(this.family.isAncestor(c, a));
+  }
+
+  @Test
+  public void testRemoveMember() {
+    long a = add(), b = add(), c = add(), d = add(), e = add();
+    this.family.addRelation(relation(a, b, c));
+    this.family.addRelation(relation(c, d, e));
+
+    this.family.removeMember(c);
+    assertFalse(this.family.getMember(c).isPresent());
+    assertFalse(this.family.areInRelationship(c, d));
+    assertFalse(this.family.isAncestor(a, e));
+    assertTrue(this.family.getRelation(a, b).get().getChildren().isEmpty());
+  }
+
+  @Test
+  public void testUpdateRelation() {
+    long a = add(), b = add(), c = add(), d = add();
+    this.family.addRelation(relation(a, b, c));
+    this.family.updateRelation(relation(a, b, d));
+
+    assertFalse(this.family.isAncestor(a, c));
+    assertTrue(this.family.isAncestor(b, d));
+    assertEquals(Collections.singleton(d), this.family.getRelation(a, b).get().getChildren());
+  }
+
+  @Test
+  public void testUpdateRelationRollback() {
+    long a = add(), b = add(), c = add(), d = add(), e = add();
+    this.family.addRelation(relation(a, b, c));
+    this.family.addRelation(relation(c, d, e));
+    this.changes = 0;
+
+    try {
+      this.family.updateRelation(relation(c, d, e, a));
+      fail("cycle not detected");
+    }
+    catch (IllegalArgumentException ex) {
+      // Expected
+    }
+    // The old links are restored
+    assertEquals(Collections.singleton(e), this.family.getRelation(c, d).get().getChildren());
+    assertTrue(this.family.isAncestor(c, e));
+    assertTrue(this.family.isAncestor(a, e));
+    assertFalse(this.family.isAncestor(c, a));
+    assertEquals(0, this.changes);
+  }
+
+  @Test
+  public void testUpdateRelationReplacingChildren() {
+    // Children removed by the update do not count: the new links are checked without the old ones
+    long a = add(), b = add(), c = add(), d = add();
+    this.family.addRelation(relation(a, b, c));
+    this.family.addRelation(relation(c, d));
+    this.family.updateRelation(relation(a, b));
+    this.family.updateRelation(relation(c, d, a));
+    assertTrue(this.family.isAncestor(c, a));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUpdateRelationUnknownChild() {
+    long a = add(), b = add();
+    this.family.addRelation(relation(a, b));
+    this.family.updateRelation(relation(a, b, 42));
+  }
+
+  @Test
+  public void testRandomChanges() {
+    Random random = new Random(1);
+    List<Long> ids = new ArrayList<>();
+
+    for (int i = 0; i < 12; i++)
+      ids.add(add());
+    for (int step = 0; step < 600; step++) {
+      long p1 = pick(ids, random), p2 = pick(ids, random);
+      if (p1 == p2)
+        continue;
+      Set<Long> children = new HashSet<>();
+      for (int i = random.nextInt(3); i > 0; i--) {
+        long child = pick(ids, random);
+        if (child != p1 && child != p2)
+          children.add(child);
+      }
+      Relationship relation = relation(p1, p2, children.stream().mapToLong(Long::longValue).toArray());
+      boolean exists = this.family.areInRelationship(p1, p2);
+
+      switch (random.nextInt(4)) {
+        case 0:
+          this.family.removeRelationship(relation);
+          break;
+        case 1:
+          if (random.nextInt(10) == 0 && ids.size() > 4) {
+            this.family.removeMember(p1);
+            ids.remove(Long.valueOf(p1));
+            ids.add(add());
+            break;
+          }
+          // Falls through
+        default:
+          Family without = this.family.clone();
+          if (exists)
+            without.removeRelationship(relation);
+          boolean cycle = children.stream().anyMatch(c -> isDescendant(without, c, p1) || isDescendant(without, c, p2));
+          try {
+            if (exists)
+              this.family.updateRelation(relation);
+            else
+              this.family.addRelation(relation);
+            assertFalse("step " + step, cycle);
+          }
+          catch (IllegalArgumentException ex) {
+            assertTrue("step " + step, cycle);
+          }
+      }
+
+      for (long a : ids)
+        for (long b : ids)
+          assertEquals("step " + step, a != b && isDescendant(this.family, a, b), this.family.isAncestor(a, b));
+    }
+  }
+
+  @Test
+  public void testStringsSharedAfterLoad() {
+    Set<FamilyMember> members = new HashSet<>();
+    members.add(new FamilyMember(0, null, new String("Vergnet"), null, new String("Marie"), null, Gender.WOMAN, null,
+        new String("Lyon"), null, null, false, null));
+    members.add(new FamilyMember(1, null, new String("Vergnet"), null, new String("Damien"), null, Gender.MAN, null, null, null,
+        new String("Lyon"), true, null));
+    Set<Relationship> relations = new HashSet<>();
+    relations.add(new Relationship(null, new String("Lyon"), true, false, null, 0, 1, Collections.emptySet(), Collections.emptyMap()));
+    Family family = new Family(2, "test", members, relations);
+
+    String name = family.member(0).getFamilyName().get(), location = family.member(0).getBirthLocation().get();
+    assertSame(name, family.member(1).getFamilyName().get());
+    assertSame(location, family.member(1).getDeathLocation().get());
+    assertSame(location, family.relations().iterator().next().getLocation().get());
+    // Vergnet, Marie, Damien and Lyon
+    assertEquals(4, pool(family).size());
+
+    // Added and updated members share them too
+    family.addMember(new FamilyMember(null, new String("Vergnet"), null, null, null, Gender.UNKNOW, null, null, null, null, false, null));
+    assertSame(name, family.member(2).getFamilyName().get());
+    family.updateMember(new FamilyMember(2, null, null, null, new String("Marie"), null, Gender.UNKNOW, null, new String("Lyon"), null,
+        null, false, null));
+    assertSame(family.member(0).getFirstName().get(), family.member(2).getFirstName().get());
+    assertSame(location, family.member(2).getBirthLocation().get());
+    assertEquals(4, pool(family).size());
+  }
+
+  @Test
+  public void testCloneSharesStrings() {
+    long a = this.family.getGlobalId();
+    this.family.addMember(new FamilyMember(null, "Vergnet", null, "Marie", null, Gender.WOMAN, null, "Lyon", null, null, false, null));
+    this.family.addMember(new FamilyMember(null, "Dubois", null, null, null, Gender.MAN, null, "Paris", null, "Lyon", true, null));
+    this.family.getGazetteer();
+    int strings = pool(this.family).size();
+
+    Family clone = this.family.clone();
+    // The copy uses the same pool and no strings are added to it
+    assertSame(pool(this.family), pool(clone));
+    assertEquals(strings, pool(clone).size());
+    assertNotSame(this.family.member(a), clone.member(a));
+    assertSame(this.family.member(a).getFamilyName().get(), clone.member(a).getFamilyName().get());
+    // The gazetteer is only built once needed
+    assertNull(field(clone, "gazetteer"));
+    Gazetteer gazetteer = clone.getGazetteer();
+    assertEquals(2, gazetteer.getLocationsCount());
+    assertEquals("Lyon", gazetteer.getName(gazetteer.getBirthLocationId(a)));
+
+    // Members added to the copy are not added to the original gazetteer
+    clone.addMember(new FamilyMember(null, null, null, null, null, Gender.UNKNOW, null, "Marseille", null, null, false, null));
+    assertEquals(Gazetteer.NONE, this.family.getGazetteer().getId("Marseille"));
+  }
+
+  private static StringPool pool(Family family) {
+    return (StringPool) field(family, "strings");
+  }
+
+  private static Object field(Family family, String name) {
+    try {
+      Field field = Family.class.getDeclaredField(name);
+      field.setAccessible(true);
+      return field.get(family);
+    }
+    catch (ReflectiveOperationException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+  private static boolean isDescendant(Family family, long ancestor, long member) {
+    return family.getDescendants(ancestor).contains(member);
+  }
+
+  private static long pick(List<Long> ids, Random random) {
+    return ids.get(random.nextInt(ids.size()));
+  }
+
+  private long add() {
+    this.family.addMember(new FamilyMember(null, null, null, null, null, Gender.UNKNOW, null, null, null, null, false, null));
+    return this.family.getGlobalId() - 1;
+  }
+
+  private static Relationship relation(long partner1, long partner2, long... children) {
+    Set<Long> set = new HashSet<>();
+    for (long child : children)
+      set.add(child);
+    return new Relationship(null, null, false, false, null, partner1, partner2, set, Collections.emptyMap());
+  }
+}
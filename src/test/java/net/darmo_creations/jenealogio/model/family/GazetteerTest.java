@@ -0,0 +1,139 @@
+package net.darmo_creations.jenealogio.model.family;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GazetteerTest {
+  private Family family;
+
+  @Before
+  public void setUp() {
+    this.family = new Family("test");
+  }
+
+  @Test
+  public void testSameLocation() {
+    long a = add("Saint-Étienne", null);
+    long b = add("saint etienne", "SAINT ÉTIENNE");
+    Gazetteer gazetteer = this.family.getGazetteer();
+    int id = gazetteer.getId("Saint Etienne");
+
+    assertEquals(0, id);
+    assertEquals(1, gazetteer.getLocationsCount());
+    assertEquals("Saint-Étienne", gazetteer.getName(id));
+    assertEquals(id, gazetteer.getBirthLocationId(a));
+    assertEquals(id, gazetteer.getBirthLocationId(b));
+    assertEquals(id, gazetteer.getDeathLocationId(b));
+    assertEquals(Gazetteer.NONE, gazetteer.getId("Paris"));
+  }
+
+  @Test
+  public void testNoLocation() {
+    long a = add(null, " - ");
+    Gazetteer gazetteer = this.family.getGazetteer();
+
+    assertEquals(Gazetteer.NONE, gazetteer.getBirthLocationId(a));
+    assertEquals(Gazetteer.NONE, gazetteer.getDeathLocationId(a));
+    assertEquals(Gazetteer.NONE, gazetteer.getBirthLocationId(a + 1));
+    assertEquals(0, gazetteer.getLocationsCount());
+  }
+
+  @Test
+  public void testIdsStable() {
+    long a = add("Lyon", null);
+    Gazetteer gazetteer = this.family.getGazetteer();
+    long b = add("Paris", "Lyon");
+
+    assertEquals(0, gazetteer.getId("Lyon"));
+    assertEquals(1, gazetteer.getId("Paris"));
+
+    // IDs are kept while no member refers to them
+    this.family.removeMember(a);
+    this.family.removeMember(b);
+    add("Marseille", null);
+    long c = add("lyon", null);
+    assertEquals(0, gazetteer.getId("Lyon"));
+    assertEquals(1, gazetteer.getId("Paris"));
+    assertEquals(2, gazetteer.getId("Marseille"));
+    assertEquals(0, gazetteer.getBirthLocationId(c));
+    assertEquals("Lyon", gazetteer.getName(0));
+  }
+
+  @Test
+  public void testCountsFollowUpdates() {
+    long a = add("Lyon", "Paris");
+    long b = add("Lyon", null);
+    add("Paris", "Paris");
+    // Locations of existing members are numbered in no particular order
+    Gazetteer gazetteer = this.family.getGazetteer();
+    int lyon = gazetteer.getId("Lyon"), paris = gazetteer.getId("Paris");
+
+    assertArrayEquals(counts(2, lyon, 2, paris, 1), gazetteer.countBirthLocations());
+    assertArrayEquals(counts(2, lyon, 0, paris, 2), gazetteer.countDeathLocations());
+
+    update(a, "Paris", "Marseille");
+    int marseille = gazetteer.getId("Marseille");
+    assertEquals(2, marseille);
+    assertArrayEquals(counts(3, lyon, 1, paris, 2), gazetteer.countBirthLocations());
+    assertArrayEquals(counts(3, paris, 1, marseille, 1), gazetteer.countDeathLocations());
+    assertArrayEquals(new long[]{b}, gazetteer.getBornIn(lyon));
+    assertArrayEquals(new long[]{a}, gazetteer.getDeadIn(marseille));
+
+    this.family.removeMember(b);
+    assertArrayEquals(counts(3, paris, 2), gazetteer.countBirthLocations());
+    assertEquals(0, gazetteer.getBornIn(lyon).length);
+    assertEquals(Gazetteer.NONE, gazetteer.getBirthLocationId(b));
+  }
+
+  @Test
+  public void testRemoveKeepsOtherMembers() {
+    String[] locations = {"Lyon", "Paris", "Marseille", "Nice"};
+    long[] ids = new long[40];
+    for (int i = 0; i < ids.length; i++)
+      ids[i] = add(locations[i % locations.length], locations[(i + 1) % locations.length]);
+    Gazetteer gazetteer = this.family.getGazetteer();
+
+    // Removed members are replaced by the last ones
+    for (int i = 0; i < ids.length; i += 3)
+      this.family.removeMember(ids[i]);
+    for (int i = 0; i < ids.length; i++) {
+      int birth = i % 3 == 0 ? Gazetteer.NONE : gazetteer.getId(locations[i % locations.length]);
+      int death = i % 3 == 0 ? Gazetteer.NONE : gazetteer.getId(locations[(i + 1) % locations.length]);
+      assertEquals(birth, gazetteer.getBirthLocationId(ids[i]));
+      assertEquals(death, gazetteer.getDeathLocationId(ids[i]));
+    }
+    assertEquals(ids.length - (ids.length + 2) / 3, Arrays.stream(gazetteer.countBirthLocations()).sum());
+  }
+
+  @Test
+  public void testBuiltOnFirstUse() {
+    Family family = new Family("test");
+    Gazetteer gazetteer = family.getGazetteer();
+    assertSame(gazetteer, family.getGazetteer());
+  }
+
+  private long add(String birthLocation, String deathLocation) {
+    this.family.addMember(
+        new FamilyMember(null, null, null, null, null, Gender.UNKNOW, null, birthLocation, null, deathLocation, false, null));
+    return this.family.getGlobalId() - 1;
+  }
+
+  private void update(long id, String birthLocation, String deathLocation) {
+    this.family.updateMember(
+        new FamilyMember(id, null, null, null, null, null, Gender.UNKNOW, null, birthLocation, null, deathLocation, false, null));
+  }
+
+  /**
+   * Returns the counts of the given number of locations, from pairs of location IDs and counts.
+   */
+  private static int[] counts(int locations, int... idsAndCounts) {
+    int[] counts = new int[locations];
+    for (int i = 0; i < idsAndCounts.length; i += 2)
+      counts[idsAndCounts[i]] = idsAndCounts[i + 1];
+    return counts;
+  }
+}
@@ -0,0 +1,161 @@
+package net.darmo_creations.jenealogio.model.family;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.date.DateBuilder;
+import net.darmo_creations.jenealogio.model.search.DateIndex;
+import net.darmo_creations.jenealogio.model.search.SearchIndex;
+
+public class MemberQueryTest {
+  private static final String[] NAMES = {"Vergnet", "Martin", "Bernard", "Dubois", "Moreau", "Marie", "Jean", "Pierre", "Anne"};
+  private static final String[] LOCATIONS = {"Lyon", "Paris", "Marseille", "Saint-Étienne"};
+  private static final Gender[] GENDERS = {Gender.MAN, Gender.WOMAN, Gender.UNKNOW};
+
+  private Random random;
+  private Family family;
+  private List<Function<Family, MemberQuery>> queries;
+
+  @Before
+  public void setUp() {
+    this.random = new Random(1);
+    this.family = new Family("test");
+    for (int i = 0; i < 500; i++)
+      this.family.addMember(randomMember(-1));
+
+    this.queries = new ArrayList<>();
+    this.queries.add(f -> f.query());
+    this.queries.add(f -> f.query().bornBetween(1850, 1900));
+    this.queries.add(f -> f.query().diedBetween(1914, 1914));
+    this.queries.add(f -> f.query().aliveIn(1900));
+    this.queries.add(f -> f.query().aliveBetween(1800, 1820).gender(Gender.WOMAN));
+    this.queries.add(f -> f.query().nameLike("mar"));
+    this.queries.add(f -> f.query().nameLike("jean martin").bornBetween(1800, 1950));
+    this.queries.add(f -> f.query().birthLocationLike("saint etienne").diedBetween(1850, 1950));
+    this.queries.add(f -> f.query().deathLocationLike("paris").deceased());
+    this.queries.add(f -> f.query().gender(Gender.MAN).alive());
+    this.queries.add(f -> f.query().bornBetween(1900, 1850));
+    this.queries.add(f -> f.query().where(m -> m.getId() % 3 == 0).aliveIn(1880));
+  }
+
+  @Test
+  public void testWithoutIndexes() {
+    assertQueriesMatchScan();
+  }
+
+  @Test
+  public void testWithIndexes() {
+    addIndexes();
+    assertQueriesMatchScan();
+  }
+
+  @Test
+  public void testIndexesFollowChanges() {
+    addIndexes();
+    // Enough changes for the date index to rebuild its trees, then a few kept aside
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 100; i++)
+        edit();
+      assertQueriesMatchScan();
+      for (int i = 0; i < 5; i++)
+        edit();
+      assertQueriesMatchScan();
+    }
+  }
+
+  @Test
+  public void testCount() {
+    addIndexes();
+    for (Function<Family, MemberQuery> query : this.queries)
+      assertEquals(scan(query.apply(this.family)).size(), query.apply(this.family).count());
+  }
+
+  @Test
+  public void testCopies() {
+    addIndexes();
+    FamilyMember member = this.family.query().findAny().get();
+    member.setFamilyName("Changed");
+    assertNotEquals("Changed", this.family.getMember(member.getId()).get().getFamilyName().orElse(null));
+  }
+
+  private void addIndexes() {
+    this.family.addMemberIndex(new SearchIndex(this.family));
+    this.family.addMemberIndex(new DateIndex(this.family));
+  }
+
+  private void assertQueriesMatchScan() {
+    for (int i = 0; i < this.queries.size(); i++) {
+      MemberQuery query = this.queries.get(i).apply(this.family);
+      Set<Long> ids = query.ids().boxed().collect(Collectors.toSet());
+      assertEquals("query " + i, scan(query), ids);
+    }
+  }
+
+  /**
+   * Returns the members matching all criteria of a query by looking at every member.
+   */
+  private Set<Long> scan(MemberQuery query) {
+    return this.family.getAllMembers().stream().filter(m -> query.getCriteria().stream().allMatch(c -> c.test(m)))
+        .map(FamilyMember::getId).collect(Collectors.toSet());
+  }
+
+  /**
+   * Adds, updates or removes a random member.
+   */
+  private void edit() {
+    List<Long> ids = new ArrayList<>(this.family.getAllMembersIds());
+    long id = ids.get(this.random.nextInt(ids.size()));
+
+    switch (this.random.nextInt(3)) {
+      case 0:
+        this.family.addMember(randomMember(-1));
+        break;
+      case 1:
+        this.family.updateMember(randomMember(id));
+        break;
+      default:
+        this.family.removeMember(id);
+    }
+  }
+
+  private FamilyMember randomMember(long id) {
+    Date birth = randomDate();
+    Date death = randomDate();
+    String location = this.random.nextBoolean() ? pick(LOCATIONS) : null;
+
+    return new FamilyMember(id, null, pick(NAMES), null, pick(NAMES) + " " + pick(NAMES), null, pick(GENDERS), birth, location,
+        death, this.random.nextBoolean() ? pick(LOCATIONS) : null, this.random.nextInt(4) == 0, null);
+  }
+
+  /**
+   * Returns a date between 1780 and 1980 with random missing parts, or null.
+   */
+  private Date randomDate() {
+    if (this.random.nextInt(5) == 0)
+      return null;
+
+    DateBuilder builder = new DateBuilder();
+    if (this.random.nextInt(8) != 0)
+      builder.setYear(1780 + this.random.nextInt(200));
+    if (this.random.nextBoolean())
+      builder.setMonth(1 + this.random.nextInt(12));
+    if (this.random.nextBoolean())
+      builder.setDate(1 + this.random.nextInt(28));
+    return builder.getDate();
+  }
+
+  @SafeVarargs
+  private final <T> T pick(T... values) {
+    return values[this.random.nextInt(values.length)];
+  }
+}
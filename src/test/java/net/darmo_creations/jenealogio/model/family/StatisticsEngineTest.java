@@ -0,0 +1,206 @@
+package net.darmo_creations.jenealogio.model.family;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.date.DateBuilder;
+
+public class StatisticsEngineTest {
+  private Set<FamilyMember> members;
+  private Set<Relationship> relations;
+
+  @Before
+  public void setUp() {
+    this.members = new HashSet<>();
+    this.relations = new HashSet<>();
+  }
+
+  /**
+   * <pre>
+   * 0 + 1
+   *   |
+   * +-+---+
+   * |     |
+   * 2 + 4 3
+   *   |
+   * +-+--------+
+   * |          |
+   * 5          6 (adopted)
+   * </pre>
+   */
+  private Statistics computeSmallTree() {
+    add("Vergnet", "Jean", Gender.MAN, 1850, 1910, "Lyon", null);
+    add("Dubois", "Marie", Gender.WOMAN, 1855, 1900, "Paris", "Lyon");
+    add("Vergnet", "Pierre", Gender.MAN, 1880, 0, "Lyon", null);
+    add("Vergnet", "Marie", Gender.WOMAN, 1885, 0, null, null);
+    add("Martin", "Anne", Gender.WOMAN, 1905, 0, null, null);
+    add("Vergnet", "Louis", Gender.UNKNOW, 0, 0, null, null);
+    add(null, null, Gender.UNKNOW, 1875, 0, null, null);
+    relation(Collections.emptyMap(), 0, 1, 2, 3);
+    relation(Collections.singletonMap(6L, null), 2, 4, 5, 6);
+    return new StatisticsEngine(family()).compute();
+  }
+
+  @Test
+  public void testCounts() {
+    Statistics statistics = computeSmallTree();
+
+    assertEquals(7, statistics.getMembersCount());
+    assertEquals(2, statistics.getCount(Gender.MAN));
+    assertEquals(3, statistics.getCount(Gender.WOMAN));
+    assertEquals(2, statistics.getCount(Gender.UNKNOW));
+  }
+
+  @Test
+  public void testCenturies() {
+    Statistics statistics = computeSmallTree();
+
+    assertEquals(18, statistics.getFirstCentury());
+    assertEquals(19, statistics.getLastCentury());
+    assertEquals(2, statistics.getCount(18, Gender.MAN));
+    assertEquals(2, statistics.getCount(18, Gender.WOMAN));
+    assertEquals(1, statistics.getCount(18, Gender.UNKNOW));
+    assertEquals(1, statistics.getCount(19, Gender.WOMAN));
+    assertEquals(0, statistics.getCount(19, Gender.MAN));
+    assertEquals(0, statistics.getCount(17, Gender.MAN));
+    assertEquals(1, statistics.getUnknownCenturyCount(Gender.UNKNOW));
+    assertEquals(0, statistics.getUnknownCenturyCount(Gender.MAN));
+  }
+
+  @Test
+  public void testAverages() {
+    Statistics statistics = computeSmallTree();
+
+    assertEquals(52.5, statistics.getAverageLifespan().getAsDouble(), 1e-9);
+    // Children without a birth year and adopted children are ignored
+    assertEquals(27.5, statistics.getAverageAgeAtFirstChild().getAsDouble(), 1e-9);
+    assertEquals(2, statistics.getCouplesCount());
+    assertEquals(2, statistics.getAverageChildrenPerCouple().getAsDouble(), 1e-9);
+    assertEquals(3, statistics.getGenerationsCount());
+  }
+
+  @Test
+  public void testMostCommon() {
+    Statistics statistics = computeSmallTree();
+
+    // The most common first, ties sorted by name
+    assertEquals(Arrays.asList("Vergnet", "Dubois", "Martin"), Arrays.asList(statistics.getMostCommonFamilyNames().keySet().toArray()));
+    assertEquals(4, (int) statistics.getMostCommonFamilyNames().get("Vergnet"));
+    assertEquals(2, (int) statistics.getMostCommonFirstNames().get("Marie"));
+    // Births and deaths
+    assertEquals(3, (int) statistics.getMostCommonLocations().get("Lyon"));
+    assertEquals(1, (int) statistics.getMostCommonLocations().get("Paris"));
+  }
+
+  @Test
+  public void testTopCount() {
+    for (int i = 0; i < 15; i++)
+      for (int j = 0; j <= i; j++)
+        add("Name" + (char) ('A' + i), null, Gender.UNKNOW, 0, 0, null, null);
+    Map<String, Integer> names = new StatisticsEngine(family()).compute().getMostCommonFamilyNames();
+
+    assertEquals(10, names.size());
+    assertEquals(15, (int) names.values().iterator().next());
+    assertFalse(names.containsKey("NameE"));
+    assertTrue(names.containsKey("NameF"));
+  }
+
+  @Test
+  public void testEmptyFamily() {
+    Statistics statistics = new StatisticsEngine(new Family("test")).compute();
+
+    assertEquals(0, statistics.getMembersCount());
+    assertTrue(statistics.getLastCentury() < statistics.getFirstCentury());
+    assertFalse(statistics.getAverageLifespan().isPresent());
+    assertFalse(statistics.getAverageAgeAtFirstChild().isPresent());
+    assertFalse(statistics.getAverageChildrenPerCouple().isPresent());
+    assertEquals(0, statistics.getGenerationsCount());
+    assertTrue(statistics.getMostCommonFamilyNames().isEmpty());
+  }
+
+  @Test
+  public void testLargeFamily() {
+    // Enough members for the counting to be split between several tasks
+    Random random = new Random(1);
+    String[] names = {"Vergnet", "Dubois", "Martin", "Moreau", "Bernard"};
+    Gender[] genders = Gender.values();
+    Map<String, Integer> expectedNames = new HashMap<>();
+    int[] expectedCounts = new int[genders.length];
+    long lifespans = 0;
+    int lifespansCount = 0;
+
+    for (int i = 0; i < 30000; i++) {
+      String name = names[random.nextInt(names.length)];
+      Gender gender = genders[random.nextInt(genders.length)];
+      int birth = random.nextBoolean() ? 1500 + random.nextInt(500) : 0;
+      int death = birth != 0 && random.nextBoolean() ? birth + random.nextInt(100) : 0;
+
+      add(name, null, gender, birth, death, null, null);
+      expectedNames.merge(name, 1, Integer::sum);
+      expectedCounts[gender.ordinal()]++;
+      if (death != 0) {
+        lifespans += death - birth;
+        lifespansCount++;
+      }
+    }
+    Statistics statistics = new StatisticsEngine(family()).compute();
+
+    for (Gender gender : genders)
+      assertEquals(expectedCounts[gender.ordinal()], statistics.getCount(gender));
+    assertEquals(expectedNames, statistics.getMostCommonFamilyNames());
+    assertEquals((double) lifespans / lifespansCount, statistics.getAverageLifespan().getAsDouble(), 1e-9);
+    assertEquals(1, statistics.getGenerationsCount());
+  }
+
+  @Test(expected = CancellationException.class)
+  public void testCanceled() {
+    for (int i = 0; i < 20000; i++)
+      add("Vergnet", null, Gender.UNKNOW, 1850, 0, null, null);
+    StatisticsEngine engine = new StatisticsEngine(family());
+
+    Thread.currentThread().interrupt();
+    try {
+      engine.compute();
+    }
+    finally {
+      Thread.interrupted();
+    }
+  }
+
+  private Family family() {
+    return new Family(this.members.size(), "test", this.members, this.relations);
+  }
+
+  private void add(String familyName, String firstName, Gender gender, int birthYear, int deathYear, String birthLocation,
+      String deathLocation) {
+    this.members.add(new FamilyMember(this.members.size(), null, familyName, null, firstName, null, gender, year(birthYear),
+        birthLocation, year(deathYear), deathLocation, deathYear != 0, null));
+  }
+
+  private void relation(Map<Long, Date> adoptions, long partner1, long partner2, long... children) {
+    Set<Long> set = new HashSet<>();
+    for (long child : children)
+      set.add(child);
+    this.relations.add(new Relationship(null, null, true, false, null, partner1, partner2, set, adoptions));
+  }
+
+  private static Date year(int year) {
+    if (year == 0)
+      return null;
+    DateBuilder builder = new DateBuilder();
+    builder.setYear(year);
+    return builder.getDate();
+  }
+}
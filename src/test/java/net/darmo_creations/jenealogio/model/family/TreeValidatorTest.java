@@ -0,0 +1,285 @@
+package net.darmo_creations.jenealogio.model.family;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.date.DateBuilder;
+import net.darmo_creations.jenealogio.model.family.TreeValidator.Warning;
+
+public class TreeValidatorTest {
+  private static final int MEMBERS = 12;
+
+  @Test
+  public void testCycleFoundAtConstruction() {
+    Map<List<Long>, Relationship> relations = new HashMap<>();
+    put(relations, relation(0, 1, 2));
+    put(relations, relation(2, 3, 0));
+    put(relations, relation(4, 5, 6));
+
+    assertEquals(set(0, 2), ownAncestors(new TreeValidator(family(relations))));
+  }
+
+  @Test
+  public void testCycleBrokenByRemoval() {
+    Map<List<Long>, Relationship> relations = new HashMap<>();
+    put(relations, relation(0, 1, 2));
+    put(relations, relation(2, 3, 0));
+    TreeValidator validator = new TreeValidator(family(relations));
+
+    validator.relationRemoved(relation(2, 3));
+    assertEquals(set(), ownAncestors(validator));
+  }
+
+  @Test
+  public void testCycleBrokenByUpdate() {
+    Map<List<Long>, Relationship> relations = new HashMap<>();
+    put(relations, relation(0, 1, 2));
+    put(relations, relation(2, 3, 0, 4));
+    put(relations, relation(4, 5, 6));
+    put(relations, relation(6, 7, 4));
+    TreeValidator validator = new TreeValidator(family(relations));
+    assertEquals(set(0, 2, 4, 6), ownAncestors(validator));
+
+    // Only the cycle through 0 is broken
+    validator.relationUpdated(relation(2, 3, 4));
+    assertEquals(set(4, 6), ownAncestors(validator));
+  }
+
+  @Test
+  public void testIncrementalMatchesFullCheck() {
+    Random random = new Random(1);
+    Map<List<Long>, Relationship> relations = new HashMap<>();
+
+    for (int i = 0; i < 10; i++)
+      put(relations, randomRelation(random));
+    TreeValidator validator = new TreeValidator(family(relations));
+
+    for (int i = 0; i < 2000; i++) {
+      Relationship relation = randomRelation(random);
+      List<Long> key = relation.getPartners();
+
+      if (relations.containsKey(key)) {
+        if (random.nextBoolean()) {
+          relations.remove(key);
+          validator.relationRemoved(relation);
+        }
+        else {
+          relations.put(key, relation);
+          validator.relationUpdated(relation);
+        }
+      }
+      else {
+        relations.put(key, relation);
+        validator.relationAdded(relation);
+      }
+      assertEquals("step " + i, ownAncestors(new TreeValidator(family(relations))), ownAncestors(validator));
+    }
+  }
+
+  @Test
+  public void testChildBornBeforeParent() {
+    Relationship relation = relation(0, 1, 2);
+
+    assertEquals(pairs(pair(2, 0)), warnings(family(relation, member(0, date(1900, 5, 10), null), member(1, date(1880, 0, 0), null),
+        member(2, date(1900, 5, 9), null)), Warning.Type.CHILD_BORN_BEFORE_PARENT));
+    // The child may have been born after the 10th
+    assertEquals(pairs(), warnings(family(relation, member(0, date(1900, 5, 10), null), member(1, date(1880, 0, 0), null),
+        member(2, date(1900, 5, 0), null)), Warning.Type.CHILD_BORN_BEFORE_PARENT));
+    // The parent may have been born before the 1st of March
+    assertEquals(pairs(), warnings(family(relation, member(0, date(1900, 0, 0), null), member(1, date(1880, 0, 0), null),
+        member(2, date(1900, 3, 1), null)), Warning.Type.CHILD_BORN_BEFORE_PARENT));
+    assertEquals(pairs(pair(2, 0)), warnings(family(relation, member(0, date(1900, 0, 0), null), member(1, date(1880, 0, 0), null),
+        member(2, date(1899, 12, 31), null)), Warning.Type.CHILD_BORN_BEFORE_PARENT));
+  }
+
+  @Test
+  public void testChildBornAfterParentDeath() {
+    Relationship relation = relation(0, 1, 2);
+
+    // Up to 9 months after the death of the father
+    assertEquals(pairs(), warnings(family(relation, member(0, date(1870, 0, 0), date(1900, 1, 15)), member(1, null, null),
+        member(2, date(1900, 10, 15), null)), Warning.Type.CHILD_BORN_AFTER_PARENT_DEATH));
+    assertEquals(pairs(pair(2, 0)), warnings(family(relation, member(0, date(1870, 0, 0), date(1900, 1, 15)), member(1, null, null),
+        member(2, date(1900, 10, 16), null)), Warning.Type.CHILD_BORN_AFTER_PARENT_DEATH));
+    // The child may have been born in January
+    assertEquals(pairs(), warnings(family(relation, member(0, date(1870, 0, 0), date(1900, 1, 15)), member(1, null, null),
+        member(2, date(1900, 0, 0), null)), Warning.Type.CHILD_BORN_AFTER_PARENT_DEATH));
+    // The parent may have died in December
+    assertEquals(pairs(pair(2, 0)), warnings(family(relation, member(0, date(1870, 0, 0), date(1900, 1, 15)), member(1, null, null),
+        member(2, date(1901, 9, 30), null)), Warning.Type.CHILD_BORN_AFTER_PARENT_DEATH));
+    assertEquals(pairs(), warnings(family(relation, member(0, date(1870, 0, 0), date(1900, 0, 0)), member(1, null, null),
+        member(2, date(1901, 9, 30), null)), Warning.Type.CHILD_BORN_AFTER_PARENT_DEATH));
+    assertEquals(pairs(pair(2, 0)), warnings(family(relation, member(0, date(1870, 0, 0), date(1900, 0, 0)), member(1, null, null),
+        member(2, date(1901, 10, 1), null)), Warning.Type.CHILD_BORN_AFTER_PARENT_DEATH));
+  }
+
+  @Test
+  public void testRelationBeforeBirth() {
+    FamilyMember[] members = {member(0, date(1900, 6, 1), null), member(1, null, null)};
+
+    assertEquals(pairs(pair(0, 1)), warnings(family(relation(date(1900, 5, 31), null, 0, 1), members), Warning.Type.RELATION_BEFORE_BIRTH));
+    assertEquals(pairs(), warnings(family(relation(date(1900, 0, 0), null, 0, 1), members), Warning.Type.RELATION_BEFORE_BIRTH));
+    assertEquals(pairs(), warnings(family(relation(date(1900, 6, 1), null, 0, 1), members), Warning.Type.RELATION_BEFORE_BIRTH));
+    assertEquals(pairs(pair(0, 1)), warnings(family(relation(null, date(1899, 0, 0), 0, 1), members), Warning.Type.RELATION_BEFORE_BIRTH));
+    // Partial birth date
+    members[0] = member(0, date(1900, 6, 0), null);
+    assertEquals(pairs(), warnings(family(relation(date(1900, 6, 1), null, 0, 1), members), Warning.Type.RELATION_BEFORE_BIRTH));
+    assertEquals(pairs(pair(0, 1)), warnings(family(relation(date(1900, 5, 31), null, 0, 1), members), Warning.Type.RELATION_BEFORE_BIRTH));
+  }
+
+  @Test
+  public void testRelationAfterDeath() {
+    FamilyMember[] members = {member(0, null, null), member(1, date(1900, 0, 0), date(1950, 3, 10))};
+
+    assertEquals(pairs(pair(1, 0)), warnings(family(relation(date(1920, 0, 0), date(1950, 3, 11), 0, 1), members),
+        Warning.Type.RELATION_AFTER_DEATH));
+    assertEquals(pairs(), warnings(family(relation(date(1920, 0, 0), date(1950, 3, 10), 0, 1), members), Warning.Type.RELATION_AFTER_DEATH));
+    assertEquals(pairs(), warnings(family(relation(date(1920, 0, 0), date(1950, 3, 0), 0, 1), members), Warning.Type.RELATION_AFTER_DEATH));
+    assertEquals(pairs(pair(1, 0)), warnings(family(relation(date(1951, 0, 0), null, 0, 1), members), Warning.Type.RELATION_AFTER_DEATH));
+    // Partial death date
+    members[1] = member(1, date(1900, 0, 0), date(1950, 0, 0));
+    assertEquals(pairs(), warnings(family(relation(date(1920, 0, 0), date(1950, 12, 31), 0, 1), members), Warning.Type.RELATION_AFTER_DEATH));
+    assertEquals(pairs(pair(1, 0)), warnings(family(relation(date(1920, 0, 0), date(1951, 1, 1), 0, 1), members),
+        Warning.Type.RELATION_AFTER_DEATH));
+  }
+
+  @Test
+  public void testAdoptionBeforeBirth() {
+    FamilyMember[] members = {member(0, null, null), member(1, null, null), member(2, date(1920, 2, 2), null)};
+
+    assertEquals(pairs(pair(2, -1)), warnings(family(adoption(date(1920, 2, 1)), members), Warning.Type.ADOPTION_BEFORE_BIRTH));
+    assertEquals(pairs(), warnings(family(adoption(date(1920, 2, 2)), members), Warning.Type.ADOPTION_BEFORE_BIRTH));
+    assertEquals(pairs(), warnings(family(adoption(date(1920, 2, 0)), members), Warning.Type.ADOPTION_BEFORE_BIRTH));
+    assertEquals(pairs(pair(2, -1)), warnings(family(adoption(date(1919, 0, 0)), members), Warning.Type.ADOPTION_BEFORE_BIRTH));
+    // Partial birth date
+    members[2] = member(2, date(1920, 0, 0), null);
+    assertEquals(pairs(), warnings(family(adoption(date(1920, 1, 1)), members), Warning.Type.ADOPTION_BEFORE_BIRTH));
+    assertEquals(pairs(pair(2, -1)), warnings(family(adoption(date(1919, 12, 31)), members), Warning.Type.ADOPTION_BEFORE_BIRTH));
+  }
+
+  @Test
+  public void testUnknownMember() {
+    Relationship relation = relation(0, 5, 2, 6);
+    TreeValidator validator = new TreeValidator(family(relation, member(0, null, null), member(2, null, null)));
+
+    assertEquals(pairs(pair(5, 0), pair(6, 0)), warnings(validator, Warning.Type.UNKNOWN_MEMBER));
+
+    validator.memberAdded(member(5, null, null));
+    assertEquals(pairs(pair(6, 0)), warnings(validator, Warning.Type.UNKNOWN_MEMBER));
+  }
+
+  @Test
+  public void testWarningClearedByMemberUpdate() {
+    TreeValidator validator = new TreeValidator(
+        family(relation(0, 1, 2), member(0, date(1900, 0, 0), null), member(1, null, null), member(2, date(1899, 0, 0), null)));
+    assertEquals(pairs(pair(2, 0)), warnings(validator, Warning.Type.CHILD_BORN_BEFORE_PARENT));
+
+    validator.memberUpdated(member(2, date(1925, 0, 0), null));
+    assertEquals(pairs(), warnings(validator, Warning.Type.CHILD_BORN_BEFORE_PARENT));
+  }
+
+  private static Set<List<Long>> warnings(Family family, Warning.Type type) {
+    return warnings(new TreeValidator(family), type);
+  }
+
+  private static Set<List<Long>> warnings(TreeValidator validator, Warning.Type type) {
+    return validator.getWarnings().stream().filter(w -> w.getType() == type).map(w -> pair(w.getMemberId(), w.getOtherMemberId()))
+        .collect(Collectors.toSet());
+  }
+
+  private static Set<Long> ownAncestors(TreeValidator validator) {
+    return validator.getWarnings().stream().filter(w -> w.getType() == Warning.Type.OWN_ANCESTOR).map(Warning::getMemberId)
+        .collect(Collectors.toSet());
+  }
+
+  private static Family family(Map<List<Long>, Relationship> relations) {
+    Set<FamilyMember> members = new HashSet<>();
+    for (long id = 0; id < MEMBERS; id++)
+      members.add(new FamilyMember(id, null, null, null, null, null, Gender.UNKNOW, null, null, null, null, false, null));
+    Set<Relationship> copies = relations.values().stream().map(Relationship::clone).collect(Collectors.toSet());
+    return new Family(MEMBERS, "test", members, copies);
+  }
+
+  private static Family family(Relationship relation, FamilyMember... members) {
+    return new Family(MEMBERS, "test", new HashSet<>(Arrays.asList(members)), new HashSet<>(Arrays.asList(relation)));
+  }
+
+  private static FamilyMember member(long id, Date birthDate, Date deathDate) {
+    return new FamilyMember(id, null, null, null, null, null, Gender.UNKNOW, birthDate, null, deathDate, null, deathDate != null, null);
+  }
+
+  /**
+   * Returns a date; a part set to 0 is left unset.
+   */
+  private static Date date(int year, int month, int day) {
+    DateBuilder builder = new DateBuilder();
+    builder.setYear(year);
+    if (month != 0)
+      builder.setMonth(month);
+    if (day != 0)
+      builder.setDate(day);
+    return builder.getDate();
+  }
+
+  private static Relationship randomRelation(Random random) {
+    long partner1 = random.nextInt(MEMBERS);
+    long partner2 = (partner1 + 1 + random.nextInt(MEMBERS - 1)) % MEMBERS;
+    Set<Long> children = new HashSet<>();
+
+    for (int i = random.nextInt(3); i > 0; i--) {
+      long child = random.nextInt(MEMBERS);
+      if (child != partner1 && child != partner2)
+        children.add(child);
+    }
+    return new Relationship(null, null, false, false, null, partner1, partner2, children, Collections.emptyMap());
+  }
+
+  private static Relationship relation(long partner1, long partner2, long... children) {
+    Set<Long> set = new HashSet<>();
+    for (long child : children)
+      set.add(child);
+    return new Relationship(null, null, false, false, null, partner1, partner2, set, Collections.emptyMap());
+  }
+
+  private static Relationship relation(Date date, Date endDate, long partner1, long partner2) {
+    return new Relationship(date, null, true, endDate != null, endDate, partner1, partner2, Collections.emptySet(), Collections.emptyMap());
+  }
+
+  private static Relationship adoption(Date date) {
+    Map<Long, Date> adoptions = new HashMap<>();
+    adoptions.put(2L, date);
+    return new Relationship(null, null, false, false, null, 0, 1, set(2), adoptions);
+  }
+
+  private static void put(Map<List<Long>, Relationship> relations, Relationship relation) {
+    relations.put(relation.getPartners(), relation);
+  }
+
+  private static List<Long> pair(long id1, long id2) {
+    return Arrays.asList(id1, id2);
+  }
+
+  @SafeVarargs
+  private static Set<List<Long>> pairs(List<Long>... pairs) {
+    return new HashSet<>(Arrays.asList(pairs));
+  }
+
+  private static Set<Long> set(long... ids) {
+    Set<Long> set = new HashSet<>();
+    for (long id : ids)
+      set.add(id);
+    return set;
+  }
+}
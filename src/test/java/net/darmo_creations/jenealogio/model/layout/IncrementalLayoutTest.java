@@ -0,0 +1,226 @@
+package net.darmo_creations.jenealogio.model.layout;
+
+import static org.junit.Assert.*;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.family.Relationship;
+
+public class IncrementalLayoutTest {
+  private static final int WIDTH = GenerationalLayout.DEFAULT_CARD_SIZE.width;
+  private static final int GAP = GenerationalLayout.CARDS_GAP;
+  private static final int ROW = GenerationalLayout.LAYER_HEIGHT;
+
+  @Test
+  public void testChildrenCentered() {
+    Map<Long, Point> positions = new HashMap<>();
+    positions.put(1L, new Point(400, 0));
+    positions.put(2L, new Point(540, 0));
+    positions.put(3L, new Point(1000, 250));
+    positions.put(4L, new Point(0, 300));
+    positions.put(9L, new Point(2000, 300));
+    Relationship relation = relation(1, 2, 3, 4);
+
+    Map<Long, Point> moved = new IncrementalLayout(positions, Collections.emptyMap()).relayout(relation);
+    Map<Long, Point> result = apply(positions, moved);
+
+    assertEquals(set(3, 4), moved.keySet());
+    // The children keep their left-to-right order
+    assertEquals(new Point(400, ROW), result.get(4L));
+    assertEquals(new Point(400 + WIDTH + GAP, ROW), result.get(3L));
+    assertCentered(result, Collections.emptyMap(), relation);
+  }
+
+  @Test
+  public void testChildrenOfDifferentSizesCentered() {
+    Map<Long, Point> positions = new HashMap<>();
+    Map<Long, Dimension> sizes = new HashMap<>();
+    positions.put(1L, new Point(1000, 0));
+    positions.put(2L, new Point(1200, 20));
+    positions.put(3L, new Point(0, 500));
+    positions.put(4L, new Point(100, 500));
+    positions.put(5L, new Point(200, 500));
+    sizes.put(2L, new Dimension(150, 30));
+    sizes.put(4L, new Dimension(230, 30));
+    Relationship relation = relation(1, 2, 3, 4, 5);
+
+    Map<Long, Point> result = apply(positions, new IncrementalLayout(positions, sizes).relayout(relation));
+
+    // The row is placed below the lowest partner
+    for (long id = 3; id <= 5; id++)
+      assertEquals(20 + ROW, result.get(id).y);
+    assertCentered(result, sizes, relation);
+    assertNoOverlaps(result, sizes, 20 + ROW);
+  }
+
+  @Test
+  public void testCardsPushedRight() {
+    Map<Long, Point> positions = new HashMap<>();
+    positions.put(1L, new Point(400, 0));
+    positions.put(2L, new Point(540, 0));
+    positions.put(3L, new Point(400, ROW));
+    positions.put(4L, new Point(600, ROW));
+    // Overlaps the children, pushes the next card that is too close
+    positions.put(5L, new Point(590, ROW));
+    positions.put(6L, new Point(740, ROW + 10));
+    // Far enough after the pushed cards
+    positions.put(7L, new Point(1200, ROW));
+    // Another row
+    positions.put(8L, new Point(600, 2 * ROW));
+    Relationship relation = relation(1, 2, 3, 4);
+
+    Map<Long, Point> moved = new IncrementalLayout(positions, Collections.emptyMap()).relayout(relation);
+    Map<Long, Point> result = apply(positions, moved);
+
+    assertEquals(set(4, 5, 6), moved.keySet());
+    assertEquals(new Point(640 + GAP, ROW), result.get(5L));
+    assertEquals(new Point(640 + 2 * GAP + WIDTH, ROW + 10), result.get(6L));
+    assertCentered(result, Collections.emptyMap(), relation);
+    assertNoOverlaps(result, Collections.emptyMap(), ROW);
+    assertUntouched(positions, moved);
+  }
+
+  @Test
+  public void testCardsPushedLeft() {
+    Map<Long, Point> positions = new HashMap<>();
+    positions.put(1L, new Point(800, 0));
+    positions.put(2L, new Point(940, 0));
+    positions.put(3L, new Point(0, 500));
+    positions.put(4L, new Point(50, 500));
+    positions.put(5L, new Point(750, ROW));
+    positions.put(6L, new Point(600, ROW));
+    positions.put(7L, new Point(100, ROW));
+    Relationship relation = relation(1, 2, 3, 4);
+
+    Map<Long, Point> moved = new IncrementalLayout(positions, Collections.emptyMap()).relayout(relation);
+    Map<Long, Point> result = apply(positions, moved);
+
+    assertEquals(set(3, 4, 5, 6), moved.keySet());
+    assertEquals(new Point(800 - GAP - WIDTH, ROW), result.get(5L));
+    assertEquals(new Point(800 - 2 * (GAP + WIDTH), ROW), result.get(6L));
+    assertCentered(result, Collections.emptyMap(), relation);
+    assertNoOverlaps(result, Collections.emptyMap(), ROW);
+    assertUntouched(positions, moved);
+  }
+
+  @Test
+  public void testBlockMovedRightToStayPositive() {
+    Map<Long, Point> positions = new HashMap<>();
+    positions.put(1L, new Point(400, 0));
+    positions.put(2L, new Point(540, 0));
+    positions.put(3L, new Point(0, 500));
+    positions.put(4L, new Point(50, 500));
+    positions.put(5L, new Point(350, ROW));
+    positions.put(6L, new Point(200, ROW));
+    // Would be pushed to x = -20
+    positions.put(7L, new Point(0, ROW));
+    positions.put(8L, new Point(600, ROW));
+    positions.put(9L, new Point(900, ROW));
+    Relationship relation = relation(1, 2, 3, 4);
+
+    Map<Long, Point> moved = new IncrementalLayout(positions, Collections.emptyMap()).relayout(relation);
+    Map<Long, Point> result = apply(positions, moved);
+
+    // The block is moved 20 pixels right of the middle of the couple so that the last card stays
+    assertEquals(set(3, 4, 5, 6, 8), moved.keySet());
+    assertEquals(new Point(420, ROW), result.get(3L));
+    assertEquals(new Point(420 + WIDTH + GAP, ROW), result.get(4L));
+    assertEquals(new Point(420 - GAP - WIDTH, ROW), result.get(5L));
+    assertEquals(new Point(420 - 2 * (GAP + WIDTH), ROW), result.get(6L));
+    assertEquals(new Point(700, ROW), result.get(8L));
+    for (Point p : result.values())
+      assertTrue(p.x >= 0);
+    assertNoOverlaps(result, Collections.emptyMap(), ROW);
+    assertUntouched(positions, moved);
+  }
+
+  @Test
+  public void testNothingMovedWithoutCards() {
+    Map<Long, Point> positions = new HashMap<>();
+    positions.put(1L, new Point(400, 0));
+    positions.put(3L, new Point(400, ROW));
+
+    // A partner has no card
+    assertTrue(new IncrementalLayout(positions, Collections.emptyMap()).relayout(relation(1, 2, 3)).isEmpty());
+    // None of the children has a card
+    positions.put(2L, new Point(540, 0));
+    assertTrue(new IncrementalLayout(positions, Collections.emptyMap()).relayout(relation(1, 2, 4)).isEmpty());
+  }
+
+  /**
+   * Checks that the children of the relation are centered under the couple, halfway between the
+   * centers of the partners.
+   */
+  private static void assertCentered(Map<Long, Point> positions, Map<Long, Dimension> sizes, Relationship relation) {
+    double middle = (bounds(positions, sizes, relation.getPartner1()).getCenterX()
+        + bounds(positions, sizes, relation.getPartner2()).getCenterX()) / 2;
+    Rectangle children = null;
+
+    for (long id : relation.getChildren()) {
+      Rectangle r = bounds(positions, sizes, id);
+      children = children == null ? r : children.union(r);
+    }
+    assertEquals(middle, children.getCenterX(), 0.5);
+  }
+
+  /**
+   * Checks that no cards of the row starting at the given y coordinate overlap.
+   */
+  private static void assertNoOverlaps(Map<Long, Point> positions, Map<Long, Dimension> sizes, int y) {
+    Rectangle row = new Rectangle(Integer.MIN_VALUE / 2, y, Integer.MAX_VALUE, GenerationalLayout.DEFAULT_CARD_SIZE.height);
+
+    for (long id1 : positions.keySet()) {
+      Rectangle r1 = bounds(positions, sizes, id1);
+      if (!r1.intersects(row))
+        continue;
+      for (long id2 : positions.keySet())
+        if (id1 != id2)
+          assertFalse(id1 + " overlaps " + id2, r1.intersects(bounds(positions, sizes, id2)));
+    }
+  }
+
+  /**
+   * Checks that the cards that are not reported as moved do not move.
+   */
+  private static void assertUntouched(Map<Long, Point> positions, Map<Long, Point> moved) {
+    Map<Long, Point> result = apply(positions, moved);
+    for (long id : positions.keySet())
+      if (!moved.containsKey(id))
+        assertEquals(positions.get(id), result.get(id));
+      else
+        assertNotEquals(positions.get(id), moved.get(id));
+  }
+
+  private static Map<Long, Point> apply(Map<Long, Point> positions, Map<Long, Point> moved) {
+    Map<Long, Point> result = new HashMap<>(positions);
+    result.putAll(moved);
+    return result;
+  }
+
+  private static Rectangle bounds(Map<Long, Point> positions, Map<Long, Dimension> sizes, long id) {
+    return new Rectangle(positions.get(id), sizes.getOrDefault(id, GenerationalLayout.DEFAULT_CARD_SIZE));
+  }
+
+  private static Relationship relation(long partner1, long partner2, long... children) {
+    Set<Long> set = new HashSet<>();
+    for (long child : children)
+      set.add(child);
+    return new Relationship(null, null, false, false, null, partner1, partner2, set, Collections.emptyMap());
+  }
+
+  private static Set<Long> set(long... ids) {
+    Set<Long> set = new HashSet<>();
+    for (long id : ids)
+      set.add(id);
+    return set;
+  }
+}
@@ -0,0 +1,238 @@
+package net.darmo_creations.jenealogio.model.search;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.date.DateBuilder;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.model.search.DuplicateDetector.Duplicate;
+import net.darmo_creations.jenealogio.util.ProgressListener;
+
+public class DuplicateDetectorTest {
+  private Set<FamilyMember> members;
+  private Set<Relationship> relations;
+
+  @Before
+  public void setUp() {
+    this.members = new HashSet<>();
+    this.relations = new HashSet<>();
+  }
+
+  @Test
+  public void testSamePersonReportedOnce() {
+    long a = add("Vergnet", "Damien", Gender.MAN, 1850, 1910, "Lyon");
+    long b = add("Vergnet", "Damien", Gender.MAN, 1850, 1910, "Lyon");
+    List<Duplicate> duplicates = detect();
+
+    // The pair shares all blocks
+    assertEquals(1, duplicates.size());
+    assertPair(a, b, duplicates.get(0));
+    assertEquals(1, duplicates.get(0).getScore(), 1e-9);
+  }
+
+  @Test
+  public void testMisspelledFamilyName() {
+    long a = add("Vergnet", "Damien", Gender.MAN, 1850, 0, null);
+    long b = add("Bergnet", "Damien", Gender.MAN, 1852, 0, null);
+
+    // Different codes: the members only share the block of their first name and birth decade
+    assertNotEquals(Phonetics.french("vergnet"), Phonetics.french("bergnet"));
+    assertEquals(pairs(a, b), pairs(detect()));
+  }
+
+  @Test
+  public void testCloseYearsInDifferentDecades() {
+    long a = add("Martin", null, Gender.MAN, 1849, 1900, "Lyon");
+    long b = add("Martin", "Jean", Gender.MAN, 1850, 1900, "Lyon");
+
+    // Different decades and no first name: the members only share the block of the shifted decade
+    assertEquals(pairs(a, b), pairs(detect()));
+  }
+
+  @Test
+  public void testDistantYears() {
+    add("Martin", "Jean", Gender.MAN, 1850, 0, null);
+    add("Martin", "Jean", Gender.MAN, 1861, 0, null);
+    add("Martin", "Jean", Gender.MAN, 0, 1900, null);
+    add("Martin", "Jean", Gender.MAN, 0, 1920, null);
+
+    assertEquals(pairs(0, 2, 0, 3, 1, 2, 1, 3), pairs(detect()));
+  }
+
+  @Test
+  public void testGenderVeto() {
+    add("Vergnet", "Camille", Gender.MAN, 1850, 0, null);
+    add("Vergnet", "Camille", Gender.WOMAN, 1850, 0, null);
+    add("Vergnet", "Camille", Gender.UNKNOW, 1850, 0, null);
+
+    // An unknown gender matches both
+    assertEquals(pairs(0, 2, 1, 2), pairs(detect()));
+  }
+
+  @Test
+  public void testRelativesVeto() {
+    long father = add("Vergnet", "Damien", Gender.MAN, 1850, 0, null);
+    long mother = add("Dubois", "Marie", Gender.WOMAN, 1852, 0, null);
+    long son = add("Vergnet", "Damien", Gender.MAN, 1850, 0, null);
+    long partner = add("Dubois", "Marie", Gender.WOMAN, 1852, 0, null);
+    relation(father, mother, son);
+    relation(son, partner);
+
+    // Father and son, partners and mother and daughter-in-law are relatives
+    assertEquals(pairs(mother, partner), pairs(detect()));
+  }
+
+  @Test
+  public void testSharedRelativesRaiseScore() {
+    long a = add("Vergnet", "Damien", Gender.MAN, 1850, 0, null);
+    long b = add("Vergnet", "Damian", Gender.MAN, 1852, 0, null);
+    double alone = detect().get(0).getScore();
+
+    long p1 = add("Dubois", "Pierre", Gender.MAN, 1820, 0, null);
+    long p2 = add("Dubois", "Pierre", Gender.MAN, 1820, 0, null);
+    relation(p1, add("Moreau", "Anne", Gender.WOMAN, 1822, 0, null), a);
+    relation(p2, add("Moreau", "Anne", Gender.WOMAN, 1822, 0, null), b);
+
+    Duplicate d = detect().stream().filter(x -> x.getMemberId1() == a).findAny().get();
+    assertPair(a, b, d);
+    assertTrue(d.getScore() > alone);
+  }
+
+  @Test
+  public void testLargeBlock() {
+    Random random = new Random(1);
+    // More than MAX_BLOCK_SIZE members in the block of the family name and birth decade
+    for (int i = 0; i < 250; i++)
+      add("Martin", randomName(random), Gender.MAN, 1850, 0, null);
+    long a = add("Martin", "Marc", Gender.MAN, 1850, 0, null);
+    long b = add("Martin", "Marco", Gender.MAN, 1851, 0, null);
+
+    // Different first names codes: the members are only compared within the large block
+    assertNotEquals(Phonetics.french("marc"), Phonetics.french("marco"));
+    assertTrue(pairs(detect()).contains(pair(a, b)));
+  }
+
+  @Test
+  public void testSortedByScore() {
+    add("Vergnet", "Damien", Gender.MAN, 1850, 0, null);
+    add("Vergnet", "Damien", Gender.MAN, 1850, 0, null);
+    add("Bergnet", "Damien", Gender.MAN, 1852, 0, null);
+    add("Martin", "Marc", Gender.MAN, 1850, 0, null);
+    add("Martin", "Marco", Gender.MAN, 1851, 0, null);
+    add("Martin", "Marco", Gender.MAN, 1855, 0, null);
+    List<Duplicate> duplicates = detect();
+    Set<Double> scores = new HashSet<>();
+
+    assertTrue(duplicates.size() >= 4);
+    for (int i = 0; i < duplicates.size(); i++) {
+      double score = duplicates.get(i).getScore();
+      assertTrue(score >= DuplicateDetector.MIN_SCORE && score <= 1);
+      if (i > 0)
+        assertTrue(duplicates.get(i - 1).getScore() >= score);
+      scores.add(score);
+    }
+    assertTrue(scores.size() > 1);
+  }
+
+  @Test
+  public void testProgress() {
+    add("Vergnet", "Damien", Gender.MAN, 1850, 0, null);
+    add("Vergnet", "Damien", Gender.MAN, 1850, 0, null);
+    List<Integer> progress = new ArrayList<>();
+
+    new DuplicateDetector(family()).detect(progress::add);
+    assertEquals(0, (int) progress.get(0));
+    assertEquals(100, (int) progress.get(progress.size() - 1));
+  }
+
+  @Test(expected = CancellationException.class)
+  public void testCanceled() {
+    add("Vergnet", "Damien", Gender.MAN, 1850, 0, null);
+    add("Vergnet", "Damien", Gender.MAN, 1850, 0, null);
+    DuplicateDetector detector = new DuplicateDetector(family());
+
+    Thread.currentThread().interrupt();
+    try {
+      detector.detect(ProgressListener.NONE);
+    }
+    finally {
+      Thread.interrupted();
+    }
+  }
+
+  private List<Duplicate> detect() {
+    return new DuplicateDetector(family()).detect(ProgressListener.NONE);
+  }
+
+  private Family family() {
+    return new Family(this.members.size(), "test", this.members, this.relations);
+  }
+
+  private long add(String familyName, String firstName, Gender gender, int birthYear, int deathYear, String birthLocation) {
+    long id = this.members.size();
+    this.members.add(new FamilyMember(id, null, familyName, null, firstName, null, gender, year(birthYear), birthLocation,
+        year(deathYear), null, deathYear != 0, null));
+    return id;
+  }
+
+  private void relation(long partner1, long partner2, long... children) {
+    Set<Long> set = new HashSet<>();
+    for (long child : children)
+      set.add(child);
+    this.relations.add(new Relationship(null, null, true, false, null, partner1, partner2, set, Collections.emptyMap()));
+  }
+
+  private static Date year(int year) {
+    if (year == 0)
+      return null;
+    DateBuilder builder = new DateBuilder();
+    builder.setYear(year);
+    return builder.getDate();
+  }
+
+  private static String randomName(Random random) {
+    char[] name = new char[6];
+    for (int i = 0; i < name.length; i++)
+      name[i] = (char) ('a' + random.nextInt(26));
+    return new String(name);
+  }
+
+  private static void assertPair(long id1, long id2, Duplicate duplicate) {
+    assertEquals(pair(id1, id2), pair(duplicate.getMemberId1(), duplicate.getMemberId2()));
+  }
+
+  private static Set<Set<Long>> pairs(List<Duplicate> duplicates) {
+    Set<Set<Long>> pairs = new HashSet<>();
+    for (Duplicate d : duplicates)
+      pairs.add(pair(d.getMemberId1(), d.getMemberId2()));
+    return pairs;
+  }
+
+  private static Set<Set<Long>> pairs(long... ids) {
+    Set<Set<Long>> pairs = new HashSet<>();
+    for (int i = 0; i < ids.length; i += 2)
+      pairs.add(pair(ids[i], ids[i + 1]));
+    return pairs;
+  }
+
+  private static Set<Long> pair(long id1, long id2) {
+    Set<Long> pair = new HashSet<>();
+    pair.add(id1);
+    pair.add(id2);
+    return pair;
+  }
+}
@@ -0,0 +1,127 @@
+package net.darmo_creations.jenealogio.model.search;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.util.TextUtil;
+
+public class NameIndexTest {
+  private static final String[] NAMES = {"Vergnet", "Vergné", "Vernet", "Martin", "Bernard", "Dubois", "Lefebvre",
+      "Moreau", "Fontaine", "Chevalier", "Rousseau", "Blanchard", "Guillaume", "Marie", "Jean", "Pierre", "Anne"};
+
+  private Family family;
+  private NameIndex index;
+  private long vergnet, vergne, martin;
+
+  @Before
+  public void setUp() {
+    this.family = new Family("test");
+    this.vergnet = add("Vergnet", "Damien");
+    this.vergne = add("Vergné", "Marie");
+    this.martin = add("Martin", "Pierre Jean");
+    this.index = new NameIndex(this.family);
+    this.family.addFamilyListener(this.index);
+  }
+
+  @Test
+  public void testSearchVariants() {
+    assertEquals(set(this.vergnet, this.vergne), set(this.index.search("Vernet", 10)));
+  }
+
+  @Test
+  public void testSearchAllWords() {
+    assertEquals(set(this.martin), set(this.index.search("jean martin", 10)));
+    assertEquals(set(), set(this.index.search("jean vergnet", 10)));
+  }
+
+  @Test
+  public void testSearchLimit() {
+    assertEquals(1, this.index.search("vernet", 1).length);
+    assertEquals(0, this.index.search("", 10).length);
+  }
+
+  @Test
+  public void testSearchFollowsChanges() {
+    long id = add("Vernet", null);
+    assertEquals(set(this.vergnet, this.vergne, id), set(this.index.search("vergnet", 10)));
+    this.family.removeMember(this.vergne);
+    assertEquals(set(this.vergnet, id), set(this.index.search("vergnet", 10)));
+  }
+
+  @Test
+  public void testVariantsTypo() {
+    assertTrue(this.index.getVariants("Martn").contains("martin"));
+    // Short words must have the same code
+    assertFalse(this.index.getVariants("Pie").contains("pierre"));
+  }
+
+  @Test
+  public void testCandidatesBound() {
+    // Words within the allowed distance must be found among the words of the rarest trigrams
+    Random random = new Random(1);
+    Set<String> words = new HashSet<>();
+
+    for (int i = 0; i < 300; i++) {
+      String word = mutate(NAMES[random.nextInt(NAMES.length)], random);
+      add(word, null);
+      words.add(TextUtil.normalize(word));
+    }
+    NameIndex index = new NameIndex(this.family);
+
+    for (int i = 0; i < 300; i++) {
+      String query = TextUtil.normalize(mutate(NAMES[random.nextInt(NAMES.length)], random));
+      Set<String> variants = index.getVariants(query);
+      int max = query.length() <= 3 ? 0 : query.length() <= 6 ? 1 : 2;
+
+      for (String word : words)
+        if (PhoneticsTest.levenshtein(query, word) <= max)
+          assertTrue(query + " " + word, variants.contains(word));
+    }
+  }
+
+  /**
+   * Applies up to two random edits to a word.
+   */
+  private static String mutate(String word, Random random) {
+    StringBuilder sb = new StringBuilder(word);
+
+    for (int edits = random.nextInt(3); edits > 0 && sb.length() > 1; edits--) {
+      int i = random.nextInt(sb.length());
+      char c = (char) ('a' + random.nextInt(26));
+
+      switch (random.nextInt(3)) {
+        case 0:
+          sb.setCharAt(i, c);
+          break;
+        case 1:
+          sb.insert(i, c);
+          break;
+        default:
+          sb.deleteCharAt(i);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  private long add(String familyName, String firstName) {
+    this.family.addMember(new FamilyMember(null, familyName, null, firstName, null, Gender.UNKNOW, null, null, null, null, false, null));
+    return this.family.getAllMembersIds().stream().mapToLong(Long::longValue).max().getAsLong();
+  }
+
+  private static Set<Long> set(long... ids) {
+    Set<Long> set = new HashSet<>();
+    Arrays.stream(ids).forEach(set::add);
+    return set;
+  }
+}
@@ -0,0 +1,125 @@
+package net.darmo_creations.jenealogio.model.search;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.util.TextUtil;
+
+public class PhoneticsTest {
+  @Test
+  public void testSoundex() {
+    assertEquals("R163", Phonetics.soundex("robert"));
+    assertEquals("R163", Phonetics.soundex("rupert"));
+    assertEquals("T522", Phonetics.soundex("tymczak"));
+    assertEquals("L000", Phonetics.soundex("lee"));
+  }
+
+  @Test
+  public void testSoundexSameCodeAroundHOrW() {
+    // s and c have the same code and are separated by h: coded once
+    assertEquals("A261", Phonetics.soundex("ashcraft"));
+  }
+
+  @Test
+  public void testSoundexSameCodeAsFirstLetter() {
+    assertEquals("P236", Phonetics.soundex("pfister"));
+  }
+
+  @Test
+  public void testSoundexNoLetters() {
+    assertEquals("", Phonetics.soundex("1914"));
+    assertEquals("", Phonetics.soundex(""));
+  }
+
+  @Test
+  public void testFrenchVariants() {
+    String code = Phonetics.french(TextUtil.normalize("Vergnet"));
+    assertEquals(code, Phonetics.french(TextUtil.normalize("Vergné")));
+    assertEquals(code, Phonetics.french(TextUtil.normalize("Vernet")));
+  }
+
+  @Test
+  public void testFrenchGroups() {
+    assertEquals(Phonetics.french("fontaine"), Phonetics.french("phontaine"));
+    assertEquals(Phonetics.french("moreau"), Phonetics.french("moraux"));
+    assertEquals(Phonetics.french("chevalier"), Phonetics.french("schevallier"));
+  }
+
+  @Test
+  public void testFrenchDifferentNames() {
+    assertNotEquals(Phonetics.french("martin"), Phonetics.french("bernard"));
+  }
+
+  @Test
+  public void testFrenchNoLetters() {
+    assertEquals("", Phonetics.french("1914"));
+  }
+
+  @Test
+  public void testDistance() {
+    assertEquals(0, Phonetics.distance("vergnet", "vergnet", 2));
+    assertEquals(1, Phonetics.distance("vernet", "verney", 2));
+    assertEquals(1, Phonetics.distance("vergnet", "vernet", 2));
+    assertEquals(3, Phonetics.distance("kitten", "sitting", 3));
+  }
+
+  @Test
+  public void testDistanceBounded() {
+    assertEquals(3, Phonetics.distance("kitten", "sitting", 2));
+    assertEquals(1, Phonetics.distance("abc", "abd", 0));
+    // Lengths too different
+    assertEquals(2, Phonetics.distance("a", "abcdef", 1));
+  }
+
+  @Test
+  public void testDistanceEmptyWords() {
+    assertEquals(0, Phonetics.distance("", "", 1));
+    assertEquals(2, Phonetics.distance("", "ab", 2));
+    assertEquals(2, Phonetics.distance("ab", "", 1));
+  }
+
+  @Test
+  public void testDistanceAgainstFullMatrix() {
+    Random random = new Random(1);
+
+    for (int i = 0; i < 5000; i++) {
+      String a = randomWord(random), b = randomWord(random);
+      int max = random.nextInt(4);
+      int expected = levenshtein(a, b);
+
+      assertEquals(a + " " + b + " " + max, Math.min(expected, max + 1), Phonetics.distance(a, b, max));
+    }
+  }
+
+  /**
+   * Returns a short word over a small alphabet, so that words are often close.
+   */
+  private static String randomWord(Random random) {
+    char[] chars = new char[random.nextInt(8)];
+    for (int i = 0; i < chars.length; i++)
+      chars[i] = (char) ('a' + random.nextInt(3));
+    return new String(chars);
+  }
+
+  /**
+   * Computes the Levenshtein distance with the full matrix.
+   */
+  static int levenshtein(String a, String b) {
+    int[][] d = new int[a.length() + 1][b.length() + 1];
+
+    for (int i = 0; i <= a.length(); i++)
+      d[i][0] = i;
+    for (int j = 0; j <= b.length(); j++)
+      d[0][j] = j;
+    for (int i = 1; i <= a.length(); i++)
+      for (int j = 1; j <= b.length(); j++) {
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+      }
+
+    return d[a.length()][b.length()];
+  }
+}
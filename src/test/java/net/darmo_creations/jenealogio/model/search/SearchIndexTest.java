@@ -0,0 +1,181 @@
+package net.darmo_creations.jenealogio.model.search;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.MemberQuery;
+import net.darmo_creations.jenealogio.util.LongHashSet;
+
+public class SearchIndexTest {
+  private Family family;
+  private SearchIndex index;
+  private long vergne, martin, dubois;
+
+  @Before
+  public void setUp() {
+    this.family = new Family("test");
+    this.vergne = add("Vergné", "Élodie", "Saint-Étienne", null);
+    this.martin = add("Martin", "Pierre Jean", "Lyon", "Married in Paris");
+    this.dubois = add("Dubois", "Marie", "Paris", null);
+    this.index = new SearchIndex(this.family);
+    this.family.addFamilyListener(this.index);
+  }
+
+  @Test
+  public void testAccentsAndCase() {
+    assertEquals(set(this.vergne), set(this.index.search("VERGNE", 10)));
+    assertEquals(set(this.vergne), set(this.index.search("élodie vergné", 10)));
+    assertEquals(set(this.vergne), set(this.index.search("saint etienne", 10)));
+  }
+
+  @Test
+  public void testPrefixes() {
+    assertEquals(set(this.martin, this.dubois), set(this.index.search("mar", 10)));
+    assertEquals(set(this.martin), set(this.index.search("pie mar", 10)));
+    assertEquals(set(this.martin), set(this.index.search("mar pie", 10)));
+    assertEquals(set(this.martin), set(this.index.search("Jean Jean", 10)));
+    // Every word must match
+    assertEquals(set(), set(this.index.search("pierre vergne", 10)));
+    assertEquals(set(), set(this.index.search("martins", 10)));
+  }
+
+  @Test
+  public void testAllTextsSearched() {
+    // Birth location and comment
+    assertEquals(set(this.martin, this.dubois), set(this.index.search("paris", 10)));
+    assertEquals(set(this.martin), set(this.index.search("married lyon", 10)));
+  }
+
+  @Test
+  public void testLimit() {
+    for (int i = 0; i < 10; i++)
+      add("Moreau", null, null, null);
+
+    assertEquals(3, this.index.search("mor", 3).length);
+    assertEquals(10, this.index.search("moreau", 100).length);
+    assertEquals(0, this.index.search("mor", 0).length);
+    assertEquals(0, this.index.search("", 10).length);
+    assertEquals(0, this.index.search(" - ", 10).length);
+    assertTrue(this.index.searchFirst("moreau").isPresent());
+    assertFalse(this.index.searchFirst("unknown").isPresent());
+  }
+
+  @Test
+  public void testMemberAdded() {
+    long id = add("Vergnet", "Damien", null, null);
+    assertEquals(set(this.vergne, id), set(this.index.search("verg", 10)));
+  }
+
+  @Test
+  public void testMemberUpdated() {
+    this.family.updateMember(new FamilyMember(this.dubois, null, "Fontaine", null, "Marie", null, Gender.WOMAN, null, "Paris", null,
+        null, false, null));
+
+    assertEquals(set(), set(this.index.search("dubois", 10)));
+    assertEquals(set(this.dubois), set(this.index.search("fontaine", 10)));
+    assertEquals(set(this.martin, this.dubois), set(this.index.search("paris", 10)));
+    // The word of the previous name is not kept without members
+    assertFalse(postings(this.index).containsKey("dubois"));
+    assertTrue(postings(this.index).containsKey("fontaine"));
+  }
+
+  @Test
+  public void testMemberRemoved() {
+    this.family.removeMember(this.martin);
+
+    assertEquals(set(this.dubois), set(this.index.search("mar", 10)));
+    assertEquals(set(this.dubois), set(this.index.search("paris", 10)));
+    for (String word : Arrays.asList("martin", "pierre", "jean", "lyon", "married", "in"))
+      assertFalse(word, postings(this.index).containsKey(word));
+    // Words shared with other members are kept
+    assertEquals(set(this.dubois), set(postings(this.index).get("paris").toArray()));
+  }
+
+  @Test
+  public void testIndexMatchesFreshIndex() {
+    this.family.removeMember(this.vergne);
+    add("Rousseau", "Anne", "Marseille", null);
+    this.family.updateMember(new FamilyMember(this.martin, null, "Martin", null, "Paul", null, Gender.MAN, null, null, null, "Lyon",
+        true, null));
+
+    Map<String, LongHashSet> expected = postings(new SearchIndex(this.family));
+    Map<String, LongHashSet> actual = postings(this.index);
+    assertEquals(expected.keySet(), actual.keySet());
+    for (String word : expected.keySet())
+      assertEquals(word, set(expected.get(word).toArray()), set(actual.get(word).toArray()));
+  }
+
+  @Test
+  public void testEstimate() {
+    for (int i = 0; i < 5; i++)
+      add("Moreau", "Marie", null, null);
+
+    assertEquals(5, this.index.estimate(criterion(this.family.query().nameLike("moreau"))));
+    // The rarest word gives the estimate
+    assertEquals(1, this.index.estimate(criterion(this.family.query().nameLike("marie dubois"))));
+    assertEquals(0, this.index.estimate(criterion(this.family.query().nameLike("unknown"))));
+    // Not a text criterion or no words
+    assertEquals(-1, this.index.estimate(criterion(this.family.query().gender(Gender.MAN))));
+    assertEquals(-1, this.index.estimate(criterion(this.family.query().nameLike(""))));
+  }
+
+  @Test
+  public void testLookup() {
+    assertEquals(set(this.martin, this.dubois), set(this.index.lookup(criterion(this.family.query().nameLike("mar"))).toArray()));
+    // Texts are indexed together: the lookup may return members that the criterion rejects
+    MemberQuery.Criterion location = criterion(this.family.query().birthLocationLike("paris"));
+    Set<Long> found = set(this.index.lookup(location).toArray());
+    assertEquals(set(this.martin, this.dubois), found);
+    assertEquals(set(this.dubois), found.stream().filter(id -> location.test(this.family.getMember(id).get()))
+        .collect(Collectors.toSet()));
+  }
+
+  @Test
+  public void testUsedByQueries() {
+    this.family.addMemberIndex(this.index);
+    assertEquals(set(this.dubois), set(this.family.query().birthLocationLike("paris").ids().toArray()));
+    assertEquals(set(this.martin), set(this.family.query().nameLike("jean").ids().toArray()));
+    this.family.removeMember(this.martin);
+    assertEquals(0, this.family.query().nameLike("jean").count());
+  }
+
+  private long add(String familyName, String firstName, String birthLocation, String comment) {
+    this.family.addMember(
+        new FamilyMember(null, familyName, null, firstName, null, Gender.UNKNOW, null, birthLocation, null, null, false, comment));
+    return this.family.getAllMembersIds().stream().mapToLong(Long::longValue).max().getAsLong();
+  }
+
+  private static MemberQuery.Criterion criterion(MemberQuery query) {
+    return query.getCriteria().get(0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, LongHashSet> postings(SearchIndex index) {
+    try {
+      Field field = SearchIndex.class.getDeclaredField("postings");
+      field.setAccessible(true);
+      return (Map<String, LongHashSet>) field.get(index);
+    }
+    catch (ReflectiveOperationException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+  private static Set<Long> set(long... ids) {
+    Set<Long> set = new HashSet<>();
+    Arrays.stream(ids).forEach(set::add);
+    return set;
+  }
+}
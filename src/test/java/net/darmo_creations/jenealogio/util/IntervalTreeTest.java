@@ -0,0 +1,97 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IntervalTreeTest {
+  @Test
+  public void testEmpty() {
+    IntervalTree tree = new IntervalTree(new int[0], new int[0], new long[0]);
+    assertEquals(0, tree.size());
+    assertEquals(0, tree.count(0, 10));
+    assertEquals(new HashSet<>(), query(tree, 0, 10));
+  }
+
+  @Test
+  public void testQuery() {
+    IntervalTree tree = new IntervalTree(new int[]{10, 0, 5, 20}, new int[]{15, 3, 12, 20}, new long[]{1, 2, 3, 4});
+    assertEquals(set(1, 3), query(tree, 11, 11));
+    assertEquals(set(2), query(tree, 3, 4));
+    assertEquals(set(1, 4), query(tree, 15, 25));
+    assertEquals(set(), query(tree, 16, 19));
+    assertEquals(set(1, 2, 3, 4), query(tree, -5, 100));
+  }
+
+  @Test
+  public void testBoundsIncluded() {
+    IntervalTree tree = new IntervalTree(new int[]{5}, new int[]{8}, new long[]{1});
+    assertEquals(1, tree.count(8, 9));
+    assertEquals(1, tree.count(0, 5));
+    assertEquals(0, tree.count(9, 12));
+    assertEquals(0, tree.count(0, 4));
+  }
+
+  @Test
+  public void testCountEmptyRange() {
+    IntervalTree tree = new IntervalTree(new int[]{5}, new int[]{8}, new long[]{1});
+    assertEquals(0, tree.count(7, 6));
+  }
+
+  @Test
+  public void testExtremeValues() {
+    IntervalTree tree = new IntervalTree(new int[]{Integer.MIN_VALUE}, new int[]{Integer.MAX_VALUE}, new long[]{1});
+    assertEquals(1, tree.count(Integer.MIN_VALUE, Integer.MIN_VALUE));
+    assertEquals(set(1), query(tree, Integer.MAX_VALUE, Integer.MAX_VALUE));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDifferentLengths() {
+    new IntervalTree(new int[]{1, 2}, new int[]{3}, new long[]{1, 2});
+  }
+
+  @Test
+  public void testAgainstScan() {
+    Random random = new Random(1);
+
+    for (int n : new int[]{1, 2, 7, 100, 1000}) {
+      int[] starts = new int[n], ends = new int[n];
+      long[] labels = new long[n];
+
+      for (int i = 0; i < n; i++) {
+        starts[i] = random.nextInt(1000);
+        ends[i] = starts[i] + random.nextInt(50);
+        labels[i] = i;
+      }
+      IntervalTree tree = new IntervalTree(starts, ends, labels);
+
+      for (int q = 0; q < 200; q++) {
+        int from = random.nextInt(1100) - 50, to = from + random.nextInt(100);
+        Set<Long> expected = new HashSet<>();
+
+        for (int i = 0; i < n; i++)
+          if (starts[i] <= to && ends[i] >= from)
+            expected.add(labels[i]);
+        assertEquals(expected, query(tree, from, to));
+        assertEquals(expected.size(), tree.count(from, to));
+      }
+    }
+  }
+
+  private static Set<Long> query(IntervalTree tree, int from, int to) {
+    Set<Long> labels = new HashSet<>();
+    tree.query(from, to, labels::add);
+    return labels;
+  }
+
+  private static Set<Long> set(long... labels) {
+    Set<Long> set = new HashSet<>();
+    for (long label : labels)
+      set.add(label);
+    return set;
+  }
+}
@@ -0,0 +1,150 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+  /** The capacity of an empty set. */
+  private static final int CAPACITY = 16;
+
+  @Test
+  public void testAdd() {
+    LongHashSet set = new LongHashSet();
+    assertTrue(set.isEmpty());
+    assertTrue(set.add(3));
+    assertTrue(set.add(-7));
+    assertTrue(set.add(0));
+    assertFalse(set.add(3));
+    assertEquals(3, set.size());
+    assertFalse(set.isEmpty());
+  }
+
+  @Test
+  public void testContains() {
+    LongHashSet set = new LongHashSet();
+    set.add(42);
+    assertTrue(set.contains(42));
+    assertFalse(set.contains(43));
+    assertFalse(set.contains(Long.MIN_VALUE));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAddFreeMarker() {
+    new LongHashSet().add(Long.MIN_VALUE);
+  }
+
+  @Test
+  public void testRemove() {
+    LongHashSet set = new LongHashSet();
+    set.add(1);
+    set.add(2);
+    assertTrue(set.remove(1));
+    assertFalse(set.remove(1));
+    assertFalse(set.remove(Long.MIN_VALUE));
+    assertFalse(set.contains(1));
+    assertTrue(set.contains(2));
+    assertEquals(1, set.size());
+  }
+
+  @Test
+  public void testClear() {
+    LongHashSet set = new LongHashSet();
+    set.add(1);
+    set.add(2);
+    set.clear();
+    assertTrue(set.isEmpty());
+    assertFalse(set.contains(1));
+    assertTrue(set.add(1));
+  }
+
+  @Test
+  public void testRemoveInWrappedCluster() {
+    // Values whose home slot is the last one: the cluster wraps around to the start of the table
+    long[] values = valuesWithHome(CAPACITY - 1, 4);
+    LongHashSet set = new LongHashSet();
+    for (long v : values)
+      set.add(v);
+
+    // Removing the first value must move the ones stored after the end of the table back
+    assertTrue(set.remove(values[0]));
+    for (int i = 1; i < values.length; i++)
+      assertTrue(set.contains(values[i]));
+    assertTrue(set.remove(values[2]));
+    assertTrue(set.contains(values[1]));
+    assertTrue(set.contains(values[3]));
+    assertEquals(2, set.size());
+  }
+
+  @Test
+  public void testRemoveKeepsValuesAtTheirHome() {
+    // A value stored at its home slot after the wrap must not be moved into the hole
+    long[] wrapped = valuesWithHome(CAPACITY - 1, 2);
+    long[] atStart = valuesWithHome(0, 1);
+    LongHashSet set = new LongHashSet();
+    set.add(wrapped[0]);
+    set.add(atStart[0]);
+    set.add(wrapped[1]);
+
+    assertTrue(set.remove(wrapped[0]));
+    assertTrue(set.contains(atStart[0]));
+    assertTrue(set.contains(wrapped[1]));
+  }
+
+  @Test
+  public void testRehash() {
+    LongHashSet set = new LongHashSet();
+    int n = CAPACITY * 10;
+    for (long v = 0; v < n; v++)
+      assertTrue(set.add(v));
+    assertEquals(n, set.size());
+    for (long v = 0; v < n; v++)
+      assertTrue(set.contains(v));
+    assertFalse(set.contains(n));
+
+    long[] values = set.toArray();
+    Arrays.sort(values);
+    for (int i = 0; i < n; i++)
+      assertEquals(i, values[i]);
+  }
+
+  @Test
+  public void testRandomOperations() {
+    Random random = new Random(1);
+    LongHashSet set = new LongHashSet();
+    Set<Long> expected = new HashSet<>();
+
+    for (int i = 0; i < 20000; i++) {
+      // A small range of values so that removals often hit present values
+      long v = random.nextInt(500) - 250;
+      if (random.nextInt(3) == 0)
+        assertEquals(expected.remove(v), set.remove(v));
+      else
+        assertEquals(expected.add(v), set.add(v));
+      assertEquals(expected.size(), set.size());
+    }
+    for (long v = -250; v < 250; v++)
+      assertEquals(expected.contains(v), set.contains(v));
+  }
+
+  /**
+   * Returns values whose home slot in a table of {@link #CAPACITY} slots is the given one. The hash
+   * function is the same as in {@link LongHashSet}.
+   */
+  private static long[] valuesWithHome(int slot, int count) {
+    List<Long> values = new ArrayList<>();
+    for (long v = 0; values.size() < count; v++) {
+      long h = v * 0x9E3779B97F4A7C15L;
+      if (((int) (h ^ (h >>> 32)) & (CAPACITY - 1)) == slot)
+        values.add(v);
+    }
+    return values.stream().mapToLong(Long::longValue).toArray();
+  }
+}
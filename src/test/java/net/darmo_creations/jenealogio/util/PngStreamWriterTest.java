@@ -0,0 +1,114 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class PngStreamWriterTest {
+  @Test
+  public void testSingleRow() throws IOException {
+    int[] pixels = {0xff0000, 0x00ff00, 0x0000ff, 0xffffff};
+    assertPixels(pixels, 4, 1, 1);
+  }
+
+  @Test
+  public void testRowsWrittenOneByOne() throws IOException {
+    assertPixels(randomPixels(17, 13, 1), 17, 13, 1);
+  }
+
+  @Test
+  public void testRowsWrittenByStrips() throws IOException {
+    assertPixels(randomPixels(31, 50, 2), 31, 50, 7);
+  }
+
+  @Test
+  public void testSeveralIdatChunks() throws IOException {
+    // Random pixels cannot be compressed, the data is bigger than one chunk
+    assertPixels(randomPixels(300, 300, 3), 300, 300, 64);
+  }
+
+  @Test
+  public void testAlphaIgnored() throws IOException {
+    int[] pixels = {0xff123456, 0x80abcdef};
+    BufferedImage image = write(pixels, 2, 1, 1);
+
+    assertEquals(0x123456, image.getRGB(0, 0) & 0xffffff);
+    assertEquals(0xabcdef, image.getRGB(1, 0) & 0xffffff);
+  }
+
+  @Test
+  public void testOffsetAndScanline() throws IOException {
+    // 2x2 image taken from the bottom right corner of a 3x3 buffer
+    int[] buffer = {1, 2, 3, 4, 0x111111, 0x222222, 7, 0x333333, 0x444444};
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try (PngStreamWriter writer = new PngStreamWriter(out, 2, 2)) {
+      writer.writeRows(buffer, 4, 3, 2);
+    }
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals(0x111111, image.getRGB(0, 0) & 0xffffff);
+    assertEquals(0x222222, image.getRGB(1, 0) & 0xffffff);
+    assertEquals(0x333333, image.getRGB(0, 1) & 0xffffff);
+    assertEquals(0x444444, image.getRGB(1, 1) & 0xffffff);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidSize() throws IOException {
+    new PngStreamWriter(new ByteArrayOutputStream(), 0, 1).close();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTooManyRows() throws IOException {
+    try (PngStreamWriter writer = new PngStreamWriter(new ByteArrayOutputStream(), 1, 1)) {
+      writer.writeRows(new int[2], 0, 1, 2);
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMissingRows() throws IOException {
+    try (PngStreamWriter writer = new PngStreamWriter(new ByteArrayOutputStream(), 1, 2)) {
+      writer.writeRows(new int[1], 0, 1, 1);
+    }
+  }
+
+  private static void assertPixels(int[] pixels, int width, int height, int stripHeight) throws IOException {
+    BufferedImage image = write(pixels, width, height, stripHeight);
+
+    assertEquals(width, image.getWidth());
+    assertEquals(height, image.getHeight());
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++)
+        assertEquals("pixel " + x + "," + y, pixels[y * width + x] & 0xffffff, image.getRGB(x, y) & 0xffffff);
+    }
+  }
+
+  private static BufferedImage write(int[] pixels, int width, int height, int stripHeight) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try (PngStreamWriter writer = new PngStreamWriter(out, width, height)) {
+      for (int y = 0; y < height; y += stripHeight)
+        writer.writeRows(pixels, y * width, width, Math.min(stripHeight, height - y));
+    }
+
+    return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  private static int[] randomPixels(int width, int height, long seed) {
+    Random random = new Random(seed);
+    int[] pixels = new int[width * height];
+
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = random.nextInt(0x1000000);
+
+    return pixels;
+  }
+}
@@ -0,0 +1,35 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class StringPoolTest {
+  @Test
+  public void testIntern() {
+    StringPool pool = new StringPool();
+    String s1 = new String("Vergnet");
+    String s2 = new String("Vergnet");
+
+    assertSame(s1, pool.intern(s1));
+    assertSame(s1, pool.intern(s2));
+    assertEquals(1, pool.size());
+  }
+
+  @Test
+  public void testDistinctStrings() {
+    StringPool pool = new StringPool();
+
+    assertEquals("Lyon", pool.intern("Lyon"));
+    assertEquals("lyon", pool.intern("lyon"));
+    assertEquals(2, pool.size());
+  }
+
+  @Test
+  public void testNull() {
+    StringPool pool = new StringPool();
+
+    assertNull(pool.intern(null));
+    assertEquals(0, pool.size());
+  }
+}